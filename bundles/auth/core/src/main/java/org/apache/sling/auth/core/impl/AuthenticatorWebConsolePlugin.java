@@ -75,6 +75,13 @@ public class AuthenticatorWebConsolePlugin extends HttpServlet {
 
         printAuthenticationConfiguration(pw);
 
+        final ResourceResolverCache cache = slingAuthenticator.getResolverCache();
+        if (cache != null) {
+            pw.println("<tr><td colspan='2'>&nbsp;</td></tr>");
+
+            printResolverCache(pw, cache);
+        }
+
         pw.println("</table>");
     }
 
@@ -143,4 +150,26 @@ public class AuthenticatorWebConsolePlugin extends HttpServlet {
         pw.printf("<td class='content' colspan='2'>%s</td>%n", (anonUser == null) ? "(default)" : ResponseUtil.escapeXml(anonUser));
         pw.println("</tr>");
     }
+
+    private void printResolverCache(final PrintWriter pw, final ResourceResolverCache cache) {
+        pw.println("<tr>");
+        pw.println("<th class='content container' colspan='3'>Resource Resolver Cache</td>");
+        pw.println("</tr>");
+        printRow(pw, "Cached Resource Resolvers", cache.getSize() + " of " + cache.getMaxSize());
+        printRow(pw, "Time To Live", (cache.getTimeToLive() / 1000) + "s");
+        printRow(pw, "Hits", String.valueOf(cache.getHits()));
+        printRow(pw, "Misses", String.valueOf(cache.getMisses()));
+        printRow(pw, "Not Cacheable", String.valueOf(cache.getBypassed()));
+        printRow(pw, "Expired", String.valueOf(cache.getExpired()));
+        printRow(pw, "Evicted", String.valueOf(cache.getEvicted()));
+        printRow(pw, "Discarded", String.valueOf(cache.getDiscarded()));
+        printRow(pw, "Invalidations", String.valueOf(cache.getInvalidations()));
+    }
+
+    private void printRow(final PrintWriter pw, final String label, final String value) {
+        pw.println("<tr>");
+        pw.printf("<td class='content'>%s</td>%n", label);
+        pw.printf("<td class='content' colspan='2'>%s</td>%n", ResponseUtil.escapeXml(value));
+        pw.println("</tr>");
+    }
 }
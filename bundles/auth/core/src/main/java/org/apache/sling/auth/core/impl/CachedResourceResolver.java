@@ -0,0 +1,494 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.api.resource.SyntheticResource;
+
+/**
+ * The <code>CachedResourceResolver</code> is the resource resolver handed out
+ * to a single request by the {@link ResourceResolverCache}. It delegates to
+ * the cached resource resolver until it is closed, at which time the cached
+ * resource resolver is returned to the cache instead of being closed.
+ * <p>
+ * Any use of this instance after it has been closed fails with an
+ * <code>IllegalStateException</code>, so a request cannot reach the cached
+ * resource resolver once it has been handed to another request. This also
+ * applies to the objects handed out by this instance:
+ * <ul>
+ * <li>Resources return this instance from
+ * {@link Resource#getResourceResolver()}. Plain synthetic and non existing
+ * resources are recreated for this instance, so <code>instanceof</code>
+ * checks still work; all other resources are wrapped.</li>
+ * <li>Objects returned by <code>adaptTo</code>, like the JCR session or
+ * nodes, are replaced by proxies of their interfaces failing once this
+ * instance is closed. Objects returned by these proxies are guarded the
+ * same way. Adapters which are not an instance of one of these interfaces,
+ * like adapters to an implementation class, are not available.</li>
+ * </ul>
+ */
+final class CachedResourceResolver implements ResourceResolver {
+
+    private final ResourceResolverCache cache;
+
+    private final String key;
+
+    private final ResourceResolver delegatee;
+
+    private final long created;
+
+    private final long generation;
+
+    private volatile boolean closed;
+
+    CachedResourceResolver(final ResourceResolverCache cache, final String key,
+            final ResourceResolver delegatee, final long created, final long generation) {
+        this.cache = cache;
+        this.key = key;
+        this.delegatee = delegatee;
+        this.created = created;
+        this.generation = generation;
+    }
+
+    String getKey() {
+        return this.key;
+    }
+
+    ResourceResolver getDelegatee() {
+        return this.delegatee;
+    }
+
+    long getCreated() {
+        return this.created;
+    }
+
+    long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Returns the cached resource resolver to the cache. Only the first call
+     * has an effect.
+     */
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.cache.release(this);
+        }
+    }
+
+    public boolean isLive() {
+        return !this.closed && this.delegatee.isLive();
+    }
+
+    private ResourceResolver delegatee() {
+        checkOpen();
+        return this.delegatee;
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("Resource resolver is already closed.");
+        }
+    }
+
+    // ---------- guarding returned objects
+
+    /**
+     * Returns the resource pointing to this instance instead of the cached
+     * resource resolver.
+     */
+    Resource wrap(final Resource resource) {
+        if (resource == null || resource instanceof LeasedResource) {
+            return resource;
+        }
+        if (resource.getClass() == NonExistingResource.class) {
+            final NonExistingResource result = new NonExistingResource(this, resource.getPath());
+            result.getResourceMetadata().putAll(resource.getResourceMetadata());
+            return result;
+        }
+        if (resource.getClass() == SyntheticResource.class) {
+            final ResourceMetadata metadata = new ResourceMetadata();
+            metadata.putAll(resource.getResourceMetadata());
+            return new SyntheticResource(this, metadata, resource.getResourceType());
+        }
+        return new LeasedResource(this, resource);
+    }
+
+    private Iterator<Resource> wrap(final Iterator<Resource> resources) {
+        if (resources == null) {
+            return null;
+        }
+        return new Iterator<Resource>() {
+
+            public boolean hasNext() {
+                checkOpen();
+                return resources.hasNext();
+            }
+
+            public Resource next() {
+                checkOpen();
+                return wrap(resources.next());
+            }
+
+            public void remove() {
+                checkOpen();
+                resources.remove();
+            }
+        };
+    }
+
+    private Iterable<Resource> wrap(final Iterable<Resource> resources) {
+        if (resources == null) {
+            return null;
+        }
+        return new Iterable<Resource>() {
+
+            public Iterator<Resource> iterator() {
+                return wrap(resources.iterator());
+            }
+        };
+    }
+
+    /**
+     * Returns the resource handed to the cached resource resolver for a
+     * resource handed out by this instance.
+     */
+    private static Resource unwrap(final Resource resource) {
+        if (resource instanceof LeasedResource) {
+            return ((LeasedResource) resource).getResource();
+        }
+        return resource;
+    }
+
+    /**
+     * Returns an object which cannot be used once this instance is closed
+     * for an object returned by the cached resource resolver.
+     */
+    private Object guard(final Object object) {
+        if (object == null) {
+            return null;
+        }
+        if (object == this.delegatee) {
+            return this;
+        }
+        if (object instanceof Resource) {
+            return wrap((Resource) object);
+        }
+        if (isValue(object.getClass())
+                || (Proxy.isProxyClass(object.getClass()) && Proxy.getInvocationHandler(object) instanceof Guard)) {
+            return object;
+        }
+        final Class<?>[] interfaces = getGuardedInterfaces(object.getClass());
+        if (interfaces.length == 0) {
+            return object;
+        }
+        try {
+            return Proxy.newProxyInstance(object.getClass().getClassLoader(), interfaces, new Guard(object));
+        } catch (final IllegalArgumentException iae) {
+            // an interface is not visible to the class loader of the object
+            return null;
+        }
+    }
+
+    /**
+     * Returns the guarded adapter: adapters to a class other than a
+     * {@link Resource} cannot be guarded and are not available.
+     */
+    private <AdapterType> AdapterType adapt(final Class<AdapterType> type, final AdapterType adapter) {
+        if (adapter == null || isValue(adapter.getClass())) {
+            return adapter;
+        }
+        final Object guarded = guard(adapter);
+        return type.isInstance(guarded) ? type.cast(guarded) : null;
+    }
+
+    /**
+     * Returns whether objects of the class are passed on unguarded: arrays
+     * and values from the <code>java</code> packages.
+     */
+    private static boolean isValue(final Class<?> type) {
+        return type.isPrimitive() || type.isArray() || type.getName().startsWith("java.");
+    }
+
+    private static Class<?>[] getGuardedInterfaces(final Class<?> type) {
+        final List<Class<?>> interfaces = new ArrayList<Class<?>>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (final Class<?> i : c.getInterfaces()) {
+                if (!isValue(i) && Modifier.isPublic(i.getModifiers())
+                        && !interfaces.contains(i)) {
+                    interfaces.add(i);
+                }
+            }
+        }
+        return interfaces.toArray(new Class<?>[interfaces.size()]);
+    }
+
+    /**
+     * The invocation handler of the proxies returned by {@link #guard(Object)}.
+     */
+    private final class Guard implements InvocationHandler {
+
+        private final Object target;
+
+        Guard(final Object target) {
+            this.target = target;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if ("equals".equals(name) && args != null && args.length == 1) {
+                return this.target.equals(unguard(args[0]));
+            } else if ("hashCode".equals(name) && args == null) {
+                return this.target.hashCode();
+            } else if ("toString".equals(name) && args == null) {
+                return this.target.toString();
+            }
+
+            checkOpen();
+            final Object[] targetArgs;
+            if (args == null) {
+                targetArgs = null;
+            } else {
+                targetArgs = new Object[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    targetArgs[i] = unguard(args[i]);
+                }
+            }
+            final Object result;
+            try {
+                result = method.invoke(this.target, targetArgs);
+            } catch (final InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+            return guard(result);
+        }
+
+        private Object unguard(final Object arg) {
+            if (arg == CachedResourceResolver.this) {
+                return delegatee;
+            }
+            if (arg instanceof LeasedResource) {
+                return ((LeasedResource) arg).getResource();
+            }
+            if (arg != null && Proxy.isProxyClass(arg.getClass())) {
+                final InvocationHandler handler = Proxy.getInvocationHandler(arg);
+                if (handler instanceof Guard) {
+                    return ((Guard) handler).target;
+                }
+            }
+            return arg;
+        }
+    }
+
+    /**
+     * A resource handed out by a {@link CachedResourceResolver}.
+     */
+    private static final class LeasedResource extends ResourceWrapper {
+
+        private final CachedResourceResolver resolver;
+
+        LeasedResource(final CachedResourceResolver resolver, final Resource resource) {
+            super(resource);
+            this.resolver = resolver;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return this.resolver;
+        }
+
+        @Override
+        public Resource getParent() {
+            this.resolver.checkOpen();
+            return this.resolver.wrap(getResource().getParent());
+        }
+
+        @Override
+        public Resource getChild(final String relPath) {
+            this.resolver.checkOpen();
+            return this.resolver.wrap(getResource().getChild(relPath));
+        }
+
+        @Override
+        public Iterator<Resource> listChildren() {
+            this.resolver.checkOpen();
+            return this.resolver.wrap(getResource().listChildren());
+        }
+
+        @Override
+        public Iterable<Resource> getChildren() {
+            this.resolver.checkOpen();
+            return this.resolver.wrap(getResource().getChildren());
+        }
+
+        @Override
+        public <AdapterType> AdapterType adaptTo(final Class<AdapterType> type) {
+            this.resolver.checkOpen();
+            return this.resolver.adapt(type, super.adaptTo(type));
+        }
+    }
+
+    // ---------- delegation
+
+    public <AdapterType> AdapterType adaptTo(final Class<AdapterType> type) {
+        return adapt(type, delegatee().adaptTo(type));
+    }
+
+    public Resource resolve(final HttpServletRequest request, final String absPath) {
+        return wrap(delegatee().resolve(request, absPath));
+    }
+
+    public Resource resolve(final String absPath) {
+        return wrap(delegatee().resolve(absPath));
+    }
+
+    @SuppressWarnings("deprecation")
+    public Resource resolve(final HttpServletRequest request) {
+        return wrap(delegatee().resolve(request));
+    }
+
+    public String map(final String resourcePath) {
+        return delegatee().map(resourcePath);
+    }
+
+    public String map(final HttpServletRequest request, final String resourcePath) {
+        return delegatee().map(request, resourcePath);
+    }
+
+    public Resource getResource(final String path) {
+        return wrap(delegatee().getResource(path));
+    }
+
+    public Resource getResource(final Resource base, final String path) {
+        return wrap(delegatee().getResource(unwrap(base), path));
+    }
+
+    public String[] getSearchPath() {
+        return delegatee().getSearchPath();
+    }
+
+    public Iterator<Resource> listChildren(final Resource parent) {
+        return wrap(delegatee().listChildren(unwrap(parent)));
+    }
+
+    public Resource getParent(final Resource child) {
+        return wrap(delegatee().getParent(unwrap(child)));
+    }
+
+    public Iterable<Resource> getChildren(final Resource parent) {
+        return wrap(delegatee().getChildren(unwrap(parent)));
+    }
+
+    public Iterator<Resource> findResources(final String query, final String language) {
+        return wrap(delegatee().findResources(query, language));
+    }
+
+    public Iterator<Map<String, Object>> queryResources(final String query, final String language) {
+        return delegatee().queryResources(query, language);
+    }
+
+    public boolean hasChildren(final Resource resource) {
+        return delegatee().hasChildren(unwrap(resource));
+    }
+
+    public ResourceResolver clone(final Map<String, Object> authenticationInfo) throws LoginException {
+        return delegatee().clone(authenticationInfo);
+    }
+
+    public String getUserID() {
+        return delegatee().getUserID();
+    }
+
+    public Iterator<String> getAttributeNames() {
+        return delegatee().getAttributeNames();
+    }
+
+    public Object getAttribute(final String name) {
+        return delegatee().getAttribute(name);
+    }
+
+    public void delete(final Resource resource) throws PersistenceException {
+        delegatee().delete(unwrap(resource));
+    }
+
+    public Resource create(final Resource parent, final String name, final Map<String, Object> properties)
+            throws PersistenceException {
+        return wrap(delegatee().create(unwrap(parent), name, properties));
+    }
+
+    public void revert() {
+        delegatee().revert();
+    }
+
+    public void commit() throws PersistenceException {
+        delegatee().commit();
+    }
+
+    public boolean hasChanges() {
+        return delegatee().hasChanges();
+    }
+
+    public String getParentResourceType(final Resource resource) {
+        return delegatee().getParentResourceType(unwrap(resource));
+    }
+
+    public String getParentResourceType(final String resourceType) {
+        return delegatee().getParentResourceType(resourceType);
+    }
+
+    public boolean isResourceType(final Resource resource, final String resourceType) {
+        return delegatee().isResourceType(unwrap(resource), resourceType);
+    }
+
+    public void refresh() {
+        delegatee().refresh();
+    }
+
+    public void copy(final String srcAbsPath, final String destAbsPath) throws PersistenceException {
+        delegatee().copy(srcAbsPath, destAbsPath);
+    }
+
+    public void move(final String srcAbsPath, final String destAbsPath) throws PersistenceException {
+        delegatee().move(srcAbsPath, destAbsPath);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedResourceResolver(" + this.delegatee + ")";
+    }
+}
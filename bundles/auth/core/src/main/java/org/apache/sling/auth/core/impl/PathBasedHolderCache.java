@@ -19,125 +19,370 @@
 package org.apache.sling.auth.core.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.servlet.http.HttpServletRequest;
 
+/**
+ * The <code>PathBasedHolderCache</code> keeps the {@link PathBasedHolder}
+ * instances by scheme, host and path.
+ * <p>
+ * Lookups are done on an immutable {@link Snapshot} of the registered holders
+ * without any locking. Modifications are serialized and publish a new
+ * snapshot once done. Within a snapshot the holders of each scheme and host
+ * are kept in a path trie, so the holders applicable to a request path are
+ * found with a single walk along the path instead of checking each registered
+ * holder.
+ */
 public class PathBasedHolderCache<Type extends PathBasedHolder> {
 
+    /**
+     * The maximum number of request paths whose first applicable holder is
+     * memoized by {@link #findFirstApplicableHolder(HttpServletRequest, String)}.
+     * Once reached, the least recently used result is discarded.
+     */
+    static final int MAX_MEMOIZED_PATHS = 1000;
+
+    /** The holders by scheme and host, only accessed while synchronized */
     private final Map<String, Map<String, SortedSet<Type>>> cache = new HashMap<String, Map<String, SortedSet<Type>>>();
 
-    /** Read/write lock to synchronize the cache access. */
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    /** The snapshot of the holders used for the lookups */
+    private volatile Snapshot<Type> snapshot = new Snapshot<Type>(cache);
+
+    public synchronized void clear() {
+        cache.clear();
+        publish();
+    }
+
+    public synchronized void addHolder(final Type holder) {
+        Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
+        if (byHostMap == null) {
+            byHostMap = new HashMap<String, SortedSet<Type>>();
+            cache.put(holder.protocol, byHostMap);
+        }
+
+        SortedSet<Type> byPathSet = byHostMap.get(holder.host);
+        if (byPathSet == null) {
+            byPathSet = new TreeSet<Type>();
+            byHostMap.put(holder.host, byPathSet);
+        }
+        byPathSet.add(holder);
+
+        publish();
+    }
+
+    public synchronized void removeHolder(final Type holder) {
+        final Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
+        if (byHostMap != null) {
+            final SortedSet<Type> byPathSet = byHostMap.get(holder.host);
+            if (byPathSet != null) {
+                byPathSet.remove(holder);
+                if (byPathSet.isEmpty()) {
+                    byHostMap.remove(holder.host);
+                    if (byHostMap.isEmpty()) {
+                        cache.remove(holder.protocol);
+                    }
+                }
+                publish();
+            }
+        }
+    }
 
-    public void clear() {
-        this.rwLock.writeLock().lock();
-        try {
-            cache.clear();
-        } finally {
-            this.rwLock.writeLock().unlock();
+    /**
+     * Returns the holders registered for the scheme and host of the request
+     * in four sets, in the order the holders are to be considered: for the
+     * scheme and host of the request, for the scheme and any host, for any
+     * scheme and the host and for any scheme and any host. Entries are
+     * <code>null</code> if there are no holders for the respective scheme and
+     * host.
+     */
+    public Collection<Type>[] findApplicableHolder(final HttpServletRequest request) {
+        final String hostname = getHostname(request);
+        final Snapshot<Type> snapshot = this.snapshot;
+
+        @SuppressWarnings("unchecked")
+        final Collection<Type>[] result = new Collection[4];
+        for (int i = 0; i < result.length; i++) {
+            final Bucket<Type> bucket = snapshot.getBucket(request.getScheme(), hostname, i);
+            result[i] = (bucket == null) ? null : bucket.holders;
         }
+        return result;
     }
 
-    public void addHolder(final Type holder) {
-        this.rwLock.writeLock().lock();
-        try {
+    /**
+     * Returns all holders applicable to the request whose path is a prefix of
+     * the given <code>path</code>. The holders are returned in the order they
+     * are to be considered: by scheme and host as described for
+     * {@link #findApplicableHolder(HttpServletRequest)} and then with the
+     * longest path first.
+     */
+    public List<Type> findApplicableHolders(final HttpServletRequest request, final String path) {
+        return findApplicableHolders(request.getScheme(), getHostname(request), path);
+    }
 
-            Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
-            if (byHostMap == null) {
-                byHostMap = new HashMap<String, SortedSet<Type>>();
-                cache.put(holder.protocol, byHostMap);
+    List<Type> findApplicableHolders(final String scheme, final String hostname, final String path) {
+        final Snapshot<Type> snapshot = this.snapshot;
+        List<Type> result = null;
+        for (int i = 0; i < 4; i++) {
+            final Bucket<Type> bucket = snapshot.getBucket(scheme, hostname, i);
+            if (bucket != null) {
+                if (result == null) {
+                    result = new ArrayList<Type>();
+                }
+                bucket.root.collect(path, result);
             }
+        }
+        return (result == null) ? Collections.<Type> emptyList() : result;
+    }
+
+    /**
+     * Returns the first holder applicable to the request whose path is a
+     * prefix of the given <code>path</code> or <code>null</code> if there is
+     * none. This is the first holder of the list returned by
+     * {@link #findApplicableHolders(HttpServletRequest, String)}.
+     * <p>
+     * The result is memoized per scheme, host and path until the holders are
+     * modified.
+     */
+    public Type findFirstApplicableHolder(final HttpServletRequest request, final String path) {
+        return findFirstApplicableHolder(request.getScheme(), getHostname(request), path);
+    }
 
-            final SortedSet<Type> byPathSet = new TreeSet<Type>();
+    Type findFirstApplicableHolder(final String scheme, final String hostname, final String path) {
+        final Snapshot<Type> snapshot = this.snapshot;
+        final String key = scheme + "://" + hostname + path;
 
-            // preset with current list
-            final SortedSet<Type> currentPathSet = byHostMap.get(holder.host);
-            if (currentPathSet != null) {
-                byPathSet.addAll(currentPathSet);
+        final Object memoized;
+        synchronized (snapshot.memo) {
+            memoized = snapshot.memo.get(key);
+        }
+        if (memoized != null) {
+            return (memoized == Snapshot.NONE) ? null : snapshot.<Type> cast(memoized);
+        }
+
+        Type result = null;
+        for (int i = 0; result == null && i < 4; i++) {
+            final Bucket<Type> bucket = snapshot.getBucket(scheme, hostname, i);
+            if (bucket != null) {
+                result = bucket.root.findFirst(path);
             }
+        }
 
-            // add the new holder
-            byPathSet.add(holder);
+        synchronized (snapshot.memo) {
+            snapshot.memo.put(key, (result == null) ? Snapshot.NONE : result);
+        }
+        return result;
+    }
 
-            // replace old set with new set
-            byHostMap.put(holder.host, byPathSet);
-        } finally {
-            this.rwLock.writeLock().unlock();
+    /**
+     * Returns <code>true</code> if the lookup for the scheme, host and path
+     * is currently memoized.
+     */
+    boolean isMemoized(final String scheme, final String hostname, final String path) {
+        final Snapshot<Type> snapshot = this.snapshot;
+        synchronized (snapshot.memo) {
+            return snapshot.memo.containsKey(scheme + "://" + hostname + path);
         }
     }
 
-    public void removeHolder(final Type holder) {
-        this.rwLock.writeLock().lock();
-        try {
-            final Map<String, SortedSet<Type>> byHostMap = cache.get(holder.protocol);
-            if (byHostMap != null) {
-                final SortedSet<Type> byPathSet = byHostMap.get(holder.host);
-                if (byPathSet != null) {
+    public List<Type> getHolders() {
+        final List<Type> result = new ArrayList<Type>();
+        for (Map<String, Bucket<Type>> byHostEntry : snapshot.buckets.values()) {
+            for (Bucket<Type> bucket : byHostEntry.values()) {
+                result.addAll(bucket.holders);
+            }
+        }
+        return result;
+    }
+
+    private void publish() {
+        this.snapshot = new Snapshot<Type>(cache);
+    }
 
-                    // create a new set without the removed holder
-                    final SortedSet<Type> set = new TreeSet<Type>();
-                    set.addAll(byPathSet);
-                    set.remove(holder);
+    private static String getHostname(final HttpServletRequest request) {
+        return request.getServerName()
+            + (request.getServerPort() != 80 && request.getServerPort() != 443
+                ? ":" + request.getServerPort()
+                : "");
+    }
 
-                    // replace the old set with the new one (or remove if empty)
-                    if (set.isEmpty()) {
-                        byHostMap.remove(holder.host);
-                    } else {
-                        byHostMap.put(holder.host, set);
-                    }
+    /**
+     * The immutable snapshot of the registered holders by scheme and host.
+     * The snapshot also holds the memoized results of the lookups, which are
+     * thus dropped together with the snapshot when the holders are modified.
+     */
+    private static final class Snapshot<Type extends PathBasedHolder> {
+
+        /** Marker for memoized lookups without applicable holder */
+        static final Object NONE = new Object();
+
+        final Map<String, Map<String, Bucket<Type>>> buckets;
+
+        /** The memoized lookups in access order, guarded by itself */
+        final Map<String, Object> memo = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Object> eldest) {
+                return size() > MAX_MEMOIZED_PATHS;
+            }
+        };
+
+        Snapshot(final Map<String, Map<String, SortedSet<Type>>> cache) {
+            this.buckets = new HashMap<String, Map<String, Bucket<Type>>>();
+            for (Map.Entry<String, Map<String, SortedSet<Type>>> byHostEntry : cache.entrySet()) {
+                final Map<String, Bucket<Type>> byHostMap = new HashMap<String, Bucket<Type>>();
+                for (Map.Entry<String, SortedSet<Type>> entry : byHostEntry.getValue().entrySet()) {
+                    byHostMap.put(entry.getKey(), new Bucket<Type>(entry.getValue()));
                 }
+                this.buckets.put(byHostEntry.getKey(), byHostMap);
             }
-        } finally {
-            this.rwLock.writeLock().unlock();
+        }
+
+        /**
+         * Returns the bucket with the given index in the order described for
+         * {@link PathBasedHolderCache#findApplicableHolder(HttpServletRequest)}.
+         */
+        Bucket<Type> getBucket(final String scheme, final String hostname, final int index) {
+            final Map<String, Bucket<Type>> byHostMap = buckets.get(index < 2 ? scheme : "");
+            if (byHostMap == null) {
+                return null;
+            }
+            return byHostMap.get((index % 2 == 0) ? hostname : "");
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T cast(final Object holder) {
+            return (T) holder;
         }
     }
 
-    public Collection<Type>[] findApplicableHolder(final HttpServletRequest request) {
-        this.rwLock.readLock().lock();
-        try {
-            final String hostname = request.getServerName()
-                  + (request.getServerPort() != 80 && request.getServerPort() != 443
-                    ? ":" + request.getServerPort()
-                    : "");
+    /**
+     * The holders registered for a single scheme and host: the sorted set of
+     * the holders and the path trie built from it.
+     */
+    private static final class Bucket<Type extends PathBasedHolder> {
 
-            @SuppressWarnings("unchecked")
-            final SortedSet<Type>[] result = new SortedSet[4];
+        final SortedSet<Type> holders;
 
-            final Map<String, SortedSet<Type>> byHostMap = cache.get(request.getScheme());
-            if ( byHostMap != null ) {
-                result[0] = byHostMap.get(hostname);
-                result[1] = byHostMap.get("");
-            }
-            final Map<String, SortedSet<Type>> defaultByHostMap = cache.get("");
-            if ( defaultByHostMap != null ) {
-                result[2] = defaultByHostMap.get(hostname);
-                result[3] = defaultByHostMap.get("");
+        final Node<Type> root;
+
+        Bucket(final SortedSet<Type> holders) {
+            this.holders = Collections.unmodifiableSortedSet(new TreeSet<Type>(holders));
+
+            final NodeBuilder<Type> rootBuilder = new NodeBuilder<Type>();
+            for (Type holder : holders) {
+                NodeBuilder<Type> builder = rootBuilder;
+                for (int i = 0; i < holder.path.length(); i++) {
+                    builder = builder.getChild(holder.path.charAt(i));
+                }
+                builder.holders.add(holder);
             }
-            return result;
-        } finally {
-            this.rwLock.readLock().unlock();
+            this.root = rootBuilder.build();
         }
     }
 
-    public List<Type> getHolders() {
-        this.rwLock.readLock().lock();
-        try {
-            final List<Type> result = new ArrayList<Type>();
-            for (Map<String, SortedSet<Type>> byHostEntry : cache.values()) {
-                for (SortedSet<Type> holderSet : byHostEntry.values()) {
-                    result.addAll(holderSet);
+    /**
+     * A node of the path trie. The children are kept sorted by the next
+     * character of the path. The holders of the node are those whose path
+     * ends at this node, in the order of the sorted set of the bucket.
+     */
+    private static final class Node<Type extends PathBasedHolder> {
+
+        private final char[] keys;
+
+        private final Node<Type>[] children;
+
+        private final List<Type> holders;
+
+        Node(final char[] keys, final Node<Type>[] children, final List<Type> holders) {
+            this.keys = keys;
+            this.children = children;
+            this.holders = holders;
+        }
+
+        private Node<Type> getChild(final char c) {
+            final int idx = Arrays.binarySearch(keys, c);
+            return (idx < 0) ? null : children[idx];
+        }
+
+        /**
+         * Adds the holders of all nodes along the path to the list, starting
+         * with the node of the longest prefix of the path.
+         */
+        void collect(final String path, final List<Type> result) {
+            final List<Node<Type>> matches = new ArrayList<Node<Type>>();
+            Node<Type> node = this;
+            for (int i = 0; node != null; i++) {
+                if (!node.holders.isEmpty()) {
+                    matches.add(node);
                 }
+                node = (i < path.length()) ? node.getChild(path.charAt(i)) : null;
+            }
+            for (int i = matches.size() - 1; i >= 0; i--) {
+                result.addAll(matches.get(i).holders);
+            }
+        }
+
+        /**
+         * Returns the first holder of the node of the longest prefix of the
+         * path or <code>null</code> if no holder applies to the path.
+         */
+        Type findFirst(final String path) {
+            Type result = null;
+            Node<Type> node = this;
+            for (int i = 0; node != null; i++) {
+                if (!node.holders.isEmpty()) {
+                    result = node.holders.get(0);
+                }
+                node = (i < path.length()) ? node.getChild(path.charAt(i)) : null;
             }
             return result;
-        } finally {
-            this.rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Mutable node used to build the {@link Node} tree of a bucket.
+     */
+    private static final class NodeBuilder<Type extends PathBasedHolder> {
+
+        final TreeMap<Character, NodeBuilder<Type>> children = new TreeMap<Character, NodeBuilder<Type>>();
+
+        final List<Type> holders = new ArrayList<Type>();
+
+        NodeBuilder<Type> getChild(final char c) {
+            NodeBuilder<Type> child = children.get(c);
+            if (child == null) {
+                child = new NodeBuilder<Type>();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        Node<Type> build() {
+            final char[] keys = new char[children.size()];
+            @SuppressWarnings("unchecked")
+            final Node<Type>[] nodes = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, NodeBuilder<Type>> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                nodes[i] = entry.getValue().build();
+                i++;
+            }
+            final List<Type> list = holders.isEmpty()
+                    ? Collections.<Type> emptyList()
+                    : Collections.unmodifiableList(new ArrayList<Type>(holders));
+            return new Node<Type>(keys, nodes, list);
         }
     }
 }
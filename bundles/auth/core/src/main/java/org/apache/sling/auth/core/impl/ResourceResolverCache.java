@@ -0,0 +1,498 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>ResourceResolverCache</code> keeps the resource resolvers of
+ * authenticated requests after the requests have completed and hands them to
+ * later requests presenting the same credentials, which saves the login to
+ * the repository.
+ * <p>
+ * Resource resolvers are cached by a SHA-256 fingerprint of the
+ * authentication info. Only authentication info consisting of strings,
+ * character arrays, numbers, booleans and plain credentials objects is
+ * fingerprinted. A credentials object, like the form credentials put into
+ * the authentication info by the form authentication handler when it uses
+ * JAAS, is fingerprinted by its class name and the values of its public
+ * getters, provided these are all strings, character arrays, numbers or
+ * booleans. Authentication info containing other objects, like JCR
+ * sessions or credentials carrying arbitrary attributes, or a password
+ * change is never cached.
+ * <p>
+ * To prevent state from leaking between requests:
+ * <ul>
+ * <li>A cached resource resolver is used by one request at a time, which gets
+ * a {@link CachedResourceResolver} failing any use after it has been closed.</li>
+ * <li>When returned, pending changes are reverted and the resource resolver is
+ * refreshed. It is discarded if it is not live anymore or if reverting or
+ * refreshing fails.</li>
+ * <li>Resource resolvers are logged out after the configured time to live,
+ * which bounds the time a change of the access rights of a user is not
+ * picked up by the cache.</li>
+ * <li>All resource resolvers of a user are discarded when the user logs
+ * out, all resource resolvers are discarded by {@link #invalidate()}, for
+ * example when users or groups are modified.</li>
+ * </ul>
+ * Session state which cannot be reset through the resource resolver API,
+ * like namespace remappings or lock tokens added to a JCR session acquired by
+ * adapting the resource resolver, is not reset. This is why the cache must be
+ * explicitly enabled.
+ */
+class ResourceResolverCache {
+
+    /** The authentication info property of a password change, never cached */
+    private static final String AUTH_INFO_NEW_PASSWORD = "user.newpassword";
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(ResourceResolverCache.class);
+
+    private final int maxSize;
+
+    private final long timeToLive;
+
+    /** The idle resource resolvers by fingerprint in least recently used order */
+    private final LinkedHashMap<String, LinkedList<Idle>> idleResolvers = new LinkedHashMap<String, LinkedList<Idle>>(16, 0.75f, true);
+
+    /** The time of the last invalidation by user */
+    private final Map<String, Long> userInvalidations = new HashMap<String, Long>();
+
+    /** The number of idle resource resolvers */
+    private int size;
+
+    /** Incremented on each invalidation of all resource resolvers */
+    private long generation;
+
+    private boolean closed;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong bypassed = new AtomicLong();
+
+    private final AtomicLong evicted = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxSize The maximum number of idle resource resolvers kept
+     * @param timeToLive The time in milliseconds after which a resource
+     *            resolver is not used any more
+     */
+    ResourceResolverCache(final int maxSize, final long timeToLive) {
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns a resource resolver for the authentication info, either a cached
+     * one or a new one from the factory.
+     *
+     * @throws LoginException If a new resource resolver cannot be created
+     */
+    ResourceResolver getResourceResolver(final ResourceResolverFactory factory,
+            final Map<String, Object> authenticationInfo) throws LoginException {
+        final String key = getFingerprint(authenticationInfo);
+        if (key == null) {
+            this.bypassed.incrementAndGet();
+            return factory.getResourceResolver(authenticationInfo);
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<ResourceResolver> stale = new ArrayList<ResourceResolver>();
+        final long currentGeneration;
+        Idle cached = null;
+        synchronized (this) {
+            if (this.closed) {
+                currentGeneration = -1;
+            } else {
+                currentGeneration = this.generation;
+                final LinkedList<Idle> idle = this.idleResolvers.get(key);
+                if (idle != null) {
+                    while (cached == null && !idle.isEmpty()) {
+                        final Idle candidate = idle.removeFirst();
+                        this.size--;
+                        if (now - candidate.created < this.timeToLive) {
+                            cached = candidate;
+                        } else {
+                            this.expired.incrementAndGet();
+                            stale.add(candidate.resolver);
+                        }
+                    }
+                    if (idle.isEmpty()) {
+                        this.idleResolvers.remove(key);
+                    }
+                }
+            }
+        }
+        close(stale);
+
+        if (currentGeneration < 0) {
+            this.bypassed.incrementAndGet();
+            return factory.getResourceResolver(authenticationInfo);
+        }
+
+        if (cached != null) {
+            this.hits.incrementAndGet();
+            return new CachedResourceResolver(this, key, cached.resolver, cached.created, currentGeneration);
+        }
+
+        this.misses.incrementAndGet();
+        final ResourceResolver resolver = factory.getResourceResolver(authenticationInfo);
+        return new CachedResourceResolver(this, key, resolver, now, currentGeneration);
+    }
+
+    /**
+     * Called when a request closes its resource resolver: resets the resource
+     * resolver and keeps it for the next request unless it cannot be used
+     * any more.
+     */
+    void release(final CachedResourceResolver cached) {
+        final ResourceResolver resolver = cached.getDelegatee();
+
+        String userId = null;
+        boolean keep = resolver.isLive()
+            && System.currentTimeMillis() - cached.getCreated() < this.timeToLive;
+        if (keep) {
+            try {
+                userId = resolver.getUserID();
+                if (resolver.hasChanges()) {
+                    log.debug("release: Reverting pending changes of {}", userId);
+                    resolver.revert();
+                }
+                resolver.refresh();
+            } catch (final RuntimeException re) {
+                log.debug("release: Cannot reset resource resolver, discarding", re);
+                keep = false;
+            }
+        }
+
+        final List<ResourceResolver> toClose = new ArrayList<ResourceResolver>();
+        if (keep) {
+            synchronized (this) {
+                final Long invalidated = (userId == null) ? null : this.userInvalidations.get(userId);
+                if (this.closed || cached.getGeneration() != this.generation
+                    || (invalidated != null && invalidated.longValue() >= cached.getCreated())) {
+                    keep = false;
+                } else {
+                    LinkedList<Idle> idle = this.idleResolvers.get(cached.getKey());
+                    if (idle == null) {
+                        idle = new LinkedList<Idle>();
+                        this.idleResolvers.put(cached.getKey(), idle);
+                    }
+                    idle.addFirst(new Idle(resolver, userId, cached.getCreated()));
+                    this.size++;
+                    evict(toClose);
+                }
+            }
+        }
+        if (!keep) {
+            this.discarded.incrementAndGet();
+            toClose.add(resolver);
+        }
+        close(toClose);
+    }
+
+    /**
+     * Discards all cached resource resolvers. Resource resolvers in use are
+     * closed when returned.
+     */
+    void invalidate() {
+        final List<ResourceResolver> toClose = new ArrayList<ResourceResolver>();
+        synchronized (this) {
+            this.generation++;
+            for (final LinkedList<Idle> idle : this.idleResolvers.values()) {
+                for (final Idle entry : idle) {
+                    toClose.add(entry.resolver);
+                }
+            }
+            this.idleResolvers.clear();
+            this.userInvalidations.clear();
+            this.size = 0;
+        }
+        this.invalidations.incrementAndGet();
+        close(toClose);
+    }
+
+    /**
+     * Discards all cached resource resolvers of the user. Resource resolvers
+     * of the user in use are closed when returned.
+     */
+    void invalidate(final String userId) {
+        if (userId == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final List<ResourceResolver> toClose = new ArrayList<ResourceResolver>();
+        synchronized (this) {
+            // resource resolvers expire anyway after the time to live
+            for (final Iterator<Long> ti = this.userInvalidations.values().iterator(); ti.hasNext();) {
+                if (now - ti.next().longValue() >= this.timeToLive) {
+                    ti.remove();
+                }
+            }
+            this.userInvalidations.put(userId, now);
+
+            for (final Iterator<LinkedList<Idle>> ii = this.idleResolvers.values().iterator(); ii.hasNext();) {
+                final LinkedList<Idle> idle = ii.next();
+                for (final Iterator<Idle> ei = idle.iterator(); ei.hasNext();) {
+                    final Idle entry = ei.next();
+                    if (userId.equals(entry.userId)) {
+                        toClose.add(entry.resolver);
+                        ei.remove();
+                        this.size--;
+                    }
+                }
+                if (idle.isEmpty()) {
+                    ii.remove();
+                }
+            }
+        }
+        this.invalidations.incrementAndGet();
+        close(toClose);
+    }
+
+    /**
+     * Discards all cached resource resolvers and stops caching.
+     */
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        invalidate();
+    }
+
+    // ---------- statistics
+
+    synchronized int getSize() {
+        return this.size;
+    }
+
+    int getMaxSize() {
+        return this.maxSize;
+    }
+
+    long getTimeToLive() {
+        return this.timeToLive;
+    }
+
+    long getHits() {
+        return this.hits.get();
+    }
+
+    long getMisses() {
+        return this.misses.get();
+    }
+
+    long getBypassed() {
+        return this.bypassed.get();
+    }
+
+    long getEvicted() {
+        return this.evicted.get();
+    }
+
+    long getExpired() {
+        return this.expired.get();
+    }
+
+    long getDiscarded() {
+        return this.discarded.get();
+    }
+
+    long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    // ---------- internal
+
+    // must be called while synchronized on this
+    private void evict(final List<ResourceResolver> toClose) {
+        final Iterator<LinkedList<Idle>> ii = this.idleResolvers.values().iterator();
+        while (this.size > this.maxSize && ii.hasNext()) {
+            final LinkedList<Idle> idle = ii.next();
+            while (this.size > this.maxSize && !idle.isEmpty()) {
+                toClose.add(idle.removeLast().resolver);
+                this.size--;
+                this.evicted.incrementAndGet();
+            }
+            if (idle.isEmpty()) {
+                ii.remove();
+            }
+        }
+    }
+
+    private void close(final List<ResourceResolver> resolvers) {
+        for (final ResourceResolver resolver : resolvers) {
+            try {
+                resolver.close();
+            } catch (final RuntimeException re) {
+                log.debug("close: Problem closing resource resolver", re);
+            }
+        }
+    }
+
+    /**
+     * Returns the SHA-256 fingerprint of the authentication info or
+     * <code>null</code> if the authentication info must not be cached.
+     */
+    static String getFingerprint(final Map<String, Object> authenticationInfo) {
+        if (authenticationInfo == null || authenticationInfo.containsKey(AUTH_INFO_NEW_PASSWORD)) {
+            return null;
+        }
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final String[] keys = authenticationInfo.keySet().toArray(new String[authenticationInfo.size()]);
+            Arrays.sort(keys);
+            for (final String key : keys) {
+                final Object value = authenticationInfo.get(key);
+                if (value == null) {
+                    continue;
+                }
+                String string = toFingerprintString(value);
+                if (string == null) {
+                    string = toCredentialsFingerprintString(value);
+                    if (string == null) {
+                        return null;
+                    }
+                }
+                digest.update(key.getBytes("UTF-8"));
+                digest.update((byte) 0);
+                digest.update(string.getBytes("UTF-8"));
+                digest.update((byte) 0);
+            }
+
+            final byte[] hash = digest.digest();
+            final StringBuilder buf = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+                buf.append(Character.forDigit(b & 0xf, 16));
+            }
+            return buf.toString();
+        } catch (final NoSuchAlgorithmException nsae) {
+            return null;
+        } catch (final UnsupportedEncodingException uee) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the string representation of a simple authentication info
+     * value or <code>null</code> if the value is not a string, character
+     * array, number or boolean.
+     */
+    private static String toFingerprintString(final Object value) {
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        } else if (value instanceof char[]) {
+            return new String((char[]) value);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the string representation of a credentials object built from
+     * its class name and the values of its public getters or
+     * <code>null</code> if the object is not a plain credentials object,
+     * that is if it is a JDK object or any getter returns anything but a
+     * simple value.
+     */
+    private static String toCredentialsFingerprintString(final Object value) {
+        final Class<?> type = value.getClass();
+        if (type.isArray() || type.getName().startsWith("java.") || type.getName().startsWith("javax.")
+            || !Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+
+        final SortedMap<String, String> properties = new TreeMap<String, String>();
+        for (final Method method : type.getMethods()) {
+            if (method.getDeclaringClass() == Object.class || method.getParameterTypes().length != 0
+                || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (!method.getName().startsWith("get") && !method.getName().startsWith("is")) {
+                return null;
+            }
+            try {
+                final Object property = method.invoke(value);
+                if (property != null) {
+                    final String string = toFingerprintString(property);
+                    if (string == null) {
+                        return null;
+                    }
+                    properties.put(method.getName(), string);
+                }
+            } catch (final Exception e) {
+                return null;
+            }
+        }
+        if (properties.isEmpty()) {
+            return null;
+        }
+
+        final StringBuilder buf = new StringBuilder(type.getName());
+        for (final Map.Entry<String, String> property : properties.entrySet()) {
+            buf.append('\0').append(property.getKey()).append('=').append(property.getValue());
+        }
+        return buf.toString();
+    }
+
+    private static final class Idle {
+
+        final ResourceResolver resolver;
+
+        final String userId;
+
+        final long created;
+
+        Idle(final ResourceResolver resolver, final String userId, final long created) {
+            this.resolver = resolver;
+            this.userId = userId;
+            this.created = created;
+        }
+    }
+}
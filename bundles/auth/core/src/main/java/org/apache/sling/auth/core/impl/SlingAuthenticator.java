@@ -72,6 +72,8 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.http.HttpContext;
 import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
@@ -196,9 +198,58 @@ public class SlingAuthenticator implements Authenticator,
      */
     private static final String AUTH_INFO_PROP_FEEDBACK_HANDLER = "$$sling.auth.AuthenticationFeedbackHandler$$";
 
+    private static final boolean DEFAULT_RESOLVER_CACHE = false;
+
+    /**
+     * The name of the configuration property enabling the cache of the
+     * resource resolvers of authenticated requests.
+     */
+    @Property(boolValue = DEFAULT_RESOLVER_CACHE)
+    private static final String PAR_RESOLVER_CACHE = "auth.resolver.cache";
+
+    private static final int DEFAULT_RESOLVER_CACHE_SIZE = 100;
+
+    @Property(intValue = DEFAULT_RESOLVER_CACHE_SIZE)
+    private static final String PAR_RESOLVER_CACHE_SIZE = "auth.resolver.cache.size";
+
+    private static final int DEFAULT_RESOLVER_CACHE_TTL = 300;
+
+    /** The time to live of cached resource resolvers in seconds */
+    @Property(intValue = DEFAULT_RESOLVER_CACHE_TTL)
+    private static final String PAR_RESOLVER_CACHE_TTL = "auth.resolver.cache.ttl";
+
+    private static final String DEFAULT_RESOLVER_CACHE_INVALIDATION_PATH = "/home";
+
+    /**
+     * The paths below which changes to users and groups invalidate the
+     * resource resolver cache.
+     */
+    @Property(value = DEFAULT_RESOLVER_CACHE_INVALIDATION_PATH, unbounded = PropertyUnbounded.ARRAY)
+    private static final String PAR_RESOLVER_CACHE_INVALIDATION_PATHS = "auth.resolver.cache.invalidation.paths";
+
+    /**
+     * The resource types of resource events which invalidate the resource
+     * resolver cache: the node types of users, groups and the overflow
+     * nodes of group members. Removals, like those of login tokens, do not
+     * carry a resource type and always invalidate the cache.
+     */
+    private static final String[] RESOLVER_CACHE_INVALIDATION_TYPES = {
+        "rep:User", "rep:SystemUser", "rep:Group", "rep:Members" };
+
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    /**
+     * The cache of resource resolvers of authenticated requests or
+     * <code>null</code> if not enabled.
+     */
+    private volatile ResourceResolverCache resolverCache;
+
+    /**
+     * The event handler invalidating the resource resolver cache.
+     */
+    private ServiceRegistration resolverCacheInvalidator;
+
     private PathBasedHolderCache<AbstractAuthenticationHandlerHolder> authHandlerCache = new PathBasedHolderCache<AbstractAuthenticationHandlerHolder>();
 
     // package protected for access in inner class ...
@@ -302,6 +353,18 @@ public class SlingAuthenticator implements Authenticator,
             bundleContext, authHandlerCache);
         authInfoPostProcessorTracker = new ServiceTracker(bundleContext, AuthenticationInfoPostProcessor.SERVICE_NAME, null);
         authInfoPostProcessorTracker.open();
+
+        resolverCacheInvalidator = bundleContext.registerService(
+            EventHandler.class.getName(), new EventHandler() {
+                public void handleEvent(final Event event) {
+                    final ResourceResolverCache cache = resolverCache;
+                    if (cache != null) {
+                        log.debug("handleEvent: Invalidating resource resolver cache on change of {}",
+                            event.getProperty(SlingConstants.PROPERTY_PATH));
+                        cache.invalidate();
+                    }
+                }
+            }, getResolverCacheInvalidatorProperties(properties));
     }
 
     @Modified
@@ -384,6 +447,79 @@ public class SlingAuthenticator implements Authenticator,
             final String realm = OsgiUtil.toString(properties.get(PAR_REALM_NAME), DEFAULT_REALM);
             httpBasicHandler = new HttpBasicAuthenticationHandler(realm, HTTP_AUTH_ENABLED.equals(http));
         }
+
+        // replace the resource resolver cache, dropping all cached resolvers
+        final ResourceResolverCache oldCache = this.resolverCache;
+        if (OsgiUtil.toBoolean(properties.get(PAR_RESOLVER_CACHE), DEFAULT_RESOLVER_CACHE)) {
+            final int size = OsgiUtil.toInteger(properties.get(PAR_RESOLVER_CACHE_SIZE), DEFAULT_RESOLVER_CACHE_SIZE);
+            final int ttl = OsgiUtil.toInteger(properties.get(PAR_RESOLVER_CACHE_TTL), DEFAULT_RESOLVER_CACHE_TTL);
+            this.resolverCache = new ResourceResolverCache(size, ttl * 1000L);
+            log.info("modified: Caching up to {} resource resolvers for {} seconds", size, ttl);
+        } else {
+            this.resolverCache = null;
+        }
+        if (oldCache != null) {
+            oldCache.close();
+        }
+        if (resolverCacheInvalidator != null) {
+            resolverCacheInvalidator.setProperties(getResolverCacheInvalidatorProperties(properties));
+        }
+    }
+
+    /**
+     * Returns the service properties of the event handler invalidating the
+     * resource resolver cache on changes of users and groups below the
+     * configured paths.
+     */
+    private Dictionary<String, Object> getResolverCacheInvalidatorProperties(final Map<String, Object> properties) {
+        final String[] paths = OsgiUtil.toStringArray(properties.get(PAR_RESOLVER_CACHE_INVALIDATION_PATHS),
+            new String[] { DEFAULT_RESOLVER_CACHE_INVALIDATION_PATH });
+        final String filter = getResolverCacheInvalidationFilter(paths);
+
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(EventConstants.EVENT_TOPIC, new String[] {
+            SlingConstants.TOPIC_RESOURCE_ADDED,
+            SlingConstants.TOPIC_RESOURCE_CHANGED,
+            SlingConstants.TOPIC_RESOURCE_REMOVED });
+        props.put(EventConstants.EVENT_FILTER, filter);
+        props.put(Constants.SERVICE_DESCRIPTION, "Sling Authenticator Resource Resolver Cache Invalidator");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        return props;
+    }
+
+    /**
+     * Returns the event filter of the event handler invalidating the resource
+     * resolver cache: resource events below the paths either of the
+     * {@link #RESOLVER_CACHE_INVALIDATION_TYPES} or without resource type,
+     * which are the removal events.
+     * <p>
+     * Revoking a login token removes its <code>rep:Token</code> node below
+     * the <code>.tokens</code> node of the user and thus invalidates the
+     * cache. Adding and refreshing tokens does not, since this happens on
+     * every login. The filter does not restrict the
+     * <code>event.application</code> property, so the events of changes
+     * done on other cluster instances invalidate the cache, too.
+     */
+    static String getResolverCacheInvalidationFilter(final String[] paths) {
+        final StringBuilder filter = new StringBuilder("(&(|");
+        for (String path : paths) {
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            filter.append('(').append(SlingConstants.PROPERTY_PATH).append('=').append(path).append(')');
+            filter.append('(').append(SlingConstants.PROPERTY_PATH).append('=').append(path);
+            if (!path.endsWith("/")) {
+                filter.append('/');
+            }
+            filter.append("*)");
+        }
+        // removed resources have no resource type
+        filter.append(")(|(!(").append(SlingConstants.PROPERTY_RESOURCE_TYPE).append("=*))");
+        for (final String type : RESOLVER_CACHE_INVALIDATION_TYPES) {
+            filter.append('(').append(SlingConstants.PROPERTY_RESOURCE_TYPE).append('=').append(type).append(')');
+        }
+        filter.append("))");
+        return filter.toString();
     }
 
     @SuppressWarnings("unused")
@@ -408,6 +544,17 @@ public class SlingAuthenticator implements Authenticator,
             webConsolePlugin.unregister();
             webConsolePlugin = null;
         }
+
+        if (resolverCacheInvalidator != null) {
+            resolverCacheInvalidator.unregister();
+            resolverCacheInvalidator = null;
+        }
+
+        final ResourceResolverCache cache = this.resolverCache;
+        if (cache != null) {
+            this.resolverCache = null;
+            cache.close();
+        }
     }
 
     // --------- AuthenticationSupport interface
@@ -520,31 +667,23 @@ public class SlingAuthenticator implements Authenticator,
         }
 
         // select path used for authentication handler selection
-        final Collection<AbstractAuthenticationHandlerHolder>[] holdersArray = this.authHandlerCache
-                .findApplicableHolder(request);
         final String path = getHandlerSelectionPath(request);
         boolean done = false;
-        for (int m = 0; !done && m < holdersArray.length; m++) {
-            final Collection<AbstractAuthenticationHandlerHolder> holderList = holdersArray[m];
-            if ( holderList != null ) {
-                for (AbstractAuthenticationHandlerHolder holder : holderList) {
-                    if (path.startsWith(holder.path)) {
-                        log.debug("login: requesting authentication using handler: {}",
-                            holder);
-
-                        try {
-                            done = holder.requestCredentials(request, response);
-                        } catch (IOException ioe) {
-                            log.error(
-                                "login: Failed sending authentication request through handler "
-                                    + holder + ", access forbidden", ioe);
-                            done = true;
-                        }
-                        if (done) {
-                            break;
-                        }
-                    }
-                }
+        for (AbstractAuthenticationHandlerHolder holder : this.authHandlerCache.findApplicableHolders(
+            request, path)) {
+            log.debug("login: requesting authentication using handler: {}",
+                holder);
+
+            try {
+                done = holder.requestCredentials(request, response);
+            } catch (IOException ioe) {
+                log.error(
+                    "login: Failed sending authentication request through handler "
+                        + holder + ", access forbidden", ioe);
+                done = true;
+            }
+            if (done) {
+                break;
             }
         }
 
@@ -555,6 +694,8 @@ public class SlingAuthenticator implements Authenticator,
 
         // no handler could send an authentication request, throw
         if (!done) {
+            final Collection<AbstractAuthenticationHandlerHolder>[] holdersArray = this.authHandlerCache
+                    .findApplicableHolder(request);
             int size = 0;
             for (int m = 0; m < holdersArray.length; m++) {
                 if (holdersArray[m] != null) {
@@ -581,26 +722,28 @@ public class SlingAuthenticator implements Authenticator,
         // make sure impersonation is dropped
         setSudoCookie(request, response, new AuthenticationInfo("dummy", request.getRemoteUser()));
 
+        // make sure cached resource resolvers of the user are not used again
+        // on this instance; other cluster instances key their cached
+        // resource resolvers by the credentials which stay usable there until
+        // revoked, and revoking them invalidates all caches through the
+        // resource events
+        final ResourceResolverCache cache = this.resolverCache;
+        if (cache != null) {
+            cache.invalidate(request.getRemoteUser());
+        }
+
         final String path = getHandlerSelectionPath(request);
-        final Collection<AbstractAuthenticationHandlerHolder>[] holdersArray = this.authHandlerCache
-                .findApplicableHolder(request);
-        for (int m = 0; m < holdersArray.length; m++) {
-            final Collection<AbstractAuthenticationHandlerHolder> holderSet = holdersArray[m];
-            if (holderSet != null) {
-                for (AbstractAuthenticationHandlerHolder holder : holderSet) {
-                    if (path.startsWith(holder.path)) {
-                        log.debug("logout: dropping authentication using handler: {}",
-                            holder);
-
-                        try {
-                            holder.dropCredentials(request, response);
-                        } catch (IOException ioe) {
-                            log.error(
-                                "logout: Failed dropping authentication through handler "
-                                    + holder, ioe);
-                        }
-                    }
-                }
+        for (AbstractAuthenticationHandlerHolder holder : this.authHandlerCache.findApplicableHolders(
+            request, path)) {
+            log.debug("logout: dropping authentication using handler: {}",
+                holder);
+
+            try {
+                holder.dropCredentials(request, response);
+            } catch (IOException ioe) {
+                log.error(
+                    "logout: Failed dropping authentication through handler "
+                        + holder, ioe);
             }
         }
 
@@ -676,6 +819,14 @@ public class SlingAuthenticator implements Authenticator,
         return sudoParameterName;
     }
 
+    /**
+     * Returns the resource resolver cache or <code>null</code> if not
+     * enabled.
+     */
+    ResourceResolverCache getResolverCache() {
+        return resolverCache;
+    }
+
     // ---------- internal
 
     private String getPath(HttpServletRequest request) {
@@ -699,25 +850,17 @@ public class SlingAuthenticator implements Authenticator,
             path = "/";
         }
 
-        final Collection<AbstractAuthenticationHandlerHolder>[] localArray = this.authHandlerCache
-                .findApplicableHolder(request);
-        for (int m = 0; m < localArray.length; m++) {
-            final Collection<AbstractAuthenticationHandlerHolder> local = localArray[m];
-            if (local != null) {
-                for (AbstractAuthenticationHandlerHolder holder : local) {
-                    if (path.startsWith(holder.path)) {
-                        final AuthenticationInfo authInfo = holder.extractCredentials(
-                            request, response);
+        for (AbstractAuthenticationHandlerHolder holder : this.authHandlerCache.findApplicableHolders(
+            request, path)) {
+            final AuthenticationInfo authInfo = holder.extractCredentials(
+                request, response);
 
-                        if (authInfo != null) {
-                            // add the feedback handler to the info (may be null)
-                            authInfo.put(AUTH_INFO_PROP_FEEDBACK_HANDLER,
-                                holder.getFeedbackHandler());
+            if (authInfo != null) {
+                // add the feedback handler to the info (may be null)
+                authInfo.put(AUTH_INFO_PROP_FEEDBACK_HANDLER,
+                    holder.getFeedbackHandler());
 
-                            return authInfo;
-                        }
-                    }
-                }
+                return authInfo;
             }
         }
 
@@ -770,7 +913,7 @@ public class SlingAuthenticator implements Authenticator,
         try {
             handleImpersonation(request, authInfo);
             handlePasswordChange(request, authInfo);
-            ResourceResolver resolver = resourceResolverFactory.getResourceResolver(authInfo);
+            ResourceResolver resolver = getResourceResolver(authInfo);
             final boolean impersChanged = setSudoCookie(request, response, authInfo);
 
             if (sendLoginEvent != null) {
@@ -828,6 +971,18 @@ public class SlingAuthenticator implements Authenticator,
 
     }
 
+    /**
+     * Returns a resource resolver for the authentication info from the
+     * resource resolver cache, if enabled, or else from the factory.
+     */
+    private ResourceResolver getResourceResolver(final AuthenticationInfo authInfo) throws LoginException {
+        final ResourceResolverCache cache = this.resolverCache;
+        if (cache != null) {
+            return cache.getResourceResolver(resourceResolverFactory, authInfo);
+        }
+        return resourceResolverFactory.getResourceResolver(authInfo);
+    }
+
     private boolean expectAuthenticationHandler(final HttpServletRequest request) {
         if (this.authUriSuffices != null) {
             final String requestUri = request.getRequestURI();
@@ -849,7 +1004,7 @@ public class SlingAuthenticator implements Authenticator,
         if (isAnonAllowed(request)) {
 
             try {
-                ResourceResolver resolver = resourceResolverFactory.getResourceResolver(authInfo);
+                ResourceResolver resolver = getResourceResolver(authInfo);
 
                 // check whether the client asked for redirect after
                 // authentication and/or impersonation
@@ -893,17 +1048,10 @@ public class SlingAuthenticator implements Authenticator,
             return false;
         }
 
-        final Collection<AuthenticationRequirementHolder>[] holderSetArray = authRequiredCache
-                .findApplicableHolder(request);
-        for (int m = 0; m < holderSetArray.length; m++) {
-            final Collection<AuthenticationRequirementHolder> holders = holderSetArray[m];
-            if (holders != null) {
-                for (AuthenticationRequirementHolder holder : holders) {
-                    if (path.startsWith(holder.path)) {
-                        return !holder.requiresAuthentication();
-                    }
-                }
-            }
+        final AuthenticationRequirementHolder holder = authRequiredCache.findFirstApplicableHolder(
+            request, path);
+        if (holder != null) {
+            return !holder.requiresAuthentication();
         }
 
         // fallback to anonymous not allowed (aka authentication required)
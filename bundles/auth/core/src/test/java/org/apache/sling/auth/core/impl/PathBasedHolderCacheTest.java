@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.ServiceReference;
+
+public class PathBasedHolderCacheTest extends TestCase {
+
+    private static final String[] CONFIG = { "/", "-/content", "/content/secure", "+/content/secure/public",
+        "-/libs", "http://localhost/content", "-//localhost/content/site", "//localhost:8080/apps",
+        "-https://example.com/", "/content/securex", "/system/sling/login" };
+
+    private static final String[] PATHS = { "/", "", "/content", "/content/", "/content/secure",
+        "/content/securex/page", "/content/secure/public/page.html", "/con", "/libs/foo", "/apps/x",
+        "/system/sling/login.html", "/other" };
+
+    private PathBasedHolderCache<AuthenticationRequirementHolder> cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new PathBasedHolderCache<AuthenticationRequirementHolder>();
+        for (String config : CONFIG) {
+            cache.addHolder(AuthenticationRequirementHolder.fromConfig(config, null));
+        }
+    }
+
+    public void test_longest_prefix_first() {
+        final List<AuthenticationRequirementHolder> holders = cache.findApplicableHolders(
+            request("http", "other", 80), "/content/secure/public/page.html");
+        assertEquals(4, holders.size());
+        assertEquals("/content/secure/public", holders.get(0).path);
+        assertEquals("/content/secure", holders.get(1).path);
+        assertEquals("/content", holders.get(2).path);
+        assertEquals("/", holders.get(3).path);
+        assertEquals("/content/securex",
+            cache.findFirstApplicableHolder(request("http", "other", 80), "/content/securex/page").path);
+        assertEquals("/content/secure",
+            cache.findFirstApplicableHolder(request("http", "other", 80), "/content/secure/page").path);
+    }
+
+    public void test_matches_legacy_lookup() {
+        final String[] schemes = { "http", "https" };
+        final String[] hosts = { "localhost", "example.com", "other" };
+        final int[] ports = { 80, 443, 8080 };
+        for (String scheme : schemes) {
+            for (String host : hosts) {
+                for (int port : ports) {
+                    final HttpServletRequest request = request(scheme, host, port);
+                    for (String path : PATHS) {
+                        final List<AuthenticationRequirementHolder> expected = legacyLookup(request, path);
+                        assertEquals(scheme + "://" + host + ":" + port + path, expected,
+                            cache.findApplicableHolders(request, path));
+                        assertSame(expected.isEmpty() ? null : expected.get(0),
+                            cache.findFirstApplicableHolder(request, path));
+                    }
+                }
+            }
+        }
+    }
+
+    public void test_memoized_lookup_updated() {
+        final HttpServletRequest request = request("http", "other", 80);
+        assertFalse(cache.findFirstApplicableHolder(request, "/libs/foo").requiresAuthentication());
+
+        final AuthenticationRequirementHolder holder = AuthenticationRequirementHolder.fromConfig("+/libs/foo",
+            serviceReference());
+        cache.addHolder(holder);
+        assertSame(holder, cache.findFirstApplicableHolder(request, "/libs/foo"));
+
+        cache.removeHolder(holder);
+        assertFalse(cache.findFirstApplicableHolder(request, "/libs/foo").requiresAuthentication());
+
+        cache.clear();
+        assertNull(cache.findFirstApplicableHolder(request, "/libs/foo"));
+        assertTrue(cache.findApplicableHolders(request, "/libs/foo").isEmpty());
+        assertTrue(cache.getHolders().isEmpty());
+    }
+
+    public void test_memoized_lookups_are_least_recently_used() {
+        cache.findFirstApplicableHolder("http", "other", "/hot");
+        for (int i = 0; i < 2 * PathBasedHolderCache.MAX_MEMOIZED_PATHS; i++) {
+            cache.findFirstApplicableHolder("http", "other", "/cold/" + i);
+            // the frequently used path stays memoized
+            cache.findFirstApplicableHolder("http", "other", "/hot");
+        }
+        assertTrue(cache.isMemoized("http", "other", "/hot"));
+        assertTrue(cache.isMemoized("http", "other", "/cold/" + (2 * PathBasedHolderCache.MAX_MEMOIZED_PATHS - 1)));
+        assertFalse(cache.isMemoized("http", "other", "/cold/0"));
+    }
+
+    public void test_get_holders() {
+        assertEquals(CONFIG.length, cache.getHolders().size());
+    }
+
+    /**
+     * The lookup as it has been done by the SlingAuthenticator before the
+     * path trie had been introduced.
+     */
+    private List<AuthenticationRequirementHolder> legacyLookup(final HttpServletRequest request, final String path) {
+        final List<AuthenticationRequirementHolder> result = new ArrayList<AuthenticationRequirementHolder>();
+        for (Collection<AuthenticationRequirementHolder> holders : cache.findApplicableHolder(request)) {
+            if (holders != null) {
+                for (AuthenticationRequirementHolder holder : holders) {
+                    if (path.startsWith(holder.path)) {
+                        result.add(holder);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private ServiceReference serviceReference() {
+        return (ServiceReference) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { ServiceReference.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    final String name = method.getName();
+                    if ("compareTo".equals(name)) {
+                        return (args[0] == proxy) ? 0 : 1;
+                    } else if ("equals".equals(name)) {
+                        return args[0] == proxy;
+                    } else if ("hashCode".equals(name)) {
+                        return System.identityHashCode(proxy);
+                    } else if ("getProperty".equals(name)) {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+    }
+
+    private HttpServletRequest request(final String scheme, final String host, final int port) {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    final String name = method.getName();
+                    if ("getScheme".equals(name)) {
+                        return scheme;
+                    } else if ("getServerName".equals(name)) {
+                        return host;
+                    } else if ("getServerPort".equals(name)) {
+                        return port;
+                    }
+                    throw new UnsupportedOperationException(name);
+                }
+            });
+    }
+}
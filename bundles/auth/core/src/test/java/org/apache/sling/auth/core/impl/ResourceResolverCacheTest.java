@@ -0,0 +1,391 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.auth.core.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.auth.core.spi.AuthenticationInfo;
+
+public class ResourceResolverCacheTest extends TestCase {
+
+    private final List<ResolverState> created = new ArrayList<ResolverState>();
+
+    private ResourceResolverFactory factory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        factory = (ResourceResolverFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { ResourceResolverFactory.class }, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getResourceResolver".equals(method.getName())) {
+                        @SuppressWarnings("unchecked")
+                        final Map<String, Object> authInfo = (Map<String, Object>) args[0];
+                        final ResolverState state = new ResolverState((String) authInfo.get(ResourceResolverFactory.USER));
+                        created.add(state);
+                        return state.resolver;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    public void test_reuse() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        final ResourceResolver first = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        first.close();
+        final ResourceResolver second = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+
+        assertEquals(1, created.size());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(second.isLive());
+        assertFalse(first.isLive());
+        assertEquals(1, created.get(0).refreshed);
+
+        try {
+            first.getResource("/");
+            fail("Expected IllegalStateException using a closed resource resolver");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    public void test_returned_objects_are_bound_to_the_lease() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        final ResourceResolver lease = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        final Resource resource = lease.getResource("/content");
+        assertSame(lease, resource.getResourceResolver());
+        assertSame(lease, resource.getParent().getResourceResolver());
+
+        final Resource missing = lease.resolve("/missing");
+        assertTrue(missing instanceof NonExistingResource);
+        assertSame(lease, missing.getResourceResolver());
+        assertEquals("/missing", missing.getPath());
+
+        final Session session = lease.adaptTo(Session.class);
+        assertNotSame(created.get(0).session, session);
+        final Session same = session.getSelf();
+        assertNotSame(created.get(0).session, same);
+        assertSame(lease, session.getResolver());
+
+        lease.close();
+        try {
+            session.getSelf();
+            fail("Expected IllegalStateException using an adapter of a closed resource resolver");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            same.getSelf();
+            fail("Expected IllegalStateException using an object returned by an adapter");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            resource.getParent();
+            fail("Expected IllegalStateException using a resource of a closed resource resolver");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    public void test_credentials_mismatch() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        cache.getResourceResolver(factory, authInfo("alice", "secret")).close();
+        cache.getResourceResolver(factory, authInfo("alice", "wrong")).close();
+        cache.getResourceResolver(factory, authInfo("bob", "secret")).close();
+
+        assertEquals(3, created.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getSize());
+    }
+
+    public void test_concurrent_use() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        final ResourceResolver first = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        final ResourceResolver second = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        assertEquals(2, created.size());
+
+        first.close();
+        second.close();
+        assertEquals(2, cache.getSize());
+    }
+
+    public void test_revert_changes() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        final ResourceResolver first = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        created.get(0).changes = true;
+        first.close();
+
+        assertEquals(1, created.get(0).reverted);
+        assertFalse(created.get(0).changes);
+    }
+
+    public void test_discard_not_live() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        final ResourceResolver first = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        created.get(0).live = false;
+        first.close();
+
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getDiscarded());
+    }
+
+    public void test_not_cacheable() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        final AuthenticationInfo credentials = authInfo("alice", "secret");
+        credentials.put("user.jcr.credentials", new Object());
+        final ResourceResolver resolver = cache.getResourceResolver(factory, credentials);
+        assertSame(created.get(0).resolver, resolver);
+
+        final AuthenticationInfo passwordChange = authInfo("alice", "secret");
+        passwordChange.put("user.newpassword", "other");
+        cache.getResourceResolver(factory, passwordChange);
+
+        assertEquals(2, cache.getBypassed());
+    }
+
+    public void test_time_to_live() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 0);
+
+        cache.getResourceResolver(factory, authInfo("alice", "secret")).close();
+
+        assertEquals(0, cache.getSize());
+        assertTrue(created.get(0).closed);
+    }
+
+    public void test_evict() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(2, 60000);
+
+        cache.getResourceResolver(factory, authInfo("alice", "secret")).close();
+        cache.getResourceResolver(factory, authInfo("bob", "secret")).close();
+        cache.getResourceResolver(factory, authInfo("carol", "secret")).close();
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvicted());
+        assertTrue(created.get(0).closed);
+        assertFalse(created.get(1).closed);
+    }
+
+    public void test_invalidate() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        cache.getResourceResolver(factory, authInfo("alice", "secret")).close();
+        final ResourceResolver inUse = cache.getResourceResolver(factory, authInfo("bob", "secret"));
+
+        cache.invalidate();
+        assertEquals(0, cache.getSize());
+        assertTrue(created.get(0).closed);
+
+        // returned after invalidation
+        inUse.close();
+        assertEquals(0, cache.getSize());
+        assertTrue(created.get(1).closed);
+    }
+
+    public void test_invalidate_user() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        cache.getResourceResolver(factory, authInfo("alice", "secret")).close();
+        cache.getResourceResolver(factory, authInfo("bob", "secret")).close();
+        final ResourceResolver inUse = cache.getResourceResolver(factory, authInfo("alice", "secret"));
+        cache.getResourceResolver(factory, authInfo("alice", "secret")).close();
+
+        cache.invalidate("alice");
+        assertEquals(1, cache.getSize());
+
+        inUse.close();
+        assertEquals(1, cache.getSize());
+        assertFalse(created.get(1).closed);
+    }
+
+    public void test_fingerprint() {
+        assertEquals(ResourceResolverCache.getFingerprint(authInfo("alice", "secret")),
+            ResourceResolverCache.getFingerprint(authInfo("alice", "secret")));
+        assertFalse(ResourceResolverCache.getFingerprint(authInfo("alice", "secret")).equals(
+            ResourceResolverCache.getFingerprint(authInfo("alice", "secret2"))));
+        assertFalse(ResourceResolverCache.getFingerprint(authInfo("alice", "secret")).contains("secret"));
+        assertNull(ResourceResolverCache.getFingerprint(null));
+    }
+
+    public void test_form_credentials() throws Exception {
+        final ResourceResolverCache cache = new ResourceResolverCache(10, 60000);
+
+        cache.getResourceResolver(factory, formAuthInfo("alice", "cookie")).close();
+        final ResourceResolver resolver = cache.getResourceResolver(factory, formAuthInfo("alice", "cookie"));
+        assertSame(created.get(0).resolver, ((CachedResourceResolver) resolver).getDelegatee());
+        assertEquals(1, cache.getHits());
+
+        // another form login of the same user gets its own resource resolver
+        cache.getResourceResolver(factory, formAuthInfo("alice", "cookie2"));
+        assertEquals(2, created.size());
+        assertEquals(0, cache.getBypassed());
+
+        assertFalse(ResourceResolverCache.getFingerprint(formAuthInfo("alice", "cookie")).equals(
+            ResourceResolverCache.getFingerprint(formAuthInfo("alice", "cookie2"))));
+    }
+
+    public void test_credentials_with_attributes_not_cacheable() {
+        final AuthenticationInfo credentials = authInfo("alice", "secret");
+        credentials.put("user.jcr.credentials", new AttributeCredentials());
+        assertNull(ResourceResolverCache.getFingerprint(credentials));
+    }
+
+    private AuthenticationInfo formAuthInfo(final String user, final String authData) {
+        final AuthenticationInfo info = new AuthenticationInfo("FORM", user);
+        info.put("user.jcr.credentials", new FormCredentials(user, authData));
+        return info;
+    }
+
+    private AuthenticationInfo authInfo(final String user, final String password) {
+        return new AuthenticationInfo("test", user, password.toCharArray());
+    }
+
+    /** Like the credentials of the form authentication handler using JAAS */
+    public static class FormCredentials {
+
+        private final String userId;
+
+        private final String authData;
+
+        public FormCredentials(final String userId, final String authData) {
+            this.userId = userId;
+            this.authData = authData;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getAuthData() {
+            return authData;
+        }
+    }
+
+    /** Like JCR simple credentials, whose attributes cannot be fingerprinted */
+    public static class AttributeCredentials {
+
+        public String getUserID() {
+            return "alice";
+        }
+
+        public String[] getAttributeNames() {
+            return new String[] { "token" };
+        }
+    }
+
+    /** Stands for a JCR session handed out by adapting a resource resolver */
+    public interface Session {
+
+        Session getSelf();
+
+        ResourceResolver getResolver();
+    }
+
+    private static class ResolverState implements InvocationHandler {
+
+        final String userId;
+
+        final ResourceResolver resolver;
+
+        boolean live = true;
+
+        boolean closed;
+
+        boolean changes;
+
+        int reverted;
+
+        int refreshed;
+
+        final Session session = new Session() {
+
+            public Session getSelf() {
+                return this;
+            }
+
+            public ResourceResolver getResolver() {
+                return resolver;
+            }
+        };
+
+        ResolverState(final String userId) {
+            this.userId = userId;
+            this.resolver = (ResourceResolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ResourceResolver.class }, this);
+        }
+
+        private Resource resource(final String path) {
+            return new SyntheticResource(resolver, path, "test") {
+
+                @Override
+                public Resource getParent() {
+                    return resource("/");
+                }
+            };
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            final String name = method.getName();
+            if ("isLive".equals(name)) {
+                return live && !closed;
+            } else if ("close".equals(name)) {
+                closed = true;
+            } else if ("getUserID".equals(name)) {
+                return userId;
+            } else if ("hasChanges".equals(name)) {
+                return changes;
+            } else if ("revert".equals(name)) {
+                changes = false;
+                reverted++;
+            } else if ("refresh".equals(name)) {
+                refreshed++;
+            } else if ("getResource".equals(name)) {
+                return resource((String) args[0]);
+            } else if ("resolve".equals(name)) {
+                return new NonExistingResource(resolver, (String) args[0]);
+            } else if ("adaptTo".equals(name)) {
+                return args[0] == Session.class ? session : null;
+            } else {
+                throw new UnsupportedOperationException(name);
+            }
+            return null;
+        }
+    }
+}
@@ -18,7 +18,13 @@
  */
 package org.apache.sling.auth.core.impl;
 
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.sling.api.SlingConstants;
 import org.apache.sling.auth.core.impl.SlingAuthenticator;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
 
 import junit.framework.TestCase;
 
@@ -65,6 +71,40 @@ public class SlingAuthenticatorTest extends TestCase {
         checkUnQuote("\"string\ttab\"", "string\ttab");
     }
 
+    public void test_resolverCacheInvalidationFilter() throws Exception {
+        final Filter filter = FrameworkUtil.createFilter(
+            SlingAuthenticator.getResolverCacheInvalidationFilter(new String[] { "/home/" }));
+
+        // changes of users and group memberships
+        assertTrue(filter.match(event("/home/users/a/alice", "rep:User", null)));
+        assertTrue(filter.match(event("/home/groups/e/editors", "rep:Group", null)));
+        assertTrue(filter.match(event("/home/groups/e/editors/rep:members", "rep:Members", null)));
+
+        // revoking a login token, also on another cluster instance
+        assertTrue(filter.match(event("/home/users/a/alice/.tokens/2026-10-17T10.00.00.000+02.00", null, null)));
+        assertTrue(filter.match(event("/home/users/a/alice/.tokens/2026-10-17T10.00.00.000+02.00", null,
+            "other-instance")));
+        assertTrue(filter.match(event("/home/users/a/alice", "rep:User", "other-instance")));
+
+        // logins adding or refreshing tokens and unrelated changes
+        assertFalse(filter.match(event("/home/users/a/alice/.tokens/2026-10-17T10.00.00.000+02.00", "rep:Token",
+            null)));
+        assertFalse(filter.match(event("/home/users/a/alice/profile", "nt:unstructured", null)));
+        assertFalse(filter.match(event("/content/alice", null, null)));
+    }
+
+    private Dictionary<String, Object> event(final String path, final String resourceType, final String application) {
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(SlingConstants.PROPERTY_PATH, path);
+        if (resourceType != null) {
+            props.put(SlingConstants.PROPERTY_RESOURCE_TYPE, resourceType);
+        }
+        if (application != null) {
+            props.put("event.application", application);
+        }
+        return props;
+    }
+
     private void checkQuote(final String value, final String expected) {
         final String actual = SlingAuthenticator.quoteCookieValue(value);
         assertEquals(expected, actual);
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * The <code>SlingAsyncContext</code> wraps the {@code AsyncContext} of the
+ * container to run the tasks started with {@link #start(Runnable)} on the
+ * asynchronous request threads of Sling instead of a container thread.
+ */
+class SlingAsyncContext implements AsyncContext {
+
+    private final AsyncContext delegatee;
+
+    private final Executor executor;
+
+    SlingAsyncContext(final AsyncContext delegatee, final Executor executor) {
+        this.delegatee = delegatee;
+        this.executor = executor;
+    }
+
+    public void start(final Runnable run) {
+        if (this.executor == null) {
+            this.delegatee.start(run);
+        } else {
+            this.executor.execute(run);
+        }
+    }
+
+    public ServletRequest getRequest() {
+        return this.delegatee.getRequest();
+    }
+
+    public ServletResponse getResponse() {
+        return this.delegatee.getResponse();
+    }
+
+    public boolean hasOriginalRequestAndResponse() {
+        return this.delegatee.hasOriginalRequestAndResponse();
+    }
+
+    public void dispatch() {
+        this.delegatee.dispatch();
+    }
+
+    public void dispatch(final String path) {
+        this.delegatee.dispatch(path);
+    }
+
+    public void dispatch(final ServletContext context, final String path) {
+        this.delegatee.dispatch(context, path);
+    }
+
+    public void complete() {
+        this.delegatee.complete();
+    }
+
+    public void addListener(final AsyncListener listener) {
+        this.delegatee.addListener(listener);
+    }
+
+    public void addListener(final AsyncListener listener, final ServletRequest servletRequest,
+            final ServletResponse servletResponse) {
+        this.delegatee.addListener(listener, servletRequest, servletResponse);
+    }
+
+    public <T extends AsyncListener> T createListener(final Class<T> clazz) throws ServletException {
+        return this.delegatee.createListener(clazz);
+    }
+
+    public void setTimeout(final long timeout) {
+        this.delegatee.setTimeout(timeout);
+    }
+
+    public long getTimeout() {
+        return this.delegatee.getTimeout();
+    }
+
+    /**
+     * The <code>CompletionListener</code> runs the completion tasks of the
+     * request once asynchronous processing has completed.
+     */
+    static class CompletionListener implements AsyncListener {
+
+        private final RequestCompletion completion;
+
+        CompletionListener(final RequestCompletion completion) {
+            this.completion = completion;
+        }
+
+        public void onComplete(final AsyncEvent event) throws IOException {
+            this.completion.complete();
+        }
+
+        public void onTimeout(final AsyncEvent event) throws IOException {
+            // the container completes the request after the timeout
+        }
+
+        public void onError(final AsyncEvent event) throws IOException {
+            // the container completes the request after the error
+        }
+
+        public void onStartAsync(final AsyncEvent event) throws IOException {
+            // keep listening for the completion of the new cycle
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -19,6 +19,10 @@
 package org.apache.sling.engine.impl;
 
 import java.util.Collection;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.Part;
 
@@ -28,7 +32,11 @@ import org.apache.sling.engine.impl.request.RequestData;
  * The <code>SlingHttpServletRequestImpl3</code> extends the
  * {@link SlingHttpServletRequestImpl} class by support for new Servlet API 3
  * {@code HttpServletRequest} methods {@link #getPart(String)} and
- * {@link #getParts()}
+ * {@link #getParts()} and asynchronous request processing.
+ * <p>
+ * Asynchronous processing may only be started if it is enabled in the
+ * {@link SlingMainServlet}. The request scoped objects, like the resource
+ * resolver, stay valid until the {@code AsyncContext} completes.
  */
 public class SlingHttpServletRequestImpl3 extends SlingHttpServletRequestImpl {
 
@@ -45,4 +53,30 @@ public class SlingHttpServletRequestImpl3 extends SlingHttpServletRequestImpl {
         return (Collection<Part>) this.getParameterSupport().getParts();
     }
 
+    /**
+     * Starts asynchronous processing with this request and the Sling
+     * response of the request.
+     */
+    @Override
+    public AsyncContext startAsync() {
+        return startAsync(this, this.getRequestData().getSlingResponse());
+    }
+
+    @Override
+    public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+        final RequestCompletion completion = RequestCompletion.get(this);
+        if (completion == null) {
+            throw new IllegalStateException("Asynchronous request processing is not enabled");
+        }
+
+        final AsyncContext context = super.startAsync(servletRequest, servletResponse);
+        if (completion.setAsync()) {
+            context.addListener(new SlingAsyncContext.CompletionListener(completion));
+            if (completion.getTimeout() > 0) {
+                context.setTimeout(completion.getTimeout());
+            }
+        }
+        return new SlingAsyncContext(context, completion.getExecutor());
+    }
+
 }
@@ -253,4 +253,17 @@ public class EngineConstants {
      */
     @Deprecated
     public static final String FILTER_ORDER = "filter.order";
+
+    /**
+     * The name of the request attribute providing an
+     * <code>Iterator&lt;org.apache.sling.api.request.RequestParameter&gt;</code>
+     * over the parts of a multipart/form-data POST request processed in
+     * streaming mode (value is "request-parts-iterator"). The iterator starts
+     * with the first file part, any form fields preceding it are available as
+     * regular request parameters. The iterator reads from the request input
+     * stream and can only be used once.
+     *
+     * @since 2.3, Sling Engine 2.4.3
+     */
+    public static final String REQUEST_PARTS_ITERATOR = "request-parts-iterator";
 }
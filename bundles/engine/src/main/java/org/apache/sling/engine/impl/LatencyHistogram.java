@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>LatencyHistogram</code> counts values in log-linear buckets:
+ * each power of two is divided into 16 linear sub buckets, so the value
+ * reported for a percentile is at most 1/16th above the recorded value.
+ * Values are recorded without locking and histograms can be merged by
+ * adding their counts.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Values of 2^MAX_EXPONENT and above are counted in the last bucket. */
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Counts the value, negative values are counted as zero.
+     */
+    void record(final long value) {
+        this.counts.incrementAndGet(getBucket(value));
+    }
+
+    /**
+     * Returns a copy of the counts of the buckets.
+     */
+    long[] getCounts() {
+        final long[] result = new long[BUCKETS];
+        addTo(result);
+        return result;
+    }
+
+    /**
+     * Adds the counts of the buckets to the given counts, which is how
+     * histograms are merged.
+     */
+    void addTo(final long[] result) {
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] += this.counts.get(i);
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+    }
+
+    static int getBucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the highest value counted in the bucket.
+     */
+    static long getBucketValue(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        final long lowest = (long) (SUB_BUCKETS + (bucket % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the
+     * counted values are, or zero if no values are counted.
+     *
+     * @param counts The counts of the buckets as returned by {@link #getCounts()}
+     * @param percentile The percentile between 0 and 100
+     */
+    static long getValueAtPercentile(final long[] counts, final double percentile) {
+        long total = 0;
+        for (final long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getBucketValue(i);
+            }
+        }
+        return getBucketValue(counts.length - 1);
+    }
+}
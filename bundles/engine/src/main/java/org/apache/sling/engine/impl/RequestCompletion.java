@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.servlet.ServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>RequestCompletion</code> collects the tasks to run when the
+ * processing of a request has completed, like closing the resource resolver.
+ * <p>
+ * An instance is only provided as a request attribute if asynchronous
+ * request processing is enabled. If a servlet starts asynchronous processing,
+ * the tasks are run when the <code>AsyncContext</code> completes instead of
+ * when the container thread returns from the <code>SlingMainServlet</code>,
+ * so the request scoped objects stay valid until then.
+ * <p>
+ * This class does not depend on Servlet API 3; asynchronous processing is
+ * started by the <code>SlingHttpServletRequestImpl3</code>.
+ */
+final class RequestCompletion {
+
+    /** The name of the request attribute providing the instance */
+    static final String ATTR_NAME = RequestCompletion.class.getName();
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(RequestCompletion.class);
+
+    private final Executor executor;
+
+    private final long timeout;
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private boolean async;
+
+    private boolean completed;
+
+    /**
+     * @param executor The executor to run asynchronous tasks started through
+     *            the <code>AsyncContext</code> or <code>null</code> to use
+     *            the container threads.
+     * @param timeout The timeout of asynchronous processing in milliseconds,
+     *            zero or less to use the container default.
+     */
+    RequestCompletion(final Executor executor, final long timeout) {
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the instance for the request or <code>null</code> if
+     * asynchronous processing is not enabled.
+     */
+    static RequestCompletion get(final ServletRequest request) {
+        final Object completion = request.getAttribute(ATTR_NAME);
+        return (completion instanceof RequestCompletion) ? (RequestCompletion) completion : null;
+    }
+
+    Executor getExecutor() {
+        return this.executor;
+    }
+
+    long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Marks the request as being processed asynchronously.
+     *
+     * @return <code>true</code> if asynchronous processing has not been
+     *         started before.
+     */
+    synchronized boolean setAsync() {
+        final boolean first = !this.async;
+        this.async = true;
+        return first;
+    }
+
+    synchronized boolean isAsync() {
+        return this.async;
+    }
+
+    /**
+     * Adds a task to run on completion. Tasks are run in reverse order of
+     * adding. If the request has already completed, the task is run
+     * immediately.
+     */
+    void add(final Runnable task) {
+        synchronized (this) {
+            if (!this.completed) {
+                this.tasks.add(task);
+                return;
+            }
+        }
+        run(task);
+    }
+
+    /**
+     * Runs the tasks, only the first call has an effect.
+     */
+    void complete() {
+        final Runnable[] toRun;
+        synchronized (this) {
+            if (this.completed) {
+                return;
+            }
+            this.completed = true;
+            toRun = this.tasks.toArray(new Runnable[this.tasks.size()]);
+            this.tasks.clear();
+        }
+        for (int i = toRun.length - 1; i >= 0; i--) {
+            run(toRun[i]);
+        }
+    }
+
+    private void run(final Runnable task) {
+        try {
+            task.run();
+        } catch (final Throwable t) {
+            log.error("complete: Failure completing the request", t);
+        }
+    }
+}
@@ -16,8 +16,25 @@
  */
 package org.apache.sling.engine.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
 
 import org.apache.sling.engine.impl.request.RequestData;
 import org.apache.sling.engine.jmx.RequestProcessorMBean;
@@ -25,177 +42,410 @@ import org.apache.sling.engine.jmx.RequestProcessorMBean;
 /**
  * This is the implementation of the management interface for the
  * RequestProcessor.
+ * <p>
+ * The statistics are collected without locking: the sums are kept in
+ * stripes selected by the current thread, which are added up when read,
+ * and the request durations are counted in histograms, overall and per
+ * HTTP method and resource type. As the values are read without locking,
+ * they might not reflect a request which is just being added.
  */
 class RequestProcessorMBeanImpl extends StandardMBean implements RequestProcessorMBean {
 
-    // number of requests
-    private volatile long n;
+    /** The maximum number of method and resource type combinations tracked. */
+    static final int MAX_TYPES = 500;
+
+    /**
+     * The method and resource type of the single bucket used for all
+     * requests once {@link #MAX_TYPES} is reached. As clients choose the
+     * method, the method is not kept for these requests either.
+     */
+    static final String OTHER_TYPE = "(other)";
+
+    private static final int STRIPES = getStripes();
+
+    /** The number of values per stripe, keeps stripes on separate cache lines. */
+    private static final int STRIPE_WIDTH = 16;
+
+    // the offsets of the values in a stripe
+
+    private static final int N = 0;
+
+    private static final int DURATION_SUM_X = 1;
+
+    private static final int DURATION_SUM_X2 = 2;
+
+    private static final int SERVLET_CALL_COUNT_SUM_X = 3;
+
+    private static final int SERVLET_CALL_COUNT_SUM_X2 = 4;
+
+    private static final int PEAK_RECURSION_DEPTH_SUM_X = 5;
+
+    private static final int PEAK_RECURSION_DEPTH_SUM_X2 = 6;
 
-    // shortest request
-    private volatile long durationMsecMin;
+    private static final String[] TYPE_ITEMS = {
+        "method", "resourceType", "count", "meanMsec", "maxMsec",
+        "medianMsec", "90thPercentileMsec", "99thPercentileMsec", "999thPercentileMsec"
+    };
 
-    // longest request
-    private volatile long durationMsecMax;
+    private static final OpenType<?>[] TYPE_ITEM_TYPES = {
+        SimpleType.STRING, SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.LONG,
+        SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG
+    };
 
-    // sum of request durations
-    private volatile double durationMsecSumX;
+    /**
+     * The sums of the stripes, the sums of squares are stored as the bits
+     * of a double value.
+     */
+    private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
 
-    // sum of squared request durations
-    private volatile double durationMsecSumX2;
+    private final AtomicLong durationMsecMin = new AtomicLong();
 
-    private volatile int servletCallCountMin;
+    private final AtomicLong durationMsecMax = new AtomicLong();
 
-    private volatile int servletCallCountMax;
+    private final AtomicLong servletCallCountMin = new AtomicLong();
 
-    private volatile double servletCallCountSumX;
+    private final AtomicLong servletCallCountMax = new AtomicLong();
 
-    private volatile double servletCallCountSumX2;
+    private final AtomicLong peakRecursionDepthMin = new AtomicLong();
 
-    private volatile int peakRecursionDepthMin;
+    private final AtomicLong peakRecursionDepthMax = new AtomicLong();
 
-    private volatile int peakRecursionDepthMax;
+    private final LatencyHistogram durations = new LatencyHistogram();
 
-    private volatile double peakRecursionDepthSumX;
+    private final ConcurrentMap<String, TypeStatistics> durationsByType = new ConcurrentHashMap<String, TypeStatistics>();
 
-    private volatile double peakRecursionDepthSumX2;
+    private final CompositeType typeStatisticsType;
+
+    private final TabularType typeStatisticsTableType;
 
     RequestProcessorMBeanImpl() throws NotCompliantMBeanException {
         super(RequestProcessorMBean.class);
+        try {
+            this.typeStatisticsType = new CompositeType("RequestDurations",
+                "Request durations by method and resource type", TYPE_ITEMS, TYPE_ITEMS, TYPE_ITEM_TYPES);
+            this.typeStatisticsTableType = new TabularType("RequestDurationsByType",
+                "Request durations by method and resource type", this.typeStatisticsType,
+                new String[] { "method", "resourceType" });
+        } catch (final OpenDataException ode) {
+            throw new IllegalStateException(ode);
+        }
         resetStatistics();
     }
 
-    synchronized void addRequestData(final RequestData data) {
-        this.n++;
-        
+    void addRequestData(final RequestData data) {
+        addRequestData(data, null, null);
+    }
+
+    /**
+     * Adds the data of a request.
+     *
+     * @param data The request data
+     * @param method The HTTP method, if this is <code>null</code> the
+     *            request is not added to the statistics by type.
+     * @param resourceType The resource type of the request, might be
+     *            <code>null</code>
+     */
+    void addRequestData(final RequestData data, final String method, final String resourceType) {
         final long duration = data.getElapsedTimeMsec();
         final int servletCallCount = data.getServletCallCount();
         final int peakRecursionDepth = data.getPeakRecusionDepth();
 
-        if (duration < this.durationMsecMin) {
-            this.durationMsecMin = duration;
-        }
-        if (duration > this.durationMsecMax) {
-            this.durationMsecMax = duration;
-        }
-
-        this.durationMsecSumX += duration;
-        this.durationMsecSumX2 += (duration * duration);
-        
-        if (servletCallCount < this.servletCallCountMin) {
-            this.servletCallCountMin = servletCallCount;
-        }
-        if (servletCallCount > this.servletCallCountMax) {
-            this.servletCallCountMax = servletCallCount;
-        }
-        this.servletCallCountSumX += servletCallCount;
-        this.servletCallCountSumX2 += (servletCallCount * servletCallCount);
-        
-        if (peakRecursionDepth < this.peakRecursionDepthMin) {
-            this.peakRecursionDepthMin = peakRecursionDepth;
+        final int stripe = getStripe();
+        this.stripes.incrementAndGet(stripe + N);
+        this.stripes.addAndGet(stripe + DURATION_SUM_X, duration);
+        addDouble(stripe + DURATION_SUM_X2, (double) duration * duration);
+        this.stripes.addAndGet(stripe + SERVLET_CALL_COUNT_SUM_X, servletCallCount);
+        addDouble(stripe + SERVLET_CALL_COUNT_SUM_X2, (double) servletCallCount * servletCallCount);
+        this.stripes.addAndGet(stripe + PEAK_RECURSION_DEPTH_SUM_X, peakRecursionDepth);
+        addDouble(stripe + PEAK_RECURSION_DEPTH_SUM_X2, (double) peakRecursionDepth * peakRecursionDepth);
+
+        updateMin(this.durationMsecMin, duration);
+        updateMax(this.durationMsecMax, duration);
+        updateMin(this.servletCallCountMin, servletCallCount);
+        updateMax(this.servletCallCountMax, servletCallCount);
+        updateMin(this.peakRecursionDepthMin, peakRecursionDepth);
+        updateMax(this.peakRecursionDepthMax, peakRecursionDepth);
+
+        this.durations.record(duration);
+
+        if (method != null) {
+            getTypeStatistics(method, resourceType).add(duration);
         }
-        if (peakRecursionDepth > this.peakRecursionDepthMax) {
-            this.peakRecursionDepthMax = peakRecursionDepth;
-        }
-        this.peakRecursionDepthSumX += peakRecursionDepth;
-        this.peakRecursionDepthSumX2 += (peakRecursionDepth * peakRecursionDepth);
     }
 
     public long getRequestsCount() {
-        return this.n;
+        return sum(N);
     }
 
     public long getMinRequestDurationMsec() {
-        return this.durationMsecMin;
+        return this.durationMsecMin.get();
     }
 
     public long getMaxRequestDurationMsec() {
-        return this.durationMsecMax;
+        return this.durationMsecMax.get();
     }
 
-    public synchronized double getStandardDeviationDurationMsec() {
-        if (this.n > 1) {
-            // algorithm taken from
-            // http://de.wikipedia.org/wiki/Standardabweichung section
-            // "Berechnung fuer auflaufende Messwerte"
-            return Math.sqrt((this.durationMsecSumX2 - this.durationMsecSumX * this.durationMsecSumX / this.n) / (this.n - 1));
-        }
+    public double getStandardDeviationDurationMsec() {
+        return getStandardDeviation(DURATION_SUM_X, DURATION_SUM_X2);
+    }
 
-        // single data point has no deviation
-        return 0;
+    public double getMeanRequestDurationMsec() {
+        return getMean(DURATION_SUM_X);
+    }
+
+    public long getMedianRequestDurationMsec() {
+        return LatencyHistogram.getValueAtPercentile(this.durations.getCounts(), 50);
+    }
+
+    public long get90thPercentileRequestDurationMsec() {
+        return LatencyHistogram.getValueAtPercentile(this.durations.getCounts(), 90);
+    }
+
+    public long get99thPercentileRequestDurationMsec() {
+        return LatencyHistogram.getValueAtPercentile(this.durations.getCounts(), 99);
+    }
+
+    public long get999thPercentileRequestDurationMsec() {
+        return LatencyHistogram.getValueAtPercentile(this.durations.getCounts(), 99.9);
     }
 
-    public synchronized double getMeanRequestDurationMsec() {
-        if (this.n > 0) {
-            return this.durationMsecSumX / this.n;
-        } else {
-            return 0;
+    public TabularData getRequestDurationsByType() {
+        final TabularDataSupport result = new TabularDataSupport(this.typeStatisticsTableType);
+        try {
+            for (final TypeStatistics stats : getTypeStatistics()) {
+                final long[] counts = stats.histogram.getCounts();
+                result.put(new CompositeDataSupport(this.typeStatisticsType, TYPE_ITEMS, new Object[] {
+                    stats.method, stats.resourceType, stats.getCount(), stats.getMean(), stats.max.get(),
+                    LatencyHistogram.getValueAtPercentile(counts, 50),
+                    LatencyHistogram.getValueAtPercentile(counts, 90),
+                    LatencyHistogram.getValueAtPercentile(counts, 99),
+                    LatencyHistogram.getValueAtPercentile(counts, 99.9) }));
+            }
+        } catch (final OpenDataException ode) {
+            throw new IllegalStateException(ode);
         }
+        return result;
     }
 
-    public synchronized void resetStatistics() {
-        this.durationMsecMin = Long.MAX_VALUE;
-        this.durationMsecMax = 0;
-        this.servletCallCountMin = Integer.MAX_VALUE;
-        this.servletCallCountMax = 0;
-        this.peakRecursionDepthMin = Integer.MAX_VALUE;
-        this.peakRecursionDepthMax = 0;
-        this.durationMsecSumX=0d;
-        this.durationMsecSumX2=0d;
-        this.peakRecursionDepthSumX=0d;
-        this.peakRecursionDepthSumX2=0d;
-        this.servletCallCountSumX=0d;
-        this.servletCallCountSumX2=0d;
-        this.n = 0;
+    /**
+     * Resets all statistics. Requests added concurrently might be partially
+     * counted.
+     */
+    public void resetStatistics() {
+        this.durationMsecMin.set(Long.MAX_VALUE);
+        this.durationMsecMax.set(0);
+        this.servletCallCountMin.set(Integer.MAX_VALUE);
+        this.servletCallCountMax.set(0);
+        this.peakRecursionDepthMin.set(Integer.MAX_VALUE);
+        this.peakRecursionDepthMax.set(0);
+        for (int i = 0; i < this.stripes.length(); i++) {
+            this.stripes.set(i, 0);
+        }
+        this.durations.reset();
+        this.durationsByType.clear();
     }
 
     public int getMaxPeakRecursionDepth() {
-        return peakRecursionDepthMax;
+        return (int) this.peakRecursionDepthMax.get();
     }
 
     public int getMinPeakRecursionDepth() {
-        return peakRecursionDepthMin;
+        return (int) this.peakRecursionDepthMin.get();
     }
 
     public double getMeanPeakRecursionDepth() {
-        if (this.n > 0) {
-            return this.peakRecursionDepthSumX / this.n;
-        } else {
-            return 0;
-        }
+        return getMean(PEAK_RECURSION_DEPTH_SUM_X);
     }
 
     public double getStandardDeviationPeakRecursionDepth() {
-        if (this.n > 1) {
-            return Math.sqrt((this.peakRecursionDepthSumX2 - this.peakRecursionDepthSumX * this.peakRecursionDepthSumX / this.n) / (this.n - 1));
-        }
-
-        // single data point has no deviation
-        return 0;
+        return getStandardDeviation(PEAK_RECURSION_DEPTH_SUM_X, PEAK_RECURSION_DEPTH_SUM_X2);
     }
 
     public int getMaxServletCallCount() {
-        return this.servletCallCountMax;
+        return (int) this.servletCallCountMax.get();
     }
 
     public int getMinServletCallCount() {
-        return this.servletCallCountMin;
+        return (int) this.servletCallCountMin.get();
     }
 
     public double getMeanServletCallCount() {
-        if (this.n > 0) {
-            return this.servletCallCountSumX / this.n;
-        } else {
-            return 0;
-        }
+        return getMean(SERVLET_CALL_COUNT_SUM_X);
     }
 
     public double getStandardDeviationServletCallCount() {
-        if (this.n > 1) {
-            return Math.sqrt((this.servletCallCountSumX2 - this.servletCallCountSumX * this.servletCallCountSumX / this.n) / (this.n - 1));
+        return getStandardDeviation(SERVLET_CALL_COUNT_SUM_X, SERVLET_CALL_COUNT_SUM_X2);
+    }
+
+    /**
+     * Returns the statistics by method and resource type, the most frequent
+     * first.
+     */
+    List<TypeStatistics> getTypeStatistics() {
+        final List<TypeStatistics> result = new ArrayList<TypeStatistics>(this.durationsByType.values());
+        Collections.sort(result, new Comparator<TypeStatistics>() {
+            public int compare(final TypeStatistics o1, final TypeStatistics o2) {
+                final long c1 = o1.getCount();
+                final long c2 = o2.getCount();
+                return c1 > c2 ? -1 : (c1 == c2 ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    // ---------- internal
+
+    private TypeStatistics getTypeStatistics(final String method, final String resourceType) {
+        final String type = resourceType == null ? "" : resourceType;
+        final String key = method.concat(" ").concat(type);
+        TypeStatistics stats = this.durationsByType.get(key);
+        if (stats == null) {
+            if (this.durationsByType.size() >= MAX_TYPES) {
+                return getOtherTypeStatistics();
+            }
+            stats = new TypeStatistics(method, type);
+            final TypeStatistics existing = this.durationsByType.putIfAbsent(key, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private TypeStatistics getOtherTypeStatistics() {
+        final String key = OTHER_TYPE.concat(" ").concat(OTHER_TYPE);
+        TypeStatistics stats = this.durationsByType.get(key);
+        if (stats == null) {
+            stats = new TypeStatistics(OTHER_TYPE, OTHER_TYPE);
+            final TypeStatistics existing = this.durationsByType.putIfAbsent(key, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    private double getMean(final int sumOffset) {
+        final long n = sum(N);
+        if (n > 0) {
+            return (double) sum(sumOffset) / n;
+        }
+        return 0;
+    }
+
+    private double getStandardDeviation(final int sumOffset, final int sumOfSquaresOffset) {
+        final long n = sum(N);
+        if (n > 1) {
+            // algorithm taken from
+            // http://de.wikipedia.org/wiki/Standardabweichung section
+            // "Berechnung fuer auflaufende Messwerte"
+            final double sumX = sum(sumOffset);
+            final double sumX2 = sumDouble(sumOfSquaresOffset);
+            return Math.sqrt(Math.max(0, (sumX2 - sumX * sumX / n) / (n - 1)));
         }
 
         // single data point has no deviation
         return 0;
     }
 
+    private long sum(final int offset) {
+        long result = 0;
+        for (int i = offset; i < this.stripes.length(); i += STRIPE_WIDTH) {
+            result += this.stripes.get(i);
+        }
+        return result;
+    }
+
+    private double sumDouble(final int offset) {
+        double result = 0;
+        for (int i = offset; i < this.stripes.length(); i += STRIPE_WIDTH) {
+            result += Double.longBitsToDouble(this.stripes.get(i));
+        }
+        return result;
+    }
+
+    private void addDouble(final int index, final double value) {
+        long current;
+        do {
+            current = this.stripes.get(index);
+        } while (!this.stripes.compareAndSet(index, current,
+            Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value)));
+    }
+
+    private static void updateMin(final AtomicLong min, final long value) {
+        long current;
+        while (value < (current = min.get())) {
+            if (min.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the stripe of the current thread.
+     */
+    private static int getStripe() {
+        return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_WIDTH;
+    }
+
+    /**
+     * Returns the number of stripes, the power of two at or above the number
+     * of processors.
+     */
+    private static int getStripes() {
+        final int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * The durations of the requests with the same method and resource type.
+     */
+    static final class TypeStatistics {
+
+        final String method;
+
+        final String resourceType;
+
+        final AtomicLong count = new AtomicLong();
+
+        final AtomicLong sum = new AtomicLong();
+
+        final AtomicLong max = new AtomicLong();
+
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        TypeStatistics(final String method, final String resourceType) {
+            this.method = method;
+            this.resourceType = resourceType;
+        }
+
+        void add(final long duration) {
+            this.count.incrementAndGet();
+            this.sum.addAndGet(duration);
+            updateMax(this.max, duration);
+            this.histogram.record(duration);
+        }
+
+        long getCount() {
+            return this.count.get();
+        }
+
+        double getMean() {
+            final long n = this.count.get();
+            return n > 0 ? (double) this.sum.get() / n : 0;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.request.ResponseUtil;
+import org.apache.sling.engine.impl.RequestProcessorMBeanImpl.TypeStatistics;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Felix OSGi console plugin that displays the request statistics collected
+ * by the {@link RequestProcessorMBeanImpl}, overall and by HTTP method and
+ * resource type.
+ */
+@SuppressWarnings("serial")
+class RequestStatisticsConsolePlugin extends HttpServlet {
+
+    static final String LABEL = "requeststats";
+
+    private static final String RESET = "reset";
+
+    private final RequestProcessorMBeanImpl mbean;
+
+    private RequestStatisticsConsolePlugin(final RequestProcessorMBeanImpl mbean) {
+        this.mbean = mbean;
+    }
+
+    static ServiceRegistration register(final BundleContext bundleContext,
+            final RequestProcessorMBeanImpl mbean) {
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION,
+            "Web Console Plugin to display statistics about Sling requests");
+        props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+        props.put("felix.webconsole.label", LABEL);
+        props.put("felix.webconsole.title", "Request Statistics");
+        return bundleContext.registerService("javax.servlet.Servlet",
+            new RequestStatisticsConsolePlugin(mbean), props);
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest req, final HttpServletResponse resp)
+    throws IOException {
+        final PrintWriter pw = resp.getWriter();
+
+        pw.printf("<p class='statline ui-state-highlight'>%d requests, mean %.1fms, max %dms</p>%n",
+            mbean.getRequestsCount(), mbean.getMeanRequestDurationMsec(), mbean.getMaxRequestDurationMsec());
+
+        pw.println("<div class='ui-widget-header ui-corner-top buttonGroup'>");
+        pw.println("<span style='float: left; margin-left: 1em'>Request Durations</span>");
+        pw.println("<form method='POST'><input type='hidden' name='reset' value='reset'><input type='submit' value='Reset' class='ui-state-default ui-corner-all'></form>");
+        pw.println("</div>");
+
+        pw.println("<table class='nicetable ui-widget'>");
+        pw.println("<thead><tr>");
+        pw.println("<th class='ui-widget-header'>Method</th>");
+        pw.println("<th class='ui-widget-header'>Resource Type</th>");
+        pw.println("<th class='ui-widget-header'>Requests</th>");
+        pw.println("<th class='ui-widget-header'>Mean (ms)</th>");
+        pw.println("<th class='ui-widget-header'>p50 (ms)</th>");
+        pw.println("<th class='ui-widget-header'>p90 (ms)</th>");
+        pw.println("<th class='ui-widget-header'>p99 (ms)</th>");
+        pw.println("<th class='ui-widget-header'>p99.9 (ms)</th>");
+        pw.println("<th class='ui-widget-header'>Max (ms)</th>");
+        pw.println("</tr></thead>");
+        pw.println("<tbody>");
+        pw.printf("<tr><td colspan='2'><b>All requests</b></td><td>%d</td><td>%.1f</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td></tr>%n",
+            mbean.getRequestsCount(), mbean.getMeanRequestDurationMsec(),
+            mbean.getMedianRequestDurationMsec(), mbean.get90thPercentileRequestDurationMsec(),
+            mbean.get99thPercentileRequestDurationMsec(), mbean.get999thPercentileRequestDurationMsec(),
+            mbean.getMaxRequestDurationMsec());
+        for (final TypeStatistics stats : mbean.getTypeStatistics()) {
+            final long[] counts = stats.histogram.getCounts();
+            pw.printf("<tr><td>%s</td><td>%s</td><td>%d</td><td>%.1f</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td><td>%d</td></tr>%n",
+                ResponseUtil.escapeXml(stats.method), ResponseUtil.escapeXml(stats.resourceType),
+                stats.getCount(), stats.getMean(),
+                LatencyHistogram.getValueAtPercentile(counts, 50),
+                LatencyHistogram.getValueAtPercentile(counts, 90),
+                LatencyHistogram.getValueAtPercentile(counts, 99),
+                LatencyHistogram.getValueAtPercentile(counts, 99.9),
+                stats.max.get());
+        }
+        pw.println("</tbody></table>");
+    }
+
+    @Override
+    protected void doPost(final HttpServletRequest req, final HttpServletResponse resp)
+    throws IOException {
+        if (req.getParameter(RESET) != null) {
+            mbean.resetStatistics();
+            resp.sendRedirect(req.getRequestURI());
+        }
+    }
+}
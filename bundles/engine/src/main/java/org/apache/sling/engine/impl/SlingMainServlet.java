@@ -25,6 +25,11 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javax.servlet.GenericServlet;
@@ -108,6 +113,41 @@ public class SlingMainServlet extends GenericServlet {
 
     private static final String PROP_DEFAULT_PARAMETER_ENCODING = "sling.default.parameter.encoding";
 
+    public static final boolean DEFAULT_PROGRESS_TRACKER_DEFERRED = false;
+
+    @Property(boolValue = DEFAULT_PROGRESS_TRACKER_DEFERRED)
+    private static final String PROP_PROGRESS_TRACKER_DEFERRED = "sling.progresstracker.deferred";
+
+    public static final int DEFAULT_PROGRESS_TRACKER_SAMPLING = 1;
+
+    @Property(intValue = DEFAULT_PROGRESS_TRACKER_SAMPLING)
+    private static final String PROP_PROGRESS_TRACKER_SAMPLING = "sling.progresstracker.sampling";
+
+    public static final int DEFAULT_RESOURCE_ACCESS_SAMPLING = 0;
+
+    @Property(intValue = DEFAULT_RESOURCE_ACCESS_SAMPLING)
+    private static final String PROP_RESOURCE_ACCESS_SAMPLING = "sling.resourceaccess.sampling";
+
+    public static final int DEFAULT_RESOURCE_ACCESS_PATHS = 10;
+
+    @Property(intValue = DEFAULT_RESOURCE_ACCESS_PATHS)
+    private static final String PROP_RESOURCE_ACCESS_PATHS = "sling.resourceaccess.paths";
+
+    public static final boolean DEFAULT_ASYNC_ENABLED = false;
+
+    @Property(boolValue = DEFAULT_ASYNC_ENABLED)
+    private static final String PROP_ASYNC_ENABLED = "sling.async.enabled";
+
+    public static final long DEFAULT_ASYNC_TIMEOUT = 0;
+
+    @Property(longValue = DEFAULT_ASYNC_TIMEOUT)
+    private static final String PROP_ASYNC_TIMEOUT = "sling.async.timeout";
+
+    public static final int DEFAULT_ASYNC_THREADS = 0;
+
+    @Property(intValue = DEFAULT_ASYNC_THREADS)
+    private static final String PROP_ASYNC_THREADS = "sling.async.threads";
+
     @Property
     private static final String PROP_SERVER_INFO = "sling.serverinfo";
     
@@ -180,7 +220,19 @@ public class SlingMainServlet extends GenericServlet {
 
     private ServiceRegistration requestProcessorMBeanRegistration;
 
+    private ServiceRegistration requestStatisticsPluginRegistration;
+
     private String configuredServerInfo;
+
+    // asynchronous request processing
+
+    private volatile boolean asyncEnabled = DEFAULT_ASYNC_ENABLED;
+
+    private volatile long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+
+    private ExecutorService asyncExecutorService;
+
+    private volatile Executor asyncExecutor;
     
     // ---------- Servlet API -------------------------------------------------
 
@@ -198,6 +250,15 @@ public class SlingMainServlet extends GenericServlet {
 
             requestListenerManager.sendEvent( request, SlingRequestEvent.EventType.EVENT_INIT );
 
+            // prepare for asynchronous processing if enabled
+            final RequestCompletion completion;
+            if (asyncEnabled) {
+                completion = new RequestCompletion(asyncExecutor, asyncTimeout);
+                request.setAttribute(RequestCompletion.ATTR_NAME, completion);
+            } else {
+                completion = null;
+            }
+
             ResourceResolver resolver = null;
             try {
                 if (!allowTrace && "TRACE".equals(request.getMethod())) {
@@ -236,15 +297,18 @@ public class SlingMainServlet extends GenericServlet {
 
             } finally {
 
-
-                // close the resource resolver (not relying on servlet request
-                // listener to do this for now; see SLING-1270)
-                if (resolver != null) {
-                    resolver.close();
+                final Runnable cleanup = new RequestCleanup(request, resolver);
+                if (completion == null) {
+                    cleanup.run();
+                } else {
+                    // the request is cleaned up once asynchronous processing
+                    // completes or right away if it has not been started
+                    completion.add(cleanup);
+                    if (!completion.isAsync()) {
+                        completion.complete();
+                    }
                 }
 
-                requestListenerManager.sendEvent( request, SlingRequestEvent.EventType.EVENT_DESTROY );
-
                 // reset the thread name
                 if (threadName != null) {
                     Thread.currentThread().setName(threadName);
@@ -383,8 +447,26 @@ public class SlingMainServlet extends GenericServlet {
         RequestData.setMaxCallCounter(PropertiesUtil.toInteger(
             componentConfig.get(PROP_MAX_CALL_COUNTER),
             RequestData.DEFAULT_MAX_CALL_COUNTER));
+        RequestData.setProgressTracking(
+            PropertiesUtil.toBoolean(componentConfig.get(PROP_PROGRESS_TRACKER_DEFERRED),
+                DEFAULT_PROGRESS_TRACKER_DEFERRED),
+            PropertiesUtil.toInteger(componentConfig.get(PROP_PROGRESS_TRACKER_SAMPLING),
+                DEFAULT_PROGRESS_TRACKER_SAMPLING));
+        RequestData.setResourceAccessProfiling(
+            PropertiesUtil.toInteger(componentConfig.get(PROP_RESOURCE_ACCESS_SAMPLING),
+                DEFAULT_RESOURCE_ACCESS_SAMPLING),
+            PropertiesUtil.toInteger(componentConfig.get(PROP_RESOURCE_ACCESS_PATHS),
+                DEFAULT_RESOURCE_ACCESS_PATHS));
         RequestData.setSlingMainServlet(this);
 
+        // configure asynchronous request processing
+        asyncTimeout = PropertiesUtil.toLong(componentConfig.get(PROP_ASYNC_TIMEOUT),
+            DEFAULT_ASYNC_TIMEOUT);
+        configureAsyncThreads(PropertiesUtil.toInteger(componentConfig.get(PROP_ASYNC_THREADS),
+            DEFAULT_ASYNC_THREADS));
+        asyncEnabled = PropertiesUtil.toBoolean(componentConfig.get(PROP_ASYNC_ENABLED),
+            DEFAULT_ASYNC_ENABLED);
+
         // configure default request parameter encoding
         // log a message if such configuration exists ....
         if (componentConfig.get(PROP_DEFAULT_PARAMETER_ENCODING) != null) {
@@ -460,6 +542,15 @@ public class SlingMainServlet extends GenericServlet {
             log.debug("Unable to register mbean");
         }
 
+        if (requestProcessor.getMBean() != null) {
+            try {
+                requestStatisticsPluginRegistration = RequestStatisticsConsolePlugin.register(bundleContext,
+                    requestProcessor.getMBean());
+            } catch (Throwable t) {
+                log.debug("Unable to register web console request statistics plugin.", t);
+            }
+        }
+
         // provide the SlingRequestProcessor service
         Hashtable<String, String> srpProps = new Hashtable<String, String>();
         srpProps.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
@@ -468,6 +559,35 @@ public class SlingMainServlet extends GenericServlet {
             SlingRequestProcessor.NAME, requestProcessor, srpProps);
     }
 
+    /**
+     * Closes the resource resolver and sends the destroy event once the
+     * request has been processed.
+     */
+    private class RequestCleanup implements Runnable {
+
+        private final HttpServletRequest request;
+
+        private final ResourceResolver resolver;
+
+        RequestCleanup(final HttpServletRequest request, final ResourceResolver resolver) {
+            this.request = request;
+            this.resolver = resolver;
+        }
+
+        public void run() {
+            // close the resource resolver (not relying on servlet request
+            // listener to do this for now; see SLING-1270)
+            if (resolver != null) {
+                resolver.close();
+            }
+
+            final RequestListenerManager rlm = requestListenerManager;
+            if (rlm != null) {
+                rlm.sendEvent( request, SlingRequestEvent.EventType.EVENT_DESTROY );
+            }
+        }
+    }
+
     @Override
     public void init() {
         setServerInfo();
@@ -481,6 +601,11 @@ public class SlingMainServlet extends GenericServlet {
             requestProcessorRegistration = null;
         }
 
+        if (requestStatisticsPluginRegistration != null) {
+            requestStatisticsPluginRegistration.unregister();
+            requestStatisticsPluginRegistration = null;
+        }
+
         if (requestProcessorMBeanRegistration != null) {
             requestProcessorMBeanRegistration.unregister();
             requestProcessorMBeanRegistration = null;
@@ -526,6 +651,9 @@ public class SlingMainServlet extends GenericServlet {
         // reset the sling main servlet reference (help GC and be nice)
         RequestData.setSlingMainServlet(null);
 
+        asyncEnabled = false;
+        configureAsyncThreads(0);
+
         log.info(this.getServerInfo() + " shut down");
     }
 
@@ -563,6 +691,39 @@ public class SlingMainServlet extends GenericServlet {
         slingHttpContext.unsetAuthenticationSupport(authenticationSupport);
     }
 
+    /**
+     * Sets the number of threads running the tasks started through the
+     * <code>AsyncContext</code>. If the number is zero or negative, the tasks
+     * are run by the servlet container. The threads of a previous
+     * configuration finish their current tasks and then terminate.
+     */
+    private synchronized void configureAsyncThreads(final int threads) {
+        this.asyncExecutor = null;
+        if (this.asyncExecutorService != null) {
+            this.asyncExecutorService.shutdown();
+            this.asyncExecutorService = null;
+        }
+        if (threads > 0) {
+            this.asyncExecutorService = Executors.newFixedThreadPool(threads, new AsyncThreadFactory());
+            this.asyncExecutor = this.asyncExecutorService;
+        }
+    }
+
+    /**
+     * The <code>AsyncThreadFactory</code> creates named daemon threads for
+     * the tasks started through the <code>AsyncContext</code>.
+     */
+    private static final class AsyncThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Sling Async Request Thread #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     private Dictionary<String, String> toStringConfig(Dictionary<?, ?> config) {
         Dictionary<String, String> stringConfig = new Hashtable<String, String>();
         for (Enumeration<?> ke = config.keys(); ke.hasMoreElements();) {
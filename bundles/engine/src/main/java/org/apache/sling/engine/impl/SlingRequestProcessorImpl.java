@@ -57,6 +57,7 @@ import org.apache.sling.engine.impl.parameters.ParameterSupport;
 import org.apache.sling.engine.impl.request.ContentData;
 import org.apache.sling.engine.impl.request.RequestData;
 import org.apache.sling.engine.impl.request.RequestHistoryConsolePlugin;
+import org.apache.sling.engine.impl.request.ResourceAccessProfile;
 import org.apache.sling.engine.servlets.ErrorHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -110,6 +111,10 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         this.mbean = mbean;
     }
 
+    RequestProcessorMBeanImpl getMBean() {
+        return this.mbean;
+    }
+
     /**
      * This method is directly called by the Sling main servlet.
      */
@@ -140,7 +145,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             Resource resource = requestData.initResource(resourceResolver);
             requestData.initServlet(resource, sr);
 
-            FilterHandle[] filters = filterManager.getFilters(FilterChainType.REQUEST);
+            FilterHandle[] filters = filterManager.getFilters(FilterChainType.REQUEST, request.getPathInfo());
             if (filters != null) {
                 FilterChain processor = new RequestSlingFilterChain(this,
                     filters);
@@ -226,8 +231,31 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             handleError(t, request, response);
 
         } finally {
-            if (mbean != null) {
-                mbean.addRequestData(requestData);
+            final RequestProcessorMBeanImpl mbean = this.mbean;
+            final ResourceAccessProfile profile = requestData.getResourceAccessProfile();
+            if (mbean != null || profile != null) {
+                final ContentData contentData = requestData.getContentData();
+                final String resourceType = (contentData == null || contentData.getResource() == null)
+                        ? null : contentData.getResource().getResourceType();
+                final String method = servletRequest.getMethod();
+                final Runnable record = new Runnable() {
+                    public void run() {
+                        if (profile != null) {
+                            profile.finish(requestData.getRequestProgressTracker());
+                        }
+                        if (mbean != null) {
+                            mbean.addRequestData(requestData, method, resourceType);
+                        }
+                    }
+                };
+
+                // record asynchronously processed requests once completed
+                final RequestCompletion completion = RequestCompletion.get(servletRequest);
+                if (completion != null && completion.isAsync()) {
+                    completion.add(record);
+                } else {
+                    record.run();
+                }
             }
         }
     }
@@ -273,7 +301,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             final FilterChainType filterChainType) throws IOException,
             ServletException {
 
-        FilterHandle filters[] = filterManager.getFilters(filterChainType);
+        FilterHandle filters[] = filterManager.getFilters(filterChainType, request.getPathInfo());
         if (filters != null) {
 
             FilterChain processor = new SlingComponentFilterChain(filters);
@@ -335,7 +363,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         // the response output stream if reset does not reset this
         response = new ErrorResponseWrapper(response);
 
-        FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR);
+        FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR, request.getPathInfo());
         if (filters != null && filters.length > 0) {
             FilterChain processor = new AbstractSlingFilterChain(filters) {
 
@@ -367,7 +395,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         // the response output stream if reset does not reset this
         response = new ErrorResponseWrapper(response);
 
-        FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR);
+        FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR, request.getPathInfo());
         if (filters != null && filters.length > 0) {
             FilterChain processor = new AbstractSlingFilterChain(filters) {
 
@@ -30,6 +30,11 @@ import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestProgressTracker;
 import org.apache.sling.engine.impl.request.RequestData;
 
+/**
+ * The <code>AbstractSlingFilterChain</code> calls the filters and finally
+ * renders the request. The filters are expected to have been selected for
+ * the request path, see {@link SlingFilterChainHelper#getFilters(String)}.
+ */
 public abstract class AbstractSlingFilterChain implements FilterChain {
 
     private FilterHandle[] filters;
@@ -48,7 +53,7 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
             throws ServletException, IOException {
 
         final int filterIdx = ++this.current;
-        final long start = System.currentTimeMillis();
+        final long start = System.nanoTime();
 
         // the previous filter may have wrapped non-Sling request and response
         // wrappers (e.g. WebCastellum does this), so we have to make
@@ -62,23 +67,14 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
 
                 // continue filtering with the next filter
                 FilterHandle filter = this.filters[this.current];
-                
-                if (filter.select(slingRequest)) {
-                    trackFilter(slingRequest, filter);
-                    filter.getFilter().doFilter(slingRequest, slingResponse, this);
-                } else {
-                    if (this.current == this.filters.length-1) {
-                        this.render(slingRequest, slingResponse);
-                    } else {
-                       doFilter(slingRequest, slingResponse);
-                    }
-                }
+                trackFilter(slingRequest, filter);
+                filter.getFilter().doFilter(slingRequest, slingResponse, this);
             } else {
                 this.render(slingRequest, slingResponse);
             }
 
         } finally {
-            times[filterIdx] = System.currentTimeMillis() - start;
+            times[filterIdx] = System.nanoTime() - start;
             if (filterIdx == 0) {
                 consolidateFilterTimings(slingRequest);
             }
@@ -106,11 +102,12 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
             RequestData data = RequestData.getRequestData(request);
             RequestProgressTracker tracker = (data != null) ? data.getRequestProgressTracker() : null;
 
-            for (int i = filters.length - 1; i > 0; i--) {
+            for (int i = filters.length - 1; i >= 0; i--) {
                 filters[i].trackTime(times[i] - times[i + 1]);
                 if (tracker != null) {
                     tracker.log("Filter timing: filter={0}, inner={1}, total={2}, outer={3}",
-                        filters[i].getFilter().getClass().getName(), times[i + 1], times[i], (times[i] - times[i + 1]));
+                        filters[i].getFilter().getClass().getName(), times[i + 1] / 1000000L,
+                        times[i] / 1000000L, (times[i] - times[i + 1]) / 1000000L);
                 }
             }
         }
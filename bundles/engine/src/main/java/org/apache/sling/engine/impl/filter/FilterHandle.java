@@ -23,14 +23,18 @@ import java.util.regex.Pattern;
 
 import javax.servlet.Filter;
 
-import org.apache.sling.api.SlingHttpServletRequest;
-
 public class FilterHandle implements Comparable<FilterHandle> {
 
     private final Filter filter;
     
     private final Pattern regex;
 
+    /**
+     * The literal leading part of the {@link #regex} which paths must start
+     * with to match, or the empty string.
+     */
+    private final String pathPrefix;
+
     private final Long filterId;
 
     private final int order;
@@ -45,8 +49,10 @@ public class FilterHandle implements Comparable<FilterHandle> {
         this.filter = filter;
         if (pattern != null && pattern.length() > 0) {
             this.regex = Pattern.compile(pattern);
+            this.pathPrefix = getLiteralPrefix(pattern);
         } else {
             this.regex = null;
+            this.pathPrefix = "";
         }
         
         this.filterId = filterId;
@@ -72,40 +78,85 @@ public class FilterHandle implements Comparable<FilterHandle> {
         return orderSource;
     }
     
-    boolean select(SlingHttpServletRequest slingHttpServletRequest) {
-        boolean select = true;        
-        if (regex != null) {
-            String uri = slingHttpServletRequest.getPathInfo();
-            // assume root if uri is null
-            if (uri == null)
-            {
-                uri = "/";
-            }
-            select = this.regex.matcher(uri).matches();
-        }        
-        return select;
+    /**
+     * Returns <code>true</code> if the filter applies to the path, that is if
+     * the filter has no pattern or the pattern matches the path.
+     */
+    boolean select(final String path) {
+        if (regex == null) {
+            return true;
+        }
+        // cheap check before evaluating the regular expression
+        if (!path.startsWith(pathPrefix)) {
+            return false;
+        }
+        return this.regex.matcher(path).matches();
+    }
+
+    /**
+     * Returns the literal leading part of the pattern which all paths the
+     * filter applies to start with, or the empty string.
+     */
+    String getPathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * Returns <code>true</code> if the filter applies to all paths.
+     */
+    boolean isUnconditional() {
+        return regex == null;
     }
 
     public long getCalls() {
         return calls.get();
     }
 
+    /**
+     * Returns the time spent in the filter in milliseconds.
+     */
     public long getTime() {
-        return time.get();
+        return time.get() / 1000000L;
     }
 
+    /**
+     * Returns the average time spent per call in microseconds.
+     */
     public long getTimePerCall() {
-        return (getCalls() > 0) ? (1000L * getTime() / getCalls()) : -1;
+        return (getCalls() > 0) ? (time.get() / 1000L / getCalls()) : -1;
     }
 
     void track() {
         calls.incrementAndGet();
     }
 
+    /**
+     * Adds time spent in the filter in nanoseconds.
+     */
     void trackTime(long time) {
         this.time.addAndGet(time);
     }
 
+    /**
+     * Returns the leading part of the pattern which matching paths start
+     * with: the characters up to the first character with special meaning.
+     * A literal character followed by a quantifier is not part of the prefix.
+     */
+    static String getLiteralPrefix(final String pattern) {
+        int end = 0;
+        while (end < pattern.length() && "\\[](){}.*+?^$|".indexOf(pattern.charAt(end)) < 0) {
+            end++;
+        }
+        if (end < pattern.length() && end > 0 && "*?{".indexOf(pattern.charAt(end)) >= 0) {
+            end--;
+        }
+        // a top level alternation allows paths not starting with the prefix
+        if (pattern.indexOf('|') >= 0) {
+            return "";
+        }
+        return pattern.substring(0, end);
+    }
+
     /**
      * Note: this class has a natural ordering that is inconsistent with
      * equals.
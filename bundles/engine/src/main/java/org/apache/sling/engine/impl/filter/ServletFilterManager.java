@@ -123,6 +123,14 @@ public class ServletFilterManager extends ServiceTracker {
         return getFilterChain(chain).getFilters();
     }
 
+    /**
+     * Returns the filters of the chain which apply to the given request
+     * path info.
+     */
+    public FilterHandle[] getFilters(final FilterChainType chain, final String path) {
+        return getFilterChain(chain).getFilters(path);
+    }
+
     @Override
     public Object addingService(ServiceReference reference) {
         Object service = super.addingService(reference);
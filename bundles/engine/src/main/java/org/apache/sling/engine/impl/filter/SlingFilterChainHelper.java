@@ -18,7 +18,11 @@
  */
 package org.apache.sling.engine.impl.filter;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -30,6 +34,10 @@ import javax.servlet.Filter;
  * ordering, each filter is optionally registered with an ordering index. If
  * none is provided the default ordering index is Integer.MAX_VALUE to append
  * the filter to the end of the list.
+ * <p>
+ * The filters applying to a request path are selected by
+ * {@link #getFilters(String)} using a {@link PathIndex} which is built
+ * whenever filters are added or removed.
  */
 public class SlingFilterChainHelper {
 
@@ -37,7 +45,10 @@ public class SlingFilterChainHelper {
 
     private SortedSet<FilterHandle> filterList;
 
-    private FilterHandle[] filters = EMPTY_FILTER_ARRAY;
+    private volatile FilterHandle[] filters = EMPTY_FILTER_ARRAY;
+
+    /** The index of the current {@link #filters} by path prefix */
+    private volatile PathIndex pathIndex = new PathIndex(EMPTY_FILTER_ARRAY);
 
     SlingFilterChainHelper() {
     }
@@ -79,10 +90,132 @@ public class SlingFilterChainHelper {
         return filters;
     }
 
+    /**
+     * Returns the <code>Filter</code>s added to this instance which apply to
+     * the given request path, in order.
+     *
+     * @param path The request path info, <code>null</code> is treated as the
+     *            root path.
+     */
+    public FilterHandle[] getFilters(final String path) {
+        return pathIndex.getFilters((path == null) ? "/" : path);
+    }
+
     private FilterHandle[] getFiltersInternal() {
+        final FilterHandle[] result;
         if (filterList == null || filterList.isEmpty()) {
-            return EMPTY_FILTER_ARRAY;
+            result = EMPTY_FILTER_ARRAY;
+        } else {
+            result = filterList.toArray(new FilterHandle[filterList.size()]);
+        }
+        pathIndex = new PathIndex(result);
+        return result;
+    }
+
+    /**
+     * The <code>PathIndex</code> selects the filters applying to a path for
+     * a fixed list of filters. A new instance is created whenever the list
+     * changes.
+     * <p>
+     * The filters with a pattern are indexed by the literal prefix of the
+     * pattern, see {@link FilterHandle#getPathPrefix()}. For a path only the
+     * filters whose prefix the path starts with are considered, so the
+     * pattern of a filter is only evaluated for paths it might match. The
+     * index is never modified after construction and is read without locking.
+     */
+    private static final class PathIndex {
+
+        private final FilterHandle[] filters;
+
+        /** The filters without a pattern, returned if no other filter applies */
+        private final FilterHandle[] unconditionalFilters;
+
+        /** Whether all filters apply to all paths */
+        private final boolean unconditional;
+
+        /** The indexes of the filters with a pattern, by prefix */
+        private final Map<String, int[]> byPrefix;
+
+        /** The distinct lengths of the prefixes, in ascending order */
+        private final int[] prefixLengths;
+
+        PathIndex(final FilterHandle[] filters) {
+            this.filters = filters;
+            final List<FilterHandle> unconditionalFilters = new ArrayList<FilterHandle>(filters.length);
+            final Map<String, List<Integer>> byPrefix = new HashMap<String, List<Integer>>();
+            final SortedSet<Integer> prefixLengths = new TreeSet<Integer>();
+            for (int i = 0; i < filters.length; i++) {
+                final FilterHandle handle = filters[i];
+                if (handle.isUnconditional()) {
+                    unconditionalFilters.add(handle);
+                } else {
+                    final String prefix = handle.getPathPrefix();
+                    List<Integer> indexes = byPrefix.get(prefix);
+                    if (indexes == null) {
+                        indexes = new ArrayList<Integer>();
+                        byPrefix.put(prefix, indexes);
+                        prefixLengths.add(prefix.length());
+                    }
+                    indexes.add(i);
+                }
+            }
+            this.unconditional = unconditionalFilters.size() == filters.length;
+            this.unconditionalFilters = unconditionalFilters.toArray(new FilterHandle[unconditionalFilters.size()]);
+
+            this.byPrefix = new HashMap<String, int[]>();
+            for (final Map.Entry<String, List<Integer>> entry : byPrefix.entrySet()) {
+                final int[] indexes = new int[entry.getValue().size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = entry.getValue().get(i);
+                }
+                this.byPrefix.put(entry.getKey(), indexes);
+            }
+            this.prefixLengths = new int[prefixLengths.size()];
+            int i = 0;
+            for (final Integer length : prefixLengths) {
+                this.prefixLengths[i++] = length;
+            }
+        }
+
+        FilterHandle[] getFilters(final String path) {
+            if (unconditional) {
+                return filters;
+            }
+
+            boolean[] selected = null;
+            int count = unconditionalFilters.length;
+            for (final int length : prefixLengths) {
+                if (length > path.length()) {
+                    break;
+                }
+                final int[] indexes = byPrefix.get(path.substring(0, length));
+                if (indexes != null) {
+                    for (final int index : indexes) {
+                        if (filters[index].select(path)) {
+                            if (selected == null) {
+                                selected = new boolean[filters.length];
+                            }
+                            selected[index] = true;
+                            count++;
+                        }
+                    }
+                }
+            }
+            if (selected == null) {
+                return unconditionalFilters;
+            }
+            if (count == filters.length) {
+                return filters;
+            }
+
+            final FilterHandle[] result = new FilterHandle[count];
+            int pos = 0;
+            for (int i = 0; i < filters.length; i++) {
+                if (selected[i] || filters[i].isUnconditional()) {
+                    result[pos++] = filters[i];
+                }
+            }
+            return result;
         }
-        return filterList.toArray(new FilterHandle[filterList.size()]);
     }
-}
\ No newline at end of file
+}
@@ -55,6 +55,21 @@ class CustomLogFormat {
      */
     Parameter[] logParameters;
 
+    /**
+     * Buffers larger than this are not kept for reuse by the thread.
+     */
+    private static final int MAX_POOLED_BUFFER = 8 * 1024;
+
+    /**
+     * The buffer used by the current thread to build log messages.
+     */
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
     /**
      * Creates a new instance from of this class parsing the log format pattern.
      *
@@ -82,11 +97,17 @@ class CustomLogFormat {
      */
     String format(RequestLoggerRequest request, RequestLoggerResponse response) {
         if (this.logParameters != null) {
-            StringBuilder buf = new StringBuilder();
-            for (int i = 0; i < this.logParameters.length; i++) {
-                this.logParameters[i].print(buf, request, response);
+            StringBuilder buf = buffers.get();
+            buf.setLength(0);
+            final Parameter[] parameters = this.logParameters;
+            for (int i = 0; i < parameters.length; i++) {
+                parameters[i].print(buf, request, response);
             }
-            return buf.toString();
+            final String message = buf.toString();
+            if (buf.capacity() > MAX_POOLED_BUFFER) {
+                buffers.remove();
+            }
+            return message;
         }
 
         return null;
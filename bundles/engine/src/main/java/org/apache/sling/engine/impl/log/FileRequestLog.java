@@ -19,21 +19,27 @@
 package org.apache.sling.engine.impl.log;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Writer;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Map;
 
+import javax.management.ObjectName;
+
 import org.apache.sling.engine.RequestLog;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 
 /**
  * The <code>FileRequestLog</code> class is an implementation of the
  * {@link RequestLog} interface writing the log messages to an plain file. This
  * class supports sharing the files for different log formatters, in that an
- * internal map of log files is kept and access to the <code>PrintWriter</code>s
- * to write to the file is synchronized.
+ * internal map of {@link FileRequestLogWriter}s is kept, which synchronize
+ * access to the files.
+ * <p>
+ * The settings of the queue for asynchronous writing are taken from the
+ * first log opening a file. If a bundle context is provided at that time,
+ * the writer is also registered as a {@link RequestLogWriterMBean} service.
  * <p>
  * This class has a defined lifecycle to ensure correct operation: To ensure no
  * log files are kept open, the {@link RequestLoggerFilter} object calls
@@ -45,41 +51,54 @@ import org.apache.sling.engine.RequestLog;
  * open/write/close cycle when logging a message, (2) close log files when the
  * last user has closed the log, (3) optimize the first strategy by keeping the
  * files open for some time.
- * <p>
- * Note: Currently, the <code>PrintWriter</code> used to log the message is
- * flushed after each log message written. Future development should probably
- * implement better buffering in conjunction with the temporary open/close
- * cycles of the files.
  */
 class FileRequestLog implements RequestLog {
 
-    // The map of shared open files (actually PrintWriter instances)
-    private static Map<String, PrintWriter> logFiles = new HashMap<String, PrintWriter>();
+    // The map of shared open files (actually FileRequestLogWriter instances)
+    private static Map<String, FileRequestLogWriter> logFiles = new HashMap<String, FileRequestLogWriter>();
+
+    // The management registrations of the shared open files
+    private static Map<String, ServiceRegistration> mbeans = new HashMap<String, ServiceRegistration>();
 
-    // Dispose class by closing all open PrintWeiter instances
+    // Dispose class by closing all open FileRequestLogWriter instances
     static void dispose() {
-        for (final Writer w : logFiles.values()) {
-            try {
+        synchronized (logFiles) {
+            for (final ServiceRegistration reg : mbeans.values()) {
+                try {
+                    reg.unregister();
+                } catch (IllegalStateException ise) {
+                    // bundle already stopped, don't care
+                }
+            }
+            mbeans.clear();
+            for (final FileRequestLogWriter w : logFiles.values()) {
                 w.close();
-            } catch (IOException ioe) {
-                // don't care
             }
+            logFiles.clear();
         }
-        logFiles.clear();
     }
 
-    // The PrintWriter used by this instance to write the messages
-    private PrintWriter output;
+    // The FileRequestLogWriter used by this instance to write the messages
+    private FileRequestLogWriter output;
 
-    FileRequestLog(File logFile) throws IOException {
+    FileRequestLog(File logFile, int queueCapacity, String overflowPolicy, BundleContext bundleContext)
+    throws IOException {
         synchronized (logFiles) {
             final String fileName = logFile.getAbsolutePath();
             this.output = logFiles.get(fileName);
             if (this.output == null) {
-                logFile.getParentFile().mkdirs();
-                FileWriter fw = new FileWriter(logFile, true);
-                this.output = new PrintWriter(fw);
+                this.output = new FileRequestLogWriter(logFile, queueCapacity, overflowPolicy);
                 logFiles.put(fileName, this.output);
+
+                if (bundleContext != null) {
+                    final Hashtable<String, Object> props = new Hashtable<String, Object>();
+                    props.put("jmx.objectname", "org.apache.sling:type=engine,service=RequestLog,name="
+                        + ObjectName.quote(fileName));
+                    props.put("service.description", "Request Log Writer " + fileName);
+                    props.put("service.vendor", "The Apache Software Foundation");
+                    mbeans.put(fileName, bundleContext.registerService(
+                        RequestLogWriterMBean.class.getName(), this.output, props));
+                }
             }
         }
     }
@@ -91,12 +110,9 @@ class FileRequestLog implements RequestLog {
         // use a local copy of the reference to not encounter NPE when this
         // log happens to be closed asynchronously while at the same time not
         // requiring synchronization
-        PrintWriter writer = this.output;
+        FileRequestLogWriter writer = this.output;
         if (writer != null) {
-            synchronized (writer) {
-                writer.println(message);
-                writer.flush();
-            }
+            writer.write(message);
         }
     }
 
@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>FileRequestLogWriter</code> writes the messages of the
+ * {@link FileRequestLog} instances sharing a log file.
+ * <p>
+ * If created with a queue capacity, messages are handed off to a bounded
+ * queue and written by a single background thread: the thread takes all
+ * messages queued at once, writes them and flushes the file once per batch.
+ * If the queue is full, the request thread either waits for space
+ * ({@link #OVERFLOW_BLOCK}) or the message is dropped
+ * ({@link #OVERFLOW_DROP}); both cases are counted. A waiting request thread
+ * gives up and drops the message once this writer is closed or the
+ * background thread has terminated. On close, the background thread writes
+ * all queued messages before it terminates; every message logged is either
+ * written or counted as dropped.
+ * <p>
+ * Without a queue capacity, messages are written and flushed by the request
+ * threads as they are logged.
+ */
+class FileRequestLogWriter implements RequestLogWriterMBean {
+
+    static final String OVERFLOW_BLOCK = "block";
+
+    static final String OVERFLOW_DROP = "drop";
+
+    /** The maximum number of messages written before flushing the file */
+    private static final int MAX_BATCH = 1024;
+
+    /** The time to wait for the background thread to write queued messages on close */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * The time in milliseconds a request thread waits for space in the queue
+     * and the background thread waits for messages before checking whether
+     * this writer has been closed
+     */
+    private static final long POLL_TIMEOUT = 100;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final String fileName;
+
+    private final Writer output;
+
+    private final BlockingQueue<String> queue;
+
+    private final boolean dropOnOverflow;
+
+    private final Thread writerThread;
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong blocked = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the log file for appending.
+     *
+     * @param logFile The log file
+     * @param queueCapacity The number of messages which may be queued for
+     *            the background thread. If zero or negative, messages are
+     *            written by the request threads.
+     * @param overflowPolicy {@link #OVERFLOW_DROP} to drop messages if the
+     *            queue is full, otherwise the request thread waits.
+     * @throws IOException If the log file cannot be opened
+     */
+    FileRequestLogWriter(final File logFile, final int queueCapacity, final String overflowPolicy)
+    throws IOException {
+        this.fileName = logFile.getAbsolutePath();
+        logFile.getParentFile().mkdirs();
+        if (queueCapacity > 0) {
+            this.output = new BufferedWriter(new FileWriter(logFile, true), 64 * 1024);
+            this.queue = new ArrayBlockingQueue<String>(queueCapacity);
+            this.dropOnOverflow = OVERFLOW_DROP.equals(overflowPolicy);
+            this.writerThread = new Thread(new Runnable() {
+                public void run() {
+                    writeQueued();
+                }
+            }, "Sling Request Log Writer " + logFile.getName());
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        } else {
+            this.output = new FileWriter(logFile, true);
+            this.queue = null;
+            this.dropOnOverflow = false;
+            this.writerThread = null;
+        }
+    }
+
+    /**
+     * Writes the message as a single line to the log file or queues it to
+     * be written by the background thread. Messages logged after this
+     * writer has been closed are dropped.
+     */
+    void write(final String message) {
+        if (this.closed) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+
+        if (this.queue == null) {
+            synchronized (this.output) {
+                try {
+                    this.output.write(message);
+                    this.output.write(LINE_SEPARATOR);
+                    this.output.flush();
+                    this.written.incrementAndGet();
+                } catch (IOException ioe) {
+                    this.dropped.incrementAndGet();
+                    log.warn("write: Cannot write to request log " + this.fileName, ioe);
+                }
+            }
+        } else if (this.queue.offer(message)) {
+            dropIfStopped(message);
+        } else if (this.dropOnOverflow) {
+            this.dropped.incrementAndGet();
+        } else {
+            this.blocked.incrementAndGet();
+            try {
+                while (!this.queue.offer(message, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (this.closed || !this.writerThread.isAlive()) {
+                        this.dropped.incrementAndGet();
+                        return;
+                    }
+                }
+                dropIfStopped(message);
+            } catch (InterruptedException ie) {
+                this.dropped.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Drops a message queued after the background thread has terminated,
+     * unless {@link #close()} already took it from the queue.
+     */
+    private void dropIfStopped(final String message) {
+        if (!this.writerThread.isAlive() && this.queue.remove(message)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the log file. All queued messages are written before, unless
+     * this takes longer than {@link #CLOSE_TIMEOUT} milliseconds. Messages
+     * still queued after the background thread terminated are counted as
+     * dropped.
+     */
+    void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        if (this.writerThread != null) {
+            try {
+                this.writerThread.join(CLOSE_TIMEOUT);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            if (this.writerThread.isAlive()) {
+                log.warn("close: Request log writer for {} did not terminate in time", this.fileName);
+                this.writerThread.interrupt();
+                return;
+            }
+            final List<String> remaining = new ArrayList<String>();
+            this.queue.drainTo(remaining);
+            this.dropped.addAndGet(remaining.size());
+        }
+
+        synchronized (this.output) {
+            try {
+                this.output.close();
+            } catch (IOException ioe) {
+                // don't care
+            }
+        }
+    }
+
+    // background thread: write messages in batches until closed and the
+    // queue is empty
+    private void writeQueued() {
+        final List<String> batch = new ArrayList<String>(MAX_BATCH);
+        while (true) {
+            final String first;
+            try {
+                first = this.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                break;
+            }
+            if (first == null) {
+                if (this.closed) {
+                    break;
+                }
+                continue;
+            }
+            batch.add(first);
+            this.queue.drainTo(batch, MAX_BATCH - 1);
+
+            synchronized (this.output) {
+                try {
+                    for (final String message : batch) {
+                        this.output.write(message);
+                        this.output.write(LINE_SEPARATOR);
+                    }
+                    this.output.flush();
+                    this.written.addAndGet(batch.size());
+                    this.batches.incrementAndGet();
+                } catch (IOException ioe) {
+                    this.dropped.addAndGet(batch.size());
+                    log.warn("writeQueued: Cannot write to request log " + this.fileName, ioe);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    // ---------- RequestLogWriterMBean
+
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    public boolean isAsynchronous() {
+        return this.queue != null;
+    }
+
+    public String getOverflowPolicy() {
+        return this.dropOnOverflow ? OVERFLOW_DROP : OVERFLOW_BLOCK;
+    }
+
+    public int getQueueCapacity() {
+        return (this.queue == null) ? 0 : this.queue.size() + this.queue.remainingCapacity();
+    }
+
+    public int getQueueDepth() {
+        return (this.queue == null) ? 0 : this.queue.size();
+    }
+
+    public long getWrittenCount() {
+        return this.written.get();
+    }
+
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    public long getBlockedCount() {
+        return this.blocked.get();
+    }
+
+    public long getBatchCount() {
+        return this.batches.get();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+/**
+ * This is the management interface of the writers of file based request logs.
+ */
+public interface RequestLogWriterMBean {
+
+    /**
+     * Returns the absolute path of the log file.
+     */
+    String getFileName();
+
+    /**
+     * Returns <code>true</code> if messages are written by a background
+     * thread, <code>false</code> if they are written by the request threads.
+     */
+    boolean isAsynchronous();
+
+    /**
+     * Returns the overflow policy applied if the queue is full, either
+     * <code>block</code> or <code>drop</code>.
+     */
+    String getOverflowPolicy();
+
+    /**
+     * Returns the number of messages which may be queued.
+     */
+    int getQueueCapacity();
+
+    /**
+     * Returns the number of messages currently queued.
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of messages written to the file.
+     */
+    long getWrittenCount();
+
+    /**
+     * Returns the number of messages dropped because the queue was full,
+     * the log file could not be written or the writer was closed.
+     */
+    long getDroppedCount();
+
+    /**
+     * Returns the number of messages for which the request thread had to
+     * wait because the queue was full.
+     */
+    long getBlockedCount();
+
+    /**
+     * Returns the number of batches written, each ending with a single flush.
+     */
+    long getBatchCount();
+}
@@ -67,6 +67,15 @@ public class RequestLogger {
     @Property(boolValue = true)
     public static final String PROP_ACCESS_LOG_ENABLED = "access.log.enabled";
 
+    @Property(intValue = 0)
+    public static final String PROP_QUEUE_SIZE = "request.log.queuesize";
+
+    @Property(value = FileRequestLogWriter.OVERFLOW_BLOCK, options = {
+        @PropertyOption(name = FileRequestLogWriter.OVERFLOW_BLOCK, value = "Block"),
+        @PropertyOption(name = FileRequestLogWriter.OVERFLOW_DROP, value = "Drop")
+    })
+    public static final String PROP_OVERFLOW = "request.log.overflow";
+
     /**
      * The log format string for the request log entry message (value is "%t
      * [%R] -> %m %U%q %H").
@@ -97,6 +106,10 @@ public class RequestLogger {
     @Activate
     protected void activate(BundleContext bundleContext, Map<String, Object> props) {
 
+        // queue settings of log files, applied to all loggers
+        final Object queueSize = props.get(PROP_QUEUE_SIZE);
+        final Object overflow = props.get(PROP_OVERFLOW);
+
         // prepare the request loggers if a name is configured and the
         // request loggers are enabled
         Object requestLogName = props.get(PROP_REQUEST_LOG_OUTPUT);
@@ -105,9 +118,9 @@ public class RequestLogger {
             && ((Boolean) requestLogEnabled).booleanValue()) {
             Object requestLogType = props.get(PROP_REQUEST_LOG_OUTPUT_TYPE);
             createRequestLoggerService(services, bundleContext, true, REQUEST_LOG_ENTRY_FORMAT, requestLogName,
-                requestLogType);
+                requestLogType, queueSize, overflow);
             createRequestLoggerService(services, bundleContext, false, REQUEST_LOG_EXIT_FORMAT, requestLogName,
-                requestLogType);
+                requestLogType, queueSize, overflow);
         }
 
         // prepare the access logger if a name is configured and the
@@ -116,7 +129,8 @@ public class RequestLogger {
         Object accessLogEnabled = props.get(PROP_ACCESS_LOG_ENABLED);
         if (accessLogName != null && accessLogEnabled instanceof Boolean && ((Boolean) accessLogEnabled).booleanValue()) {
             Object accessLogType = props.get(PROP_ACCESS_LOG_OUTPUT_TYPE);
-            createRequestLoggerService(services, bundleContext, false, ACCESS_LOG_FORMAT, accessLogName, accessLogType);
+            createRequestLoggerService(services, bundleContext, false, ACCESS_LOG_FORMAT, accessLogName, accessLogType,
+                queueSize, overflow);
         }
     }
 
@@ -130,12 +144,19 @@ public class RequestLogger {
     }
 
     private static void createRequestLoggerService(Map<ServiceRegistration, RequestLoggerService> services,
-            BundleContext bundleContext, boolean onEntry, Object format, Object output, Object outputType) {
+            BundleContext bundleContext, boolean onEntry, Object format, Object output, Object outputType,
+            Object queueSize, Object overflow) {
         final Hashtable<String, Object> config = new Hashtable<String, Object>();
         config.put(RequestLoggerService.PARAM_ON_ENTRY, onEntry ? Boolean.TRUE : Boolean.FALSE);
         config.put(RequestLoggerService.PARAM_FORMAT, format);
         config.put(RequestLoggerService.PARAM_OUTPUT, output);
         config.put(RequestLoggerService.PARAM_OUTPUT_TYPE, outputType);
+        if (queueSize != null) {
+            config.put(RequestLoggerService.PARAM_QUEUE_SIZE, queueSize);
+        }
+        if (overflow != null) {
+            config.put(RequestLoggerService.PARAM_OVERFLOW, overflow);
+        }
 
         final RequestLoggerService service = new RequestLoggerService(bundleContext, config);
         final ServiceRegistration reg = bundleContext.registerService(service.getClass().getName(), service, config);
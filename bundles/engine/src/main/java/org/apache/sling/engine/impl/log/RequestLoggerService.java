@@ -65,6 +65,15 @@ public class RequestLoggerService {
     @Property(boolValue = false)
     public static final String PARAM_ON_ENTRY = "request.log.service.onentry";
 
+    @Property(intValue = 0)
+    public static final String PARAM_QUEUE_SIZE = "request.log.service.queuesize";
+
+    @Property(value = FileRequestLogWriter.OVERFLOW_BLOCK, options = {
+        @PropertyOption(name = FileRequestLogWriter.OVERFLOW_BLOCK, value = "Block"),
+        @PropertyOption(name = FileRequestLogWriter.OVERFLOW_DROP, value = "Drop")
+    })
+    public static final String PARAM_OVERFLOW = "request.log.service.overflow";
+
     private static final int OUTPUT_TYPE_LOGGER = 0;
 
     private static final int OUTPUT_TYPE_FILE = 1;
@@ -106,7 +115,7 @@ public class RequestLoggerService {
             int outputType = (outputTypeObject instanceof Number)
                     ? ((Number) outputTypeObject).intValue()
                     : OUTPUT_TYPE_LOGGER;
-            this.log = this.getLog(bundleContext, output.toString(), outputType);
+            this.log = this.getLog(bundleContext, output.toString(), outputType, configuration);
         }
     }
 
@@ -130,7 +139,8 @@ public class RequestLoggerService {
         return this.onEntry;
     }
 
-    private RequestLog getLog(BundleContext bundleContext, String output, int outputType) {
+    private RequestLog getLog(BundleContext bundleContext, String output, int outputType,
+            Map<String, Object> configuration) {
         switch (outputType) {
             case OUTPUT_TYPE_FILE:
                 // file logging
@@ -145,7 +155,15 @@ public class RequestLoggerService {
                         file = file.getAbsoluteFile();
                     }
 
-                    return new FileRequestLog(file);
+                    // queue settings for asynchronous writing
+                    Object queueSizeObject = configuration.get(PARAM_QUEUE_SIZE);
+                    int queueSize = (queueSizeObject instanceof Number)
+                            ? ((Number) queueSizeObject).intValue()
+                            : 0;
+                    Object overflow = configuration.get(PARAM_OVERFLOW);
+
+                    return new FileRequestLog(file, queueSize,
+                        (overflow != null) ? overflow.toString() : FileRequestLogWriter.OVERFLOW_BLOCK, bundleContext);
                 } catch (IOException ioe) {
                     // TODO: log
                 }
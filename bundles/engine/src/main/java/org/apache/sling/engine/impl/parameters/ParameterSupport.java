@@ -34,14 +34,19 @@ import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.RequestContext;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.fileupload.servlet.ServletRequestContext;
+import org.apache.commons.fileupload.util.Streams;
 import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.request.RequestParameterMap;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.engine.EngineConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +68,22 @@ public class ParameterSupport {
      */
     public final static String MARKER_IS_SERVICE_PROCESSING = ParameterSupport.class.getName() + "/ServiceProcessingMarker";
 
+    /**
+     * The name of the request header requesting a multipart/form-data POST
+     * request to be processed in streaming mode, if its value is
+     * {@link #UPLOAD_MODE_STREAM}.
+     */
+    public final static String HEADER_UPLOAD_MODE = "Sling-UploadMode";
+
+    /**
+     * The name of the query parameter requesting a multipart/form-data POST
+     * request to be processed in streaming mode, if its value is
+     * {@link #UPLOAD_MODE_STREAM}.
+     */
+    public final static String PARAMETER_UPLOAD_MODE = "uploadmode";
+
+    public final static String UPLOAD_MODE_STREAM = "stream";
+
     // name of the request attribute caching the ParameterSupport instance
     // used during the request
     private static final String ATTR_NAME = ParameterSupport.class.getName();
@@ -98,6 +119,11 @@ public class ParameterSupport {
      */
     private static int fileSizeThreshold = 256000;
 
+    /**
+     * Whether multipart/form-data requests may be processed in streaming mode.
+     */
+    private static boolean streamedUploads = false;
+
     private final HttpServletRequest servletRequest;
 
     private ParameterMap postParameterMap;
@@ -150,11 +176,12 @@ public class ParameterSupport {
     }
 
     static void configure(final long maxRequestSize, final String location, final long maxFileSize,
-            final int fileSizeThreshold) {
+            final int fileSizeThreshold, final boolean streamedUploads) {
         ParameterSupport.maxRequestSize = (maxRequestSize > 0) ? maxRequestSize : -1;
         ParameterSupport.location = (location != null) ? new File(location) : null;
         ParameterSupport.maxFileSize = (maxFileSize > 0) ? maxFileSize : -1;
         ParameterSupport.fileSizeThreshold = (fileSizeThreshold > 0) ? fileSizeThreshold : 256000;
+        ParameterSupport.streamedUploads = streamedUploads;
     }
 
     private ParameterSupport(HttpServletRequest servletRequest) {
@@ -256,6 +283,7 @@ public class ParameterSupport {
             }
 
             // POST requests
+            RequestPartsIterator partsIterator = null;
             final boolean isPost = "POST".equals(this.getServletRequest().getMethod());
             if (isPost) {
                 // WWW URL Form Encoded POST
@@ -276,7 +304,11 @@ public class ParameterSupport {
 
                 // Multipart POST
                 if (ServletFileUpload.isMultipartContent(new ServletRequestContext(this.getServletRequest()))) {
-                    this.parseMultiPartPost(parameters);
+                    if (isStreamedUpload(parameters)) {
+                        partsIterator = this.parseMultiPartPostStreaming(parameters);
+                    } else {
+                        this.parseMultiPartPost(parameters);
+                    }
                     this.requestDataUsed = true;
                     useFallback = false;
                 }
@@ -287,6 +319,9 @@ public class ParameterSupport {
 
             // apply any form encoding (from '_charset_') in the parameter map
             Util.fixEncoding(parameters);
+            if (partsIterator != null) {
+                partsIterator.setEncoding(Util.getFormEncoding(parameters));
+            }
 
             this.postParameterMap = parameters;
         }
@@ -326,22 +361,43 @@ public class ParameterSupport {
     }
 
 
-    private void parseMultiPartPost(ParameterMap parameters) {
+    /**
+     * Returns {@code true} if streamed uploads are enabled and the request
+     * asks for streaming mode with the {@link #HEADER_UPLOAD_MODE} header
+     * or the {@link #PARAMETER_UPLOAD_MODE} query parameter.
+     */
+    private boolean isStreamedUpload(final ParameterMap parameters) {
+        if (!ParameterSupport.streamedUploads) {
+            return false;
+        }
+        return UPLOAD_MODE_STREAM.equals(this.getServletRequest().getHeader(HEADER_UPLOAD_MODE))
+            || UPLOAD_MODE_STREAM.equals(parameters.getStringValue(PARAMETER_UPLOAD_MODE));
+    }
 
-        // Create a new file upload handler
+    private ServletFileUpload createFileUpload() {
         ServletFileUpload upload = new ServletFileUpload();
         upload.setSizeMax(ParameterSupport.maxRequestSize);
         upload.setFileSizeMax(ParameterSupport.maxFileSize);
         upload.setFileItemFactory(new DiskFileItemFactory(ParameterSupport.fileSizeThreshold,
             ParameterSupport.location));
+        return upload;
+    }
 
-        RequestContext rc = new ServletRequestContext(this.getServletRequest()) {
+    private RequestContext createRequestContext() {
+        return new ServletRequestContext(this.getServletRequest()) {
             @Override
             public String getCharacterEncoding() {
                 String enc = super.getCharacterEncoding();
                 return (enc != null) ? enc : Util.ENCODING_DIRECT;
             }
         };
+    }
+
+    private void parseMultiPartPost(ParameterMap parameters) {
+
+        // Create a new file upload handler
+        ServletFileUpload upload = createFileUpload();
+        RequestContext rc = createRequestContext();
 
         // Parse the request
         List<?> /* FileItem */items = null;
@@ -360,4 +416,41 @@ public class ParameterSupport {
         }
     }
 
+    /**
+     * Parses the multipart/form-data POST request in streaming mode: the
+     * form fields up to the first file are added to the parameters, the
+     * first file and all parts following it are left in the request input
+     * stream and are provided by the returned iterator, which is also set
+     * as the {@link EngineConstants#REQUEST_PARTS_ITERATOR} request attribute.
+     *
+     * @return The iterator over the remaining parts or {@code null} if the
+     *         request has no file part or cannot be parsed.
+     */
+    private RequestPartsIterator parseMultiPartPostStreaming(ParameterMap parameters) {
+        ServletFileUpload upload = createFileUpload();
+        FileItemFactory factory = upload.getFileItemFactory();
+        try {
+            FileItemIterator items = upload.getItemIterator(createRequestContext());
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (!item.isFormField()) {
+                    RequestPartsIterator partsIterator = new RequestPartsIterator(items, item,
+                        ParameterSupport.fileSizeThreshold);
+                    this.getServletRequest().setAttribute(EngineConstants.REQUEST_PARTS_ITERATOR, partsIterator);
+                    return partsIterator;
+                }
+
+                FileItem fileItem = factory.createItem(item.getFieldName(), item.getContentType(),
+                    true, item.getName());
+                Streams.copy(item.openStream(), fileItem.getOutputStream(), true);
+                parameters.addParameter(new MultipartRequestParameter(fileItem), false);
+            }
+        } catch (FileUploadException fue) {
+            this.log.error("parseMultiPartPostStreaming: Error parsing request", fue);
+        } catch (IOException ioe) {
+            this.log.error("parseMultiPartPostStreaming: Error parsing request", ioe);
+        }
+        return null;
+    }
+
 }
\ No newline at end of file
@@ -27,6 +27,7 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.engine.EngineConstants;
 import org.apache.sling.settings.SlingSettingsService;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
@@ -89,6 +90,16 @@ public class RequestParameterSupportConfigurer {
             description = "The maximum size allowed for multipart/form-data requests. The default is -1, which means unlimited.")
     private static final String PROP_MAX_REQUEST_SIZE = "request.max";
 
+    @Property(
+            boolValue = false,
+            label = "Streamed Uploads",
+            description = "Whether multipart/form-data requests may be processed in streaming mode. If enabled, "
+                + "requests with the 'Sling-UploadMode: stream' header or the 'uploadmode=stream' query parameter "
+                + "are not spooled to the temporary file location. Instead the parts following the first file are "
+                + "provided as an iterator in the '" + EngineConstants.REQUEST_PARTS_ITERATOR + "' request attribute. "
+                + "The default is false.")
+    private static final String PROP_STREAMED_UPLOADS = "file.streaming";
+
     @Reference
     private SlingSettingsService settignsService;
 
@@ -105,6 +116,7 @@ public class RequestParameterSupportConfigurer {
             PropertiesUtil.toString(props.get(PROP_FILE_LOCATION), null));
         final long maxFileSize = PropertiesUtil.toLong(props.get(PROP_FILE_SIZE_MAX), -1);
         final int fileSizeThreshold = PropertiesUtil.toInteger(props.get(PROP_FILE_SIZE_THRESHOLD), -1);
+        final boolean streamedUploads = PropertiesUtil.toBoolean(props.get(PROP_STREAMED_UPLOADS), false);
 
         if (log.isInfoEnabled()) {
             log.info("Default Character Encoding: {}", fixEncoding);
@@ -113,11 +125,13 @@ public class RequestParameterSupportConfigurer {
             log.info("Temporary File Location: {}", fileLocation);
             log.info("Maximum File Size: {}", maxFileSize);
             log.info("Tempory File Creation Threshold: {}", fileSizeThreshold);
+            log.info("Streamed Uploads: {}", streamedUploads);
         }
 
         Util.setDefaultFixEncoding(fixEncoding);
         ParameterMap.setMaxParameters(maxParams);
-        ParameterSupport.configure(maxRequestSize, fileLocation, maxFileSize, fileSizeThreshold);
+        ParameterSupport.configure(maxRequestSize, fileLocation, maxFileSize, fileSizeThreshold,
+            streamedUploads);
     }
 
     private String getFileLocation(final ComponentContext context, String fileLocation) {
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.sling.api.SlingException;
+import org.apache.sling.api.request.RequestParameter;
+
+/**
+ * The <code>RequestPartsIterator</code> iterates over the remaining parts of
+ * a multipart/form-data POST request in streaming mode, starting with the
+ * first file. Each part is returned as a {@link RequestParameter} whose input
+ * stream reads directly from the request.
+ * <p>
+ * The iterator is provided in the {@link org.apache.sling.engine.EngineConstants#REQUEST_PARTS_ITERATOR}
+ * request attribute.
+ */
+class RequestPartsIterator implements Iterator<RequestParameter> {
+
+    private final FileItemIterator items;
+
+    private final int bufferSize;
+
+    private String encoding;
+
+    private FileItemStream next;
+
+    private StreamedRequestParameter current;
+
+    RequestPartsIterator(final FileItemIterator items, final FileItemStream first,
+            final int bufferSize) {
+        this.items = items;
+        this.next = first;
+        this.bufferSize = bufferSize;
+    }
+
+    void setEncoding(final String encoding) {
+        this.encoding = encoding;
+    }
+
+    public boolean hasNext() {
+        if (this.next != null) {
+            return true;
+        }
+        try {
+            // keep the current part readable before the stream is moved on
+            if (this.current != null) {
+                this.current.buffer();
+                this.current = null;
+            }
+            if (this.items.hasNext()) {
+                this.next = this.items.next();
+                return true;
+            }
+            return false;
+        } catch (final IOException ioe) {
+            throw new SlingException("Error reading the next part of the request", ioe);
+        } catch (final FileUploadException fue) {
+            throw new SlingException("Error reading the next part of the request", fue);
+        }
+    }
+
+    public RequestParameter next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final String name = (this.encoding == null)
+                ? this.next.getFieldName()
+                : Util.reencode(this.next.getFieldName(), this.encoding);
+        this.current = new StreamedRequestParameter(this.next, name, this.encoding, this.bufferSize);
+        this.next = null;
+        return this.current;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.sling.api.SlingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>StreamedRequestParameter</code> represents a part of a
+ * multipart/form-data POST request which is read directly from the request
+ * input stream, see {@link RequestPartsIterator}.
+ * <p>
+ * The content can only be read while the part is the current part of the
+ * iterator. If the iterator is moved on before the content is read, up to a
+ * limited number of bytes are buffered in memory so the part can still be
+ * read. The size of the part is only known once it is buffered.
+ */
+class StreamedRequestParameter extends AbstractRequestParameter {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamedRequestParameter.class);
+
+    private final FileItemStream item;
+
+    private final int bufferSize;
+
+    private InputStream stream;
+
+    private byte[] content;
+
+    private boolean skipped;
+
+    private String encodedFileName;
+
+    StreamedRequestParameter(final FileItemStream item, final String name,
+            final String encoding, final int bufferSize) {
+        super(name, encoding);
+        this.item = item;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Buffers the content if it has not been read yet as the request input
+     * stream is moved to the next part.
+     */
+    void buffer() throws IOException {
+        if (this.stream != null || this.content != null || this.skipped) {
+            return;
+        }
+        final InputStream in = this.item.openStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[2048];
+            int l;
+            while ((l = in.read(buffer)) >= 0) {
+                if (out.size() + l > this.bufferSize) {
+                    // the remainder is skipped by the iterator
+                    log.warn("buffer: Skipping content of part {}, it exceeds the buffer of {} bytes",
+                        getName(), this.bufferSize);
+                    this.skipped = true;
+                    return;
+                }
+                out.write(buffer, 0, l);
+            }
+            this.content = out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (this.content != null) {
+            return new ByteArrayInputStream(this.content);
+        }
+        if (this.skipped) {
+            throw new IOException("Content of part " + getName()
+                + " has been skipped, it exceeds the buffer of " + this.bufferSize + " bytes");
+        }
+        if (this.stream != null) {
+            throw new IOException("Content of part " + getName() + " has already been read");
+        }
+        this.stream = this.item.openStream();
+        return this.stream;
+    }
+
+    /**
+     * Returns the content of the part, which is read into memory.
+     */
+    public byte[] get() {
+        if (this.content == null) {
+            try {
+                final InputStream in = getInputStream();
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[2048];
+                    int l;
+                    while ((l = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, l);
+                    }
+                    this.content = out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (final IOException ioe) {
+                throw new SlingException("Cannot read part " + getName(), ioe);
+            }
+        }
+        return this.content;
+    }
+
+    public String getContentType() {
+        return this.item.getContentType();
+    }
+
+    public String getFileName() {
+        if (this.encodedFileName == null && this.item.getName() != null) {
+            String tmpFileName = this.item.getName();
+            if (this.getEncoding() != null) {
+                try {
+                    byte[] rawName = tmpFileName.getBytes(Util.ENCODING_DIRECT);
+                    tmpFileName = new String(rawName, this.getEncoding());
+                } catch (UnsupportedEncodingException uee) {
+                    // might log, but actually don't care
+                }
+            }
+            this.encodedFileName = tmpFileName;
+        }
+
+        return this.encodedFileName;
+    }
+
+    /**
+     * Returns the size of the part if it has been read into memory, -1
+     * otherwise.
+     */
+    public long getSize() {
+        return this.content != null ? this.content.length : -1;
+    }
+
+    public String getString() {
+        final String encoding = getEncoding();
+        if (encoding != null) {
+            try {
+                return getString(encoding);
+            } catch (UnsupportedEncodingException uee) {
+                // don't care, fall back to platform default
+            }
+        }
+        return new String(get());
+    }
+
+    public String getString(String encoding) throws UnsupportedEncodingException {
+        return new String(get(), encoding);
+    }
+
+    public boolean isFormField() {
+        return this.item.isFormField();
+    }
+
+    public String toString() {
+        if (this.isFormField()) {
+            return this.getString();
+        }
+
+        return "File: " + this.getFileName() + " (streamed)";
+    }
+}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -124,6 +125,33 @@ public class RequestData {
 
     private static ArrayList<StaticResponseHeader> ADDITIONAL_RESPONSE_HEADERS;
 
+    /**
+     * Whether request progress tracker entries are formatted only when
+     * retrieved.
+     */
+    private static boolean progressTrackerDeferred;
+
+    /**
+     * Only one in this number of requests is fully tracked by the request
+     * progress tracker. A value of 1 or less tracks all requests.
+     */
+    private static int progressTrackerSampling = 1;
+
+    /** Counter of requests to select the tracked requests */
+    private static final AtomicLong PROGRESS_TRACKER_SAMPLE = new AtomicLong();
+
+    /**
+     * Only one in this number of tracked requests has its resource access
+     * profiled. A value of 0 or less disables profiling.
+     */
+    private static int resourceAccessSampling;
+
+    /** The number of most expensive paths reported for profiled requests */
+    private static int resourceAccessPaths;
+
+    /** Counter of tracked requests to select the profiled requests */
+    private static final AtomicLong RESOURCE_ACCESS_SAMPLE = new AtomicLong();
+
     /** The SlingMainServlet used for request dispatching and other stuff */
     private final SlingRequestProcessorImpl slingRequestProcessor;
 
@@ -148,6 +176,9 @@ public class RequestData {
 
     private RequestProgressTracker requestProgressTracker;
 
+    /** The resource access profile, null unless the request is profiled */
+    private ResourceAccessProfile resourceAccessProfile;
+
     /** the current ContentData */
     private ContentData currentContentData;
 
@@ -191,6 +222,16 @@ public class RequestData {
         return maxInclusionCounter;
     }
 
+    public static void setProgressTracking(final boolean deferred, final int sampling) {
+        RequestData.progressTrackerDeferred = deferred;
+        RequestData.progressTrackerSampling = sampling;
+    }
+
+    public static void setResourceAccessProfiling(final int sampling, final int paths) {
+        RequestData.resourceAccessSampling = sampling;
+        RequestData.resourceAccessPaths = paths;
+    }
+
     public static void setSlingMainServlet(final SlingMainServlet slingMainServlet) {
         RequestData.SLING_MAIN_SERVLET = slingMainServlet;
         RequestData.REQUEST_FACTORY = null;
@@ -217,11 +258,23 @@ public class RequestData {
         this.slingResponse = new SlingHttpServletResponseImpl(this,
             servletResponse);
 
-        this.requestProgressTracker = new SlingRequestProgressTracker();
+        final int sampling = progressTrackerSampling;
+        final boolean tracking = sampling <= 1
+            || PROGRESS_TRACKER_SAMPLE.getAndIncrement() % sampling == 0;
+        this.requestProgressTracker = new SlingRequestProgressTracker(progressTrackerDeferred, tracking);
         this.requestProgressTracker.log(
         		"Method={0}, PathInfo={1}",
         		this.slingRequest.getMethod(), this.slingRequest.getPathInfo()
         );
+
+        // profile the resource access of sampled tracked requests
+        final int profileSampling = resourceAccessSampling;
+        if (tracking && profileSampling > 0
+            && RESOURCE_ACCESS_SAMPLE.getAndIncrement() % profileSampling == 0) {
+            this.resourceAccessProfile = new ResourceAccessProfile(resourceAccessPaths);
+            this.servletRequest.setAttribute(ResourceAccessProfile.ATTR_NAME,
+                this.resourceAccessProfile.getAccesses());
+        }
     }
 
     public Resource initResource(ResourceResolver resourceResolver) {
@@ -590,6 +643,10 @@ public class RequestData {
         return requestProgressTracker;
     }
 
+    public ResourceAccessProfile getResourceAccessProfile() {
+        return resourceAccessProfile;
+    }
+
     public int getPeakRecusionDepth() {
         return peakRecusionDepth;
     }
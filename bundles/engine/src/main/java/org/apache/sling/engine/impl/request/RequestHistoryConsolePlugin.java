@@ -264,9 +264,37 @@ public class RequestHistoryConsolePlugin {
                 }
                 pw.println("</pre></td></tr>");
                 pw.println("</tbody></table>");
+
+                final ResourceAccessProfile profile = info.getResourceAccessProfile();
+                if (profile != null) {
+                    printResourceAccess(pw, profile);
+                }
             }
         }
 
+        private void printResourceAccess(final PrintWriter pw, final ResourceAccessProfile profile) {
+            pw.println("<br/>");
+            pw.println("<table class='nicetable ui-widget'>");
+            pw.println("<thead>");
+            pw.println("<tr><th class='ui-widget-header' colspan='3'>Most expensive resource paths</th></tr>");
+            pw.println("<tr><th>Path</th><th>Calls</th><th>Time (ms)</th></tr>");
+            pw.println("</thead>");
+            pw.println("<tbody>");
+            final List<ResourceAccessProfile.Entry> paths = profile.getTopPaths();
+            if (paths == null) {
+                pw.println("<tr><td colspan='3'>Request is still being processed</td></tr>");
+            } else if (paths.isEmpty()) {
+                pw.println("<tr><td colspan='3'>No resource access recorded</td></tr>");
+            } else {
+                for (final ResourceAccessProfile.Entry entry : paths) {
+                    pw.printf("<tr><td>%s</td><td>%d</td><td>%s</td></tr>%n",
+                        ResponseUtil.escapeXml(entry.getPath()), entry.getCalls(),
+                        ResourceAccessProfile.toMillis(entry.getDuration()));
+                }
+            }
+            pw.println("</tbody></table>");
+        }
+
         @Override
         protected void doPost(HttpServletRequest req, HttpServletResponse resp)
                 throws IOException {
@@ -291,12 +319,15 @@ public class RequestHistoryConsolePlugin {
 
         private final RequestProgressTracker tracker;
 
+        private final ResourceAccessProfile resourceAccessProfile;
+
         RequestInfo(SlingHttpServletRequest request) {
             this.key = String.valueOf(requestCounter.incrementAndGet());
             this.method = request.getMethod();
             this.pathInfo = request.getPathInfo();
             this.user = request.getRemoteUser();
             this.tracker = request.getRequestProgressTracker();
+            this.resourceAccessProfile = RequestData.getRequestData(request).getResourceAccessProfile();
         }
 
         public String getKey() {
@@ -334,6 +365,10 @@ public class RequestHistoryConsolePlugin {
         public RequestProgressTracker getTracker() {
             return tracker;
         }
+
+        public ResourceAccessProfile getResourceAccessProfile() {
+            return resourceAccessProfile;
+        }
     }
 
     private static class RequestInfoMap extends
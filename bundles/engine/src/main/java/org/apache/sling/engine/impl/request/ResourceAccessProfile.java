@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.sling.api.request.RequestProgressTracker;
+
+/**
+ * The <code>ResourceAccessProfile</code> collects the resource access of a
+ * profiled request.
+ * <p>
+ * The map returned by {@link #getAccesses()} is set as the {@link #ATTR_NAME}
+ * request attribute, which has the resource resolver record each access to
+ * a resource into it: The key is the name of the operation and the path
+ * separated by a blank, the value is the number of calls and their total
+ * duration in nanoseconds. Access to the map is synchronized on the map.
+ * <p>
+ * When the request has been processed, {@link #finish(RequestProgressTracker)}
+ * logs a summary by operation and the most expensive paths to the request
+ * progress tracker.
+ */
+public class ResourceAccessProfile {
+
+    /**
+     * The name of the request attribute asking the resource resolver to
+     * record the resource access into the map set as its value.
+     */
+    public static final String ATTR_NAME = "org.apache.sling.resourceaccess.profile";
+
+    private final Map<String, long[]> accesses = new HashMap<String, long[]>();
+
+    private final int maxPaths;
+
+    /** The most expensive paths, set when finished */
+    private volatile List<Entry> topPaths;
+
+    ResourceAccessProfile(final int maxPaths) {
+        this.maxPaths = maxPaths;
+    }
+
+    Map<String, long[]> getAccesses() {
+        return this.accesses;
+    }
+
+    /**
+     * Returns the most expensive paths, most expensive first, or
+     * <code>null</code> if the request has not been finished yet.
+     */
+    public List<Entry> getTopPaths() {
+        return this.topPaths;
+    }
+
+    /**
+     * Summarizes the recorded resource access and logs the summary to the
+     * tracker. Only the first call has an effect.
+     */
+    public void finish(final RequestProgressTracker tracker) {
+        if (this.topPaths != null) {
+            return;
+        }
+
+        final Map<String, Entry> byOperation = new TreeMap<String, Entry>();
+        final Map<String, Entry> byPath = new HashMap<String, Entry>();
+        final Entry total = new Entry("");
+        synchronized (this.accesses) {
+            for (final Map.Entry<String, long[]> access : this.accesses.entrySet()) {
+                final String key = access.getKey();
+                final int sep = key.indexOf(' ');
+                final String operation = (sep < 0) ? key : key.substring(0, sep);
+                final String path = (sep < 0) ? "" : key.substring(sep + 1);
+                final long[] value = access.getValue();
+
+                add(byOperation, operation, value);
+                add(byPath, path, value);
+                total.add(value);
+            }
+        }
+
+        final List<Entry> paths = new ArrayList<Entry>(byPath.values());
+        Collections.sort(paths, new Comparator<Entry>() {
+            public int compare(final Entry e1, final Entry e2) {
+                return (e1.duration < e2.duration) ? 1 : ((e1.duration == e2.duration) ? 0 : -1);
+            }
+        });
+        this.topPaths = Collections.unmodifiableList(
+            new ArrayList<Entry>(paths.subList(0, Math.min(this.maxPaths, paths.size()))));
+
+        final StringBuilder summary = new StringBuilder();
+        summary.append(total.calls).append(" calls in ").append(toMillis(total.duration)).append("ms");
+        String sep = " (";
+        for (final Entry operation : byOperation.values()) {
+            summary.append(sep).append(operation.path).append('=').append(operation.calls);
+            summary.append('/').append(toMillis(operation.duration)).append("ms");
+            sep = ", ";
+        }
+        if (!byOperation.isEmpty()) {
+            summary.append(')');
+        }
+        tracker.log("Resource access: {0}", summary);
+
+        for (final Entry path : this.topPaths) {
+            tracker.log("Resource access {0}: {1} calls in {2}ms", path.path,
+                String.valueOf(path.calls), toMillis(path.duration));
+        }
+    }
+
+    private static void add(final Map<String, Entry> entries, final String key, final long[] value) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            entries.put(key, entry);
+        }
+        entry.add(value);
+    }
+
+    static String toMillis(final long nanos) {
+        return String.valueOf((nanos / 1000) / 1000.0);
+    }
+
+    /**
+     * The number of calls and their total duration for a path or operation.
+     */
+    public static final class Entry {
+
+        private final String path;
+
+        private long calls;
+
+        private long duration;
+
+        Entry(final String path) {
+            this.path = path;
+        }
+
+        private void add(final long[] value) {
+            this.calls += value[0];
+            this.duration += value[1];
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public long getCalls() {
+            return this.calls;
+        }
+
+        /** The total duration of the calls in nanoseconds */
+        public long getDuration() {
+            return this.duration;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.sling.engine.impl.request;
 import java.io.PrintWriter;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -88,6 +89,21 @@ import org.apache.sling.api.request.RequestProgressTracker;
  * <li>The absolute time of the timer in parenthesis.
  * <li>The entry message
  * </ol>
+ * <p>
+ * <b>Deferred Formatting and Sampling</b>
+ * <p>
+ * A tracker created with deferred formatting only records the time stamps,
+ * the format strings and the arguments of the entries. The messages are
+ * formatted when they are first retrieved through {@link #getMessages()} or
+ * {@link #dump(PrintWriter)}, which for most requests never happens. As
+ * trackers outlive their request, only immutable arguments like strings and
+ * numbers are kept as they are; all other arguments are converted to strings
+ * when they are logged, see {@link #toImmutable(Object[])}.
+ * <p>
+ * A tracker created without tracking only records the start and end of
+ * request processing to provide the {@link #getDuration() duration}; all
+ * other entries and timers are ignored. This is used to only fully track a
+ * sample of the requests.
  */
 public class SlingRequestProgressTracker implements RequestProgressTracker {
 
@@ -109,6 +125,21 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
     /** The leading millisecond number is left-padded with white-space to this width. */
     private static final int PADDING_WIDTH = 7;
 
+    /** Comment noting that entries are not tracked for the request */
+    private static final String NOT_TRACKED_MESSAGE = COMMENT_PREFIX
+        + "request progress is not tracked for this request (sampling)";
+
+    /**
+     * Whether entries are formatted when they are retrieved rather than when
+     * they are logged.
+     */
+    private final boolean deferFormatting;
+
+    /**
+     * Whether entries and timers are tracked at all.
+     */
+    private final boolean tracking;
+
     /**
      * The system time at creation of this instance or the last {@link #reset()}.
      */
@@ -130,9 +161,24 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
     private final Map<String, Long> namedTimerEntries = new HashMap<String, Long>();
 
     /**
-     * Creates a new request progress tracker.
+     * Creates a new request progress tracker formatting entries as they are
+     * logged.
      */
     public SlingRequestProgressTracker() {
+        this(false, true);
+    }
+
+    /**
+     * Creates a new request progress tracker.
+     *
+     * @param deferFormatting Whether to format the entries only when they
+     *            are retrieved.
+     * @param tracking Whether to track entries and timers or just the
+     *            duration of request processing.
+     */
+    public SlingRequestProgressTracker(final boolean deferFormatting, final boolean tracking) {
+        this.deferFormatting = deferFormatting;
+        this.tracking = tracking;
         reset();
     }
 
@@ -146,8 +192,13 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
         namedTimerEntries.clear();
 
         // enter initial messages
-        processingStart = startTimerInternal(REQUEST_PROCESSING_TIMER);
         processingEnd = -1;
+        if (!tracking) {
+            processingStart = System.currentTimeMillis();
+            entries.add(new TrackingEntry(processingStart, NOT_TRACKED_MESSAGE));
+            return;
+        }
+        processingStart = startTimerInternal(REQUEST_PROCESSING_TIMER);
 
         entries.add(new TrackingEntry(COMMENT_PREFIX + "timer_end format is " + TIMER_END_FORMAT));
     }
@@ -205,13 +256,27 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
 
     /** Creates an entry with the given message. */
     public void log(String message) {
-        entries.add(new TrackingEntry(LOG_PREFIX + message));
+        if (!tracking) {
+            return;
+        }
+        if (deferFormatting) {
+            entries.add(new DeferredEntry(LOG_PREFIX, message, null));
+        } else {
+            entries.add(new TrackingEntry(LOG_PREFIX + message));
+        }
     }
 
     /** Creates an entry with the given entry tag and message */
     public void log(String format, Object... args) {
-        String message = MessageFormat.format(format, args);
-        entries.add(new TrackingEntry(LOG_PREFIX + message));
+        if (!tracking) {
+            return;
+        }
+        if (deferFormatting) {
+            entries.add(new DeferredEntry(LOG_PREFIX, format, toImmutable(args)));
+        } else {
+            String message = MessageFormat.format(format, args);
+            entries.add(new TrackingEntry(LOG_PREFIX + message));
+        }
     }
 
     /**
@@ -219,7 +284,9 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      * reset to the current time.
      */
     public void startTimer(String name) {
-        startTimerInternal(name);
+        if (tracking) {
+            startTimerInternal(name);
+        }
     }
 
     /**
@@ -232,7 +299,11 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
     private long startTimerInternal(String name) {
         long timer = System.currentTimeMillis();
         namedTimerEntries.put(name, timer);
-        entries.add(new TrackingEntry(timer, "TIMER_START{" + name + "}"));
+        if (deferFormatting) {
+            entries.add(new TimerEntry(timer, -1, name, null, null));
+        } else {
+            entries.add(new TrackingEntry(timer, "TIMER_START{" + name + "}"));
+        }
         return timer;
     }
 
@@ -240,8 +311,13 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      * Log a timer entry, including start, end and elapsed time.
      */
     public void logTimer(String name) {
-        if (namedTimerEntries.containsKey(name)) {
-            logTimerInternal(name, null, namedTimerEntries.get(name));
+        final Long startTime = namedTimerEntries.get(name);
+        if (startTime != null) {
+            if (deferFormatting) {
+                logTimerDeferred(name, null, null, startTime);
+            } else {
+                logTimerInternal(name, null, startTime);
+            }
         }
     }
 
@@ -249,9 +325,51 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
      * Log a timer entry, including start, end and elapsed time.
      */
     public void logTimer(String name, String format, Object... args) {
-        if (namedTimerEntries.containsKey(name)) {
-            logTimerInternal(name, MessageFormat.format(format, args), namedTimerEntries.get(name));
+        final Long startTime = namedTimerEntries.get(name);
+        if (startTime != null) {
+            if (deferFormatting) {
+                logTimerDeferred(name, format, toImmutable(args), startTime);
+            } else {
+                logTimerInternal(name, MessageFormat.format(format, args), startTime);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the arguments which can be formatted after the
+     * request has ended: strings, primitive wrappers and enums are kept, so
+     * number patterns still apply, dates are copied and all other arguments
+     * are replaced with their string representation, which is what
+     * <code>MessageFormat</code> uses for them anyway.
+     */
+    private static Object[] toImmutable(final Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        final Object[] result = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            final Object arg = args[i];
+            if (arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long
+                    || arg instanceof Double || arg instanceof Float || arg instanceof Short
+                    || arg instanceof Byte || arg instanceof Boolean || arg instanceof Character
+                    || arg instanceof Enum<?>) {
+                result[i] = arg;
+            } else if (arg instanceof Date) {
+                result[i] = new Date(((Date) arg).getTime());
+            } else {
+                result[i] = String.valueOf(arg);
+            }
         }
+        return result;
+    }
+
+    /**
+     * Log a timer entry recording the elapsed time, the message is only
+     * formatted when retrieved.
+     */
+    private void logTimerDeferred(String name, String format, Object[] args, long startTime) {
+        final long now = System.currentTimeMillis();
+        entries.add(new TimerEntry(now, now - startTime, name, format, args));
     }
 
     /**
@@ -273,7 +391,9 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
 
     public void done() {
         if(processingEnd != -1) return;
-        logTimer(REQUEST_PROCESSING_TIMER, REQUEST_PROCESSING_TIMER);
+        if (tracking) {
+            logTimer(REQUEST_PROCESSING_TIMER, REQUEST_PROCESSING_TIMER);
+        }
         processingEnd = System.currentTimeMillis();
     }
 
@@ -294,8 +414,8 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
         // creation time stamp
         private final long timeStamp;
 
-        // tracking message
-        private final String message;
+        // tracking message, set lazily by extensions
+        String message;
 
         TrackingEntry(String message) {
             this.timeStamp = System.currentTimeMillis();
@@ -315,4 +435,69 @@ public class SlingRequestProgressTracker implements RequestProgressTracker {
             return message;
         }
     }
+
+    /** Tracker entry keeping the message format and arguments until retrieved */
+    private static class DeferredEntry extends TrackingEntry {
+
+        private final String prefix;
+
+        private final String format;
+
+        private final Object[] args;
+
+        DeferredEntry(String prefix, String format, Object[] args) {
+            super(null);
+            this.prefix = prefix;
+            this.format = format;
+            this.args = args;
+        }
+
+        @Override
+        String getMessage() {
+            if (message == null) {
+                message = prefix + ((args == null) ? format : MessageFormat.format(format, args));
+            }
+            return message;
+        }
+    }
+
+    /**
+     * Tracker entry for the start (elapsed time -1) or end of a timer keeping
+     * the optional message format and arguments until retrieved
+     */
+    private static class TimerEntry extends TrackingEntry {
+
+        private final long elapsed;
+
+        private final String name;
+
+        private final String format;
+
+        private final Object[] args;
+
+        TimerEntry(long timeStamp, long elapsed, String name, String format, Object[] args) {
+            super(timeStamp, null);
+            this.elapsed = elapsed;
+            this.name = name;
+            this.format = format;
+            this.args = args;
+        }
+
+        @Override
+        String getMessage() {
+            if (message == null) {
+                final StringBuilder sb = new StringBuilder();
+                if (elapsed < 0) {
+                    sb.append("TIMER_START{").append(name).append('}');
+                } else {
+                    sb.append("TIMER_END{").append(elapsed).append(',').append(name).append('}');
+                    if (format != null) {
+                        sb.append(' ').append(MessageFormat.format(format, args));
+                    }
+                }
+                message = sb.toString();
+            }
+            return message;
+        }
+    }
 }
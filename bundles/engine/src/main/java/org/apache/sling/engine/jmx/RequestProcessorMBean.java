@@ -16,6 +16,8 @@
  */
 package org.apache.sling.engine.jmx;
 
+import javax.management.openmbean.TabularData;
+
 import aQute.bnd.annotation.ProviderType;
 
 /**
@@ -65,6 +67,55 @@ public interface RequestProcessorMBean {
      */
     double getStandardDeviationDurationMsec();
 
+    /**
+     * Returns the median request processing time in milliseconds since
+     * resetting the statistics. The value is taken from a histogram and is
+     * at most about 6% higher than the actual median.
+     *
+     * @see #resetStatistics()
+     * @since 1.1.0
+     */
+    long getMedianRequestDurationMsec();
+
+    /**
+     * Returns the request processing time in milliseconds below which 90%
+     * of the requests have been processed since resetting the statistics.
+     *
+     * @see #getMedianRequestDurationMsec()
+     * @since 1.1.0
+     */
+    long get90thPercentileRequestDurationMsec();
+
+    /**
+     * Returns the request processing time in milliseconds below which 99%
+     * of the requests have been processed since resetting the statistics.
+     *
+     * @see #getMedianRequestDurationMsec()
+     * @since 1.1.0
+     */
+    long get99thPercentileRequestDurationMsec();
+
+    /**
+     * Returns the request processing time in milliseconds below which 99.9%
+     * of the requests have been processed since resetting the statistics.
+     *
+     * @see #getMedianRequestDurationMsec()
+     * @since 1.1.0
+     */
+    long get999thPercentileRequestDurationMsec();
+
+    /**
+     * Returns the request processing times broken down by HTTP method and
+     * resource type of the request since resetting the statistics. Each row
+     * contains the method, the resource type, the number of requests, the
+     * mean and maximum duration and the median, 90th, 99th and 99.9th
+     * percentile of the duration in milliseconds.
+     *
+     * @see #resetStatistics()
+     * @since 1.1.0
+     */
+    TabularData getRequestDurationsByType();
+
     /**
      * Returns the maximum peak recursive execution depth since last
      * resetting the statistics.
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void test_buckets() {
+        for (long value = 0; value < 100000; value++) {
+            final int bucket = LatencyHistogram.getBucket(value);
+            final long bucketValue = LatencyHistogram.getBucketValue(bucket);
+            assertTrue("Bucket value " + bucketValue + " below " + value, bucketValue >= value);
+            assertTrue("Bucket value " + bucketValue + " too high for " + value, bucketValue <= value + value / 16);
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.getBucketValue(bucket - 1) < value);
+            }
+        }
+        assertEquals(0, LatencyHistogram.getBucket(-1));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void test_percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, LatencyHistogram.getValueAtPercentile(histogram.getCounts(), 50));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertPercentile(500, histogram.getCounts(), 50);
+        assertPercentile(900, histogram.getCounts(), 90);
+        assertPercentile(990, histogram.getCounts(), 99);
+        assertPercentile(999, histogram.getCounts(), 99.9);
+        assertPercentile(1000, histogram.getCounts(), 100);
+        assertEquals(1, LatencyHistogram.getValueAtPercentile(histogram.getCounts(), 0));
+
+        histogram.reset();
+        assertEquals(0, LatencyHistogram.getValueAtPercentile(histogram.getCounts(), 50));
+    }
+
+    @Test
+    public void test_merge() {
+        final LatencyHistogram fast = new LatencyHistogram();
+        final LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            fast.record(10);
+        }
+        slow.record(5000);
+
+        final long[] counts = fast.getCounts();
+        slow.addTo(counts);
+        assertEquals(10, LatencyHistogram.getValueAtPercentile(counts, 99));
+        assertPercentile(5000, counts, 99.9);
+    }
+
+    private void assertPercentile(final long expected, final long[] counts, final double percentile) {
+        final long value = LatencyHistogram.getValueAtPercentile(counts, percentile);
+        assertTrue("Percentile " + percentile + " is " + value + ", expected " + expected,
+            value >= expected && value <= expected + expected / 16);
+    }
+}
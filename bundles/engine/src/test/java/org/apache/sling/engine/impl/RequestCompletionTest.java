@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.sling.api.request.SlingRequestEvent;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.auth.core.AuthenticationSupport;
+import org.apache.sling.engine.impl.helper.RequestListenerManager;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class RequestCompletionTest {
+
+    private static Runnable record(final List<String> runs, final String name) {
+        return new Runnable() {
+            public void run() {
+                runs.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testTasksRunOnceInReverseOrder() {
+        final List<String> runs = new ArrayList<String>();
+        final RequestCompletion completion = new RequestCompletion(null, 0);
+        completion.add(record(runs, "first"));
+        completion.add(record(runs, "second"));
+        assertTrue(runs.isEmpty());
+
+        completion.complete();
+        completion.complete();
+        assertEquals(2, runs.size());
+        assertEquals("second", runs.get(0));
+        assertEquals("first", runs.get(1));
+    }
+
+    @Test
+    public void testTaskAddedAfterCompletionRunsImmediately() {
+        final List<String> runs = new ArrayList<String>();
+        final RequestCompletion completion = new RequestCompletion(null, 0);
+        completion.complete();
+
+        completion.add(record(runs, "late"));
+        assertEquals(1, runs.size());
+        completion.complete();
+        assertEquals(1, runs.size());
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopOthers() {
+        final List<String> runs = new ArrayList<String>();
+        final RequestCompletion completion = new RequestCompletion(null, 0);
+        completion.add(record(runs, "first"));
+        completion.add(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        });
+
+        completion.complete();
+        assertEquals(1, runs.size());
+    }
+
+    @Test
+    public void testConcurrentCompletionRunsTasksOnce() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final RequestCompletion completion = new RequestCompletion(null, 0);
+        completion.add(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException ie) {
+                        return;
+                    }
+                    completion.complete();
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void testSetAsync() {
+        final RequestCompletion completion = new RequestCompletion(null, 10);
+        assertEquals(10, completion.getTimeout());
+        assertFalse(completion.isAsync());
+        assertTrue(completion.setAsync());
+        assertFalse(completion.setAsync());
+        assertTrue(completion.isAsync());
+    }
+
+    @Test
+    public void testGet() {
+        final HttpServletRequest request = createRequest();
+        assertNull(RequestCompletion.get(request));
+        final RequestCompletion completion = new RequestCompletion(null, 0);
+        request.setAttribute(RequestCompletion.ATTR_NAME, completion);
+        assertSame(completion, RequestCompletion.get(request));
+    }
+
+    @Test
+    public void testResolverIsClosedAtTheEndOfSynchronousRequests() throws Throwable {
+        final SlingMainServlet servlet = createServlet();
+        final HttpServletRequest request = createRequest();
+        final ResourceResolver resolver = mock(ResourceResolver.class);
+        request.setAttribute(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER, resolver);
+
+        servlet.service(request, mock(HttpServletResponse.class));
+
+        verify(resolver, times(1)).close();
+        verify(getRequestListenerManager(servlet), times(1)).sendEvent(request, SlingRequestEvent.EventType.EVENT_DESTROY);
+        assertNotNull(RequestCompletion.get(request));
+    }
+
+    @Test
+    public void testResolverIsNotClosedBeforeAsyncDispatchFinishes() throws Throwable {
+        final SlingMainServlet servlet = createServlet();
+        final SlingRequestProcessorImpl processor = (SlingRequestProcessorImpl) PrivateAccessor.getField(servlet, "requestProcessor");
+        final RequestListenerManager listeners = getRequestListenerManager(servlet);
+        final HttpServletRequest request = createRequest();
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // the first cycle starts asynchronous processing
+        final ResourceResolver resolver = mock(ResourceResolver.class);
+        request.setAttribute(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER, resolver);
+        doAnswer(new Answer<Object>() {
+            public Object answer(final InvocationOnMock invocation) {
+                RequestCompletion.get(request).setAsync();
+                return null;
+            }
+        }).when(processor).doProcessRequest(request, response, resolver);
+
+        servlet.service(request, response);
+        final RequestCompletion completion = RequestCompletion.get(request);
+        assertTrue(completion.isAsync());
+        verify(resolver, never()).close();
+        verify(listeners, never()).sendEvent(request, SlingRequestEvent.EventType.EVENT_DESTROY);
+
+        // the request is dispatched again and processed synchronously
+        final ResourceResolver dispatchResolver = mock(ResourceResolver.class);
+        request.setAttribute(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER, dispatchResolver);
+        servlet.service(request, response);
+        verify(dispatchResolver, times(1)).close();
+        verify(resolver, never()).close();
+
+        // the container completes the asynchronous processing
+        final SlingAsyncContext.CompletionListener listener = new SlingAsyncContext.CompletionListener(completion);
+        listener.onComplete(null);
+        listener.onComplete(null);
+        verify(resolver, times(1)).close();
+        verify(listeners, times(2)).sendEvent(request, SlingRequestEvent.EventType.EVENT_DESTROY);
+    }
+
+    private SlingMainServlet createServlet() throws NoSuchFieldException {
+        final SlingMainServlet servlet = new SlingMainServlet();
+        PrivateAccessor.setField(servlet, "requestListenerManager", mock(RequestListenerManager.class));
+        PrivateAccessor.setField(servlet, "requestProcessor", mock(SlingRequestProcessorImpl.class));
+        PrivateAccessor.setField(servlet, "asyncEnabled", true);
+        return servlet;
+    }
+
+    private RequestListenerManager getRequestListenerManager(final SlingMainServlet servlet) throws NoSuchFieldException {
+        return (RequestListenerManager) PrivateAccessor.getField(servlet, "requestListenerManager");
+    }
+
+    private HttpServletRequest createRequest() {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getAttribute(anyString())).thenAnswer(new Answer<Object>() {
+            public Object answer(final InvocationOnMock invocation) {
+                return attributes.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            public Object answer(final InvocationOnMock invocation) {
+                attributes.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(request).setAttribute(anyString(), any());
+        return request;
+    }
+}
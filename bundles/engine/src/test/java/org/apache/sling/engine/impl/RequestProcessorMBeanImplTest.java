@@ -23,6 +23,8 @@ import static org.junit.Assert.*;
 import java.util.Random;
 
 import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
 
 import org.apache.commons.math.stat.descriptive.SummaryStatistics;
 import org.apache.sling.engine.impl.request.RequestData;
@@ -161,6 +163,79 @@ public class RequestProcessorMBeanImplTest {
         assertEquals("After resetStatistics Mean Peak Recursion Depth", bean.getMeanPeakRecursionDepth(), (double)peakRecursionDepthValue, 0d);
     }
 
+    @Test
+    public void test_statistics_by_type() throws NotCompliantMBeanException {
+        final RequestProcessorMBeanImpl bean = new RequestProcessorMBeanImpl();
+        for (int i = 1; i <= 100; i++) {
+            bean.addRequestData(createRequestData("get" + i, i), "GET", "sling/page");
+        }
+        bean.addRequestData(createRequestData("post", 2000), "POST", "sling/page");
+        bean.addRequestData(createRequestData("other", 1), "GET", null);
+        bean.addRequestData(createRequestData("untyped", 1));
+
+        assertEquals(103, bean.getRequestsCount());
+        assertEquals(2000, bean.getMaxRequestDurationMsec());
+        assertTrue(bean.getMedianRequestDurationMsec() >= 50 && bean.getMedianRequestDurationMsec() <= 53);
+        assertTrue(bean.get999thPercentileRequestDurationMsec() >= 2000);
+
+        final TabularData table = bean.getRequestDurationsByType();
+        assertEquals(3, table.size());
+        final CompositeData get = table.get(new Object[] { "GET", "sling/page" });
+        assertEquals(100L, get.get("count"));
+        assertEquals(50.5, (Double) get.get("meanMsec"), 0);
+        assertEquals(100L, get.get("maxMsec"));
+        final CompositeData post = table.get(new Object[] { "POST", "sling/page" });
+        assertEquals(1L, post.get("count"));
+        assertEquals(2000L, post.get("maxMsec"));
+        assertEquals(1L, table.get(new Object[] { "GET", "" }).get("count"));
+
+        bean.resetStatistics();
+        assertEquals(0, bean.getRequestsCount());
+        assertEquals(0, bean.get99thPercentileRequestDurationMsec());
+        assertTrue(bean.getRequestDurationsByType().isEmpty());
+    }
+
+    @Test
+    public void test_limited_types() throws NotCompliantMBeanException {
+        final RequestProcessorMBeanImpl bean = new RequestProcessorMBeanImpl();
+        for (int i = 0; i < RequestProcessorMBeanImpl.MAX_TYPES + 10; i++) {
+            bean.addRequestData(createRequestData("request" + i, 1), "GET", "type" + i);
+        }
+        final TabularData table = bean.getRequestDurationsByType();
+        assertEquals(RequestProcessorMBeanImpl.MAX_TYPES + 1, table.size());
+        assertEquals(10L, table.get(new Object[] { RequestProcessorMBeanImpl.OTHER_TYPE, RequestProcessorMBeanImpl.OTHER_TYPE }).get("count"));
+    }
+
+    @Test
+    public void test_limited_types_with_many_methods() throws NotCompliantMBeanException {
+        final RequestProcessorMBeanImpl bean = new RequestProcessorMBeanImpl();
+        for (int i = 0; i < RequestProcessorMBeanImpl.MAX_TYPES; i++) {
+            bean.addRequestData(createRequestData("request" + i, 1), "GET", "type" + i);
+        }
+        // clients choose the method, these must not add new buckets
+        for (int i = 0; i < 1000; i++) {
+            bean.addRequestData(createRequestData("method" + i, 1), "METHOD" + i, "type" + i);
+        }
+        final TabularData table = bean.getRequestDurationsByType();
+        assertEquals(RequestProcessorMBeanImpl.MAX_TYPES + 1, table.size());
+        assertEquals(1000L, table.get(new Object[] { RequestProcessorMBeanImpl.OTHER_TYPE, RequestProcessorMBeanImpl.OTHER_TYPE }).get("count"));
+    }
+
+    private RequestData createRequestData(final String name, final long duration) {
+        final RequestData requestData = context.mock(RequestData.class, name);
+        context.checking(new Expectations() {{
+            allowing(requestData).getElapsedTimeMsec();
+            will(returnValue(duration));
+
+            allowing(requestData).getServletCallCount();
+            will(returnValue(1));
+
+            allowing(requestData).getPeakRecusionDepth();
+            will(returnValue(1));
+        }});
+        return requestData;
+    }
+
     private void assertAlmostEqual(final String message, final double v1, final double v2, int samples) {
         final double centi = v1 / samples;
         if (v2 < (v1 - centi) || v2 > (v1 + centi)) {
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlingAsyncContextTest {
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private RequestCompletion completion;
+
+    private SlingAsyncContext.CompletionListener listener;
+
+    @Before
+    public void setup() {
+        completion = new RequestCompletion(null, 0);
+        completion.add(new Runnable() {
+            public void run() {
+                completed.incrementAndGet();
+            }
+        });
+        listener = new SlingAsyncContext.CompletionListener(completion);
+    }
+
+    @Test
+    public void testCompletedOnceOnComplete() throws Exception {
+        final AsyncEvent event = new AsyncEvent(mock(AsyncContext.class));
+        listener.onComplete(event);
+        listener.onComplete(event);
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    public void testCompletedOnceOnTimeout() throws Exception {
+        final AsyncEvent event = new AsyncEvent(mock(AsyncContext.class));
+
+        // another listener may still dispatch the request on timeout
+        listener.onTimeout(event);
+        assertEquals(0, completed.get());
+
+        // the container completes the request after notifying the timeout
+        listener.onComplete(event);
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    public void testCompletedOnceOnError() throws Exception {
+        final AsyncEvent event = new AsyncEvent(mock(AsyncContext.class), new IllegalStateException());
+
+        listener.onError(event);
+        assertEquals(0, completed.get());
+
+        listener.onComplete(event);
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    public void testListenerIsAddedOnRestart() throws Exception {
+        final AsyncContext context = mock(AsyncContext.class);
+        listener.onStartAsync(new AsyncEvent(context));
+        verify(context, times(1)).addListener(listener);
+        assertEquals(0, completed.get());
+    }
+
+    @Test
+    public void testDispatchDoesNotComplete() {
+        final AsyncContext delegatee = mock(AsyncContext.class);
+        final SlingAsyncContext context = new SlingAsyncContext(delegatee, null);
+
+        context.dispatch("/path");
+        verify(delegatee, times(1)).dispatch("/path");
+        assertEquals(0, completed.get());
+
+        context.complete();
+        verify(delegatee, times(1)).complete();
+    }
+
+    @Test
+    public void testStartWithContainerThreads() {
+        final AsyncContext delegatee = mock(AsyncContext.class);
+        final Runnable task = mock(Runnable.class);
+
+        new SlingAsyncContext(delegatee, null).start(task);
+        verify(delegatee, times(1)).start(task);
+    }
+
+    @Test
+    public void testStartWithExecutor() {
+        final AsyncContext delegatee = mock(AsyncContext.class);
+        final Executor executor = mock(Executor.class);
+        final Runnable task = mock(Runnable.class);
+
+        new SlingAsyncContext(delegatee, executor).start(task);
+        verify(executor, times(1)).execute(task);
+        verify(delegatee, never()).start(task);
+    }
+}
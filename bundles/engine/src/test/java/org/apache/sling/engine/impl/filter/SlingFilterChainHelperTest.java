@@ -17,6 +17,9 @@
 package org.apache.sling.engine.impl.filter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import javax.servlet.Filter;
 
@@ -50,4 +53,72 @@ public class SlingFilterChainHelperTest {
         assertEquals("3:-100", entries[3].getOrderSource());
         assertEquals("4:-1000", entries[4].getOrderSource());
     }
+
+    @Test public void testPathSelection() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+
+        chain.addFilter(context.mock(Filter.class, "A"), null, 1L, 300, "A");
+        chain.addFilter(context.mock(Filter.class, "B"), "/content/.*", 2L, 200, "B");
+        chain.addFilter(context.mock(Filter.class, "C"), ".*\\.json", 3L, 100, "C");
+
+        FilterHandle[] entries = chain.getFilters("/content/page.html");
+        assertEquals(2, entries.length);
+        assertEquals("A", entries[0].getOrderSource());
+        assertEquals("B", entries[1].getOrderSource());
+
+        entries = chain.getFilters("/content/page.json");
+        assertEquals(3, entries.length);
+        assertSame(chain.getFilters(), entries);
+
+        entries = chain.getFilters(null);
+        assertEquals(1, entries.length);
+        assertEquals("A", entries[0].getOrderSource());
+
+        // paths no patterned filter applies to share the unconditional filters
+        assertSame(entries, chain.getFilters("/"));
+
+        // the index is rebuilt when the filters change
+        chain.removeFilterById(2L);
+        assertEquals(1, chain.getFilters("/content/page.html").length);
+    }
+
+    @Test public void testPrefixIndex() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+
+        chain.addFilter(context.mock(Filter.class, "A"), "/content/site/.*", 1L, 500, "A");
+        chain.addFilter(context.mock(Filter.class, "B"), null, 2L, 400, "B");
+        chain.addFilter(context.mock(Filter.class, "C"), "/content/.*\\.html", 3L, 300, "C");
+        chain.addFilter(context.mock(Filter.class, "D"), "/content/site/.*", 4L, 200, "D");
+        chain.addFilter(context.mock(Filter.class, "E"), ".*\\.json", 5L, 100, "E");
+
+        assertOrderSources(chain.getFilters("/content/site/page.html"), "A", "B", "C", "D");
+        assertOrderSources(chain.getFilters("/content/site/page.json"), "A", "B", "D", "E");
+        assertOrderSources(chain.getFilters("/content/other.html"), "B", "C");
+        assertOrderSources(chain.getFilters("/content"), "B");
+        assertOrderSources(chain.getFilters("/apps/page.json"), "B", "E");
+    }
+
+    private static void assertOrderSources(final FilterHandle[] entries, final String... expected) {
+        assertEquals(expected.length, entries.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], entries[i].getOrderSource());
+        }
+    }
+
+    @Test public void testLiteralPrefix() {
+        assertEquals("/content/", FilterHandle.getLiteralPrefix("/content/.*"));
+        assertEquals("/conten", FilterHandle.getLiteralPrefix("/content?/.*"));
+        assertEquals("/content", FilterHandle.getLiteralPrefix("/content+"));
+        assertEquals("", FilterHandle.getLiteralPrefix(".*\\.json"));
+        assertEquals("", FilterHandle.getLiteralPrefix("(?i)/content/.*"));
+        assertEquals("", FilterHandle.getLiteralPrefix("/apps/.*|/libs/.*"));
+        assertEquals("/bin/foo", FilterHandle.getLiteralPrefix("/bin/foo"));
+    }
+
+    @Test public void testSelect() {
+        final FilterHandle handle = new FilterHandle(context.mock(Filter.class), "/content/[a-z]+\\.html", 1L, 0, "0");
+        assertTrue(handle.select("/content/page.html"));
+        assertFalse(handle.select("/content/page.json"));
+        assertFalse(handle.select("/apps/page.html"));
+    }
 }
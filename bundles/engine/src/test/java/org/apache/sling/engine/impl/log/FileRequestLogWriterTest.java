@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * The <code>FileRequestLogWriterTest</code> class tests the
+ * <code>FileRequestLogWriter</code> class.
+ */
+public class FileRequestLogWriterTest extends TestCase {
+
+    private File logFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        logFile = File.createTempFile("request", ".log");
+        logFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        logFile.delete();
+        super.tearDown();
+    }
+
+    public void testSynchronous() throws IOException {
+        final FileRequestLogWriter writer = new FileRequestLogWriter(logFile, 0, FileRequestLogWriter.OVERFLOW_BLOCK);
+        assertFalse(writer.isAsynchronous());
+
+        writer.write("first");
+        writer.write("second");
+
+        // written without closing
+        assertEquals(2, readLines().size());
+        assertEquals(2, writer.getWrittenCount());
+
+        writer.close();
+        writer.write("ignored");
+        assertEquals(2, readLines().size());
+    }
+
+    public void testAsynchronous() throws Exception {
+        final FileRequestLogWriter writer = new FileRequestLogWriter(logFile, 16, FileRequestLogWriter.OVERFLOW_BLOCK);
+        assertTrue(writer.isAsynchronous());
+        assertEquals(16, writer.getQueueCapacity());
+
+        final int threads = 4;
+        final int messages = 1000;
+        final Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String prefix = "thread" + t + " ";
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        writer.write(prefix + i);
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        for (final Thread t : writers) {
+            t.join();
+        }
+
+        // all queued messages are written on close
+        writer.close();
+
+        final List<String> lines = readLines();
+        assertEquals(threads * messages, lines.size());
+        assertEquals(threads * messages, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(0, writer.getQueueDepth());
+        assertTrue(writer.getBatchCount() > 0);
+
+        // messages of each thread are written in order
+        final int[] next = new int[threads];
+        for (final String line : lines) {
+            final int sep = line.indexOf(' ');
+            final int t = Integer.parseInt(line.substring("thread".length(), sep));
+            assertEquals(next[t]++, Integer.parseInt(line.substring(sep + 1)));
+        }
+    }
+
+    public void testDropCounted() throws Exception {
+        final FileRequestLogWriter writer = new FileRequestLogWriter(logFile, 1, FileRequestLogWriter.OVERFLOW_DROP);
+        assertEquals(FileRequestLogWriter.OVERFLOW_DROP, writer.getOverflowPolicy());
+
+        for (int i = 0; i < 10000; i++) {
+            writer.write("message " + i);
+        }
+        writer.close();
+
+        // every message is either written or dropped
+        assertEquals(10000, writer.getWrittenCount() + writer.getDroppedCount());
+        assertEquals(writer.getWrittenCount(), readLines().size());
+        assertEquals(0, writer.getBlockedCount());
+    }
+
+    public void testCloseWhileQueueIsFull() throws Exception {
+        final FileRequestLogWriter writer = new FileRequestLogWriter(logFile, 1, FileRequestLogWriter.OVERFLOW_BLOCK);
+
+        // request threads keep the queue full and wait for space
+        final int threads = 4;
+        final int messages = 20000;
+        final Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < messages; i++) {
+                        writer.write("message " + i);
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        while (writer.getBlockedCount() == 0) {
+            Thread.sleep(1);
+        }
+
+        writer.close();
+
+        // no request thread waits forever after the writer is closed
+        for (final Thread t : writers) {
+            t.join(10000);
+            assertFalse(t.isAlive());
+        }
+
+        // every message is either written or dropped, none is lost
+        assertEquals(threads * messages, writer.getWrittenCount() + writer.getDroppedCount());
+        assertEquals(writer.getWrittenCount(), readLines().size());
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    private List<String> readLines() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
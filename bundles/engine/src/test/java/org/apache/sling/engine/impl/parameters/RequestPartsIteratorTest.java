@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.RequestContext;
+import org.apache.sling.api.SlingException;
+import org.apache.sling.api.request.RequestParameter;
+
+public class RequestPartsIteratorTest extends TestCase {
+
+    static final String BOUNDARY = "AaB03x";
+
+    /**
+     * Creates a parts iterator over the given multipart body starting with
+     * the first part, as done by the parameter support for the first file.
+     */
+    static RequestPartsIterator createIterator(final String body, final int bufferSize) throws Exception {
+        final FileItemIterator items = new FileUpload().getItemIterator(createRequestContext(body));
+        assertTrue(items.hasNext());
+        return new RequestPartsIterator(items, items.next(), bufferSize);
+    }
+
+    static String filePart(final String name, final String fileName, final String content) {
+        return "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + content + "\r\n";
+    }
+
+    static String fieldPart(final String name, final String value) {
+        return "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + name + "\"\r\n"
+            + "\r\n"
+            + value + "\r\n";
+    }
+
+    static String end() {
+        return "--" + BOUNDARY + "--\r\n";
+    }
+
+    static String read(final RequestParameter part) throws IOException {
+        final InputStream in = part.getInputStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[16];
+            int l;
+            while ((l = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, l);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static RequestContext createRequestContext(final String body) throws UnsupportedEncodingException {
+        // the headers are decoded as ISO-8859-1 and fixed by setEncoding
+        final byte[] content = body.getBytes(Util.ENCODING_DIRECT);
+        return new RequestContext() {
+
+            public String getCharacterEncoding() {
+                return Util.ENCODING_DIRECT;
+            }
+
+            public String getContentType() {
+                return "multipart/form-data; boundary=" + BOUNDARY;
+            }
+
+            public int getContentLength() {
+                return content.length;
+            }
+
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(content);
+            }
+        };
+    }
+
+    public void testPartsInOrder() throws Exception {
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "first")
+            + fieldPart("b", "second")
+            + filePart("c", "c.txt", "third")
+            + end(), 1024);
+
+        assertTrue(parts.hasNext());
+        final RequestParameter a = parts.next();
+        assertEquals("a", a.getName());
+        assertEquals("a.txt", a.getFileName());
+        assertFalse(a.isFormField());
+        assertEquals("first", read(a));
+
+        assertTrue(parts.hasNext());
+        final RequestParameter b = parts.next();
+        assertEquals("b", b.getName());
+        assertTrue(b.isFormField());
+        assertEquals("second", b.getString());
+
+        assertTrue(parts.hasNext());
+        final RequestParameter c = parts.next();
+        assertEquals("c", c.getName());
+        assertEquals("c.txt", c.getFileName());
+        assertEquals("third", read(c));
+
+        assertFalse(parts.hasNext());
+        assertFalse(parts.hasNext());
+    }
+
+    public void testPartSkippedBeforeReadIsBuffered() throws Exception {
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "first")
+            + filePart("b", "b.txt", "second")
+            + end(), 1024);
+
+        final RequestParameter a = parts.next();
+        final RequestParameter b = parts.next();
+        assertEquals("b", b.getName());
+
+        // the content of a has been buffered when the iterator moved on
+        assertEquals(5, a.getSize());
+        assertEquals("first", read(a));
+        assertEquals("first", a.getString());
+        assertEquals("second", read(b));
+    }
+
+    public void testLargePartSkippedBeforeReadCannotBeRead() throws Exception {
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "0123456789")
+            + filePart("b", "b.txt", "second")
+            + end(), 4);
+
+        final RequestParameter a = parts.next();
+        final RequestParameter b = parts.next();
+        assertEquals("second", read(b));
+
+        assertEquals(-1, a.getSize());
+        try {
+            a.getInputStream();
+            fail("Content exceeding the buffer must not be readable");
+        } catch (final IOException expected) {
+            // expected
+        }
+        try {
+            a.get();
+            fail("Content exceeding the buffer must not be readable");
+        } catch (final SlingException expected) {
+            // expected
+        }
+    }
+
+    public void testStreamReadAfterIteratorMovedOn() throws Exception {
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "first")
+            + filePart("b", "b.txt", "second")
+            + end(), 1024);
+
+        final RequestParameter a = parts.next();
+        final InputStream in = a.getInputStream();
+        parts.next();
+
+        // the stream of a has been opened, so it is not buffered but skipped
+        try {
+            in.read();
+            fail("The stream of a previous part must not be readable");
+        } catch (final IOException expected) {
+            // expected
+        }
+        try {
+            a.getInputStream();
+            fail("The stream of a part can only be opened once");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+
+    public void testMalformedBoundary() throws Exception {
+        // the second part is not terminated by a delimiter
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "first")
+            + "--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"b\"; filename=\"b.txt\"\r\n"
+            + "\r\n"
+            + "truncated", 1024);
+
+        assertEquals("first", read(parts.next()));
+        final RequestParameter b = parts.next();
+        try {
+            read(b);
+            fail("A truncated part must not be readable");
+        } catch (final IOException expected) {
+            // expected
+        }
+        try {
+            parts.hasNext();
+            fail("A truncated request must fail");
+        } catch (final SlingException expected) {
+            // expected
+        }
+    }
+
+    public void testTruncatedBeforeNextPart() throws Exception {
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "first")
+            + "--" + BOUNDARY + "\r\nContent-Disp", 1024);
+
+        parts.next();
+        try {
+            parts.hasNext();
+            fail("A truncated request must fail");
+        } catch (final SlingException expected) {
+            assertTrue(expected.getCause() instanceof Exception);
+        }
+    }
+
+    public void testNoSuchElement() throws Exception {
+        final RequestPartsIterator parts = createIterator(filePart("a", "a.txt", "first") + end(), 1024);
+        parts.next();
+        assertFalse(parts.hasNext());
+        try {
+            parts.next();
+            fail("No more parts");
+        } catch (final NoSuchElementException expected) {
+            // expected
+        }
+        try {
+            parts.remove();
+            fail("Parts cannot be removed");
+        } catch (final UnsupportedOperationException expected) {
+            // expected
+        }
+    }
+
+    public void testEncoding() throws Exception {
+        // a-umlaut sent as UTF-8
+        final String name = new String("\u00e4".getBytes("UTF-8"), Util.ENCODING_DIRECT);
+        final RequestPartsIterator parts = createIterator(filePart(name, "a.txt", "first") + end(), 1024);
+        parts.setEncoding("UTF-8");
+        assertEquals("\u00e4", parts.next().getName());
+    }
+}
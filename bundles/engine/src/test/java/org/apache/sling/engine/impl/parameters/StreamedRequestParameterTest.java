@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import static org.apache.sling.engine.impl.parameters.RequestPartsIteratorTest.createIterator;
+import static org.apache.sling.engine.impl.parameters.RequestPartsIteratorTest.end;
+import static org.apache.sling.engine.impl.parameters.RequestPartsIteratorTest.fieldPart;
+import static org.apache.sling.engine.impl.parameters.RequestPartsIteratorTest.filePart;
+import static org.apache.sling.engine.impl.parameters.RequestPartsIteratorTest.read;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class StreamedRequestParameterTest extends TestCase {
+
+    private StreamedRequestParameter first(final String body, final int bufferSize) throws Exception {
+        return (StreamedRequestParameter) createIterator(body, bufferSize).next();
+    }
+
+    public void testSizeIsUnknownUntilRead() throws Exception {
+        final StreamedRequestParameter part = first(filePart("a", "a.txt", "content") + end(), 1024);
+        assertEquals(-1, part.getSize());
+        assertEquals("text/plain", part.getContentType());
+        assertEquals("File: a.txt (streamed)", part.toString());
+
+        assertEquals("content", new String(part.get(), "UTF-8"));
+        assertEquals(7, part.getSize());
+        // the content is kept once it is read into memory
+        assertEquals("content", read(part));
+        assertEquals("content", part.getString("UTF-8"));
+    }
+
+    public void testStreamCanOnlyBeOpenedOnce() throws Exception {
+        final StreamedRequestParameter part = first(filePart("a", "a.txt", "content") + end(), 1024);
+        assertEquals("content", read(part));
+        assertEquals(-1, part.getSize());
+        try {
+            part.getInputStream();
+            fail("The stream of a part can only be opened once");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+
+    public void testBufferWithinLimit() throws Exception {
+        final StreamedRequestParameter part = first(filePart("a", "a.txt", "content") + end(), 7);
+        part.buffer();
+        assertEquals(7, part.getSize());
+        assertEquals("content", read(part));
+        assertEquals("content", read(part));
+    }
+
+    public void testBufferExceedingLimit() throws Exception {
+        final StreamedRequestParameter part = first(filePart("a", "a.txt", "content") + end(), 6);
+        part.buffer();
+        assertEquals(-1, part.getSize());
+        try {
+            part.getInputStream();
+            fail("Content exceeding the buffer must not be readable");
+        } catch (final IOException expected) {
+            // expected
+        }
+    }
+
+    public void testBufferAfterOpenIsNoop() throws Exception {
+        final StreamedRequestParameter part = first(filePart("a", "a.txt", "content") + end(), 1024);
+        part.getInputStream();
+        part.buffer();
+        assertEquals(-1, part.getSize());
+    }
+
+    public void testFormField() throws Exception {
+        final StreamedRequestParameter part = first(fieldPart("a", "value") + end(), 1024);
+        assertTrue(part.isFormField());
+        assertNull(part.getFileName());
+        assertEquals("value", part.toString());
+    }
+}
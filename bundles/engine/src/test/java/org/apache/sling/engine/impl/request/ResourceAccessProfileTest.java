@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ResourceAccessProfileTest {
+
+    @Test
+    public void finish() {
+        final ResourceAccessProfile profile = new ResourceAccessProfile(2);
+        profile.getAccesses().put("getResource /a", new long[] { 2, 1000000 });
+        profile.getAccesses().put("property /a", new long[] { 10, 3000000 });
+        profile.getAccesses().put("getResource /b", new long[] { 1, 5000000 });
+        profile.getAccesses().put("listChildren /c", new long[] { 1, 500000 });
+        assertNull(profile.getTopPaths());
+
+        final SlingRequestProgressTracker tracker = new SlingRequestProgressTracker();
+        profile.finish(tracker);
+
+        final List<ResourceAccessProfile.Entry> paths = profile.getTopPaths();
+        assertEquals(2, paths.size());
+        assertEquals("/b", paths.get(0).getPath());
+        assertEquals(1, paths.get(0).getCalls());
+        assertEquals("/a", paths.get(1).getPath());
+        assertEquals(12, paths.get(1).getCalls());
+        assertEquals(4000000, paths.get(1).getDuration());
+
+        final List<String> messages = getMessages(tracker);
+        assertEquals(3, messages.size());
+        assertTrue(messages.get(0), messages.get(0).contains(
+            "Resource access: 14 calls in 9.5ms (getResource=3/6.0ms, listChildren=1/0.5ms, property=10/3.0ms)"));
+        assertTrue(messages.get(1), messages.get(1).contains("Resource access /b: 1 calls in 5.0ms"));
+        assertTrue(messages.get(2), messages.get(2).contains("Resource access /a: 12 calls in 4.0ms"));
+
+        // only the first call has an effect
+        profile.finish(tracker);
+        assertEquals(3, getMessages(tracker).size());
+    }
+
+    private List<String> getMessages(final SlingRequestProgressTracker tracker) {
+        final List<String> messages = new ArrayList<String>();
+        final Iterator<String> it = tracker.getMessages();
+        while (it.hasNext()) {
+            final String message = it.next();
+            if (message.contains("Resource access")) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
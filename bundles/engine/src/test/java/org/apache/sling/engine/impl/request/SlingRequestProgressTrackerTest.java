@@ -17,6 +17,8 @@
 package org.apache.sling.engine.impl.request;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
 
@@ -26,7 +28,50 @@ public class SlingRequestProgressTrackerTest {
 
     @Test
     public void messageFormatting() {
-        final SlingRequestProgressTracker tracker = new SlingRequestProgressTracker();
+        assertMessages(new SlingRequestProgressTracker());
+    }
+
+    @Test
+    public void deferredMessageFormatting() {
+        assertMessages(new SlingRequestProgressTracker(true, true));
+    }
+
+    @Test
+    public void deferredArgumentsAreCapturedWhenLogged() {
+        final SlingRequestProgressTracker tracker = new SlingRequestProgressTracker(true, true);
+        final StringBuilder mutable = new StringBuilder("before");
+        tracker.log("value {0}, number {1,number,#.0}", mutable, 12);
+        tracker.startTimer("foo");
+        tracker.logTimer("foo", "timer {0}", mutable);
+        // changed after the request, for example a recycled object
+        mutable.setLength(0);
+        mutable.append("after");
+        tracker.done();
+
+        final Iterator<String> messages = tracker.getMessages();
+        messages.next();
+        messages.next();
+        assertEquals("LOG value before, number 12.0\n", messages.next().substring(8));
+        messages.next();
+        assertTrue(messages.next().endsWith("foo} timer before\n"));
+    }
+
+    @Test
+    public void notTracking() {
+        final SlingRequestProgressTracker tracker = new SlingRequestProgressTracker(true, false);
+        tracker.startTimer("foo");
+        tracker.log("one {0}", "eins");
+        tracker.logTimer("foo");
+        tracker.done();
+
+        final Iterator<String> messages = tracker.getMessages();
+        assertTrue(messages.hasNext());
+        assertTrue(messages.next().contains("not tracked"));
+        assertFalse(messages.hasNext());
+        assertTrue(tracker.getDuration() >= 0);
+    }
+
+    private void assertMessages(final SlingRequestProgressTracker tracker) {
         tracker.startTimer("foo");
         tracker.log("one {0}, two {1}, three {2}", "eins", "zwei", "drei");
         tracker.startTimer("bar");
@@ -43,6 +43,14 @@ public class JobBuilderImpl implements JobBuilder {
     }
 
 
+    public String getTopic() {
+        return this.topic;
+    }
+
+    public Map<String, Object> getProperties() {
+        return this.properties;
+    }
+
     @Override
     public JobBuilder properties(final Map<String, Object> props) {
         this.properties = props;
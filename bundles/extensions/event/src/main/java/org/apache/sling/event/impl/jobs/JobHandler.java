@@ -123,20 +123,18 @@ public class JobHandler {
                     String newPath = null;
                     if ( keepJobInHistory ) {
                         final ValueMap vm = ResourceHelper.getValueMap(jobResource);
-                        newPath = this.configuration.getStoragePath(job.getTopic(), job.getId(), isSuccess);
                         final Map<String, Object> props = new HashMap<String, Object>(vm);
                         props.put(JobImpl.PROPERTY_FINISHED_STATE, state.name());
+                        final Calendar finishCal = Calendar.getInstance();
                         if ( isSuccess ) {
                             // we set the finish date to start date + duration
                             final Date finishDate = new Date();
                             finishDate.setTime(job.getProcessingStarted().getTime().getTime() + duration);
-                            final Calendar finishCal = Calendar.getInstance();
                             finishCal.setTime(finishDate);
-                            props.put(JobImpl.PROPERTY_FINISHED_DATE, finishCal);
-                        } else {
-                            // current time is good enough
-                            props.put(JobImpl.PROPERTY_FINISHED_DATE, Calendar.getInstance());
                         }
+                        // otherwise the current time is good enough
+                        props.put(JobImpl.PROPERTY_FINISHED_DATE, finishCal);
+                        newPath = this.configuration.getStoragePath(job.getTopic(), job.getId(), isSuccess, finishCal);
                         if ( job.getProperty(Job.PROPERTY_RESULT_MESSAGE) != null ) {
                             props.put(Job.PROPERTY_RESULT_MESSAGE, job.getProperty(Job.PROPERTY_RESULT_MESSAGE));
                         }
@@ -22,9 +22,13 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -95,6 +99,26 @@ public class JobManagerImpl
     /** Default logger. */
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * The maximum number of jobs persisted with a single commit by {@link #addJobs(Collection, List)}.
+     * Larger chunks save little per job once the cost of writing the nodes outweighs
+     * the fixed cost of a commit, but keep more pending changes in the resolver.
+     */
+    private static final int MAX_JOBS_PER_COMMIT = 500;
+
+    /**
+     * The time a known lock is remembered after its creation. Locks are
+     * removed two minutes after their creation, half of it leaves enough
+     * room for clock differences in the cluster.
+     */
+    private static final long KNOWN_LOCK_TIME = 60 * 1000;
+
+    /** The maximum number of known locks before expired ones are purged. */
+    private static final int MAX_KNOWN_LOCKS = 1000;
+
+    /** Locks known to exist: key: topic and name, value: remembered until. */
+    private final ConcurrentMap<String, Long> knownLocks = new ConcurrentHashMap<String, Long>();
+
     @Reference
     private EventAdmin eventAdmin;
 
@@ -520,7 +544,23 @@ public class JobManagerImpl
         final ResourceResolver resolver = this.configuration.createResourceResolver();
         final StringBuilder buf = new StringBuilder(64);
         try {
-
+            // restrict history queries to the history or one of its topic buckets
+            if ( isHistoryQuery && !this.configuration.hasPreviousVersionHistory() ) {
+                final String historyPath;
+                if ( type == QueryType.HISTORY ) {
+                    historyPath = this.configuration.getHistoryJobsPath();
+                } else if ( type == QueryType.SUCCEEDED ) {
+                    historyPath = this.configuration.getStoredSuccessfulJobsPath();
+                } else {
+                    historyPath = this.configuration.getStoredCancelledJobsPath();
+                }
+                buf.append("/jcr:root");
+                buf.append(ISO9075.encodePath(historyPath));
+                if ( topic != null && type != QueryType.HISTORY ) {
+                    buf.append('/');
+                    buf.append(ISO9075.encodePath(topic.replace('/', '.')));
+                }
+            }
             buf.append("//element(*,");
             buf.append(ResourceHelper.RESOURCE_TYPE_JOB);
             buf.append(")[@");
@@ -679,12 +719,24 @@ public class JobManagerImpl
 
     /**
      * Try to get a "lock" for a resource
+     * Existing locks are remembered for a minute, so repeated attempts
+     * for the same name do not need to access the resource tree.
      */
     private boolean lock(final String jobTopic, final String id) {
         if ( logger.isDebugEnabled() ) {
             logger.debug("Trying to get lock for {}", id);
         }
+        final String lockKey = jobTopic + '/' + id;
+        final Long knownUntil = this.knownLocks.get(lockKey);
+        if ( knownUntil != null ) {
+            if ( knownUntil > System.currentTimeMillis() ) {
+                logger.debug("Lock for {} is already taken", id);
+                return false;
+            }
+            this.knownLocks.remove(lockKey, knownUntil);
+        }
         boolean hasLock = false;
+        long lockCreated = -1;
         final ResourceResolver resolver = this.configuration.createResourceResolver();
         try {
             final String lockName = ResourceHelper.filterName(id);
@@ -696,7 +748,11 @@ public class JobManagerImpl
             final String path = sb.toString();
 
             Resource lockResource = resolver.getResource(path);
-            if ( lockResource == null ) {
+            if ( lockResource != null ) {
+                final ValueMap vm = lockResource.adaptTo(ValueMap.class);
+                final Calendar created = (vm == null ? null : vm.get(Utility.PROPERTY_LOCK_CREATED, Calendar.class));
+                lockCreated = (created == null ? System.currentTimeMillis() : created.getTimeInMillis());
+            } else {
                 resolver.refresh();
                 try {
                     final Map<String, Object> props = new HashMap<String, Object>();
@@ -724,6 +780,8 @@ public class JobManagerImpl
                             hasLock = true;
                         }
                     }
+                    // either way, the lock exists now
+                    lockCreated = System.currentTimeMillis();
                 } catch (final PersistenceException ignore) {
                     // ignore
                 }
@@ -731,12 +789,33 @@ public class JobManagerImpl
         } finally {
             resolver.close();
         }
+        if ( lockCreated != -1 ) {
+            this.rememberLock(lockKey, lockCreated + KNOWN_LOCK_TIME);
+        }
         if ( logger.isDebugEnabled() ) {
             logger.debug("Lock for {} = {}", id, hasLock);
         }
         return hasLock;
     }
 
+    /**
+     * Remember an existing lock, expired locks are purged if too many are known.
+     */
+    private void rememberLock(final String lockKey, final long until) {
+        final long now = System.currentTimeMillis();
+        if ( until > now ) {
+            if ( this.knownLocks.size() >= MAX_KNOWN_LOCKS ) {
+                final Iterator<Map.Entry<String, Long>> iter = this.knownLocks.entrySet().iterator();
+                while ( iter.hasNext() ) {
+                    if ( iter.next().getValue() <= now ) {
+                        iter.remove();
+                    }
+                }
+            }
+            this.knownLocks.put(lockKey, until);
+        }
+    }
+
     /**
      * Persist the job in the resource tree
      * @param jobTopic The required job topic
@@ -770,7 +849,8 @@ public class JobManagerImpl
                         jobTopic,
                         jobName,
                         jobProperties,
-                        info);
+                        info,
+                        true);
                 if ( info.targetId != null ) {
                     this.configuration.getAuditLogger().debug("ASSIGN OK {} : {}",
                             info.targetId, job.getId());
@@ -778,6 +858,7 @@ public class JobManagerImpl
                     this.configuration.getAuditLogger().debug("UNASSIGN OK : {}",
                             job.getId());
                 }
+                this.passToQueue(info, job);
                 return job;
             } catch (final PersistenceException re ) {
                 // something went wrong, so let's log it
@@ -792,18 +873,35 @@ public class JobManagerImpl
         return null;
     }
 
+    /**
+     * Pass a local job directly to its queue - if the queue exists.
+     * @return The queue or <code>null</code>
+     */
+    private JobQueueImpl passToQueue(final QueueInfo info, final JobImpl job) {
+        if ( this.configuration.isLocalJob(job.getResourcePath()) ) {
+            final JobQueueImpl queue = (JobQueueImpl)this.qManager.getQueue(info.queueName);
+            if ( queue != null && queue.getConfiguration() == info.queueConfiguration ) {
+                queue.jobAdded(job);
+                return queue;
+            }
+        }
+        return null;
+    }
+
     /**
      * Write a job to the resource tree.
      * @param resolver The resolver resolver
      * @param event The event
      * @param info The queue information (queue name etc.)
+     * @param autoCommit Whether the job is committed
      * @throws PersistenceException
      */
     private JobImpl writeJob(final ResourceResolver resolver,
             final String jobTopic,
             final String jobName,
             final Map<String, Object> jobProperties,
-            final QueueInfo info)
+            final QueueInfo info,
+            final boolean autoCommit)
     throws PersistenceException {
         final String jobId = this.configuration.getUniqueId(jobTopic);
         final String path = this.configuration.getUniquePath(info.targetId, jobTopic, jobId, jobProperties);
@@ -845,7 +943,8 @@ public class JobManagerImpl
         }
         ResourceHelper.getOrCreateResource(resolver,
                 path,
-                properties);
+                properties,
+                autoCommit);
 
         // update property types - priority, add path and create job
         properties.put(JobImpl.PROPERTY_RESOURCE_PATH, path);
@@ -887,6 +986,117 @@ public class JobManagerImpl
         return new JobBuilderImpl(this, topic);
     }
 
+    /**
+     * @see org.apache.sling.event.jobs.JobManager#addJobs(java.util.Collection, java.util.List)
+     */
+    @Override
+    public List<Job> addJobs(final Collection<JobBuilder> jobs, final List<String> errors) {
+        final List<Job> result = new ArrayList<Job>(jobs.size());
+        final List<JobBuilderImpl> chunk = new ArrayList<JobBuilderImpl>();
+        final List<Integer> chunkPositions = new ArrayList<Integer>();
+        for(final JobBuilder builder : jobs) {
+            result.add(null);
+            if ( !(builder instanceof JobBuilderImpl) ) {
+                final String errorMessage = "Job builder has not been created by this job manager : " + builder;
+                logger.warn("{}", errorMessage);
+                if ( errors != null ) {
+                    errors.add(errorMessage);
+                }
+                continue;
+            }
+            final JobBuilderImpl jb = (JobBuilderImpl)builder;
+            final String errorMessage = Utility.checkJob(jb.getTopic(), jb.getProperties());
+            if ( errorMessage != null ) {
+                logger.warn("{}", errorMessage);
+                if ( errors != null ) {
+                    errors.add(errorMessage);
+                }
+                this.configuration.getAuditLogger().debug("ADD FAILED topic={}, properties={} : {}",
+                        new Object[] {jb.getTopic(),
+                                      jb.getProperties(),
+                                      errorMessage});
+                continue;
+            }
+            chunk.add(jb);
+            chunkPositions.add(result.size() - 1);
+            if ( chunk.size() == MAX_JOBS_PER_COMMIT ) {
+                this.addJobsInternal(chunk, chunkPositions, result, errors);
+                chunk.clear();
+                chunkPositions.clear();
+            }
+        }
+        if ( !chunk.isEmpty() ) {
+            this.addJobsInternal(chunk, chunkPositions, result, errors);
+        }
+        return result;
+    }
+
+    /**
+     * Persist a chunk of valid jobs with a single commit.
+     * If the commit fails, the jobs are added one by one to find out which of them fail.
+     * @param chunk The job builders
+     * @param positions The positions of the job builders in the result
+     * @param result The result list
+     * @param errors Optional list which will be filled with error messages.
+     */
+    private void addJobsInternal(final List<JobBuilderImpl> chunk,
+            final List<Integer> positions,
+            final List<Job> result,
+            final List<String> errors) {
+        final TopologyCapabilities caps = this.configuration.getTopologyCapabilities();
+        final List<JobImpl> written = new ArrayList<JobImpl>();
+        final List<QueueInfo> infos = new ArrayList<QueueInfo>();
+
+        final ResourceResolver resolver = this.configuration.createResourceResolver();
+        try {
+            try {
+                for(final JobBuilderImpl jb : chunk) {
+                    final QueueInfo info = this.configuration.getQueueConfigurationManager().getQueueInfo(jb.getTopic());
+                    info.targetId = (caps == null ? null : caps.detectTarget(jb.getTopic(), jb.getProperties(), info));
+                    written.add(this.writeJob(resolver, jb.getTopic(), null, jb.getProperties(), info, false));
+                    infos.add(info);
+                }
+                resolver.commit();
+            } catch (final PersistenceException pe) {
+                this.logger.warn("Unable to persist " + chunk.size() + " jobs with a single commit, adding them one by one.", pe);
+                resolver.revert();
+                for(int i=0; i<chunk.size(); i++) {
+                    final JobBuilderImpl jb = chunk.get(i);
+                    result.set(positions.get(i), this.addJob(jb.getTopic(), null, jb.getProperties(), errors));
+                }
+                return;
+            }
+        } finally {
+            resolver.close();
+        }
+
+        // pass the jobs to the queues, each queue is started once
+        final Set<JobQueueImpl> queues = new HashSet<JobQueueImpl>();
+        for(int i=0; i<written.size(); i++) {
+            final JobImpl job = written.get(i);
+            final QueueInfo info = infos.get(i);
+            if ( info.targetId != null ) {
+                this.configuration.getAuditLogger().debug("ASSIGN OK {} : {}",
+                        info.targetId, job.getId());
+            } else {
+                this.configuration.getAuditLogger().debug("UNASSIGN OK : {}",
+                        job.getId());
+            }
+            this.configuration.getAuditLogger().debug("ADD OK topic={}, properties={} : {}",
+                    new Object[] {job.getTopic(),
+                                  chunk.get(i).getProperties(),
+                                  job.getId()});
+            result.set(positions.get(i), job);
+            final JobQueueImpl queue = this.passToQueue(info, job);
+            if ( queue != null ) {
+                queues.add(queue);
+            }
+        }
+        for(final JobQueueImpl queue : queues) {
+            queue.startJobs();
+        }
+    }
+
     /**
      * @see org.apache.sling.event.jobs.JobManager#getScheduledJobs()
      */
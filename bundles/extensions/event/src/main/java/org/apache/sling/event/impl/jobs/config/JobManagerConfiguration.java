@@ -24,6 +24,7 @@ import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -101,6 +102,9 @@ public class JobManagerConfiguration implements TopologyEventListener {
     /** Default resource path for scheduled jobs. */
     public static final String DEFAULT_SCHEDULED_JOBS_PATH = "/var/eventing/scheduled-jobs";
 
+    /** The time zone used for the buckets of the job history. */
+    public static final TimeZone HISTORY_TIME_ZONE = TimeZone.getTimeZone("UTC");
+
     /** The path where all jobs are stored. */
     public static final String PROPERTY_REPOSITORY_PATH = "repository.path";
 
@@ -147,14 +151,27 @@ public class JobManagerConfiguration implements TopologyEventListener {
     /** The base path for locks - ending with a slash. */
     private String locksPathWithSlash;
 
+    /** The base path for the partition leases. */
+    private String leasesPath;
+
     private long backgroundLoadDelay;
 
     private boolean disabledDistribution;
 
+    /** The base path for the job history. */
+    private String historyJobsPath;
+
     private String storedCancelledJobsPath;
 
     private String storedSuccessfulJobsPath;
 
+    private String previousVersionCancelledJobsPath;
+
+    private String previousVersionSuccessfulJobsPath;
+
+    /** Is there still history from previous versions? Once cleared, this is never set again. */
+    private volatile boolean previousVersionHistory = true;
+
     /** The resource path where scheduled jobs are stored. */
     private String scheduledJobsPath;
 
@@ -201,6 +218,7 @@ public class JobManagerConfiguration implements TopologyEventListener {
         this.unassignedJobsPath = this.jobsBasePathWithSlash + "unassigned";
         this.locksPath = this.jobsBasePathWithSlash + "locks";
         this.locksPathWithSlash = this.locksPath.concat("/");
+        this.leasesPath = this.jobsBasePathWithSlash + "leases";
 
         this.localJobsPath = this.assignedJobsPath.concat("/").concat(Environment.APPLICATION_ID);
         this.localJobsPathWithSlash = this.localJobsPath.concat("/");
@@ -208,8 +226,12 @@ public class JobManagerConfiguration implements TopologyEventListener {
         this.previousVersionAnonPath = this.jobsBasePathWithSlash + "anon";
         this.previousVersionIdentifiedPath = this.jobsBasePathWithSlash + "identified";
 
-        this.storedCancelledJobsPath = this.jobsBasePathWithSlash + "cancelled";
-        this.storedSuccessfulJobsPath = this.jobsBasePathWithSlash + "finished";
+        this.historyJobsPath = this.jobsBasePathWithSlash + "history";
+        this.storedCancelledJobsPath = this.historyJobsPath + "/cancelled";
+        this.storedSuccessfulJobsPath = this.historyJobsPath + "/finished";
+
+        this.previousVersionCancelledJobsPath = this.jobsBasePathWithSlash + "cancelled";
+        this.previousVersionSuccessfulJobsPath = this.jobsBasePathWithSlash + "finished";
 
         this.scheduledJobsPath = PropertiesUtil.toString(props.get(PROPERTY_SCHEDULED_JOBS_PATH),
             DEFAULT_SCHEDULED_JOBS_PATH);
@@ -221,12 +243,14 @@ public class JobManagerConfiguration implements TopologyEventListener {
             ResourceHelper.getOrCreateBasePath(resolver, this.getLocalJobsPath());
             ResourceHelper.getOrCreateBasePath(resolver, this.getUnassignedJobsPath());
             ResourceHelper.getOrCreateBasePath(resolver, this.getLocksPath());
+            ResourceHelper.getOrCreateBasePath(resolver, this.getLeasesPath());
         } catch ( final PersistenceException pe ) {
             logger.error("Unable to create default paths: " + pe.getMessage(), pe);
             throw new RuntimeException(pe);
         } finally {
             resolver.close();
         }
+        this.checkPreviousVersionHistory();
         this.active.set(true);
         this.queueConfigManager.addListener(this);
     }
@@ -327,6 +351,14 @@ public class JobManagerConfiguration implements TopologyEventListener {
         return this.locksPath;
     }
 
+    /**
+     * Get the resource path for the partition leases
+     * @return The path - does not end with a slash
+     */
+    public String getLeasesPath() {
+        return this.leasesPath;
+    }
+
     /** Counter for jobs without an id. */
     private final AtomicLong jobCounter = new AtomicLong(0);
 
@@ -401,6 +433,64 @@ public class JobManagerConfiguration implements TopologyEventListener {
         return this.disabledDistribution;
     }
 
+    /**
+     * Get the history path for cancelled jobs of versions which did not
+     * bucket the history by finish time. These jobs are moved to the
+     * history by the {@link org.apache.sling.event.impl.jobs.tasks.UpgradeTask}.
+     */
+    public String getPreviousVersionCancelledJobsPath() {
+        return this.previousVersionCancelledJobsPath;
+    }
+
+    /**
+     * Get the history path for successful jobs of versions which did not
+     * bucket the history by finish time.
+     * @see #getPreviousVersionCancelledJobsPath()
+     */
+    public String getPreviousVersionSuccessfulJobsPath() {
+        return this.previousVersionSuccessfulJobsPath;
+    }
+
+    /**
+     * Is there still history from previous versions which has not been
+     * moved by the {@link org.apache.sling.event.impl.jobs.tasks.UpgradeTask}?
+     * As long as this is the case, history queries can't be restricted to
+     * the {@link #getHistoryJobsPath()}.
+     */
+    public boolean hasPreviousVersionHistory() {
+        return this.previousVersionHistory;
+    }
+
+    /**
+     * Check whether the history roots of previous versions are gone
+     * and update {@link #hasPreviousVersionHistory()} accordingly.
+     * Once the roots are gone, this method does not access the repository anymore.
+     */
+    public void checkPreviousVersionHistory() {
+        if ( this.previousVersionHistory ) {
+            final ResourceResolver resolver = this.createResourceResolver();
+            if ( resolver != null ) {
+                try {
+                    if ( resolver.getResource(this.previousVersionSuccessfulJobsPath) == null
+                         && resolver.getResource(this.previousVersionCancelledJobsPath) == null ) {
+                        this.previousVersionHistory = false;
+                    }
+                } finally {
+                    resolver.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the base path of the job history containing both, the
+     * {@link #getStoredSuccessfulJobsPath()} and the
+     * {@link #getStoredCancelledJobsPath()}.
+     */
+    public String getHistoryJobsPath() {
+        return this.historyJobsPath;
+    }
+
     public String getStoredCancelledJobsPath() {
         return this.storedCancelledJobsPath;
     }
@@ -411,23 +501,45 @@ public class JobManagerConfiguration implements TopologyEventListener {
 
     /**
      * Get the storage path for finished jobs.
+     * The history is bucketed by topic and by the hour the job has been
+     * finished: {@code <base>/<topic>/<year>/<month>/<day>/<hour>/<job>}.
+     * The buckets are calculated in {@link #HISTORY_TIME_ZONE}, as a local
+     * time zone would merge the repeated hour of a daylight saving time switch
+     * into a single bucket.
+     * As a bucket does not get any new jobs once its hour is over, the
+     * history clean up can remove complete buckets instead of single jobs.
      * @param topic Topic of the finished job
      * @param jobId The job id of the finished job.
      * @param isSuccess Whether processing was successful or not
+     * @param finishedDate The finish date of the job
      * @return The complete storage path
      */
-    public String getStoragePath(final String topic, final String jobId, final boolean isSuccess) {
+    public String getStoragePath(final String topic,
+            final String jobId,
+            final boolean isSuccess,
+            final Calendar finishedDate) {
         final String topicName = topic.replace('/', '.');
+        final String jobName = jobId.substring(jobId.lastIndexOf('/') + 1);
         final StringBuilder sb = new StringBuilder();
         if ( isSuccess ) {
             sb.append(this.storedSuccessfulJobsPath);
         } else {
             sb.append(this.storedCancelledJobsPath);
         }
+        final Calendar bucket = Calendar.getInstance(HISTORY_TIME_ZONE);
+        bucket.setTimeInMillis(finishedDate.getTimeInMillis());
         sb.append('/');
         sb.append(topicName);
         sb.append('/');
-        sb.append(jobId);
+        sb.append(bucket.get(Calendar.YEAR));
+        sb.append('/');
+        sb.append(bucket.get(Calendar.MONTH) + 1);
+        sb.append('/');
+        sb.append(bucket.get(Calendar.DAY_OF_MONTH));
+        sb.append('/');
+        sb.append(bucket.get(Calendar.HOUR_OF_DAY));
+        sb.append('/');
+        sb.append(jobName);
 
         return sb.toString();
 
@@ -437,7 +549,10 @@ public class JobManagerConfiguration implements TopologyEventListener {
      * Check whether this is a storage path.
      */
     public boolean isStoragePath(final String path) {
-        return path.startsWith(this.storedCancelledJobsPath) || path.startsWith(this.storedSuccessfulJobsPath);
+        return path.startsWith(this.storedCancelledJobsPath)
+            || path.startsWith(this.storedSuccessfulJobsPath)
+            || path.startsWith(this.previousVersionCancelledJobsPath)
+            || path.startsWith(this.previousVersionSuccessfulJobsPath);
     }
 
     /**
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.config;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.impl.jobs.Utility;
+import org.apache.sling.event.impl.support.Environment;
+import org.apache.sling.event.impl.support.ResourceHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lease based ownership of partitions.
+ *
+ * Names are hashed into {@link #PARTITIONS} partitions. Callers should use
+ * a key per unit of work, like a single lock, rather than a shared one like
+ * the topic, as a few busy topics would otherwise end up in a few partitions
+ * and on a few instances. Each instance of the
+ * local cluster gets an equal range of the partitions assigned, based on the
+ * sorted sling IDs of the cluster. The partitions an instance owns are
+ * recorded together with an expiry date in a single lease resource per
+ * instance below {@link JobManagerConfiguration#getLeasesPath()}. The lease
+ * is renewed with one write per maintenance run.
+ *
+ * A partition is only taken if no other instance holds an unexpired lease
+ * for it. If the topology changes, the previous owner gives up the partition
+ * with its next renewal; if an instance dies, its partitions are taken over
+ * once its lease has expired.
+ *
+ * During a topology change two instances might own a partition for a short
+ * time, therefore the ownership should only be used for work which can be
+ * done twice.
+ */
+public class PartitionLeases {
+
+    /** The number of partitions - one bit of a long per partition. */
+    public static final int PARTITIONS = Long.SIZE;
+
+    /** The time a lease is valid - three maintenance runs. */
+    public static final long LEASE_TIME = 3 * 60 * 1000;
+
+    /** Property containing the bit mask of the leased partitions. */
+    private static final String PROPERTY_LEASE_PARTITIONS = "lease.partitions";
+
+    /** Property containing the expiry date of the lease. */
+    private static final String PROPERTY_LEASE_EXPIRES = "lease.expires";
+
+    /** Logger. */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /** Job manager configuration. */
+    private final JobManagerConfiguration configuration;
+
+    /** The current lease. */
+    private volatile Lease lease;
+
+    /**
+     * Constructor
+     * @param configuration The job manager configuration
+     */
+    public PartitionLeases(final JobManagerConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Get the partition for a name.
+     * The hash code is mixed first, so names which only differ in a few
+     * characters are spread over all partitions.
+     * @param name The name
+     * @return The partition
+     */
+    public static int getPartition(final String name) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & 0x7FFFFFFF) % PARTITIONS;
+    }
+
+    /**
+     * Check whether this instance currently holds the lease for the partition
+     * of the name.
+     * @param name The name
+     * @return {@code true} if this instance owns the partition.
+     */
+    public boolean isOwner(final String name) {
+        final Lease current = this.lease;
+        return current != null
+            && current.expires > System.currentTimeMillis()
+            && (current.partitions & (1L << getPartition(name))) != 0;
+    }
+
+    /**
+     * Renew the lease of this instance.
+     * The partitions of this instance are taken unless leased by another
+     * instance and the lease is written with a single commit.
+     * @param caps The current topology capabilities
+     */
+    public void renew(final TopologyCapabilities caps) {
+        final List<String> instances = caps.getLocalClusterInstances();
+        final int index = instances.indexOf(Environment.APPLICATION_ID);
+        long partitions = 0;
+        if ( index != -1 ) {
+            final int from = index * PARTITIONS / instances.size();
+            final int to = (index + 1) * PARTITIONS / instances.size();
+            for(int i = from; i < to; i++) {
+                partitions |= 1L << i;
+            }
+        }
+
+        final ResourceResolver resolver = this.configuration.createResourceResolver();
+        if ( resolver == null ) {
+            return;
+        }
+        try {
+            final long now = System.currentTimeMillis();
+            final Resource leasesResource = resolver.getResource(this.configuration.getLeasesPath());
+            Resource ownResource = null;
+            if ( leasesResource != null ) {
+                for(final Resource leaseResource : leasesResource.getChildren()) {
+                    if ( leaseResource.getName().equals(Environment.APPLICATION_ID) ) {
+                        ownResource = leaseResource;
+                        continue;
+                    }
+                    final ValueMap vm = ResourceUtil.getValueMap(leaseResource);
+                    final Calendar expires = vm.get(PROPERTY_LEASE_EXPIRES, Calendar.class);
+                    if ( expires != null && expires.getTimeInMillis() > now ) {
+                        partitions &= ~vm.get(PROPERTY_LEASE_PARTITIONS, 0L);
+                    } else if ( caps.isLeader()
+                                && (expires == null || expires.getTimeInMillis() + LEASE_TIME < now) ) {
+                        // remove leases of instances which are gone
+                        resolver.delete(leaseResource);
+                    }
+                }
+            }
+
+            final Calendar expires = Calendar.getInstance();
+            expires.setTimeInMillis(now + LEASE_TIME);
+            if ( ownResource == null ) {
+                final Map<String, Object> props = new HashMap<String, Object>();
+                props.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, Utility.RESOURCE_TYPE_LEASE);
+                props.put(PROPERTY_LEASE_PARTITIONS, partitions);
+                props.put(PROPERTY_LEASE_EXPIRES, expires);
+                ResourceHelper.getOrCreateResource(resolver,
+                        this.configuration.getLeasesPath() + '/' + Environment.APPLICATION_ID,
+                        props,
+                        false);
+            } else {
+                final ModifiableValueMap mvm = ownResource.adaptTo(ModifiableValueMap.class);
+                mvm.put(PROPERTY_LEASE_PARTITIONS, partitions);
+                mvm.put(PROPERTY_LEASE_EXPIRES, expires);
+            }
+            resolver.commit();
+            this.lease = new Lease(partitions, now + LEASE_TIME);
+            logger.debug("Renewed lease for partitions {}", Long.toBinaryString(partitions));
+        } catch ( final PersistenceException pe ) {
+            // the current lease is kept until it expires
+            logger.warn("Unable to renew partition lease.", pe);
+        } finally {
+            resolver.close();
+        }
+    }
+
+    /**
+     * Give up the lease locally.
+     */
+    public void release() {
+        this.lease = null;
+    }
+
+    /** An immutable lease. */
+    private static final class Lease {
+
+        public final long partitions;
+
+        public final long expires;
+
+        public Lease(final long partitions, final long expires) {
+            this.partitions = partitions;
+            this.expires = expires;
+        }
+    }
+}
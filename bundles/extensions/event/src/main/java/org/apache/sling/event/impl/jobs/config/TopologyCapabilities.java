@@ -72,6 +72,9 @@ public class TopologyCapabilities {
     /** Topology view. */
     private final TopologyView view;
 
+    /** The sorted sling IDs of the instances of the local cluster. */
+    private final List<String> localClusterInstances;
+
     public static final class InstanceDescriptionComparator implements Comparator<InstanceDescription> {
 
         private final String localClusterId;
@@ -149,6 +152,12 @@ public class TopologyCapabilities {
         }
         this.instanceCapabilities = newCaps;
         this.view = view;
+        final List<String> clusterInstances = new ArrayList<String>();
+        for(final InstanceDescription desc : view.getLocalInstance().getClusterView().getInstances() ) {
+            clusterInstances.add(desc.getSlingId());
+        }
+        Collections.sort(clusterInstances);
+        this.localClusterInstances = Collections.unmodifiableList(clusterInstances);
     }
 
     /**
@@ -327,4 +336,13 @@ public class TopologyCapabilities {
     public Map<String, List<InstanceDescription>> getInstanceCapabilities() {
         return this.instanceCapabilities;
     }
+
+    /**
+     * Get the instances of the local cluster. These instances share
+     * the repository with the current instance.
+     * @return The sorted list of sling IDs.
+     */
+    public List<String> getLocalClusterInstances() {
+        return this.localClusterInstances;
+    }
 }
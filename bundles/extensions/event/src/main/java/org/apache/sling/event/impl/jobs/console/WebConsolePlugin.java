@@ -44,6 +44,9 @@ import org.apache.sling.event.impl.jobs.JobConsumerManager;
 import org.apache.sling.event.impl.jobs.config.InternalQueueConfiguration;
 import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
 import org.apache.sling.event.impl.jobs.config.TopologyCapabilities;
+import org.apache.sling.event.impl.jobs.stats.Histogram;
+import org.apache.sling.event.impl.jobs.stats.StatisticsImpl;
+import org.apache.sling.event.impl.jobs.stats.TopicStatisticsImpl;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.Queue;
@@ -221,6 +224,10 @@ public class WebConsolePlugin extends HttpServlet implements JobConsumer {
         pw.printf("<tr><td>Processed Jobs</td><td>%s</td></tr>", s.getNumberOfProcessedJobs());
         pw.printf("<tr><td>Average Processing Time</td><td>%s</td></tr>", formatTime(s.getAverageProcessingTime()));
         pw.printf("<tr><td>Average Waiting Time</td><td>%s</td></tr>", formatTime(s.getAverageWaitingTime()));
+        if ( s instanceof StatisticsImpl ) {
+            pw.printf("<tr><td>Processing Time Percentiles</td><td>%s</td></tr>", formatPercentiles(((StatisticsImpl)s).getProcessingTimes()));
+            pw.printf("<tr><td>Waiting Time Percentiles</td><td>%s</td></tr>", formatPercentiles(((StatisticsImpl)s).getWaitingTimes()));
+        }
         pw.println("</tbody></table>");
         pw.println("<br/>");
 
@@ -322,6 +329,10 @@ public class WebConsolePlugin extends HttpServlet implements JobConsumer {
             pw.printf("<tr><td>Processed Jobs</td><td>%s</td><td colspan='2'>&nbsp</td></tr>", s.getNumberOfProcessedJobs());
             pw.printf("<tr><td>Average Processing Time</td><td>%s</td><td colspan='2'>&nbsp</td></tr>", formatTime(s.getAverageProcessingTime()));
             pw.printf("<tr><td>Average Waiting Time</td><td>%s</td><td colspan='2'>&nbsp</td></tr>", formatTime(s.getAverageWaitingTime()));
+            if ( s instanceof StatisticsImpl ) {
+                pw.printf("<tr><td>Processing Time Percentiles</td><td>%s</td><td colspan='2'>&nbsp</td></tr>", formatPercentiles(((StatisticsImpl)s).getProcessingTimes()));
+                pw.printf("<tr><td>Waiting Time Percentiles</td><td>%s</td><td colspan='2'>&nbsp</td></tr>", formatPercentiles(((StatisticsImpl)s).getWaitingTimes()));
+            }
             pw.printf("<tr><td>Status Info</td><td colspan='3'>%s</td></tr>", ResponseUtil.escapeXml(q.getStateInfo()));
             pw.println("</tbody></table>");
             pw.println("<br/>");
@@ -343,6 +354,10 @@ public class WebConsolePlugin extends HttpServlet implements JobConsumer {
             pw.printf("<tr><td>Processed Jobs</td><td>%s</td></tr>", ts.getNumberOfProcessedJobs());
             pw.printf("<tr><td>Average Processing Time</td><td>%s</td></tr>", formatTime(ts.getAverageProcessingTime()));
             pw.printf("<tr><td>Average Waiting Time</td><td>%s</td></tr>", formatTime(ts.getAverageWaitingTime()));
+            if ( ts instanceof TopicStatisticsImpl ) {
+                pw.printf("<tr><td>Processing Time Percentiles</td><td>%s</td></tr>", formatPercentiles(((TopicStatisticsImpl)ts).getProcessingTimes()));
+                pw.printf("<tr><td>Waiting Time Percentiles</td><td>%s</td></tr>", formatPercentiles(((TopicStatisticsImpl)ts).getWaitingTimes()));
+            }
             pw.println("</tbody></table>");
             pw.println("<br/>");
         }
@@ -439,6 +454,19 @@ public class WebConsolePlugin extends HttpServlet implements JobConsumer {
         return min + " min " + secs / 1000 + " secs";
     }
 
+    /**
+     * Format the median, 95th and 99th percentile and the maximum of a histogram
+     */
+    private String formatPercentiles(final Histogram times) {
+        if ( times.getCount() == 0 ) {
+            return "-";
+        }
+        return "50%: " + formatTime(times.getPercentile(50))
+                + ", 95%: " + formatTime(times.getPercentile(95))
+                + ", 99%: " + formatTime(times.getPercentile(99))
+                + ", max: " + formatTime(times.getMax());
+    }
+
     private void printForm(final PrintWriter pw,
             final String qeueName,
             final String buttonLabel,
@@ -21,6 +21,8 @@ import java.util.Date;
 
 import javax.management.StandardMBean;
 
+import org.apache.sling.event.impl.jobs.stats.Histogram;
+import org.apache.sling.event.impl.jobs.stats.StatisticsImpl;
 import org.apache.sling.event.jobs.Statistics;
 import org.apache.sling.event.jobs.jmx.StatisticsMBean;
 
@@ -97,4 +99,42 @@ public abstract class AbstractJobStatistics extends StandardMBean implements
         return new Date(getStatistics().getLastFinishedJobTime());
     }
 
+    public long getWaitingTime50thPercentile() {
+        return getPercentile(getWaitingTimes(), 50);
+    }
+
+    public long getWaitingTime95thPercentile() {
+        return getPercentile(getWaitingTimes(), 95);
+    }
+
+    public long getWaitingTime99thPercentile() {
+        return getPercentile(getWaitingTimes(), 99);
+    }
+
+    public long getProcessingTime50thPercentile() {
+        return getPercentile(getProcessingTimes(), 50);
+    }
+
+    public long getProcessingTime95thPercentile() {
+        return getPercentile(getProcessingTimes(), 95);
+    }
+
+    public long getProcessingTime99thPercentile() {
+        return getPercentile(getProcessingTimes(), 99);
+    }
+
+    private Histogram getWaitingTimes() {
+        final Statistics s = getStatistics();
+        return s instanceof StatisticsImpl ? ((StatisticsImpl)s).getWaitingTimes() : null;
+    }
+
+    private Histogram getProcessingTimes() {
+        final Statistics s = getStatistics();
+        return s instanceof StatisticsImpl ? ((StatisticsImpl)s).getProcessingTimes() : null;
+    }
+
+    private static long getPercentile(final Histogram histogram, final double percentile) {
+        return histogram == null ? 0 : histogram.getPercentile(percentile);
+    }
+
 }
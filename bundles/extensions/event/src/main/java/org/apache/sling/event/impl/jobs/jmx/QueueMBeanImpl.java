@@ -27,20 +27,28 @@ public class QueueMBeanImpl extends AbstractJobStatistics {
 
     private final String name;
 
+    private final Queue queue;
+
     private final Statistics statistics;
 
     public QueueMBeanImpl(Queue queue) {
         this.name = queue.getName();
+        this.queue = queue;
         if (queue instanceof Statistics) {
             this.statistics = (Statistics) queue;
         } else {
-            this.statistics = new EmptyStatistics();
+            this.statistics = null;
         }
     }
 
     @Override
     protected Statistics getStatistics() {
-        return this.statistics;
+        if (this.statistics != null) {
+            return this.statistics;
+        }
+        // the statistics of a queue are created with its first job, so get them each time
+        final Statistics s = this.queue.getStatistics();
+        return s == null ? new EmptyStatistics() : s;
     }
 
     @Override
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.queues;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.sling.event.impl.jobs.JobImpl;
+
+/**
+ * The index of the pending jobs of a queue.
+ * <p>
+ * The index holds the data to order the jobs like {@link JobImpl#compareTo(JobImpl)}
+ * and to read them. For a topic round robin queue the entries are kept per topic,
+ * for all other queues there is a single entry for all topics.
+ * <p>
+ * The index remembers the ids of the jobs in the index or in the cache of the queue,
+ * and the ids of the jobs which have been taken for processing. A job with a known
+ * or taken id is not added again, regardless of whether it is found by a topic scan
+ * or reported by a notification. A taken job is only added again if it is requeued.
+ * <p>
+ * This class is not thread safe, the {@link QueueJobCache} guards it with its cache lock.
+ */
+class JobIndex {
+
+    /**
+     * The number of ids of finished jobs remembered in addition to the jobs
+     * in processing. A finished job is usually removed from the repository,
+     * so a topic scan does not find it again, but a job added notification
+     * might still arrive late. The notifications are delivered within seconds,
+     * and a queue rarely finishes more than a thousand jobs in that time.
+     * If an id is dropped too early, the job is read again and its start is
+     * rejected as it is not pending anymore, so this is only an optimization.
+     */
+    static final int MAX_TAKEN_JOBS = 1000;
+
+    /** Whether the entries are kept per topic. */
+    private final boolean perTopic;
+
+    /** The index entries, either per topic or with a single key for all topics. */
+    private final TreeMap<String, TreeSet<Entry>> entries = new TreeMap<String, TreeSet<Entry>>();
+
+    /** The ids of all jobs in the index or the cache. */
+    private final Set<String> knownJobIds = new HashSet<String>();
+
+    /** The ids of the jobs taken for processing - the oldest are dropped. */
+    private final Set<String> takenJobIds;
+
+    /** The topic which has been polled last - for topic round robin queues. */
+    private String lastTopic;
+
+    /**
+     * Create a new index.
+     * The ids of the jobs in processing are always remembered, together
+     * with the ids of the last {@link #MAX_TAKEN_JOBS} finished jobs.
+     * @param perTopic Whether the jobs are polled topic round robin.
+     * @param maxParallel The maximum number of jobs processed in parallel.
+     */
+    JobIndex(final boolean perTopic, final int maxParallel) {
+        this.perTopic = perTopic;
+        final int maxTakenJobs = MAX_TAKEN_JOBS + Math.max(0, maxParallel);
+        this.takenJobIds = Collections.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return this.size() > maxTakenJobs;
+            }
+        });
+    }
+
+    /**
+     * Is the index empty?
+     * @return {@code true} if there is no entry in the index.
+     */
+    boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * Is the job known - in the index, in the cache or taken for processing?
+     * @param jobId The job id
+     * @return {@code true} if the job is known.
+     */
+    boolean isKnown(final String jobId) {
+        return this.knownJobIds.contains(jobId) || this.takenJobIds.contains(jobId);
+    }
+
+    /**
+     * The number of jobs in the index and in the cache.
+     */
+    int size() {
+        return this.knownJobIds.size();
+    }
+
+    /**
+     * Add the job to the index unless it is already known.
+     * @param job The job
+     * @return The topic of the job if it has been added, {@code null} otherwise.
+     */
+    String add(final JobImpl job) {
+        if ( !this.takenJobIds.contains(job.getId()) && this.knownJobIds.add(job.getId()) ) {
+            final Entry entry = new Entry(job);
+            final String key = (this.perTopic ? entry.topic : "");
+            TreeSet<Entry> set = this.entries.get(key);
+            if ( set == null ) {
+                set = new TreeSet<Entry>();
+                this.entries.put(key, set);
+            }
+            set.add(entry);
+            return entry.topic;
+        }
+        return null;
+    }
+
+    /**
+     * Take the next entries from the index.
+     * For a topic round robin queue the topics take turns, otherwise the
+     * entries are taken in order.
+     * The jobs of the entries are still known until they are either
+     * {@link #taken(String)} or {@link #removed(String)}.
+     * @param max The maximum number of entries
+     * @return The list of entries - might be empty
+     */
+    List<Entry> poll(final int max) {
+        final List<Entry> result = new ArrayList<Entry>();
+        while ( result.size() < max && !this.entries.isEmpty() ) {
+            final String key;
+            if ( this.perTopic ) {
+                String topic = (this.lastTopic == null ? null : this.entries.higherKey(this.lastTopic));
+                if ( topic == null ) {
+                    topic = this.entries.firstKey();
+                }
+                this.lastTopic = topic;
+                key = topic;
+            } else {
+                key = "";
+            }
+            final TreeSet<Entry> set = this.entries.get(key);
+            result.add(set.pollFirst());
+            if ( set.isEmpty() ) {
+                this.entries.remove(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The job has been taken for processing.
+     * It is not added again until it is {@link #requeued(String)}.
+     * @param jobId The job id
+     */
+    void taken(final String jobId) {
+        this.knownJobIds.remove(jobId);
+        this.takenJobIds.add(jobId);
+    }
+
+    /**
+     * The job is not handled by the queue anymore: it has been removed,
+     * started elsewhere or has been passed to another instance.
+     * @param jobId The job id
+     */
+    void removed(final String jobId) {
+        this.knownJobIds.remove(jobId);
+        this.takenJobIds.remove(jobId);
+    }
+
+    /**
+     * The job has been put back into the cache after processing.
+     * @param jobId The job id
+     */
+    void requeued(final String jobId) {
+        this.takenJobIds.remove(jobId);
+        this.knownJobIds.add(jobId);
+    }
+
+    /**
+     * An entry of the index: the data to order the jobs
+     * like {@link JobImpl#compareTo(JobImpl)} and to read them.
+     */
+    static final class Entry implements Comparable<Entry> {
+
+        final String jobId;
+
+        final String topic;
+
+        final String path;
+
+        final long created;
+
+        final long counter;
+
+        Entry(final JobImpl job) {
+            this.jobId = job.getId();
+            this.topic = job.getTopic();
+            this.path = job.getResourcePath();
+            final Calendar createdDate = job.getCreated();
+            this.created = (createdDate == null ? 0 : createdDate.getTimeInMillis());
+            this.counter = Long.valueOf(jobId.substring(jobId.lastIndexOf('_') + 1));
+        }
+
+        @Override
+        public int compareTo(final Entry o) {
+            int result = (this.created < o.created ? -1 : (this.created == o.created ? 0 : 1));
+            if ( result == 0 ) {
+                if ( this.counter < o.counter ) {
+                    result = -1;
+                } else if ( this.counter > o.counter ) {
+                    result = 1;
+                } else {
+                    result = this.jobId.compareTo(o.jobId);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -139,7 +139,8 @@ public class JobQueueImpl
                         final InternalQueueConfiguration config,
                         final QueueServices services,
                         final Set<String> topics) {
-        final QueueJobCache cache = new QueueJobCache(services.configuration, name, services.statisticsManager, config.getType(), topics);
+        final QueueJobCache cache = new QueueJobCache(services.configuration, name, services.statisticsManager, config.getType(),
+                config.getMaxParallel(), topics);
         if ( cache.isEmpty() ) {
             return null;
         }
@@ -499,6 +500,23 @@ public class JobQueueImpl
         this.cache.handleNewTopics(topics);
     }
 
+    /**
+     * Inform the queue about a new job.
+     * @param topic The job topic
+     * @param jobId The job id
+     */
+    public void wakeUpQueue(final String topic, final String jobId) {
+        this.cache.handleNewJob(topic, jobId);
+    }
+
+    /**
+     * Inform the queue about a new job written by this instance.
+     * @param job The new job
+     */
+    public void jobAdded(final JobImpl job) {
+        this.cache.handleNewJob(job);
+    }
+
     /**
      * Put a job back in the queue
      * @param handler The job handler
@@ -19,9 +19,8 @@
 package org.apache.sling.event.impl.jobs.queues;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +46,13 @@ import org.slf4j.LoggerFactory;
 /**
  * The queue job cache caches jobs per queue based on the topics the queue is actively
  * processing.
+ * <p>
+ * All pending jobs of the queue are kept in an in-memory index which is seeded
+ * once by scanning the topics of the queue when the cache is created. Afterwards
+ * the index is kept current from the job added notifications and the jobs
+ * written locally, and it is reconciled with the repository on a full cache search.
+ * The index only holds the ordering information of a job, the jobs are read from
+ * the repository in small batches when they are about to be processed.
  */
 public class QueueJobCache {
 
@@ -56,6 +62,12 @@ public class QueueJobCache {
     /** The maximum of pre loaded jobs for a topic. */
     private final int maxPreloadLimit = 10;
 
+    /**
+     * Reconcile the index with the repository on every n-th full cache search
+     * even if the index is not empty.
+     */
+    private static final int RECONCILE_INTERVAL = 10;
+
     /** The job manager configuration. */
     private final JobManagerConfiguration configuration;
 
@@ -65,9 +77,21 @@ public class QueueJobCache {
     /** The set of new topics to scan. */
     private final Set<String> topicsWithNewJobs = new HashSet<String>();
 
+    /** New jobs reported by a notification: job id to topic. */
+    private final Map<String, String> newJobIds = new LinkedHashMap<String, String>();
+
+    /** New jobs written by this instance. */
+    private final List<JobImpl> newJobs = new ArrayList<JobImpl>();
+
     /** The cache of current objects. */
     private final List<JobImpl> cache = new ArrayList<JobImpl>();
 
+    /** The index of pending jobs which are not in the cache yet. */
+    private final JobIndex index;
+
+    /** Number of full cache searches. */
+    private long fullSearchCount;
+
     /** The queue type. */
     private final QueueConfiguration.Type queueType;
 
@@ -78,15 +102,18 @@ public class QueueJobCache {
      * Create a new queue job cache
      * @param configuration Current job manager configuration
      * @param queueType The queue type
+     * @param maxParallel The maximum number of jobs processed in parallel
      * @param topics The topics handled by this queue.
      */
     public QueueJobCache(final JobManagerConfiguration configuration,
             final String queueName,
             final StatisticsManager statisticsManager,
             final QueueConfiguration.Type queueType,
+            final int maxParallel,
             final Set<String> topics) {
         this.configuration = configuration;
         this.queueType = queueType;
+        this.index = new JobIndex(queueType == Type.TOPIC_ROUND_ROBIN, maxParallel);
         this.topics = new ConcurrentSkipListSet<String>(topics);
         this.fillCache(queueName, statisticsManager);
     }
@@ -106,13 +133,23 @@ public class QueueJobCache {
     public boolean isEmpty() {
         boolean result = true;
         synchronized ( this.cache ) {
-            result = this.cache.isEmpty();
+            result = this.cache.isEmpty() && this.index.isEmpty();
         }
         if ( result ) {
             synchronized ( this.topicsWithNewJobs ) {
                 result = this.topicsWithNewJobs.isEmpty();
             }
         }
+        if ( result ) {
+            synchronized ( this.newJobIds ) {
+                result = this.newJobIds.isEmpty();
+            }
+        }
+        if ( result ) {
+            synchronized ( this.newJobs ) {
+                result = this.newJobs.isEmpty();
+            }
+        }
         return result;
     }
 
@@ -135,7 +172,8 @@ public class QueueJobCache {
     /**
      * Get the next job.
      * This method is potentially called concurrently, and
-     * {@link #reschedule(JobHandler)} and {@link #handleNewTopics(Set)}
+     * {@link #reschedule(JobHandler)}, {@link #handleNewTopics(Set)},
+     * {@link #handleNewJob(String, String)} and {@link #handleNewJob(JobImpl)}
      * can be called concurrently.
      */
     public JobHandler getNextJob(final JobConsumerManager jobConsumerManager,
@@ -156,20 +194,27 @@ public class QueueJobCache {
                             this.topicsWithNewJobs.clear();
                         }
                         if ( doFull ) {
-                            checkingTopics.addAll(this.topics);
-                        }
-                        if ( !checkingTopics.isEmpty() ) {
-                            this.loadJobs(queue.getName(), checkingTopics, statisticsManager);
+                            this.fullSearchCount++;
+                            // the index is kept current by the notifications, a full
+                            // scan is only done if it is empty and every now and then
+                            if ( this.index.isEmpty() || this.fullSearchCount % RECONCILE_INTERVAL == 0 ) {
+                                checkingTopics.addAll(this.topics);
+                            }
                         }
+                        this.loadJobs(queue.getName(), checkingTopics, statisticsManager);
                     }
 
                     if ( !this.cache.isEmpty() ) {
                         final JobImpl job = this.cache.remove(0);
+                        // a job taken for processing is not added again by a late
+                        // notification or a scan until it is requeued
+                        this.index.taken(job.getId());
                         final JobExecutor consumer = jobConsumerManager.getExecutor(job.getTopic());
 
                         handler = new JobHandler(job, consumer, this.configuration);
                         if ( (consumer != null || (job.isBridgedEvent() && jobConsumerManager.supportsBridgedEvents())) ) {
                             if ( !handler.startProcessing(queue) ) {
+                                this.index.removed(job.getId());
                                 statisticsManager.jobDequeued(queue.getName(), handler.getJob().getTopic());
                                 if ( logger.isDebugEnabled() ) {
                                     logger.debug("Discarding removed job {}", Utility.toString(job));
@@ -181,6 +226,7 @@ public class QueueJobCache {
                             statisticsManager.jobDequeued(queue.getName(), handler.getJob().getTopic());
                             // no consumer on this instance, assign to another instance
                             handler.reassign();
+                            this.index.removed(job.getId());
 
                             handler = null;
                             retry = true;
@@ -194,119 +240,164 @@ public class QueueJobCache {
     }
 
     /**
-     * Load the next N x numberOf(topics) jobs
-     * @param checkingTopics The set of topics to check.
+     * Update the index and load the next jobs from the index into the cache.
+     * @param checkingTopics The set of topics to scan.
      */
     private void loadJobs( final String queueName, final Set<String> checkingTopics,
             final StatisticsManager statisticsManager) {
+        final Map<String, String> addedJobIds = new LinkedHashMap<String, String>();
+        synchronized ( this.newJobIds ) {
+            addedJobIds.putAll(this.newJobIds);
+            this.newJobIds.clear();
+        }
+        final List<JobImpl> addedJobs = new ArrayList<JobImpl>();
+        synchronized ( this.newJobs ) {
+            addedJobs.addAll(this.newJobs);
+            this.newJobs.clear();
+        }
+        for(final JobImpl job : addedJobs) {
+            this.addToIndex(queueName, job, statisticsManager);
+        }
+        if ( checkingTopics.isEmpty() && addedJobIds.isEmpty() && this.index.isEmpty() ) {
+            return;
+        }
         logger.debug("Starting jobs loading from {}...", checkingTopics);
 
-        final Map<String, List<JobImpl>> topicCache = new HashMap<String, List<JobImpl>>();
-
         final ResourceResolver resolver = this.configuration.createResourceResolver();
         try {
-            final Resource baseResource = resolver.getResource(this.configuration.getLocalJobsPath());
-            // sanity check - should never be null
-            if ( baseResource != null ) {
-                for(final String topic : checkingTopics) {
-
-                    final Resource topicResource = baseResource.getChild(topic.replace('/', '.'));
-                    if ( topicResource != null ) {
-                        topicCache.put(topic, loadJobs(queueName, topic, topicResource, statisticsManager));
+            if ( !checkingTopics.isEmpty() ) {
+                final Resource baseResource = resolver.getResource(this.configuration.getLocalJobsPath());
+                // sanity check - should never be null
+                if ( baseResource != null ) {
+                    for(final String topic : checkingTopics) {
+
+                        final Resource topicResource = baseResource.getChild(topic.replace('/', '.'));
+                        if ( topicResource != null ) {
+                            loadJobs(queueName, topic, topicResource, statisticsManager);
+                        }
                     }
                 }
             }
+            for(final Map.Entry<String, String> entry : addedJobIds.entrySet()) {
+                if ( !this.index.isKnown(entry.getKey()) ) {
+                    final String path = this.configuration.getLocalJobsPath() + '/'
+                            + entry.getValue().replace('/', '.') + '/' + entry.getKey();
+                    final JobImpl job = Utility.readJob(logger, resolver.getResource(path));
+                    if ( job != null && job.getProcessingStarted() == null && !job.hasReadErrors() ) {
+                        this.addToIndex(queueName, job, statisticsManager);
+                    }
+                }
+            }
+            this.readJobs(queueName, resolver, statisticsManager);
         } finally {
             resolver.close();
         }
-        orderTopics(topicCache);
 
         logger.debug("Finished jobs loading {}", this.cache.size());
     }
 
     /**
-     * Order the topics based on the queue type and put them in the cache.
-     * @param topicCache The topic based cache
+     * Add the job to the index unless it is already known.
      */
-    private void orderTopics(final Map<String, List<JobImpl>> topicCache) {
-        if ( this.queueType == Type.ORDERED
-             || this.queueType == Type.UNORDERED) {
-            for(final List<JobImpl> list : topicCache.values()) {
-                this.cache.addAll(list);
-            }
-            Collections.sort(this.cache);
-        } else {
-            // topic round robin
-            boolean done = true;
-            do {
-                done = true;
-                for(final Map.Entry<String, List<JobImpl>> entry : topicCache.entrySet()) {
-                    if ( !entry.getValue().isEmpty() ) {
-                        this.cache.add(entry.getValue().remove(0));
-                        if ( !entry.getValue().isEmpty() ) {
-                            done = false;
-                        }
-                    }
+    private void addToIndex(final String queueName, final JobImpl job, final StatisticsManager statisticsManager) {
+        final String topic = this.index.add(job);
+        if ( topic != null ) {
+            statisticsManager.jobQueued(queueName, topic);
+        }
+    }
+
+    /**
+     * Take the next index entries based on the queue type,
+     * read the jobs and put them in the cache.
+     * @param resolver The resolver to read the jobs
+     */
+    private void readJobs(final String queueName, final ResourceResolver resolver,
+            final StatisticsManager statisticsManager) {
+        while ( this.cache.isEmpty() && !this.index.isEmpty() ) {
+            for(final JobIndex.Entry entry : this.index.poll(maxPreloadLimit)) {
+                final JobImpl job = Utility.readJob(logger, resolver.getResource(entry.path));
+                if ( job != null && job.getProcessingStarted() == null && !job.hasReadErrors() ) {
+                    this.cache.add(job);
+                } else {
+                    logger.debug("Ignoring job {} because it is removed, started or not readable", entry.path);
+                    this.index.removed(entry.jobId);
+                    statisticsManager.jobDequeued(queueName, entry.topic);
                 }
-            } while ( !done ) ;
+            }
         }
     }
 
     /**
-     * Load the next N x numberOf(topics) jobs.
+     * Add all pending jobs of a topic to the index.
      * @param topic The topic
      * @param topicResource The parent resource of the jobs
-     * @return The cache which will be filled with the jobs.
      */
-    private List<JobImpl> loadJobs(final String queueName, final String topic,
+    private void loadJobs(final String queueName, final String topic,
             final Resource topicResource,
             final StatisticsManager statisticsManager) {
         logger.debug("Loading jobs from topic {}", topic);
-        final List<JobImpl> list = new ArrayList<JobImpl>();
-
-        final AtomicBoolean scanTopic = new AtomicBoolean(false);
+        final int size = this.index.size();
 
         JobTopicTraverser.traverse(logger, topicResource, new JobTopicTraverser.JobCallback() {
 
             @Override
             public boolean handle(final JobImpl job) {
                 if ( job.getProcessingStarted() == null && !job.hasReadErrors() ) {
-                    list.add(job);
-                    statisticsManager.jobQueued(queueName, topic);
-                    if ( list.size() == maxPreloadLimit ) {
-                        scanTopic.set(true);
-                    }
+                    addToIndex(queueName, job, statisticsManager);
                 } else {
-                    if ( job.hasReadErrors() ) {
-                        scanTopic.set(true);
-                    }
                     logger.debug("Ignoring job because {} or {}", job.getProcessingStarted(), job.hasReadErrors());
                 }
-                return list.size() < maxPreloadLimit;
+                return true;
             }
         });
-        if ( scanTopic.get() ) {
-            synchronized ( this.topicsWithNewJobs ) {
-                this.topicsWithNewJobs.add(topic);
-            }
-        }
-        logger.debug("Caching {} jobs for topic {}", list.size(), topic);
-
-        return list;
+        logger.debug("Indexing {} new jobs for topic {}", this.index.size() - size, topic);
     }
 
     /**
-     * Inform the queue cache about topics containing new jobs
+     * Inform the queue cache about topics containing new jobs.
+     * Topics already handled by this queue are kept current by
+     * {@link #handleNewJob(String, String)}, therefore only new
+     * topics are scanned.
      * @param topics The set of topics to scan
      */
     public void handleNewTopics(final Set<String> topics) {
         logger.debug("Update cache to handle new event for topics {}", topics);
         synchronized ( this.topicsWithNewJobs ) {
-            this.topicsWithNewJobs.addAll(topics);
+            for(final String topic : topics) {
+                if ( !this.topics.contains(topic) ) {
+                    this.topicsWithNewJobs.add(topic);
+                }
+            }
         }
         this.topics.addAll(topics);
     }
 
+    /**
+     * Inform the queue cache about a new job.
+     * The job is read from the repository the next time the cache is filled.
+     * @param topic The job topic
+     * @param jobId The job id
+     */
+    public void handleNewJob(final String topic, final String jobId) {
+        logger.debug("Update cache to handle new job {} for topic {}", jobId, topic);
+        synchronized ( this.newJobIds ) {
+            this.newJobIds.put(jobId, topic);
+        }
+        this.topics.add(topic);
+    }
+
+    /**
+     * Inform the queue cache about a new job written by this instance.
+     * @param job The job
+     */
+    public void handleNewJob(final JobImpl job) {
+        logger.debug("Update cache to handle new job {}", job.getId());
+        synchronized ( this.newJobs ) {
+            this.newJobs.add(job);
+        }
+        this.topics.add(job.getTopic());
+    }
+
     /**
      * Reschedule a job
      * Reschedule the job and add it back into the cache.
@@ -320,6 +411,7 @@ public class QueueJobCache {
                 } else {
                     this.cache.add(handler.getJob());
                 }
+                this.index.requeued(handler.getJob().getId());
                 statisticsManager.jobQueued(queueName, handler.getJob().getTopic());
             }
         }
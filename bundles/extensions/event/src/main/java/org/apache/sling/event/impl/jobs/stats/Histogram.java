@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of times in milliseconds which is updated without locking.
+ * <p>
+ * Values below 8 have a bucket of their own; larger values are counted in
+ * eight buckets per power of two, so a percentile is off by at most 12.5%.
+ * Histograms can be merged with {@link #add(Histogram)}.
+ */
+public class Histogram {
+
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 8;
+
+    /** log2 of {@link #SUB_BUCKETS}. */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Enough buckets for all positive long values. */
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a time. Negative values are recorded as zero.
+     */
+    public void record(final long time) {
+        final long value = Math.max(0, time);
+        this.counts.incrementAndGet(bucket(value));
+        long current = this.max.get();
+        while ( value > current && !this.max.compareAndSet(current, value) ) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * The number of recorded times.
+     */
+    public long getCount() {
+        long count = 0;
+        for(int i=0; i<BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * The highest recorded time.
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Get the time below or at which the given percentage of the
+     * recorded times are.
+     * @param percentile The percentile between 0 and 100.
+     * @return The upper bound of the bucket containing the percentile,
+     *         but never more than {@link #getMax()}. 0 if nothing has been recorded.
+     */
+    public long getPercentile(final double percentile) {
+        final long count = this.getCount();
+        if ( count == 0 ) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long)Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for(int i=0; i<BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if ( seen >= rank ) {
+                return Math.min(upperBound(i), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    /**
+     * Add the recorded times of another histogram.
+     */
+    public void add(final Histogram other) {
+        for(int i=0; i<BUCKETS; i++) {
+            final long count = other.counts.get(i);
+            if ( count != 0 ) {
+                this.counts.addAndGet(i, count);
+            }
+        }
+        long current = this.max.get();
+        final long otherMax = other.max.get();
+        while ( otherMax > current && !this.max.compareAndSet(current, otherMax) ) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Replace the recorded times with the ones from another histogram.
+     */
+    public void copyFrom(final Histogram other) {
+        for(int i=0; i<BUCKETS; i++) {
+            this.counts.set(i, other.counts.get(i));
+        }
+        this.max.set(other.max.get());
+    }
+
+    /**
+     * Remove all recorded times.
+     */
+    public void reset() {
+        for(int i=0; i<BUCKETS; i++) {
+            this.counts.set(i, 0);
+        }
+        this.max.set(0);
+    }
+
+    static int bucket(final long value) {
+        if ( value < SUB_BUCKETS ) {
+            return (int)value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(final int bucket) {
+        if ( bucket < SUB_BUCKETS ) {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
@@ -45,7 +45,7 @@ public class StatisticsManager {
     private final StatisticsImpl globalStatistics = new StatisticsImpl() {
 
         @Override
-        public synchronized void reset() {
+        public void reset() {
             super.reset();
             topicStatistics.clear();
             for(final Statistics s : queueStatistics.values()) {
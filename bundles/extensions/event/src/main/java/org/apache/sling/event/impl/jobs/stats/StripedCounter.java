@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A counter which is updated without locking and with little contention.
+ * As long as there is no contention, the value is kept in a single field.
+ * Once an update fails because of a concurrent update, the value is
+ * spread over several cells, each thread updates one of them
+ * and reading the value sums up the field and all cells.
+ */
+public class StripedCounter {
+
+    /** Number of cells, a power of two. */
+    private static final int CELLS;
+    static {
+        int cells = 2;
+        while ( cells < Runtime.getRuntime().availableProcessors() && cells < 16 ) {
+            cells <<= 1;
+        }
+        CELLS = cells;
+    }
+
+    /** Each cell uses a cache line on its own: 8 longs. */
+    private static final int PADDING = 8;
+
+    private static final AtomicLongFieldUpdater<StripedCounter> BASE =
+            AtomicLongFieldUpdater.newUpdater(StripedCounter.class, "base");
+
+    private static final AtomicReferenceFieldUpdater<StripedCounter, AtomicLongArray> CELLS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(StripedCounter.class, AtomicLongArray.class, "cells");
+
+    private volatile long base;
+
+    /** The cells, created on the first contended update. */
+    private volatile AtomicLongArray cells;
+
+    /**
+     * Add the value.
+     */
+    public void add(final long value) {
+        AtomicLongArray cs = this.cells;
+        if ( cs == null ) {
+            final long current = this.base;
+            if ( BASE.compareAndSet(this, current, current + value) ) {
+                return;
+            }
+            CELLS_UPDATER.compareAndSet(this, null, new AtomicLongArray(CELLS * PADDING));
+            cs = this.cells;
+        }
+        cs.getAndAdd(cell(), value);
+    }
+
+    public void increment() {
+        this.add(1);
+    }
+
+    public void decrement() {
+        this.add(-1);
+    }
+
+    /**
+     * Return the current value.
+     * The value is not an atomic snapshot if the counter is updated concurrently.
+     */
+    public long get() {
+        long sum = this.base;
+        final AtomicLongArray cs = this.cells;
+        if ( cs != null ) {
+            for(int i=0; i<CELLS; i++) {
+                sum += cs.get(i * PADDING);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Set the value.
+     * Concurrent updates might get lost.
+     */
+    public void set(final long value) {
+        final AtomicLongArray cs = this.cells;
+        if ( cs != null ) {
+            for(int i=0; i<CELLS; i++) {
+                cs.set(i * PADDING, 0);
+            }
+        }
+        this.base = value;
+    }
+
+    private static int cell() {
+        return (int)(Thread.currentThread().getId() & (CELLS - 1)) * PADDING;
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.sling.event.jobs.TopicStatistics;
 
 /**
  * Implementation of the statistics.
+ * The statistics are updated without locking, see {@link StatisticsImpl}.
  */
 public class TopicStatisticsImpl implements TopicStatistics {
 
@@ -31,23 +32,23 @@ public class TopicStatisticsImpl implements TopicStatistics {
 
     private volatile long lastFinished = -1;
 
-    private volatile long averageWaitingTime;
+    private final StripedCounter waitingTime = new StripedCounter();
 
-    private volatile long averageProcessingTime;
+    private final StripedCounter processingTime = new StripedCounter();
 
-    private volatile long waitingTime;
+    private final StripedCounter waitingCount = new StripedCounter();
 
-    private volatile long processingTime;
+    private final StripedCounter processingCount = new StripedCounter();
 
-    private volatile long waitingCount;
+    private final StripedCounter finishedJobs = new StripedCounter();
 
-    private volatile long processingCount;
+    private final StripedCounter failedJobs = new StripedCounter();
 
-    private volatile long finishedJobs;
+    private final StripedCounter cancelledJobs = new StripedCounter();
 
-    private volatile long failedJobs;
+    private final Histogram waitingTimes = new Histogram();
 
-    private volatile long cancelledJobs;
+    private final Histogram processingTimes = new Histogram();
 
     /** Constructor. */
     public TopicStatisticsImpl(final String topic) {
@@ -66,7 +67,7 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfProcessedJobs()
      */
     @Override
-    public synchronized long getNumberOfProcessedJobs() {
+    public long getNumberOfProcessedJobs() {
         return getNumberOfCancelledJobs() + getNumberOfFailedJobs() + getNumberOfFinishedJobs();
     }
 
@@ -74,47 +75,49 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * @see org.apache.sling.event.jobs.TopicStatistics#getAverageWaitingTime()
      */
     @Override
-    public synchronized long getAverageWaitingTime() {
-        return averageWaitingTime;
+    public long getAverageWaitingTime() {
+        final long count = waitingCount.get();
+        return count == 0 ? 0 : waitingTime.get() / count;
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getAverageProcessingTime()
      */
     @Override
-    public synchronized long getAverageProcessingTime() {
-        return averageProcessingTime;
+    public long getAverageProcessingTime() {
+        final long count = processingCount.get();
+        return count == 0 ? 0 : processingTime.get() / count;
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfFinishedJobs()
      */
     @Override
-    public synchronized long getNumberOfFinishedJobs() {
-        return finishedJobs;
+    public long getNumberOfFinishedJobs() {
+        return finishedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfCancelledJobs()
      */
     @Override
-    public synchronized long getNumberOfCancelledJobs() {
-        return cancelledJobs;
+    public long getNumberOfCancelledJobs() {
+        return cancelledJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getNumberOfFailedJobs()
      */
     @Override
-    public synchronized long getNumberOfFailedJobs() {
-        return failedJobs;
+    public long getNumberOfFailedJobs() {
+        return failedJobs.get();
     }
 
     /**
      * @see org.apache.sling.event.jobs.TopicStatistics#getLastActivatedJobTime()
      */
     @Override
-    public synchronized long getLastActivatedJobTime() {
+    public long getLastActivatedJobTime() {
         return this.lastActivated;
     }
 
@@ -122,21 +125,35 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * @see org.apache.sling.event.jobs.TopicStatistics#getLastFinishedJobTime()
      */
     @Override
-    public synchronized long getLastFinishedJobTime() {
+    public long getLastFinishedJobTime() {
         return this.lastFinished;
     }
 
+    /**
+     * The histogram of the waiting times of the started jobs.
+     */
+    public Histogram getWaitingTimes() {
+        return this.waitingTimes;
+    }
+
+    /**
+     * The histogram of the processing times of the finished jobs.
+     */
+    public Histogram getProcessingTimes() {
+        return this.processingTimes;
+    }
+
     /**
      * Add a finished job.
      * @param jobTime The time of the job processing.
      */
-    public synchronized void addFinished(final long jobTime) {
-        this.finishedJobs++;
+    public void addFinished(final long jobTime) {
+        this.finishedJobs.increment();
         this.lastFinished = System.currentTimeMillis();
         if ( jobTime > 0 ) {
-            this.processingTime += jobTime;
-            this.processingCount++;
-            this.averageProcessingTime = this.processingTime / this.processingCount;
+            this.processingTime.add(jobTime);
+            this.processingCount.increment();
+            this.processingTimes.record(jobTime);
         }
     }
 
@@ -144,26 +161,26 @@ public class TopicStatisticsImpl implements TopicStatistics {
      * Add a started job.
      * @param queueTime The time of the job in the queue.
      */
-    public synchronized void addActivated(final long queueTime) {
+    public void addActivated(final long queueTime) {
         this.lastActivated = System.currentTimeMillis();
         if ( queueTime > 0 ) {
-            this.waitingTime += queueTime;
-            this.waitingCount++;
-            this.averageWaitingTime = this.waitingTime / this.waitingCount;
+            this.waitingTime.add(queueTime);
+            this.waitingCount.increment();
+            this.waitingTimes.record(queueTime);
         }
     }
 
     /**
      * Add a failed job.
      */
-    public synchronized void addFailed() {
-        this.failedJobs++;
+    public void addFailed() {
+        this.failedJobs.increment();
     }
 
     /**
      * Add a cancelled job.
      */
-    public synchronized void addCancelled() {
-        this.cancelledJobs++;
+    public void addCancelled() {
+        this.cancelledJobs.increment();
     }
 }
@@ -30,6 +30,7 @@ import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.impl.jobs.Utility;
 import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.jobs.config.PartitionLeases;
 import org.apache.sling.event.impl.jobs.config.TopologyCapabilities;
 import org.apache.sling.event.impl.jobs.scheduling.JobSchedulerImpl;
 import org.apache.sling.event.impl.support.BatchResourceRemover;
@@ -52,6 +53,9 @@ public class CleanUpTask {
     /** Job scheduler. */
     private final JobSchedulerImpl jobScheduler;
 
+    /** The leases for the lock partitions. */
+    private final PartitionLeases leases;
+
     /** We count the scheduler runs. */
     private volatile long schedulerRuns;
 
@@ -61,6 +65,7 @@ public class CleanUpTask {
     public CleanUpTask(final JobManagerConfiguration config, final JobSchedulerImpl jobScheduler) {
         this.configuration = config;
         this.jobScheduler = jobScheduler;
+        this.leases = new PartitionLeases(config);
     }
 
     /**
@@ -72,6 +77,9 @@ public class CleanUpTask {
 
         final TopologyCapabilities topologyCapabilities = configuration.getTopologyCapabilities();
         if ( topologyCapabilities != null ) {
+            // the lease is renewed every minute
+            this.leases.renew(topologyCapabilities);
+
             // Clean up
             final String cleanUpUnassignedPath;;
             if ( topologyCapabilities.isLeader() ) {
@@ -95,6 +103,17 @@ public class CleanUpTask {
                     this.simpleEmptyFolderCleanup(topologyCapabilities, cleanUpUnassignedPath);
                 }
             }
+            // the history of previous versions is moved by the leader, again
+            // and again as long as instances of previous versions add to it
+            if ( schedulerRuns % 5 == 0 && this.configuration.hasPreviousVersionHistory() ) {
+                if ( topologyCapabilities.isLeader() ) {
+                    new UpgradeTask(this.configuration).upgradeHistory();
+                } else {
+                    this.configuration.checkPreviousVersionHistory();
+                }
+            }
+        } else {
+            this.leases.release();
         }
 
         // lock cleanup is done every minute
@@ -104,10 +123,14 @@ public class CleanUpTask {
 
     /**
      * Clean up the locks
-     * All locks older than two minutes are removed
+     * All locks older than two minutes are removed.
+     * Each instance removes the locks of the partitions it holds the
+     * lease for. The partition is taken from the topic and the name of
+     * the lock, so the locks of a busy topic are spread over all
+     * instances.
      */
     private void lockCleanup(final TopologyCapabilities caps) {
-        if ( caps != null && caps.isLeader() ) {
+        if ( caps != null ) {
             this.logger.debug("Cleaning up job resource tree: removing obsolete locks");
             final List<Resource> candidates = new ArrayList<Resource>();
             final ResourceResolver resolver = this.configuration.createResourceResolver();
@@ -118,7 +141,9 @@ public class CleanUpTask {
                         final Calendar startDate = Calendar.getInstance();
                         startDate.add(Calendar.MINUTE, -2);
 
-                        this.lockCleanup(caps, candidates, parentResource, startDate);
+                        for(final Resource topicResource : parentResource.getChildren()) {
+                            this.lockCleanup(caps, candidates, topicResource.getName(), topicResource, startDate);
+                        }
                         final BatchResourceRemover remover = new BatchResourceRemover();
                         boolean batchRemove = true;
                         for(final Resource lockResource : candidates) {
@@ -158,6 +183,7 @@ public class CleanUpTask {
      */
     private void lockCleanup(final TopologyCapabilities caps,
             final List<Resource> candidates,
+            final String topic,
             final Resource parentResource,
             final Calendar startDate) {
         for(final Resource childResource : parentResource.getChildren()) {
@@ -166,11 +192,12 @@ public class CleanUpTask {
                 final Calendar created = vm.get(Utility.PROPERTY_LOCK_CREATED, Calendar.class);
                 if ( created != null ) {
                     // lock resource
-                    if ( created.before(startDate) ) {
+                    if ( created.before(startDate)
+                         && this.leases.isOwner(topic + '/' + childResource.getName()) ) {
                         candidates.add(childResource);
                     }
                 } else {
-                    lockCleanup(caps, candidates, childResource, startDate);
+                    lockCleanup(caps, candidates, topic, childResource, startDate);
                 }
             } else {
                 break;
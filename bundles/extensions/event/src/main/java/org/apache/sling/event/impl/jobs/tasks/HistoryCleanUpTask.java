@@ -35,6 +35,7 @@ import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.event.impl.jobs.JobImpl;
 import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.support.BatchResourceRemover;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.consumer.JobExecutionContext;
 import org.apache.sling.event.jobs.consumer.JobExecutionResult;
@@ -51,6 +52,9 @@ import org.slf4j.LoggerFactory;
  * - state : only jobs in this state are removed (default is no state, meaning all jobs are removed)
  *           The value should either be a string or an array of string. Allowed values are:
  *           SUCCEEDED, STOPPED, GIVEN_UP, ERROR, DROPPED
+ *
+ * As the history is bucketed by the hour a job has been finished, all
+ * buckets older than the age are removed as a whole if no state is given.
  */
 @Component
 @Service(value = JobExecutor.class)
@@ -65,6 +69,9 @@ public class HistoryCleanUpTask implements JobExecutor {
 
     private static final int DEFAULT_AGE = 60 * 24 * 2; // older than two days
 
+    /** The calendar fields of the bucket levels below a topic. */
+    private static final int[] BUCKET_FIELDS = {Calendar.YEAR, Calendar.MONTH, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY};
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Reference
@@ -143,93 +150,91 @@ public class HistoryCleanUpTask implements JobExecutor {
                     continue;
                 }
 
-                // now years
-                final Iterator<Resource> yearIter = topicResource.listChildren();
-                while ( !context.isStopped() && yearIter.hasNext() ) {
-                    final Resource yearResource = yearIter.next();
-                    final int year = Integer.valueOf(yearResource.getName());
-                    final boolean oldYear = year < removeDate.get(Calendar.YEAR);
-
-                    // months
-                    final Iterator<Resource> monthIter = yearResource.listChildren();
-                    while ( !context.isStopped() && monthIter.hasNext() ) {
-                        final Resource monthResource = monthIter.next();
-                        final int month = Integer.valueOf(monthResource.getName());
-                        final boolean oldMonth = oldYear || month < (removeDate.get(Calendar.MONTH) + 1);
-
-                        // days
-                        final Iterator<Resource> dayIter = monthResource.listChildren();
-                        while ( !context.isStopped() && dayIter.hasNext() ) {
-                            final Resource dayResource = dayIter.next();
-                            final int day = Integer.valueOf(dayResource.getName());
-                            final boolean oldDay = oldMonth || day < removeDate.get(Calendar.DAY_OF_MONTH);
-
-                            // hours
-                            final Iterator<Resource> hourIter = dayResource.listChildren();
-                            while ( !context.isStopped() && hourIter.hasNext() ) {
-                                final Resource hourResource = hourIter.next();
-                                final int hour = Integer.valueOf(hourResource.getName());
-                                final boolean oldHour = oldDay || hour < removeDate.get(Calendar.HOUR_OF_DAY);
-
-                                // minutes
-                                final Iterator<Resource> minuteIter = hourResource.listChildren();
-                                while ( !context.isStopped() && minuteIter.hasNext() ) {
-                                    final Resource minuteResource = minuteIter.next();
-
-                                    // check if we can delete the minute
-                                    final int minute = Integer.valueOf(minuteResource.getName());
-                                    final boolean oldMinute = oldHour || minute <= removeDate.get(Calendar.MINUTE);
-                                    if ( oldMinute ) {
-                                        final Iterator<Resource> jobIter = minuteResource.listChildren();
-                                        while ( !context.isStopped() && jobIter.hasNext() ) {
-                                            final Resource jobResource = jobIter.next();
-                                            boolean remove = stateList == null;
-                                            if ( !remove ) {
-                                                final ValueMap vm = ResourceUtil.getValueMap(jobResource);
-                                                final String state = vm.get(JobImpl.PROPERTY_FINISHED_STATE, String.class);
-                                                if ( state != null && stateList.contains(state) ) {
-                                                    remove = true;
-                                                }
-                                            }
-                                            if ( remove ) {
-                                                resolver.delete(jobResource);
-                                                resolver.commit();
-                                            }
-                                        }
-                                    }
-                                    // check if we can delete the minute
-                                    if ( !context.isStopped() && oldMinute && !minuteResource.listChildren().hasNext()) {
-                                        resolver.delete(minuteResource);
-                                        resolver.commit();
-                                    }
-                                }
-
-                                // check if we can delete the hour
-                                if ( !context.isStopped() && oldHour && !hourResource.listChildren().hasNext()) {
-                                    resolver.delete(hourResource);
-                                    resolver.commit();
-                                }
-                            }
-                            // check if we can delete the day
-                            if ( !context.isStopped() && oldDay && !dayResource.listChildren().hasNext()) {
-                                resolver.delete(dayResource);
-                                resolver.commit();
-                            }
-                        }
-
-                        // check if we can delete the month
-                        if ( !context.isStopped() && oldMonth && !monthResource.listChildren().hasNext() ) {
-                            resolver.delete(monthResource);
-                            resolver.commit();
-                        }
-                    }
+                this.cleanup(removeDate, context, topicResource, null, 0, stateList);
+            }
+        }
+    }
+
+    /**
+     * Clean up the buckets below the given resource.
+     * The bucket boundaries are calculated in the time zone of the history.
+     * A bucket which is completely older than the remove date is removed
+     * as a whole if no state is given. Otherwise the jobs of the hour buckets
+     * are checked one by one and removed in batches.
+     * @param parentStart The start of the bucket of the parent resource or {@code null} for the topic resource
+     * @param level The index into {@link #BUCKET_FIELDS} for the children of the parent resource
+     */
+    private void cleanup(final Calendar removeDate,
+            final JobExecutionContext context,
+            final Resource parentResource,
+            final Calendar parentStart,
+            final int level,
+            final List<String> stateList)
+    throws PersistenceException {
+        final ResourceResolver resolver = parentResource.getResourceResolver();
+        final int field = BUCKET_FIELDS[level];
+
+        final Iterator<Resource> bucketIter = parentResource.listChildren();
+        while ( !context.isStopped() && bucketIter.hasNext() ) {
+            final Resource bucketResource = bucketIter.next();
+            final int value;
+            try {
+                value = Integer.valueOf(bucketResource.getName()) - (field == Calendar.MONTH ? 1 : 0);
+            } catch ( final NumberFormatException nfe ) {
+                // not a bucket - ignore
+                continue;
+            }
+            final Calendar start;
+            if ( parentStart == null ) {
+                start = Calendar.getInstance(JobManagerConfiguration.HISTORY_TIME_ZONE);
+                start.clear();
+            } else {
+                start = (Calendar)parentStart.clone();
+            }
+            start.set(field, value);
+            final Calendar end = (Calendar)start.clone();
+            end.set(field, value + 1);
+
+            if ( !start.before(removeDate) ) {
+                // all jobs in this bucket are too young
+                continue;
+            }
+            final boolean oldBucket = !end.after(removeDate);
+            if ( oldBucket && stateList == null ) {
+                // remove the whole bucket at once
+                resolver.delete(bucketResource);
+                resolver.commit();
+                continue;
+            }
 
-                    // check if we can delete the year
-                    if ( !context.isStopped() && oldYear && !yearResource.listChildren().hasNext() ) {
-                        resolver.delete(yearResource);
-                        resolver.commit();
+            if ( level + 1 < BUCKET_FIELDS.length ) {
+                this.cleanup(removeDate, context, bucketResource, start, level + 1, stateList);
+            } else {
+                final BatchResourceRemover remover = new BatchResourceRemover();
+                final Iterator<Resource> jobIter = bucketResource.listChildren();
+                while ( !context.isStopped() && jobIter.hasNext() ) {
+                    final Resource jobResource = jobIter.next();
+                    final ValueMap vm = ResourceUtil.getValueMap(jobResource);
+                    boolean remove = oldBucket;
+                    if ( !remove ) {
+                        final Calendar finishedDate = vm.get(Job.PROPERTY_FINISHED_DATE, Calendar.class);
+                        remove = finishedDate != null && !finishedDate.after(removeDate);
+                    }
+                    if ( remove && stateList != null ) {
+                        final String state = vm.get(JobImpl.PROPERTY_FINISHED_STATE, String.class);
+                        remove = state != null && stateList.contains(state);
+                    }
+                    if ( remove ) {
+                        remover.delete(jobResource);
                     }
                 }
+                resolver.commit();
+            }
+
+            // check if we can delete the bucket
+            if ( !context.isStopped() && oldBucket && !bucketResource.listChildren().hasNext() ) {
+                resolver.delete(bucketResource);
+                resolver.commit();
             }
         }
     }
@@ -20,6 +20,7 @@ package org.apache.sling.event.impl.jobs.tasks;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,6 +73,7 @@ public class UpgradeTask {
     public void run() {
         if ( caps.isLeader() ) {
             this.processJobsFromPreviousVersions();
+            this.upgradeHistory();
         }
         this.upgradeBridgedJobs();
     }
@@ -278,4 +280,88 @@ public class UpgradeTask {
             throw new PersistenceException("Exception while reading reasource: " + ie.getMessage(), ie.getCause());
         }
     }
+
+    /**
+     * Move the job history from previous versions into the new history.
+     * In previous versions, finished jobs were stored below the date they
+     * were created. Now they are stored in buckets per hour they have been
+     * finished, which allows to remove complete buckets during the clean up.
+     * As instances of previous versions in the same cluster may keep adding
+     * to the old history, this is repeated by the {@link CleanUpTask} of
+     * the leader until the old history roots are gone.
+     */
+    void upgradeHistory() {
+        final ResourceResolver resolver = configuration.createResourceResolver();
+        if ( resolver != null ) {
+            try {
+                this.upgradeHistory(resolver.getResource(configuration.getPreviousVersionSuccessfulJobsPath()), true);
+                this.upgradeHistory(resolver.getResource(configuration.getPreviousVersionCancelledJobsPath()), false);
+                this.configuration.checkPreviousVersionHistory();
+            } catch ( final PersistenceException pe ) {
+                this.logger.warn("Problems moving job history from previous version.", pe);
+            } finally {
+                resolver.close();
+            }
+        }
+    }
+
+    /**
+     * Recursively find history jobs and move them.
+     * The moved jobs of a folder are committed together with the removal
+     * of the folder.
+     */
+    private void upgradeHistory(final Resource rsrc, final boolean isSuccess) throws PersistenceException {
+        if ( rsrc != null && caps.isActive() ) {
+            if ( rsrc.isResourceType(ResourceHelper.RESOURCE_TYPE_JOB) ) {
+                this.moveHistoryJob(rsrc, isSuccess);
+            } else {
+                for(final Resource child : rsrc.getChildren()) {
+                    this.upgradeHistory(child, isSuccess);
+                }
+                if ( caps.isActive() ) {
+                    rsrc.getResourceResolver().delete(rsrc);
+                    rsrc.getResourceResolver().commit();
+                    rsrc.getResourceResolver().refresh();
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a single history job into its bucket
+     */
+    private void moveHistoryJob(final Resource jobResource, final boolean isSuccess)
+    throws PersistenceException {
+        final ResourceResolver resolver = jobResource.getResourceResolver();
+        try {
+            final ValueMap vm = ResourceHelper.getValueMap(jobResource);
+            final Map<String, Object> properties = ResourceHelper.cloneValueMap(vm);
+            final String topic = (String)properties.get(ResourceHelper.PROPERTY_JOB_TOPIC);
+            if ( topic == null ) {
+                this.logger.warn("Removing history job without topic at {}", jobResource.getPath());
+                resolver.delete(jobResource);
+                return;
+            }
+            // jobs finished by previous versions without a finished date
+            // are bucketed by their creation date, so they expire in time
+            final Calendar finishedDate = Calendar.getInstance();
+            final Calendar storedFinishedDate = vm.get(Job.PROPERTY_FINISHED_DATE, Calendar.class);
+            if ( storedFinishedDate != null ) {
+                finishedDate.setTimeInMillis(storedFinishedDate.getTimeInMillis());
+            } else {
+                final Calendar createdDate = vm.get(Job.PROPERTY_JOB_CREATED, Calendar.class);
+                if ( createdDate != null ) {
+                    finishedDate.setTimeInMillis(createdDate.getTimeInMillis());
+                }
+                properties.put(Job.PROPERTY_FINISHED_DATE, finishedDate);
+            }
+            final String newPath = configuration.getStoragePath(topic, jobResource.getName(), isSuccess, finishedDate);
+            this.logger.debug("Moving history job from {} to {}", jobResource.getPath(), newPath);
+
+            ResourceHelper.getOrCreateResource(resolver, newPath, properties, false);
+            resolver.delete(jobResource);
+        } catch (final InstantiationException ie) {
+            throw new PersistenceException("Exception while reading reasource: " + ie.getMessage(), ie.getCause());
+        }
+    }
 }
@@ -285,6 +285,25 @@ public abstract class ResourceHelper {
                         true);
     }
 
+    /**
+     * Create the resource at the given path, intermediate resources are folders.
+     * @param resolver The resolver to use for creation
+     * @param path     The full path to be created
+     * @param props    The optional resource properties of the final resource
+     * @param autoCommit If set to false, the changes are left to be committed by the caller.
+     * @throws PersistenceException If anything fails
+     */
+    public static Resource getOrCreateResource(final ResourceResolver resolver,
+            final String path, final Map<String, Object> props,
+            final boolean autoCommit)
+    throws PersistenceException {
+       return getOrCreateResource(resolver,
+                        path,
+                        props,
+                        ResourceHelper.RESOURCE_TYPE_FOLDER,
+                        autoCommit);
+    }
+
     /**
      * Creates or gets the resource at the given path.
      * This is a copy of Sling's API ResourceUtil method to avoid a dependency on the latest
@@ -19,6 +19,7 @@
 package org.apache.sling.event.jobs;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.osgi.service.event.Event;
@@ -208,6 +209,22 @@ public interface JobManager {
      */
     Collection<ScheduledJobInfo> getScheduledJobs(String topic, long limit, Map<String, Object>... templates);
 
+    /**
+     * Add several jobs at once.
+     *
+     * The jobs are created by the builders, which must have been retrieved by {@link #createJob(String)}.
+     * Unlike adding each job on its own, the jobs are persisted in chunks with a single save per chunk.
+     * The same rules as for {@link #addJob(String, Map)} apply to each job: if a job is invalid
+     * or can't be persisted, it is not created, which does not affect the other jobs.
+     *
+     * @param jobs The job builders.
+     * @param errors Optional list which will be filled with error messages.
+     * @return A list containing the new job - or <code>null</code> if the job could not be created -
+     *         for each job builder in the iteration order of the collection.
+     * @since 1.7
+     */
+    List<Job> addJobs(Collection<JobBuilder> jobs, List<String> errors);
+
     /**
      * Restart the job manager.
      * This method restarts the job manager and all queues - currently processed jobs will be finished.
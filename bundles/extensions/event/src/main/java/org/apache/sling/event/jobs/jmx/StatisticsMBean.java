@@ -21,6 +21,9 @@ import java.util.Date;
 
 import org.apache.sling.event.jobs.Statistics;
 
+import aQute.bnd.annotation.ProviderType;
+
+@ProviderType
 public interface StatisticsMBean extends Statistics {
 
     Date getLastActivatedJobDate();
@@ -31,4 +34,40 @@ public interface StatisticsMBean extends Statistics {
 
     String getName();
 
+    /**
+     * The median of the waiting times in milliseconds.
+     * @since 1.1
+     */
+    long getWaitingTime50thPercentile();
+
+    /**
+     * The 95th percentile of the waiting times in milliseconds.
+     * @since 1.1
+     */
+    long getWaitingTime95thPercentile();
+
+    /**
+     * The 99th percentile of the waiting times in milliseconds.
+     * @since 1.1
+     */
+    long getWaitingTime99thPercentile();
+
+    /**
+     * The median of the processing times in milliseconds.
+     * @since 1.1
+     */
+    long getProcessingTime50thPercentile();
+
+    /**
+     * The 95th percentile of the processing times in milliseconds.
+     * @since 1.1
+     */
+    long getProcessingTime95thPercentile();
+
+    /**
+     * The 99th percentile of the processing times in milliseconds.
+     * @since 1.1
+     */
+    long getProcessingTime99thPercentile();
+
 }
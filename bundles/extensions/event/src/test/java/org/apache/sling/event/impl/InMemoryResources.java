@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.sling.api.resource.AbstractResource;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+
+/**
+ * Simple in memory resource tree for testing purposes.
+ * Changes are applied immediately, commits are only counted.
+ */
+public class InMemoryResources {
+
+    private final Map<String, Map<String, Object>> resources = new TreeMap<String, Map<String, Object>>();
+
+    private final ResourceResolver resolver;
+
+    private final ResourceResolverFactory factory;
+
+    private int commits;
+
+    public InMemoryResources() {
+        this.resources.put("/", new HashMap<String, Object>());
+        this.resolver = (ResourceResolver)Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                new Class[] {ResourceResolver.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                    throws Throwable {
+                        return invokeResolver(method, args);
+                    }
+                });
+        this.factory = (ResourceResolverFactory)Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                new Class[] {ResourceResolverFactory.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if ( method.getReturnType() == ResourceResolver.class ) {
+                            return resolver;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    public ResourceResolver getResourceResolver() {
+        return this.resolver;
+    }
+
+    public ResourceResolverFactory getResourceResolverFactory() {
+        return this.factory;
+    }
+
+    /**
+     * Add a resource and all missing parents.
+     */
+    public void add(final String path, final Map<String, Object> properties) {
+        final String parentPath = getParentPath(path);
+        if ( !this.resources.containsKey(parentPath) ) {
+            this.add(parentPath, new HashMap<String, Object>());
+        }
+        this.resources.put(path, new HashMap<String, Object>(properties));
+    }
+
+    public boolean exists(final String path) {
+        return this.resources.containsKey(path);
+    }
+
+    public ValueMap getProperties(final String path) {
+        final Map<String, Object> props = this.resources.get(path);
+        return props == null ? null : new ValueMapDecorator(props);
+    }
+
+    /**
+     * Get the paths of all resources below the given path.
+     */
+    public List<String> getPaths(final String path) {
+        final List<String> result = new ArrayList<String>();
+        for(final String p : this.resources.keySet()) {
+            if ( p.startsWith(path.concat("/")) ) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    public int getCommits() {
+        return this.commits;
+    }
+
+    private static String getParentPath(final String path) {
+        final int pos = path.lastIndexOf('/');
+        return pos == 0 ? "/" : path.substring(0, pos);
+    }
+
+    private Resource get(final String path) {
+        if ( this.resources.containsKey(path) ) {
+            return new TreeResource(path);
+        }
+        return null;
+    }
+
+    private List<Resource> getChildren(final String path) {
+        final String prefix = "/".equals(path) ? path : path.concat("/");
+        final List<Resource> children = new ArrayList<Resource>();
+        for(final String p : this.resources.keySet()) {
+            if ( p.length() > prefix.length() && p.startsWith(prefix) && p.indexOf('/', prefix.length()) == -1 ) {
+                children.add(new TreeResource(p));
+            }
+        }
+        return children;
+    }
+
+    private Object invokeResolver(final Method method, final Object[] args) throws PersistenceException {
+        final String name = method.getName();
+        if ( "getResource".equals(name) ) {
+            if ( args.length == 1 ) {
+                return get((String)args[0]);
+            }
+            final String relPath = (String)args[1];
+            return get(relPath.startsWith("/") ? relPath : ((Resource)args[0]).getPath() + '/' + relPath);
+        } else if ( "listChildren".equals(name) ) {
+            return getChildren(((Resource)args[0]).getPath()).iterator();
+        } else if ( "getChildren".equals(name) ) {
+            return getChildren(((Resource)args[0]).getPath());
+        } else if ( "hasChildren".equals(name) ) {
+            return !getChildren(((Resource)args[0]).getPath()).isEmpty();
+        } else if ( "getParent".equals(name) ) {
+            return get(getParentPath(((Resource)args[0]).getPath()));
+        } else if ( "create".equals(name) ) {
+            final String path = ((Resource)args[0]).getPath() + '/' + args[1];
+            if ( this.resources.containsKey(path) ) {
+                throw new PersistenceException("Resource already exists: " + path);
+            }
+            @SuppressWarnings("unchecked")
+            final Map<String, Object> props = (Map<String, Object>)args[2];
+            this.add(path, props == null ? new HashMap<String, Object>() : props);
+            return get(path);
+        } else if ( "delete".equals(name) ) {
+            final String path = ((Resource)args[0]).getPath();
+            for(final String p : this.getPaths(path)) {
+                this.resources.remove(p);
+            }
+            this.resources.remove(path);
+            return null;
+        } else if ( "commit".equals(name) ) {
+            this.commits++;
+            return null;
+        } else if ( "isResourceType".equals(name) ) {
+            return ((Resource)args[0]).isResourceType((String)args[1]);
+        } else if ( "isLive".equals(name) ) {
+            return true;
+        } else if ( "hasChanges".equals(name) ) {
+            return false;
+        } else if ( "revert".equals(name) || "refresh".equals(name) || "close".equals(name)
+                    || "getParentResourceType".equals(name) || "adaptTo".equals(name) ) {
+            return null;
+        } else if ( "hashCode".equals(name) ) {
+            return System.identityHashCode(this);
+        } else if ( "equals".equals(name) ) {
+            return args[0] == this.resolver;
+        } else if ( "toString".equals(name) ) {
+            return "InMemoryResourceResolver";
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    private final class TreeResource extends AbstractResource {
+
+        private final String path;
+
+        private final ResourceMetadata metadata = new ResourceMetadata();
+
+        public TreeResource(final String path) {
+            this.path = path;
+            this.metadata.setResolutionPath(path);
+        }
+
+        @Override
+        public String getPath() {
+            return this.path;
+        }
+
+        @Override
+        public String getResourceType() {
+            final Object type = resources.get(this.path).get(ResourceResolver.PROPERTY_RESOURCE_TYPE);
+            return type == null ? "nt:unstructured" : type.toString();
+        }
+
+        @Override
+        public String getResourceSuperType() {
+            return null;
+        }
+
+        @Override
+        public ResourceMetadata getResourceMetadata() {
+            return this.metadata;
+        }
+
+        @Override
+        public ResourceResolver getResourceResolver() {
+            return resolver;
+        }
+
+        @Override
+        public boolean isResourceType(final String resourceType) {
+            return this.getResourceType().equals(resourceType);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <AdapterType> AdapterType adaptTo(final Class<AdapterType> type) {
+            final Map<String, Object> props = resources.get(this.path);
+            if ( props != null && (type == ValueMap.class || type == ModifiableValueMap.class) ) {
+                return (AdapterType)new ModifiableValueMapDecorator(props);
+            }
+            return null;
+        }
+    }
+
+    private static final class ModifiableValueMapDecorator extends ValueMapDecorator implements ModifiableValueMap {
+
+        public ModifiableValueMapDecorator(final Map<String, Object> base) {
+            super(base);
+        }
+    }
+}
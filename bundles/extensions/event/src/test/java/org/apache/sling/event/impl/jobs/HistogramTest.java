@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.sling.event.impl.jobs.stats.Histogram;
+import org.apache.sling.event.impl.jobs.stats.StatisticsImpl;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test public void testEmpty() {
+        final Histogram h = new Histogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getPercentile(50));
+    }
+
+    @Test public void testPercentiles() {
+        final Histogram h = new Histogram();
+        for(int i = 1; i <= 1000; i++) {
+            h.record(i);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(1000, h.getMax());
+        assertWithin(500, h.getPercentile(50));
+        assertWithin(950, h.getPercentile(95));
+        assertWithin(990, h.getPercentile(99));
+        assertEquals(1000, h.getPercentile(100));
+        assertEquals(1, h.getPercentile(0));
+    }
+
+    @Test public void testSmallValuesAreExact() {
+        final Histogram h = new Histogram();
+        h.record(-5);
+        h.record(3);
+        h.record(7);
+        assertEquals(0, h.getPercentile(33));
+        assertEquals(3, h.getPercentile(66));
+        assertEquals(7, h.getPercentile(100));
+    }
+
+    @Test public void testLargeValues() {
+        final Histogram h = new Histogram();
+        h.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, h.getPercentile(50));
+    }
+
+    @Test public void testAdd() {
+        final Histogram a = new Histogram();
+        final Histogram b = new Histogram();
+        for(int i = 0; i < 90; i++) {
+            a.record(10);
+        }
+        for(int i = 0; i < 10; i++) {
+            b.record(5000);
+        }
+        a.add(b);
+        assertEquals(100, a.getCount());
+        assertEquals(5000, a.getMax());
+        assertEquals(10, a.getPercentile(90));
+        assertWithin(5000, a.getPercentile(95));
+
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(10, b.getCount());
+    }
+
+    @Test public void testStatistics() {
+        final StatisticsImpl stat = new StatisticsImpl();
+        stat.incQueued();
+        stat.addActive(100);
+        stat.finishedJob(200);
+        stat.incQueued();
+        stat.addActive(300);
+        stat.finishedJob(800);
+        assertEquals(2, stat.getWaitingTimes().getCount());
+        assertEquals(800, stat.getProcessingTimes().getMax());
+
+        final StatisticsImpl copy = new StatisticsImpl();
+        copy.copyFrom(stat);
+        copy.add(stat);
+        assertEquals(4, copy.getProcessingTimes().getCount());
+        assertEquals(500, copy.getAverageProcessingTime());
+        assertEquals(4, copy.getNumberOfFinishedJobs());
+
+        stat.reset();
+        assertEquals(0, stat.getProcessingTimes().getCount());
+        assertEquals(4, copy.getProcessingTimes().getCount());
+    }
+
+    @Test public void testConcurrentUpdates() throws Exception {
+        final StatisticsImpl stat = new StatisticsImpl();
+        final Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int j = 0; j < 10000; j++) {
+                        stat.incQueued();
+                        stat.addActive(j % 100);
+                        stat.finishedJob(j % 1000);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(80000, stat.getNumberOfFinishedJobs());
+        assertEquals(0, stat.getNumberOfQueuedJobs());
+        assertEquals(0, stat.getNumberOfActiveJobs());
+        assertEquals(80000, stat.getProcessingTimes().getCount());
+        assertEquals(999, stat.getProcessingTimes().getMax());
+    }
+
+    /** The histogram is precise to 12.5% */
+    private void assertWithin(final long expected, final long actual) {
+        assertTrue("Expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.sling.event.impl.jobs.stats.StripedCounter;
+import org.junit.Test;
+
+public class StripedCounterTest {
+
+    @Test public void testUncontended() {
+        final StripedCounter c = new StripedCounter();
+        assertEquals(0, c.get());
+        c.increment();
+        c.add(10);
+        c.decrement();
+        assertEquals(10, c.get());
+        c.set(3);
+        assertEquals(3, c.get());
+    }
+
+    @Test public void testConcurrentUpdates() throws Exception {
+        final StripedCounter c = new StripedCounter();
+        final Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for(int n = 0; n < 100000; n++) {
+                        c.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for(final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(800000, c.get());
+
+        c.set(5);
+        assertEquals(5, c.get());
+        c.add(2);
+        assertEquals(7, c.get());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.TimeZone;
+
+import org.apache.sling.event.impl.InMemoryResources;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobManagerConfigurationTest {
+
+    private static final String HISTORY = JobManagerConfigurationTestFactory.JOBS_ROOT + "/history";
+
+    private InMemoryResources resources;
+
+    private JobManagerConfiguration config;
+
+    @Before
+    public void setup() throws Exception {
+        resources = new InMemoryResources();
+        config = JobManagerConfigurationTestFactory.create(resources.getResourceResolverFactory());
+    }
+
+    private Calendar date(final String timeZone, final int year, final int month, final int day, final int hour, final int minute) {
+        final Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(timeZone));
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute);
+        return cal;
+    }
+
+    @Test public void testStoragePathLayout() {
+        assertEquals(HISTORY + "/finished/a.b/2014/3/7/9/2014_03_07_08_00_1",
+                config.getStoragePath("a/b", "a.b/2014/3/7/8/0/2014_03_07_08_00_1", true, date("UTC", 2014, 3, 7, 9, 59)));
+        assertEquals(HISTORY + "/cancelled/a/2014/12/31/23/id",
+                config.getStoragePath("a", "id", false, date("UTC", 2014, 12, 31, 23, 0)));
+    }
+
+    @Test public void testStoragePathIsIndependentOfTimeZone() {
+        // 2014-03-07 00:30 CET is 2014-03-06 23:30 UTC
+        assertEquals(HISTORY + "/finished/a/2014/3/6/23/id",
+                config.getStoragePath("a", "id", true, date("Europe/Berlin", 2014, 3, 7, 0, 30)));
+        // 2014-10-25 19:30 EDT is 2014-10-25 23:30 UTC
+        assertEquals(HISTORY + "/finished/a/2014/10/25/23/id",
+                config.getStoragePath("a", "id", true, date("America/New_York", 2014, 10, 25, 19, 30)));
+    }
+
+    @Test public void testRepeatedHourOfDaylightSavingTimeUsesTwoBuckets() {
+        final Calendar first = date("Europe/Berlin", 2014, 10, 26, 2, 30);
+        first.set(Calendar.DST_OFFSET, 60 * 60 * 1000);
+        final Calendar second = date("Europe/Berlin", 2014, 10, 26, 2, 30);
+        second.set(Calendar.DST_OFFSET, 0);
+        assertEquals(60 * 60 * 1000, second.getTimeInMillis() - first.getTimeInMillis());
+
+        assertEquals(HISTORY + "/finished/a/2014/10/26/0/id", config.getStoragePath("a", "id", true, first));
+        assertEquals(HISTORY + "/finished/a/2014/10/26/1/id", config.getStoragePath("a", "id", true, second));
+    }
+
+    @Test public void testIsStoragePath() {
+        assertTrue(config.isStoragePath(HISTORY + "/finished/a/2014/10/26/0/id"));
+        assertTrue(config.isStoragePath(HISTORY + "/cancelled/a/2014/10/26/0/id"));
+        assertTrue(config.isStoragePath(config.getPreviousVersionSuccessfulJobsPath() + "/a/2014/10/26/0/0/id"));
+        assertFalse(config.isStoragePath(config.getUnassignedJobsPath() + "/a/2014/10/26/0/0/id"));
+    }
+
+    @Test public void testNoPreviousVersionHistory() {
+        assertFalse(config.hasPreviousVersionHistory());
+    }
+
+    @Test public void testPreviousVersionHistoryIsCheckedUntilRemoved() throws Exception {
+        resources.add(JobManagerConfigurationTestFactory.JOBS_ROOT + "/cancelled", Collections.<String, Object>emptyMap());
+        config = JobManagerConfigurationTestFactory.create(resources.getResourceResolverFactory());
+        assertTrue(config.hasPreviousVersionHistory());
+
+        config.checkPreviousVersionHistory();
+        assertTrue(config.hasPreviousVersionHistory());
+
+        resources.getResourceResolver().delete(resources.getResourceResolver().getResource(config.getPreviousVersionCancelledJobsPath()));
+        config.checkPreviousVersionHistory();
+        assertFalse(config.hasPreviousVersionHistory());
+
+        // once removed, the history does not come back
+        resources.add(JobManagerConfigurationTestFactory.JOBS_ROOT + "/finished", Collections.<String, Object>emptyMap());
+        config.checkPreviousVersionHistory();
+        assertFalse(config.hasPreviousVersionHistory());
+    }
+}
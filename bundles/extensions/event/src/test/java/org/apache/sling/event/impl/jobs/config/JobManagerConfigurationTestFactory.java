@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.discovery.ClusterView;
+import org.apache.sling.discovery.InstanceDescription;
+import org.apache.sling.discovery.TopologyView;
+import org.apache.sling.event.impl.support.Environment;
+import org.mockito.Mockito;
+
+/**
+ * Creates activated job manager configurations for testing purposes.
+ */
+public class JobManagerConfigurationTestFactory {
+
+    public static final String JOBS_ROOT = "/var/eventing/jobs";
+
+    public static JobManagerConfiguration create(final ResourceResolverFactory factory)
+    throws NoSuchFieldException {
+        Environment.APPLICATION_ID = "local";
+
+        final JobManagerConfiguration config = new JobManagerConfiguration();
+        PrivateAccessor.setField(config, "resourceResolverFactory", factory);
+        PrivateAccessor.setField(config, "queueConfigManager", new QueueConfigurationManager());
+
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put(JobManagerConfiguration.PROPERTY_REPOSITORY_PATH, JOBS_ROOT);
+        config.activate(props);
+
+        return config;
+    }
+
+    /**
+     * Set the topology of a single instance.
+     */
+    public static TopologyCapabilities setTopology(final JobManagerConfiguration config,
+            final boolean isLeader)
+    throws NoSuchFieldException {
+        final ClusterView cv = Mockito.mock(ClusterView.class);
+        Mockito.when(cv.getId()).thenReturn("cluster");
+
+        final InstanceDescription local = Mockito.mock(InstanceDescription.class);
+        Mockito.when(local.isLeader()).thenReturn(isLeader);
+        Mockito.when(local.getSlingId()).thenReturn(Environment.APPLICATION_ID);
+        Mockito.when(local.getClusterView()).thenReturn(cv);
+        Mockito.when(cv.getInstances()).thenReturn(Collections.singletonList(local));
+
+        final TopologyView tv = Mockito.mock(TopologyView.class);
+        Mockito.when(tv.getInstances()).thenReturn(Collections.singleton(local));
+        Mockito.when(tv.getLocalInstance()).thenReturn(local);
+
+        final TopologyCapabilities caps = new TopologyCapabilities(tv, config);
+        PrivateAccessor.setField(config, "topologyCapabilities", caps);
+
+        return caps;
+    }
+}
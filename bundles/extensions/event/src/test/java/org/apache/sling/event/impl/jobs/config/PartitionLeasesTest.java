@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.event.impl.support.Environment;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class PartitionLeasesTest {
+
+    private static final String LEASES_PATH = "/var/eventing/jobs/leases";
+
+    private JobManagerConfiguration config;
+
+    private TopologyCapabilities caps;
+
+    private Resource leasesResource;
+
+    private Resource ownLease;
+
+    private ModifiableValueMap ownProperties;
+
+    @Before
+    public void setup() {
+        Environment.APPLICATION_ID = "b";
+
+        final ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+        config = Mockito.mock(JobManagerConfiguration.class);
+        Mockito.when(config.createResourceResolver()).thenReturn(resolver);
+        Mockito.when(config.getLeasesPath()).thenReturn(LEASES_PATH);
+
+        caps = Mockito.mock(TopologyCapabilities.class);
+        Mockito.when(caps.getLocalClusterInstances()).thenReturn(Arrays.asList("a", "b"));
+
+        leasesResource = Mockito.mock(Resource.class);
+        Mockito.when(resolver.getResource(LEASES_PATH)).thenReturn(leasesResource);
+
+        ownProperties = Mockito.mock(ModifiableValueMap.class);
+        ownLease = Mockito.mock(Resource.class);
+        Mockito.when(ownLease.getName()).thenReturn("b");
+        Mockito.when(ownLease.adaptTo(ModifiableValueMap.class)).thenReturn(ownProperties);
+    }
+
+    private Resource lease(final String name, final long partitions, final long expires) {
+        final Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(expires);
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("lease.partitions", partitions);
+        props.put("lease.expires", cal);
+
+        final Resource rsrc = Mockito.mock(Resource.class);
+        Mockito.when(rsrc.getName()).thenReturn(name);
+        Mockito.when(rsrc.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(props));
+        return rsrc;
+    }
+
+    @Test public void testPartition() {
+        for(int i = 0; i < 1000; i++) {
+            final int partition = PartitionLeases.getPartition("topic" + i);
+            assertTrue(partition >= 0 && partition < PartitionLeases.PARTITIONS);
+        }
+        assertEquals(PartitionLeases.getPartition("topic"), PartitionLeases.getPartition("topic"));
+    }
+
+    @Test public void testNoLease() {
+        final PartitionLeases leases = new PartitionLeases(config);
+        for(int i = 0; i < 100; i++) {
+            assertFalse(leases.isOwner("topic" + i));
+        }
+    }
+
+    @Test public void testRenew() {
+        // instance a holds a lease for its half and for partition 40
+        final Resource other = lease("a", 0xFFFFFFFFL | (1L << 40), System.currentTimeMillis() + PartitionLeases.LEASE_TIME);
+        Mockito.when(leasesResource.getChildren()).thenReturn(Arrays.asList(other, ownLease));
+
+        final PartitionLeases leases = new PartitionLeases(config);
+        leases.renew(caps);
+        for(int i = 0; i < 1000; i++) {
+            final int partition = PartitionLeases.getPartition("topic" + i);
+            assertEquals(partition >= 32 && partition != 40, leases.isOwner("topic" + i));
+        }
+        Mockito.verify(ownProperties).put("lease.partitions", 0xFFFFFFFF00000000L & ~(1L << 40));
+
+        leases.release();
+        for(int i = 0; i < 100; i++) {
+            assertFalse(leases.isOwner("topic" + i));
+        }
+    }
+
+    @Test public void testExpiredLease() {
+        // the lease of instance a has expired, b takes only its own half
+        final Resource other = lease("a", -1L, System.currentTimeMillis() - 1000);
+        Mockito.when(leasesResource.getChildren()).thenReturn(Arrays.asList(other, ownLease));
+
+        final PartitionLeases leases = new PartitionLeases(config);
+        leases.renew(caps);
+        for(int i = 0; i < 1000; i++) {
+            final int partition = PartitionLeases.getPartition("topic" + i);
+            assertEquals(partition >= 32, leases.isOwner("topic" + i));
+        }
+    }
+
+    @Test public void testUnevenTopics() {
+        // instance a holds its half, b owns the other one
+        final Resource other = lease("a", 0xFFFFFFFFL, System.currentTimeMillis() + PartitionLeases.LEASE_TIME);
+        Mockito.when(leasesResource.getChildren()).thenReturn(Arrays.asList(other, ownLease));
+
+        final PartitionLeases leases = new PartitionLeases(config);
+        leases.renew(caps);
+
+        // one busy topic and a few quiet ones, keyed per lock
+        int owned = 0;
+        int total = 0;
+        for(int i = 0; i < 2000; i++) {
+            if ( leases.isOwner("org.apache.sling.busy/job-" + i) ) {
+                owned++;
+            }
+            total++;
+        }
+        for(int t = 0; t < 5; t++) {
+            for(int i = 0; i < 10; i++) {
+                if ( leases.isOwner("org.apache.sling.quiet" + t + "/job-" + i) ) {
+                    owned++;
+                }
+                total++;
+            }
+        }
+        // the locks of the busy topic are spread over both instances
+        assertTrue("Owned " + owned + " of " + total, owned > total * 4 / 10 && owned < total * 6 / 10);
+
+        // all partitions are used for consecutive names
+        final boolean[] used = new boolean[PartitionLeases.PARTITIONS];
+        for(int i = 0; i < 1000; i++) {
+            used[PartitionLeases.getPartition("org.apache.sling.busy/job-" + i)] = true;
+        }
+        for(final boolean u : used) {
+            assertTrue(u);
+        }
+    }
+}
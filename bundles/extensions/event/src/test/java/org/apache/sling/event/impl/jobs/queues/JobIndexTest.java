@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.queues;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.event.impl.jobs.JobImpl;
+import org.apache.sling.event.jobs.Job;
+import org.junit.Test;
+
+public class JobIndexTest {
+
+    private JobImpl job(final String topic, final long created, final long counter) {
+        final Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(created);
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(Job.PROPERTY_JOB_CREATED, cal);
+        final String id = "2015/1/1/1/1/app_" + counter;
+        properties.put(JobImpl.PROPERTY_RESOURCE_PATH, "/jobs/" + topic + "/" + id);
+        return new JobImpl(topic, null, id, properties);
+    }
+
+    private List<String> poll(final JobIndex index, final int max) {
+        final List<String> result = new ArrayList<String>();
+        for(final JobIndex.Entry entry : index.poll(max)) {
+            result.add(entry.jobId);
+        }
+        return result;
+    }
+
+    @Test public void testOrdering() {
+        final JobIndex index = new JobIndex(false, 1);
+        final JobImpl job1 = job("a", 1000, 5);
+        final JobImpl job2 = job("b", 1000, 30);
+        final JobImpl job3 = job("a", 2000, 1);
+        final JobImpl job4 = job("b", 500, 100);
+        index.add(job1);
+        index.add(job2);
+        index.add(job3);
+        index.add(job4);
+
+        final List<String> ids = poll(index, 10);
+        assertEquals(4, ids.size());
+        assertEquals(job4.getId(), ids.get(0));
+        assertEquals(job1.getId(), ids.get(1));
+        assertEquals(job2.getId(), ids.get(2));
+        assertEquals(job3.getId(), ids.get(3));
+        assertTrue(index.isEmpty());
+    }
+
+    @Test public void testPollLimit() {
+        final JobIndex index = new JobIndex(false, 1);
+        for(int i = 0; i < 25; i++) {
+            index.add(job("a", 1000, i));
+        }
+        assertEquals(10, poll(index, 10).size());
+        assertEquals(10, poll(index, 10).size());
+        assertEquals(5, poll(index, 10).size());
+        assertTrue(index.isEmpty());
+        assertEquals(0, poll(index, 10).size());
+    }
+
+    @Test public void testTopicRoundRobin() {
+        final JobIndex index = new JobIndex(true, 1);
+        index.add(job("a", 1000, 1));
+        index.add(job("a", 1000, 2));
+        index.add(job("a", 1000, 3));
+        index.add(job("b", 2000, 4));
+        index.add(job("c", 3000, 5));
+
+        final List<String> topics = new ArrayList<String>();
+        for(final JobIndex.Entry entry : index.poll(2)) {
+            topics.add(entry.topic);
+        }
+        for(final JobIndex.Entry entry : index.poll(10)) {
+            topics.add(entry.topic);
+        }
+        // the turn continues with the topic after the last polled one
+        assertEquals("a", topics.get(0));
+        assertEquals("b", topics.get(1));
+        assertEquals("c", topics.get(2));
+        assertEquals("a", topics.get(3));
+        assertEquals("a", topics.get(4));
+        assertEquals(5, topics.size());
+    }
+
+    @Test public void testReconcile() {
+        final JobIndex index = new JobIndex(false, 1);
+        final JobImpl job1 = job("a", 1000, 1);
+        final JobImpl job2 = job("a", 1000, 2);
+        final JobImpl job3 = job("a", 1000, 3);
+        assertEquals("a", index.add(job1));
+        assertEquals("a", index.add(job2));
+
+        // job1 is moved to the cache, job2 stays in the index
+        assertEquals(job1.getId(), poll(index, 1).get(0));
+
+        // a rescan of the topic finds all three jobs, only job3 is new
+        assertNull(index.add(job1));
+        assertNull(index.add(job2));
+        assertEquals("a", index.add(job3));
+        assertEquals(3, index.size());
+
+        final List<String> ids = poll(index, 10);
+        assertEquals(2, ids.size());
+        assertEquals(job2.getId(), ids.get(0));
+        assertEquals(job3.getId(), ids.get(1));
+    }
+
+    @Test public void testRemoved() {
+        final JobIndex index = new JobIndex(false, 1);
+        final JobImpl job1 = job("a", 1000, 1);
+        index.add(job1);
+        poll(index, 1);
+        // the job has been removed in the meantime, a later scan may add it again
+        index.removed(job1.getId());
+        assertFalse(index.isKnown(job1.getId()));
+        assertEquals("a", index.add(job1));
+    }
+
+    @Test public void testNotificationAfterTake() {
+        final JobIndex index = new JobIndex(false, 1);
+        final JobImpl job1 = job("a", 1000, 1);
+        index.add(job1);
+        poll(index, 1);
+        index.taken(job1.getId());
+
+        // a late notification or a scan still sees the job as not started
+        assertTrue(index.isKnown(job1.getId()));
+        assertNull(index.add(job1));
+        assertTrue(index.isEmpty());
+
+        // the job is rescheduled and put back into the cache
+        index.requeued(job1.getId());
+        assertTrue(index.isKnown(job1.getId()));
+        assertNull(index.add(job1));
+        assertTrue(index.isEmpty());
+
+        // taken again and finished
+        index.taken(job1.getId());
+        assertNull(index.add(job1));
+    }
+
+    @Test public void testTakenLimit() {
+        final JobIndex index = new JobIndex(false, 1);
+        final JobImpl job1 = job("a", 1000, 1);
+        index.add(job1);
+        poll(index, 1);
+        index.taken(job1.getId());
+        for(int i = 0; i < JobIndex.MAX_TAKEN_JOBS + 1; i++) {
+            index.taken("other_" + i);
+        }
+        assertFalse(index.isKnown(job1.getId()));
+        assertEquals(0, index.size());
+    }
+
+    @Test public void testTakenLimitCoversParallelJobs() {
+        final JobIndex index = new JobIndex(false, 50);
+        final JobImpl job1 = job("a", 1000, 1);
+        index.add(job1);
+        poll(index, 1);
+        index.taken(job1.getId());
+        for(int i = 0; i < JobIndex.MAX_TAKEN_JOBS + 49; i++) {
+            index.taken("other_" + i);
+        }
+        assertTrue(index.isKnown(job1.getId()));
+        index.taken("last");
+        assertFalse(index.isKnown(job1.getId()));
+    }
+}
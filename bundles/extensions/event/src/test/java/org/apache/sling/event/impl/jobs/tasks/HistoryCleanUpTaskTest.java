@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.impl.InMemoryResources;
+import org.apache.sling.event.impl.jobs.JobImpl;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfigurationTestFactory;
+import org.apache.sling.event.impl.support.ResourceHelper;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobExecutionContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class HistoryCleanUpTaskTest {
+
+    private InMemoryResources resources;
+
+    private JobManagerConfiguration config;
+
+    private HistoryCleanUpTask task;
+
+    private int jobCounter;
+
+    @Before
+    public void setup() throws Exception {
+        resources = new InMemoryResources();
+        config = JobManagerConfigurationTestFactory.create(resources.getResourceResolverFactory());
+        task = new HistoryCleanUpTask();
+        PrivateAccessor.setField(task, "configuration", config);
+    }
+
+    private Calendar minutesAgo(final int minutes) {
+        final Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.MINUTE, -minutes);
+        return cal;
+    }
+
+    private Calendar utc(final int year, final int month, final int day, final int hour) {
+        final Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(year, month - 1, day, hour, 30);
+        return cal;
+    }
+
+    private String addJob(final String topic, final Calendar finishedDate, final Job.JobState state) {
+        final boolean isSuccess = state == Job.JobState.SUCCEEDED;
+        final String path = config.getStoragePath(topic, "job_" + jobCounter++, isSuccess, finishedDate);
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, ResourceHelper.RESOURCE_TYPE_JOB);
+        props.put(ResourceHelper.PROPERTY_JOB_TOPIC, topic);
+        props.put(Job.PROPERTY_FINISHED_DATE, finishedDate);
+        props.put(JobImpl.PROPERTY_FINISHED_STATE, state.name());
+        resources.add(path, props);
+        return path;
+    }
+
+    private void cleanup(final int age, final String[] topics, final String[] states) {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("age", age);
+        if ( topics != null ) {
+            props.put("topic", topics);
+        }
+        if ( states != null ) {
+            props.put("state", states);
+        }
+        final Job job = new JobImpl("org/apache/sling/event/impl/jobs/tasks/HistoryCleanUpTask", null, "cleanup_1", props);
+
+        final JobExecutionContext context = Mockito.mock(JobExecutionContext.class);
+        final JobExecutionContext.ResultBuilder builder = Mockito.mock(JobExecutionContext.ResultBuilder.class);
+        Mockito.when(context.result()).thenReturn(builder);
+
+        task.process(job, context);
+    }
+
+    @Test public void testOldBucketIsRemovedWithOneCommit() {
+        for(int hour = 0; hour < 5; hour++) {
+            addJob("a", utc(2010, 1, 1, hour), Job.JobState.SUCCEEDED);
+            addJob("a", utc(2010, 2, 1, hour), Job.JobState.SUCCEEDED);
+        }
+        final int commits = resources.getCommits();
+
+        cleanup(60, null, null);
+
+        assertFalse(resources.exists(config.getStoredSuccessfulJobsPath() + "/a/2010"));
+        assertTrue(resources.exists(config.getStoredSuccessfulJobsPath() + "/a"));
+        assertEquals(1, resources.getCommits() - commits);
+    }
+
+    @Test public void testYoungJobsAreKept() {
+        final String old = addJob("a", minutesAgo(90), Job.JobState.SUCCEEDED);
+        final String expired = addJob("a", minutesAgo(61), Job.JobState.SUCCEEDED);
+        final String young = addJob("a", minutesAgo(59), Job.JobState.SUCCEEDED);
+        final String veryYoung = addJob("a", minutesAgo(0), Job.JobState.STOPPED);
+
+        cleanup(60, null, null);
+
+        assertFalse(resources.exists(old));
+        assertFalse(resources.exists(expired));
+        assertTrue(resources.exists(young));
+        assertTrue(resources.exists(veryYoung));
+    }
+
+    @Test public void testStateFilter() {
+        final String error = addJob("a", utc(2010, 1, 1, 0), Job.JobState.ERROR);
+        final String stopped = addJob("a", utc(2010, 1, 1, 0), Job.JobState.STOPPED);
+        final String succeeded = addJob("a", utc(2010, 1, 1, 0), Job.JobState.SUCCEEDED);
+        addJob("b", utc(2010, 1, 1, 0), Job.JobState.ERROR);
+
+        cleanup(60, null, new String[] {Job.JobState.ERROR.name()});
+
+        assertFalse(resources.exists(error));
+        assertTrue(resources.exists(stopped));
+        assertTrue(resources.exists(succeeded));
+        // all jobs of topic b are removed, so are its buckets
+        assertTrue(resources.exists(config.getStoredCancelledJobsPath() + "/b"));
+        assertFalse(resources.exists(config.getStoredCancelledJobsPath() + "/b/2010"));
+    }
+
+    @Test public void testTopicFilter() {
+        final String a = addJob("a", utc(2010, 1, 1, 0), Job.JobState.SUCCEEDED);
+        final String b = addJob("b", utc(2010, 1, 1, 0), Job.JobState.SUCCEEDED);
+
+        cleanup(60, new String[] {"b"}, null);
+
+        assertTrue(resources.exists(a));
+        assertFalse(resources.exists(b));
+    }
+
+    @Test public void testOtherResourcesAreIgnored() {
+        final String other = config.getStoredSuccessfulJobsPath() + "/a/other";
+        resources.add(other, Collections.<String, Object>emptyMap());
+        addJob("a", utc(2010, 1, 1, 0), Job.JobState.SUCCEEDED);
+
+        cleanup(60, null, null);
+
+        assertTrue(resources.exists(other));
+        assertFalse(resources.exists(config.getStoredSuccessfulJobsPath() + "/a/2010"));
+    }
+}
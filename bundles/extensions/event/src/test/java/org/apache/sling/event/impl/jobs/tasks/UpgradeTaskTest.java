@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.event.impl.jobs.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.impl.InMemoryResources;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfiguration;
+import org.apache.sling.event.impl.jobs.config.JobManagerConfigurationTestFactory;
+import org.apache.sling.event.impl.jobs.scheduling.JobSchedulerImpl;
+import org.apache.sling.event.impl.support.ResourceHelper;
+import org.apache.sling.event.jobs.Job;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import junitx.util.PrivateAccessor;
+
+public class UpgradeTaskTest {
+
+    private static final String OLD_BUCKET = "/2014/1/1/10/5/";
+
+    private InMemoryResources resources;
+
+    private JobManagerConfiguration config;
+
+    private Calendar finishedDate;
+
+    private Calendar createdDate;
+
+    @Before
+    public void setup() throws Exception {
+        resources = new InMemoryResources();
+
+        finishedDate = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        finishedDate.clear();
+        finishedDate.set(2014, 1, 3, 4, 30);
+
+        createdDate = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        createdDate.clear();
+        createdDate.set(2014, 0, 1, 10, 5);
+
+        // history of a previous version below the creation date
+        final String root = JobManagerConfigurationTestFactory.JOBS_ROOT;
+        addJob(root + "/finished/a" + OLD_BUCKET + "job_1", "a", finishedDate);
+        addJob(root + "/finished/a" + OLD_BUCKET + "job_2", "a", finishedDate);
+        addJob(root + "/cancelled/b.c" + OLD_BUCKET + "job_3", "b/c", null, createdDate);
+        addJob(root + "/cancelled/x" + OLD_BUCKET + "job_4", null, finishedDate);
+
+        config = JobManagerConfigurationTestFactory.create(resources.getResourceResolverFactory());
+    }
+
+    private void addJob(final String path, final String topic, final Calendar finished) {
+        addJob(path, topic, finished, null);
+    }
+
+    private void addJob(final String path, final String topic, final Calendar finished, final Calendar created) {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put(ResourceResolver.PROPERTY_RESOURCE_TYPE, ResourceHelper.RESOURCE_TYPE_JOB);
+        if ( topic != null ) {
+            props.put(ResourceHelper.PROPERTY_JOB_TOPIC, topic);
+        }
+        if ( finished != null ) {
+            props.put(Job.PROPERTY_FINISHED_DATE, finished);
+        }
+        if ( created != null ) {
+            props.put(Job.PROPERTY_JOB_CREATED, created);
+        }
+        resources.add(path, props);
+    }
+
+    private int countFolders(final String path) {
+        int count = 1;
+        for(final String p : resources.getPaths(path)) {
+            if ( !p.substring(p.lastIndexOf('/') + 1).startsWith("job_") ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test public void testHistoryIsMovedIntoBuckets() throws Exception {
+        JobManagerConfigurationTestFactory.setTopology(config, true);
+        assertTrue(config.hasPreviousVersionHistory());
+
+        new UpgradeTask(config).run();
+
+        assertFalse(resources.exists(config.getPreviousVersionSuccessfulJobsPath()));
+        assertFalse(resources.exists(config.getPreviousVersionCancelledJobsPath()));
+        assertFalse(config.hasPreviousVersionHistory());
+
+        final String bucket = "/2014/2/3/4/";
+        final ValueMap job1 = resources.getProperties(config.getStoredSuccessfulJobsPath() + "/a" + bucket + "job_1");
+        assertNotNull(job1);
+        assertEquals("a", job1.get(ResourceHelper.PROPERTY_JOB_TOPIC, String.class));
+        assertEquals(finishedDate.getTimeInMillis(), job1.get(Job.PROPERTY_FINISHED_DATE, Calendar.class).getTimeInMillis());
+        assertTrue(resources.exists(config.getStoredSuccessfulJobsPath() + "/a" + bucket + "job_2"));
+
+        // job without topic is removed
+        assertFalse(resources.exists(config.getStoredCancelledJobsPath() + "/x"));
+    }
+
+    @Test public void testMissingFinishedDateDefaultsToCreatedDate() throws Exception {
+        JobManagerConfigurationTestFactory.setTopology(config, true);
+
+        new UpgradeTask(config).run();
+
+        final String jobPath = config.getStoragePath("b/c", "job_3", false, createdDate);
+        assertTrue(jobPath.endsWith("/2014/1/1/10/job_3"));
+        final Calendar finished = resources.getProperties(jobPath).get(Job.PROPERTY_FINISHED_DATE, Calendar.class);
+        assertNotNull(finished);
+        assertEquals(createdDate.getTimeInMillis(), finished.getTimeInMillis());
+    }
+
+    @Test public void testMissingFinishedAndCreatedDateDefaultsToNow() throws Exception {
+        JobManagerConfigurationTestFactory.setTopology(config, true);
+        addJob(config.getPreviousVersionCancelledJobsPath() + "/d" + OLD_BUCKET + "job_5", "d", null);
+
+        final long before = System.currentTimeMillis();
+        new UpgradeTask(config).run();
+        final long after = System.currentTimeMillis();
+
+        final List<String> paths = resources.getPaths(config.getStoredCancelledJobsPath() + "/d");
+        final String jobPath = paths.get(paths.size() - 1);
+        assertTrue(jobPath.endsWith("/job_5"));
+
+        final Calendar finished = resources.getProperties(jobPath).get(Job.PROPERTY_FINISHED_DATE, Calendar.class);
+        assertNotNull(finished);
+        assertTrue(finished.getTimeInMillis() >= before);
+        assertTrue(finished.getTimeInMillis() <= after);
+        assertEquals(config.getStoragePath("d", "job_5", false, finished), jobPath);
+    }
+
+    @Test public void testHistoryAddedLaterIsMovedByCleanUp() throws Exception {
+        JobManagerConfigurationTestFactory.setTopology(config, true);
+        new UpgradeTask(config).run();
+        assertFalse(config.hasPreviousVersionHistory());
+
+        // an instance of a previous version finishes another job
+        addJob(config.getPreviousVersionSuccessfulJobsPath() + "/a" + OLD_BUCKET + "job_6", "a", finishedDate);
+        PrivateAccessor.setField(config, "previousVersionHistory", true);
+
+        final CleanUpTask cleanUp = new CleanUpTask(config, Mockito.mock(JobSchedulerImpl.class));
+        for (int i = 0; i < 5; i++) {
+            cleanUp.run();
+        }
+
+        assertFalse(resources.exists(config.getPreviousVersionSuccessfulJobsPath()));
+        assertTrue(resources.exists(config.getStoredSuccessfulJobsPath() + "/a/2014/2/3/4/job_6"));
+        assertFalse(config.hasPreviousVersionHistory());
+    }
+
+    @Test public void testOneCommitPerFolder() throws Exception {
+        JobManagerConfigurationTestFactory.setTopology(config, true);
+        final int folders = countFolders(config.getPreviousVersionSuccessfulJobsPath())
+                + countFolders(config.getPreviousVersionCancelledJobsPath());
+        final int commits = resources.getCommits();
+
+        new UpgradeTask(config).run();
+
+        assertEquals(folders, resources.getCommits() - commits);
+    }
+
+    @Test public void testHistoryIsOnlyMovedByLeader() throws Exception {
+        JobManagerConfigurationTestFactory.setTopology(config, false);
+
+        new UpgradeTask(config).run();
+
+        assertTrue(resources.exists(config.getPreviousVersionSuccessfulJobsPath() + "/a" + OLD_BUCKET + "job_1"));
+        assertTrue(config.hasPreviousVersionHistory());
+    }
+}
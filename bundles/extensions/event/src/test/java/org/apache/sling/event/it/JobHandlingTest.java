@@ -22,6 +22,7 @@ package org.apache.sling.event.it;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -37,6 +38,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.sling.event.impl.Barrier;
 import org.apache.sling.event.impl.jobs.config.ConfigurationConstants;
 import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobBuilder;
 import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.NotificationConstants;
 import org.apache.sling.event.jobs.QueueConfiguration;
@@ -183,6 +185,57 @@ public class JobHandlingTest extends AbstractJobHandlingTest {
         this.sleep(5000);
     }
 
+    /**
+     * Test adding many jobs at once.
+     * An invalid job does not prevent the other jobs from being added.
+     */
+    @Test(timeout = DEFAULT_TEST_TIMEOUT)
+    public void testAddJobs() throws Exception {
+        final ServiceRegistration reg1 = this.registerJobConsumer(TOPIC,
+                new JobConsumer() {
+
+                    @Override
+                    public JobResult process(final Job job) {
+                        return JobResult.OK;
+                    }
+
+                 });
+        final AtomicInteger count = new AtomicInteger(0);
+        final ServiceRegistration reg2 = this.registerEventHandler(NotificationConstants.TOPIC_JOB_FINISHED,
+                new EventHandler() {
+                    @Override
+                    public void handleEvent(final Event event) {
+                        count.incrementAndGet();
+                    }
+                 });
+
+        try {
+            // more jobs than persisted with a single commit
+            final int COUNT = 1200;
+            final List<JobBuilder> builders = new ArrayList<JobBuilder>();
+            for(int i = 0; i < COUNT; i++ ) {
+                builders.add(this.getJobManager().createJob(TOPIC));
+                if ( i == 10 ) {
+                    builders.add(this.getJobManager().createJob("invalid//topic"));
+                }
+            }
+            final List<String> errors = new ArrayList<String>();
+            final List<Job> jobs = this.getJobManager().addJobs(builders, errors);
+            assertEquals("Result size", COUNT + 1, jobs.size());
+            assertNull("Invalid job", jobs.get(11));
+            assertEquals("Errors", 1, errors.size());
+            assertNotNull("Valid job", jobs.get(12));
+
+            while ( count.get() < COUNT ) {
+                this.sleep(50);
+            }
+            assertEquals("Finished count", COUNT, count.get());
+        } finally {
+            reg1.unregister();
+            reg2.unregister();
+        }
+    }
+
     /**
      * Test canceling a job
      * The job execution always fails
@@ -41,15 +41,31 @@ public abstract class AbstractNamespaceMappingRepository extends NamespaceMappin
 
     private ServiceTracker namespaceMapperTracker;
 
+    /** The namespace mappers as of the {@link #namespaceMappersTrackingCount} */
+    private volatile NamespaceMapper[] namespaceMappers;
+
+    private volatile int namespaceMappersTrackingCount = -1;
+
     protected final NamespaceMapper[] getNamespaceMapperServices() {
-        if (namespaceMapperTracker != null) {
-            // call namespace mappers
-            final Object[] nsMappers = namespaceMapperTracker.getServices();
-            if (nsMappers != null) {
-                NamespaceMapper[] mappers = new NamespaceMapper[nsMappers.length];
-                System.arraycopy(nsMappers, 0, mappers, 0, nsMappers.length);
-                return mappers;
+        final ServiceTracker tracker = namespaceMapperTracker;
+        if (tracker != null) {
+            // only copy the namespace mappers if the services have changed
+            if (tracker.getTrackingCount() != namespaceMappersTrackingCount) {
+                synchronized (tracker) {
+                    final int trackingCount = tracker.getTrackingCount();
+                    if (trackingCount != namespaceMappersTrackingCount) {
+                        final Object[] nsMappers = tracker.getServices();
+                        NamespaceMapper[] mappers = null;
+                        if (nsMappers != null) {
+                            mappers = new NamespaceMapper[nsMappers.length];
+                            System.arraycopy(nsMappers, 0, mappers, 0, nsMappers.length);
+                        }
+                        namespaceMappers = mappers;
+                        namespaceMappersTrackingCount = trackingCount;
+                    }
+                }
             }
+            return namespaceMappers;
         }
         return null;
     }
@@ -65,6 +81,8 @@ public abstract class AbstractNamespaceMappingRepository extends NamespaceMappin
             this.namespaceMapperTracker.close();
             this.namespaceMapperTracker = null;
         }
+        this.namespaceMappers = null;
+        this.namespaceMappersTrackingCount = -1;
         super.tearDown();
     }
 
@@ -28,6 +28,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 
 import javax.jcr.NamespaceException;
 import javax.jcr.RepositoryException;
@@ -64,7 +65,13 @@ public class Loader implements NamespaceMapper, BundleListener {
     private final List<Bundle> delayedBundles;
 
     /** Namespace prefix table. */
-    private final Map<Long, NamespaceEntry[]> namespaceTable = new HashMap<Long, NamespaceEntry[]>();
+    private final Map<Long, NamespaceEntry[]> namespaceTable = new TreeMap<Long, NamespaceEntry[]>();
+
+    /** The namespaces of all bundles, replaced when the namespace table changes */
+    private volatile NamespaceEntry[] namespaces = new NamespaceEntry[0];
+
+    /** The snapshot of the mapping of the {@link #namespaces} or <code>null</code> */
+    private volatile NamespaceMapping namespaceMapping;
 
     public Loader(final SlingRepository repository, final BundleContext bundleContext) {
         this.bundleContext = bundleContext;
@@ -91,43 +98,34 @@ public class Loader implements NamespaceMapper, BundleListener {
 
     //---------- NamespaceMapper interface
 
+    /**
+     * Defines the namespaces declared by the bundles on the session. The
+     * prefix remappings are computed on the first session after the declared
+     * namespaces have changed and just set on all other sessions.
+     */
     public void defineNamespacePrefixes(Session session)
     throws RepositoryException {
-        final Iterator<NamespaceEntry[]> iter = this.namespaceTable.values().iterator();
-        while ( iter.hasNext() ) {
-            final NamespaceEntry[] entries = iter.next();
-            for(int i=0; i<entries.length; i++) {
-
-                // the namespace prefixing is a little bit tricky:
-                String mappedPrefix = null;
-                // first, we check if the namespace is registered with a prefix
+        final NamespaceMapping mapping = this.namespaceMapping;
+        if (mapping != null) {
+            if (!mapping.isEmpty()) {
                 try {
-                    mappedPrefix = session.getNamespacePrefix(entries[i].namespace);
-                } catch (NamespaceException ne) {
-                    // the namespace is not registered yet, so we should do this
-                    // can we directly use the desired prefix?
-                    mappedPrefix = entries[i].prefix + "_new";
-                    try {
-                        session.getNamespaceURI(entries[i].prefix);
-                    } catch (NamespaceException ne2) {
-                        // as an exception occured we can directly use the new prefix
-                        mappedPrefix = entries[i].prefix;
-                    }
-                    session.getWorkspace().getNamespaceRegistry().registerNamespace(mappedPrefix, entries[i].namespace);
-                }
-                // do we have to remap?
-                if ( mappedPrefix != null && !mappedPrefix.equals(entries[i].prefix ) ) {
-                    // check if the prefix is already used?
-                    String oldUri = null;
-                    try {
-                        oldUri = session.getNamespaceURI(entries[i].prefix);
-                        session.setNamespacePrefix(entries[i].prefix + "_old", oldUri);
-                    } catch (NamespaceException ne) {
-                        // ignore: prefix is not used
-                    }
-                    // finally set prefix
-                    session.setNamespacePrefix(entries[i].prefix, entries[i].namespace);
+                    mapping.apply(session);
+                    return;
+                } catch (final NamespaceException ne) {
+                    // the namespace registry has changed, recreate the mapping
+                    log.debug("defineNamespacePrefixes: Recreating namespace mapping", ne);
                 }
+            } else {
+                return;
+            }
+        }
+
+        final NamespaceEntry[] entries = this.namespaces;
+        final NamespaceMapping newMapping = NamespaceMapping.create(entries, session);
+        synchronized (this.namespaceTable) {
+            // only keep the mapping if the namespaces did not change meanwhile
+            if (newMapping.isFor(this.namespaces)) {
+                this.namespaceMapping = newMapping;
             }
         }
     }
@@ -219,7 +217,10 @@ public class Loader implements NamespaceMapper, BundleListener {
                 }
             }
             if ( entries.size() > 0 ) {
-                this.namespaceTable.put(bundle.getBundleId(), entries.toArray(new NamespaceEntry[entries.size()]));
+                synchronized (this.namespaceTable) {
+                    this.namespaceTable.put(bundle.getBundleId(), entries.toArray(new NamespaceEntry[entries.size()]));
+                    this.updateNamespaces();
+                }
             }
         }
     }
@@ -229,7 +230,27 @@ public class Loader implements NamespaceMapper, BundleListener {
      * @param bundle The bundle.
      */
     protected void unregisterNamespaces(Bundle bundle) {
-        this.namespaceTable.remove(bundle.getBundleId());
+        synchronized (this.namespaceTable) {
+            if (this.namespaceTable.remove(bundle.getBundleId()) != null) {
+                this.updateNamespaces();
+            }
+        }
+    }
+
+    /**
+     * Replaces the namespaces of all bundles after the namespace table has
+     * changed and drops the namespace mapping. Must be called while
+     * synchronized on the namespace table.
+     */
+    private void updateNamespaces() {
+        final List<NamespaceEntry> entries = new ArrayList<NamespaceEntry>();
+        for (final NamespaceEntry[] bundleEntries : this.namespaceTable.values()) {
+            for (final NamespaceEntry entry : bundleEntries) {
+                entries.add(entry);
+            }
+        }
+        this.namespaces = entries.toArray(new NamespaceEntry[entries.size()]);
+        this.namespaceMapping = null;
     }
 
     private boolean registerBundleInternal (Bundle bundle, boolean isRetry) {
@@ -342,15 +363,4 @@ public class Loader implements NamespaceMapper, BundleListener {
             session.logout();
         }
     }
-
-    private static class NamespaceEntry {
-
-        public final String prefix;
-        public final String namespace;
-
-        public NamespaceEntry(String p, String n) {
-            this.prefix = p;
-            this.namespace = n;
-        }
-    }
 }
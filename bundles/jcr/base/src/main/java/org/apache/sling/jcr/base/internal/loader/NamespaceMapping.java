@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.base.internal.loader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.NamespaceException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/**
+ * The <code>NamespaceMapping</code> is an immutable snapshot of the session
+ * namespace prefix mappings required for the namespaces declared by the
+ * bundles.
+ * <p>
+ * The snapshot is created by {@link #create(NamespaceEntry[], Session)} on the
+ * first session after the declared namespaces have changed: namespaces not
+ * known to the repository are registered and the remappings of prefixes set
+ * on that session are recorded. All following sessions start with the same
+ * namespace registry and so just get the recorded remappings applied by
+ * {@link #apply(Session)} without looking up any namespace. If all declared
+ * namespaces are registered with their declared prefix, nothing has to be
+ * done for new sessions.
+ */
+final class NamespaceMapping {
+
+    /** The declared namespaces this snapshot has been created for */
+    private final NamespaceEntry[] entries;
+
+    /** The prefixes and namespaces to set on each session, in pairs */
+    private final String[] remappings;
+
+    private NamespaceMapping(final NamespaceEntry[] entries, final String[] remappings) {
+        this.entries = entries;
+        this.remappings = remappings;
+    }
+
+    /**
+     * Defines the namespace prefixes on the session and records the
+     * prefix remappings set on it.
+     *
+     * @param entries The declared namespaces
+     * @param session The session to define the namespace prefixes on
+     * @return The snapshot of the remappings set on the session
+     * @throws RepositoryException If a namespace cannot be registered or
+     *             a prefix cannot be set
+     */
+    static NamespaceMapping create(final NamespaceEntry[] entries, final Session session)
+    throws RepositoryException {
+        final List<String> remappings = new ArrayList<String>();
+        for (final NamespaceEntry entry : entries) {
+
+            // the namespace prefixing is a little bit tricky:
+            String mappedPrefix = null;
+            // first, we check if the namespace is registered with a prefix
+            try {
+                mappedPrefix = session.getNamespacePrefix(entry.namespace);
+            } catch (NamespaceException ne) {
+                // the namespace is not registered yet, so we should do this
+                // can we directly use the desired prefix?
+                mappedPrefix = entry.prefix + "_new";
+                try {
+                    session.getNamespaceURI(entry.prefix);
+                } catch (NamespaceException ne2) {
+                    // as an exception occured we can directly use the new prefix
+                    mappedPrefix = entry.prefix;
+                }
+                session.getWorkspace().getNamespaceRegistry().registerNamespace(mappedPrefix, entry.namespace);
+            }
+            // do we have to remap?
+            if (mappedPrefix != null && !mappedPrefix.equals(entry.prefix)) {
+                // check if the prefix is already used?
+                try {
+                    final String oldUri = session.getNamespaceURI(entry.prefix);
+                    setNamespacePrefix(session, entry.prefix + "_old", oldUri, remappings);
+                } catch (NamespaceException ne) {
+                    // ignore: prefix is not used
+                }
+                // finally set prefix
+                setNamespacePrefix(session, entry.prefix, entry.namespace, remappings);
+            }
+        }
+        return new NamespaceMapping(entries, remappings.toArray(new String[remappings.size()]));
+    }
+
+    private static void setNamespacePrefix(final Session session, final String prefix, final String uri,
+            final List<String> remappings)
+    throws RepositoryException {
+        session.setNamespacePrefix(prefix, uri);
+        remappings.add(prefix);
+        remappings.add(uri);
+    }
+
+    /**
+     * Returns <code>true</code> if this snapshot has been created for the
+     * given declared namespaces.
+     */
+    boolean isFor(final NamespaceEntry[] entries) {
+        return this.entries == entries;
+    }
+
+    /**
+     * Returns <code>true</code> if new sessions do not need any remapping.
+     */
+    boolean isEmpty() {
+        return this.remappings.length == 0;
+    }
+
+    /**
+     * Sets the recorded prefix remappings on the session.
+     *
+     * @throws RepositoryException If a prefix cannot be set, for example
+     *             because the namespace registry has changed since this
+     *             snapshot has been created.
+     */
+    void apply(final Session session) throws RepositoryException {
+        for (int i = 0; i < this.remappings.length; i += 2) {
+            session.setNamespacePrefix(this.remappings[i], this.remappings[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.base.internal.loader;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Hashtable;
+
+import javax.jcr.NamespaceException;
+import javax.jcr.Session;
+
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+
+public class LoaderTest {
+
+    private static final String NS = "http://sling.apache.org/test/1.0";
+
+    private static final String OTHER_NS = "http://sling.apache.org/other/1.0";
+
+    private Bundle bundle;
+
+    private Loader loader;
+
+    @Before public void setup() {
+        final Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(Loader.NAMESPACES_BUNDLE_HEADER, "test=" + NS);
+        bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(1L);
+        when(bundle.getSymbolicName()).thenReturn("test.bundle");
+        when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+        when(bundle.getHeaders()).thenReturn(headers);
+
+        final BundleContext bundleContext = mock(BundleContext.class);
+        when(bundleContext.getBundles()).thenReturn(new Bundle[] {bundle});
+        loader = new Loader(mock(SlingRepository.class), bundleContext);
+    }
+
+    @Test public void testEmptyMappingSkipsSessions() throws Exception {
+        final Session first = mock(Session.class);
+        when(first.getNamespacePrefix(NS)).thenReturn("test");
+        loader.defineNamespacePrefixes(first);
+        verify(first).getNamespacePrefix(NS);
+
+        final Session next = mock(Session.class);
+        loader.defineNamespacePrefixes(next);
+        verifyZeroInteractions(next);
+    }
+
+    @Test public void testRemappingsAreReplayed() throws Exception {
+        loader.defineNamespacePrefixes(remappingSession());
+
+        final Session next = mock(Session.class);
+        loader.defineNamespacePrefixes(next);
+        verify(next).setNamespacePrefix("test_old", OTHER_NS);
+        verify(next).setNamespacePrefix("test", NS);
+        verify(next, never()).getNamespacePrefix(NS);
+        verify(next, never()).getNamespaceURI("test");
+    }
+
+    @Test public void testMappingIsRecreatedAfterNamespaceException() throws Exception {
+        loader.defineNamespacePrefixes(remappingSession());
+
+        // the registry changed: the old prefix is gone and the namespace
+        // now has its declared prefix
+        final Session changed = mock(Session.class);
+        doThrow(new NamespaceException()).when(changed).setNamespacePrefix("test_old", OTHER_NS);
+        when(changed.getNamespacePrefix(NS)).thenReturn("test");
+        loader.defineNamespacePrefixes(changed);
+        verify(changed).getNamespacePrefix(NS);
+
+        // the recreated mapping is empty
+        final Session next = mock(Session.class);
+        loader.defineNamespacePrefixes(next);
+        verifyZeroInteractions(next);
+    }
+
+    @Test public void testMappingIsDiscardedIfBundlesChangeMeanwhile() throws Exception {
+        final Session first = mock(Session.class);
+        when(first.getNamespacePrefix(NS)).thenAnswer(new Answer<String>() {
+
+            public String answer(final InvocationOnMock invocation) {
+                // the bundle is updated while the mapping is created
+                loader.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundle));
+                return "test";
+            }
+        });
+        loader.defineNamespacePrefixes(first);
+
+        // the mapping has not been kept, so it is created again
+        final Session next = mock(Session.class);
+        when(next.getNamespacePrefix(NS)).thenReturn("test");
+        loader.defineNamespacePrefixes(next);
+        verify(next, times(1)).getNamespacePrefix(NS);
+
+        final Session last = mock(Session.class);
+        loader.defineNamespacePrefixes(last);
+        verifyZeroInteractions(last);
+    }
+
+    private Session remappingSession() throws Exception {
+        final Session session = mock(Session.class);
+        when(session.getNamespacePrefix(NS)).thenReturn("ns1");
+        when(session.getNamespaceURI("test")).thenReturn(OTHER_NS);
+        return session;
+    }
+}
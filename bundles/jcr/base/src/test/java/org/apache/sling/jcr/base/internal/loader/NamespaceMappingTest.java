@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.base.internal.loader;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import javax.jcr.NamespaceException;
+import javax.jcr.NamespaceRegistry;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class NamespaceMappingTest {
+
+    private static final String NS = "http://sling.apache.org/test/1.0";
+
+    private static final String OTHER_NS = "http://sling.apache.org/other/1.0";
+
+    @Test public void testRegisteredWithDeclaredPrefix() throws Exception {
+        final Session session = mock(Session.class);
+        when(session.getNamespacePrefix(NS)).thenReturn("test");
+
+        final NamespaceEntry[] entries = new NamespaceEntry[] {new NamespaceEntry("test", NS)};
+        final NamespaceMapping mapping = NamespaceMapping.create(entries, session);
+        assertTrue(mapping.isEmpty());
+        assertTrue(mapping.isFor(entries));
+        assertFalse(mapping.isFor(new NamespaceEntry[] {new NamespaceEntry("test", NS)}));
+
+        final Session next = mock(Session.class);
+        mapping.apply(next);
+        verifyZeroInteractions(next);
+    }
+
+    @Test public void testUnregisteredNamespace() throws Exception {
+        final NamespaceRegistry registry = mock(NamespaceRegistry.class);
+        final Workspace workspace = mock(Workspace.class);
+        when(workspace.getNamespaceRegistry()).thenReturn(registry);
+        final Session session = mock(Session.class);
+        when(session.getWorkspace()).thenReturn(workspace);
+        when(session.getNamespacePrefix(NS)).thenThrow(new NamespaceException());
+        when(session.getNamespaceURI("test")).thenThrow(new NamespaceException());
+
+        final NamespaceMapping mapping = NamespaceMapping.create(
+            new NamespaceEntry[] {new NamespaceEntry("test", NS)}, session);
+        verify(registry).registerNamespace("test", NS);
+        // the namespace is registered with the declared prefix
+        assertTrue(mapping.isEmpty());
+    }
+
+    @Test public void testRemappedPrefixesAreReplayed() throws Exception {
+        final Session session = mock(Session.class);
+        // the namespace is registered with another prefix and the declared
+        // prefix is used by another namespace
+        when(session.getNamespacePrefix(NS)).thenReturn("ns1");
+        when(session.getNamespaceURI("test")).thenReturn(OTHER_NS);
+
+        final NamespaceMapping mapping = NamespaceMapping.create(
+            new NamespaceEntry[] {new NamespaceEntry("test", NS)}, session);
+        assertFalse(mapping.isEmpty());
+        verify(session).setNamespacePrefix("test_old", OTHER_NS);
+        verify(session).setNamespacePrefix("test", NS);
+
+        final Session next = mock(Session.class);
+        mapping.apply(next);
+        final InOrder order = inOrder(next);
+        order.verify(next).setNamespacePrefix("test_old", OTHER_NS);
+        order.verify(next).setNamespacePrefix("test", NS);
+        order.verifyNoMoreInteractions();
+    }
+}
@@ -33,12 +33,33 @@ public class HelperData {
 
     public final PathMapper pathMapper;
 
+    /** Whether value maps read all properties of a node at once. */
+    public final boolean bulkLoadProperties;
+
+    /** Whether bulk loaded value maps remember the last typed conversion of a property. */
+    public final boolean memoizeConversions;
+
     private volatile String[] namespacePrefixes;
 
     public HelperData(final ClassLoader dynamicClassLoader,
             final PathMapper pathMapper) {
+        this(dynamicClassLoader, pathMapper, false);
+    }
+
+    public HelperData(final ClassLoader dynamicClassLoader,
+            final PathMapper pathMapper,
+            final boolean bulkLoadProperties) {
+        this(dynamicClassLoader, pathMapper, bulkLoadProperties, false);
+    }
+
+    public HelperData(final ClassLoader dynamicClassLoader,
+            final PathMapper pathMapper,
+            final boolean bulkLoadProperties,
+            final boolean memoizeConversions) {
         this.dynamicClassLoader = dynamicClassLoader;
         this.pathMapper = pathMapper;
+        this.bulkLoadProperties = bulkLoadProperties;
+        this.memoizeConversions = memoizeConversions;
     }
 
     public String[] getNamespacePrefixes(final Session session)
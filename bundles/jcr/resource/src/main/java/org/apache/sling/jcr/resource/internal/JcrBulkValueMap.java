@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+
+import org.apache.sling.jcr.resource.internal.helper.JcrPropertyMapCacheEntry;
+
+/**
+ * The <code>JcrBulkValueMap</code> reads all properties of the node in a
+ * single pass on first access and keeps them in arrays in the order of the
+ * node, with an open addressing index over the keys. This avoids a
+ * repository round trip per requested property and the hash map entries
+ * of the {@link JcrValueMap}.
+ * <p>
+ * The result of a lookup is the same as for a completely read
+ * {@link JcrValueMap}, paths are still resolved relative to the node.
+ * If {@link HelperData#memoizeConversions} is set, the last typed
+ * conversion of a property is remembered.
+ */
+public class JcrBulkValueMap extends JcrValueMap {
+
+    private static final String[] NO_KEYS = new String[0];
+
+    private static final JcrPropertyMapCacheEntry[] NO_ENTRIES = new JcrPropertyMapCacheEntry[0];
+
+    private final HelperData helper;
+
+    /** The keys in the order of the properties, <code>null</code> until read. */
+    private String[] keys;
+
+    private JcrPropertyMapCacheEntry[] entries;
+
+    /** Open addressing index into the arrays, storing index + 1. */
+    private int[] index;
+
+    /** The values, created on demand for the map views. */
+    private Map<String, Object> values;
+
+    public JcrBulkValueMap(final Node node, final HelperData helper) {
+        super(node, helper);
+        this.helper = helper;
+    }
+
+    // ---------- ValueMap
+
+    /**
+     * @see org.apache.sling.api.resource.ValueMap#get(java.lang.String, java.lang.Class)
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String aKey, final Class<T> type) {
+        final String key = checkKey(aKey);
+        if (type == null) {
+            return (T) get(key);
+        }
+        if ( key.indexOf('/') != -1 ) {
+            return super.get(key, type);
+        }
+
+        final JcrPropertyMapCacheEntry entry = this.read(key);
+        if ( entry == null ) {
+            return null;
+        }
+        return entry.convertToType(type, this.getNode(), this.helper.dynamicClassLoader);
+    }
+
+    // ---------- Map
+
+    /**
+     * @see java.util.Map#get(java.lang.Object)
+     */
+    @Override
+    public Object get(final Object aKey) {
+        final String key = checkKey(aKey.toString());
+        if ( key.indexOf('/') != -1 ) {
+            return super.get(key);
+        }
+        final JcrPropertyMapCacheEntry entry = this.read(key);
+        return (entry == null ? null : entry.getPropertyValueOrNull());
+    }
+
+    /**
+     * @see java.util.Map#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(final Object aKey) {
+        final String key = checkKey(aKey.toString());
+        if ( key.indexOf('/') != -1 ) {
+            return super.containsKey(key);
+        }
+        return this.read(key) != null;
+    }
+
+    /**
+     * @see java.util.Map#containsValue(java.lang.Object)
+     */
+    @Override
+    public boolean containsValue(final Object value) {
+        return getValues().containsValue(value);
+    }
+
+    /**
+     * @see java.util.Map#size()
+     */
+    @Override
+    public int size() {
+        readFully();
+        return this.keys.length;
+    }
+
+    /**
+     * @see java.util.Map#isEmpty()
+     */
+    @Override
+    public boolean isEmpty() {
+        readFully();
+        return this.keys.length == 0;
+    }
+
+    /**
+     * @see java.util.Map#entrySet()
+     */
+    @Override
+    public Set<java.util.Map.Entry<String, Object>> entrySet() {
+        return Collections.unmodifiableSet(getValues().entrySet());
+    }
+
+    /**
+     * @see java.util.Map#keySet()
+     */
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(getValues().keySet());
+    }
+
+    /**
+     * @see java.util.Map#values()
+     */
+    @Override
+    public Collection<Object> values() {
+        return Collections.unmodifiableCollection(getValues().values());
+    }
+
+    // ---------- Implementation helper
+
+    private String checkKey(final String key) {
+        if ( key == null ) {
+            throw new NullPointerException("Key must not be null.");
+        }
+        if ( key.startsWith("./") ) {
+            return key.substring(2);
+        }
+        return key;
+    }
+
+    /**
+     * Look up a property by its key.
+     */
+    private JcrPropertyMapCacheEntry read(final String key) {
+        if ( key.length() == 0 ) {
+            return null;
+        }
+        readFully();
+        final int mask = this.index.length - 1;
+        int slot = hash(key) & mask;
+        int pos;
+        while ( (pos = this.index[slot]) != 0 ) {
+            if ( this.keys[pos - 1].equals(key) ) {
+                return this.entries[pos - 1];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Read all properties of the node in a single pass.
+     * @throws IllegalArgumentException if a repository exception occurs
+     */
+    private void readFully() {
+        if ( this.keys != null ) {
+            return;
+        }
+        try {
+            final PropertyIterator pi = this.getNode().getProperties();
+            final long size = pi.getSize();
+            String[] names = (size > 0 ? new String[(int) size] : NO_KEYS);
+            JcrPropertyMapCacheEntry[] props = (size > 0 ? new JcrPropertyMapCacheEntry[(int) size] : NO_ENTRIES);
+            int[] slots = createIndex(names.length);
+            int count = 0;
+            while ( pi.hasNext() ) {
+                final Property prop = pi.nextProperty();
+                final String key = JcrPropertyMapCacheEntry.getKey(prop.getName());
+                // the first property wins if two names map to the same key
+                final int slot = findSlot(slots, names, key);
+                if ( slots[slot] != 0 ) {
+                    continue;
+                }
+                if ( count == names.length ) {
+                    final int length = Math.max(8, count * 2);
+                    final String[] newNames = new String[length];
+                    System.arraycopy(names, 0, newNames, 0, count);
+                    names = newNames;
+                    final JcrPropertyMapCacheEntry[] newProps = new JcrPropertyMapCacheEntry[length];
+                    System.arraycopy(props, 0, newProps, 0, count);
+                    props = newProps;
+                    slots = createIndex(length);
+                    for ( int i = 0; i < count; i++ ) {
+                        slots[findSlot(slots, names, names[i])] = i + 1;
+                    }
+                    slots[findSlot(slots, names, key)] = count + 1;
+                } else {
+                    slots[slot] = count + 1;
+                }
+                names[count] = key;
+                props[count] = new JcrPropertyMapCacheEntry(prop, this.helper.memoizeConversions);
+                count++;
+            }
+            if ( count < names.length ) {
+                final String[] newNames = new String[count];
+                System.arraycopy(names, 0, newNames, 0, count);
+                names = newNames;
+                final JcrPropertyMapCacheEntry[] newProps = new JcrPropertyMapCacheEntry[count];
+                System.arraycopy(props, 0, newProps, 0, count);
+                props = newProps;
+            }
+            this.entries = props;
+            this.index = slots;
+            this.keys = names;
+        } catch (final RepositoryException re) {
+            throw new IllegalArgumentException(re);
+        }
+    }
+
+    private Map<String, Object> getValues() {
+        if ( this.values == null ) {
+            readFully();
+            final Map<String, Object> map = new LinkedHashMap<String, Object>(this.keys.length * 4 / 3 + 1);
+            for ( int i = 0; i < this.keys.length; i++ ) {
+                map.put(this.keys[i], this.entries[i].getPropertyValueOrNull());
+            }
+            this.values = map;
+        }
+        return this.values;
+    }
+
+    /**
+     * Create an index with a load factor of at most one half.
+     */
+    private static int[] createIndex(final int size) {
+        int length = 8;
+        while ( length < size * 2 ) {
+            length <<= 1;
+        }
+        return new int[length];
+    }
+
+    /**
+     * Find the slot of the key or the free slot where it has to be added.
+     */
+    private static int findSlot(final int[] slots, final String[] names, final String key) {
+        final int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while ( slots[slot] != 0 && !names[slots[slot] - 1].equals(key) ) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(final String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
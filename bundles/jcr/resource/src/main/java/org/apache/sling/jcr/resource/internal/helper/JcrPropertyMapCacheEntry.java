@@ -40,6 +40,8 @@ import javax.jcr.Value;
 import javax.jcr.ValueFormatException;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.apache.jackrabbit.util.ISO9075;
+import org.apache.jackrabbit.util.Text;
 import org.apache.sling.jcr.resource.JcrPropertyMap;
 import org.apache.sling.jcr.resource.JcrResourceUtil;
 import org.slf4j.Logger;
@@ -59,12 +61,30 @@ public class JcrPropertyMapCacheEntry {
     /** The value of the object. */
     private final Object propertyValue;
 
+    /** Whether the last conversion of the value is remembered. */
+    private final boolean memoizeConversions;
+
+    /** The last conversion of the value, only set for immutable types. */
+    private volatile ConvertedValue convertedValue;
+
     /**
      * Create a new cache entry from a property.
      */
     public JcrPropertyMapCacheEntry(final Property prop)
+    throws RepositoryException {
+        this(prop, false);
+    }
+
+    /**
+     * Create a new cache entry from a property.
+     * @param prop The property
+     * @param memoizeConversions Whether the last conversion to an immutable
+     *                           type is remembered and returned again
+     */
+    public JcrPropertyMapCacheEntry(final Property prop, final boolean memoizeConversions)
     throws RepositoryException {
         this.property = prop;
+        this.memoizeConversions = memoizeConversions;
         this.isArray = prop.isMultiple();
         if (property.getType() != PropertyType.BINARY) {
             this.propertyValue = JcrResourceUtil.toJavaObject(prop);
@@ -79,6 +99,7 @@ public class JcrPropertyMapCacheEntry {
     public JcrPropertyMapCacheEntry(final Object value, final Node node)
     throws RepositoryException {
         this.property = null;
+        this.memoizeConversions = false;
         this.propertyValue = value;
         this.isArray = value.getClass().isArray();
         // check if values can be stored in JCR
@@ -198,6 +219,12 @@ public class JcrPropertyMapCacheEntry {
     public <T> T convertToType(final Class<T> type,
             final Node node,
             final ClassLoader dynamicClassLoader) {
+        if ( this.memoizeConversions ) {
+            final ConvertedValue converted = this.convertedValue;
+            if ( converted != null && converted.type == type ) {
+                return (T) converted.value;
+            }
+        }
         T result = null;
 
         try {
@@ -235,10 +262,51 @@ public class JcrPropertyMapCacheEntry {
             LOGGER.info("converToType: Cannot get value of " + this.getPropertyValueOrNull(), re);
         }
 
+        // remember the conversion, the value of a property is not changing
+        if ( this.memoizeConversions
+             && result != null && result != this.propertyValue
+             && this.property != null && this.propertyValue != null
+             && isImmutable(type) ) {
+            this.convertedValue = new ConvertedValue(type, result);
+        }
+
         // fall back to nothing
         return result;
     }
 
+    /**
+     * Whether instances of the type are immutable and can therefore be
+     * handed out several times.
+     */
+    private static boolean isImmutable(final Class<?> type) {
+        return type == String.class
+            || type == Long.class
+            || type == Integer.class
+            || type == Short.class
+            || type == Byte.class
+            || type == Double.class
+            || type == Float.class
+            || type == Boolean.class
+            || type == BigDecimal.class;
+    }
+
+    /**
+     * Get the key of a property in the value map.
+     * @param name The name of the JCR property
+     * @return The unescaped key
+     */
+    public static String getKey(final String name) {
+        if ( name.indexOf("_x") != -1 ) {
+            // for compatibility with older versions we use the (wrong)
+            // ISO9075 path encoding
+            final String key = ISO9075.decode(name);
+            if ( !key.equals(name) ) {
+                return key;
+            }
+        }
+        return Text.unescapeIllegalJcrChars(name);
+    }
+
     private <T> T[] convertToArray(final Object[] sourceArray,
             final Class<T> type,
             final Node node,
@@ -402,6 +470,21 @@ public class JcrPropertyMapCacheEntry {
         return new StringConverter(value);
     }
 
+    /**
+     * The result of a conversion.
+     */
+    private static final class ConvertedValue {
+
+        final Class<?> type;
+
+        final Object value;
+
+        ConvertedValue(final Class<?> type, final Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
     /**
      * This is an extended version of the object input stream which uses the
      * thread context class loader.
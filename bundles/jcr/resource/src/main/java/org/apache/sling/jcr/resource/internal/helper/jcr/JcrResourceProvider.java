@@ -119,8 +119,17 @@ public class JcrResourceProvider
                                final ClassLoader dynamicClassLoader,
                                final RepositoryHolder repositoryHolder,
                                final PathMapper pathMapper) {
+        this(session, dynamicClassLoader, repositoryHolder, pathMapper, false, false);
+    }
+
+    public JcrResourceProvider(final Session session,
+                               final ClassLoader dynamicClassLoader,
+                               final RepositoryHolder repositoryHolder,
+                               final PathMapper pathMapper,
+                               final boolean bulkLoadProperties,
+                               final boolean memoizeConversions) {
         this.session = session;
-        this.helper = new HelperData(dynamicClassLoader, pathMapper);
+        this.helper = new HelperData(dynamicClassLoader, pathMapper, bulkLoadProperties, memoizeConversions);
         this.repositoryHolder = repositoryHolder;
     }
 
@@ -101,6 +101,21 @@ public class JcrResourceProviderFactory implements ResourceProviderFactory {
             description = "Maximum number of pending revisions in a observation listener queue")
     private static final String OBSERVATION_QUEUE_LENGTH = "oak.observation.queue-length";
 
+    private static final boolean DEFAULT_BULK_LOAD_PROPERTIES = false;
+    @Property(boolValue=DEFAULT_BULK_LOAD_PROPERTIES,
+              label="Bulk Load Properties",
+              description="If this switch is enabled, the value map of a resource reads all properties " +
+                          "of the node at once on first access instead of reading the properties one by one.")
+    private static final String PROPERTY_BULK_LOAD_PROPERTIES = "valuemap.bulkload";
+
+    private static final boolean DEFAULT_MEMOIZE_CONVERSIONS = false;
+    @Property(boolValue=DEFAULT_MEMOIZE_CONVERSIONS,
+              label="Memoize Conversions",
+              description="If this switch is enabled together with bulk loading, the value map remembers the " +
+                          "last conversion of a property to an immutable type like String or Long and returns " +
+                          "the same instance for repeated reads instead of converting the value again.")
+    private static final String PROPERTY_MEMOIZE_CONVERSIONS = "valuemap.memoize";
+
     private static final String REPOSITORY_REFERNENCE_NAME = "repository";
 
     /** The dynamic class loader */
@@ -122,8 +137,18 @@ public class JcrResourceProviderFactory implements ResourceProviderFactory {
     /** The JCR observation listener. */
     private Closeable listener;
 
+    /** Whether value maps read all properties at once. */
+    private volatile boolean bulkLoadProperties;
+
+    /** Whether bulk loaded value maps remember conversions. */
+    private volatile boolean memoizeConversions;
+
     @Activate
     protected void activate(final ComponentContext context) throws RepositoryException {
+        this.bulkLoadProperties = PropertiesUtil.toBoolean(context.getProperties().get(PROPERTY_BULK_LOAD_PROPERTIES),
+                DEFAULT_BULK_LOAD_PROPERTIES);
+        this.memoizeConversions = PropertiesUtil.toBoolean(context.getProperties().get(PROPERTY_MEMOIZE_CONVERSIONS),
+                DEFAULT_MEMOIZE_CONVERSIONS);
 
         SlingRepository repository = (SlingRepository) context.locateService(REPOSITORY_REFERNENCE_NAME,
             this.repositoryReference);
@@ -356,7 +381,8 @@ public class JcrResourceProviderFactory implements ResourceProviderFactory {
             holder.setSession(session);
         }
 
-        return new JcrResourceProvider(session, this.getDynamicClassLoader(), holder, pathMapper);
+        return new JcrResourceProvider(session, this.getDynamicClassLoader(), holder, pathMapper,
+                this.bulkLoadProperties, this.memoizeConversions);
     }
 
     /**
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.jcr.resource.internal;
+
+import javax.jcr.Node;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.jcr.resource.JcrPropertyMap;
+
+/**
+ * Runs the tests of the property map against the bulk loading value map.
+ */
+public class JcrBulkValueMapTest extends JcrPropertyMapTest {
+
+    @Override
+    protected JcrPropertyMap createPropertyMap(final Node node) {
+        return new JcrBulkValueMap(node, new HelperData(null, new PathMapperImpl(), true));
+    }
+
+    public void testManyProperties() throws Exception {
+        final Node node = getSession().getRootNode().addNode("bulk" + System.currentTimeMillis(), "nt:unstructured");
+        try {
+            for (int i = 0; i < 100; i++) {
+                node.setProperty("prop" + i, (long) i);
+            }
+            node.addNode("child").setProperty("prop", "value");
+            getSession().save();
+
+            final ValueMap vm = createPropertyMap(node);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Long.valueOf(i), vm.get("prop" + i));
+                assertEquals(String.valueOf(i), vm.get("prop" + i, String.class));
+            }
+            assertNull(vm.get("prop100"));
+            assertEquals("value", vm.get("child/prop", String.class));
+            assertEquals(node.getProperties().getSize(), vm.size());
+        } finally {
+            node.remove();
+            getSession().save();
+        }
+    }
+
+    public void testConversionIsMemoized() throws Exception {
+        final Node node = getSession().getRootNode().addNode("bulk" + System.currentTimeMillis(), "nt:unstructured");
+        try {
+            node.setProperty("number", 42L);
+            getSession().save();
+
+            final ValueMap vm = new JcrBulkValueMap(node, new HelperData(null, new PathMapperImpl(), true, true));
+            final String value = vm.get("number", String.class);
+            assertEquals("42", value);
+            assertSame(value, vm.get("number", String.class));
+            assertEquals(Integer.valueOf(42), vm.get("number", Integer.class));
+            assertEquals(Integer.valueOf(42), vm.get("number", 0));
+        } finally {
+            node.remove();
+            getSession().save();
+        }
+    }
+
+    public void testConversionIsNotMemoizedByDefault() throws Exception {
+        final Node node = getSession().getRootNode().addNode("bulk" + System.currentTimeMillis(), "nt:unstructured");
+        try {
+            node.setProperty("number", 42L);
+            getSession().save();
+
+            final ValueMap vm = createPropertyMap(node);
+            final String value = vm.get("number", String.class);
+            assertEquals("42", value);
+            assertNotSame(value, vm.get("number", String.class));
+            assertEquals(value, vm.get("number", String.class));
+        } finally {
+            node.remove();
+            getSession().save();
+        }
+    }
+
+    public void testContainsKeyAndIsEmpty() throws Exception {
+        final Node node = getSession().getRootNode().addNode("bulk" + System.currentTimeMillis(), "nt:unstructured");
+        try {
+            node.setProperty("prop", "value");
+            node.addNode("child").setProperty("prop", "value");
+            getSession().save();
+
+            final ValueMap vm = createPropertyMap(node);
+            assertFalse(vm.isEmpty());
+            assertTrue(vm.containsKey("prop"));
+            assertTrue(vm.containsKey("./prop"));
+            assertTrue(vm.containsKey("child/prop"));
+            assertFalse(vm.containsKey("missing"));
+            assertFalse(vm.containsKey("child/missing"));
+            assertFalse(vm.containsKey(""));
+        } finally {
+            node.remove();
+            getSession().save();
+        }
+    }
+}
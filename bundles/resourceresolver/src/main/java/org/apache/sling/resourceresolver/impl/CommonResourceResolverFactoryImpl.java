@@ -22,7 +22,9 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -30,19 +32,30 @@ import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
 import org.apache.commons.collections.BidiMap;
 import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.ResourceProviderFactory;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.resourceresolver.impl.console.ResourceResolverWebConsolePlugin;
+import org.apache.sling.resourceresolver.impl.helper.NegativeResolutionCache;
+import org.apache.sling.resourceresolver.impl.helper.PathIndexedCache;
 import org.apache.sling.resourceresolver.impl.helper.ResourceDecoratorTracker;
 import org.apache.sling.resourceresolver.impl.helper.ResourceResolverContext;
+import org.apache.sling.resourceresolver.impl.jmx.PathIndexedCacheMBean;
 import org.apache.sling.resourceresolver.impl.mapping.MapConfigurationProvider;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntries;
+import org.apache.sling.resourceresolver.impl.mapping.MapResultCache;
 import org.apache.sling.resourceresolver.impl.mapping.Mapping;
 import org.apache.sling.resourceresolver.impl.tree.RootResourceProviderEntry;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,6 +72,18 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
     /** The web console plugin. */
     private ResourceResolverWebConsolePlugin plugin;
 
+    /** The cache of request paths not resolving, <code>null</code> if disabled. */
+    private NegativeResolutionCache negativeResolutionCache;
+
+    /** The event handler registration of the negative resolution cache. */
+    private ServiceRegistration negativeResolutionCacheRegistration;
+
+    /** The mbean registration of the negative resolution cache. */
+    private ServiceRegistration negativeResolutionCacheMBeanRegistration;
+
+    /** The mbean registration of the map result cache. */
+    private ServiceRegistration mapResultCacheMBeanRegistration;
+
     /** The activator */
     private final ResourceResolverFactoryActivator activator;
 
@@ -263,6 +288,14 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         return mapEntries;
     }
 
+    /**
+     * Returns the cache of request paths not resolving to a resource or
+     * <code>null</code> if the cache is disabled.
+     */
+    public NegativeResolutionCache getNegativeResolutionCache() {
+        return negativeResolutionCache;
+    }
+
     /** Activates this component */
     protected void activate(final BundleContext bundleContext) {
         final Logger logger = LoggerFactory.getLogger(getClass());
@@ -279,6 +312,45 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         } catch (final Exception e) {
             logger.error("activate: Cannot access repository, failed setting up Mapping Support", e);
         }
+        final MapResultCache mapCache = mapEntries.getMapResultCache();
+        if (mapCache != null) {
+            mapResultCacheMBeanRegistration = registerCacheMBean(bundleContext, logger, mapCache, "MapResultCache");
+        }
+        // set up the negative resolution cache
+        final int negativeCacheSize = this.activator.getNegativeResolutionCacheSize();
+        if (negativeCacheSize > 0) {
+            final NegativeResolutionCache cache = new NegativeResolutionCache(negativeCacheSize);
+
+            final Dictionary<String, Object> props = new Hashtable<String, Object>();
+            props.put(EventConstants.EVENT_TOPIC, NegativeResolutionCache.TOPICS);
+            props.put(Constants.SERVICE_DESCRIPTION, "Negative Resolution Cache Observation");
+            props.put(Constants.SERVICE_VENDOR, "The Apache Software Foundation");
+            negativeResolutionCacheRegistration = bundleContext.registerService(EventHandler.class.getName(), cache, props);
+            negativeResolutionCache = cache;
+
+            negativeResolutionCacheMBeanRegistration = registerCacheMBean(bundleContext, logger, cache, "NegativeResolutionCache");
+        }
+    }
+
+    /**
+     * Registers the management interface of the cache with the given
+     * service name.
+     *
+     * @return The registration or <code>null</code> if the registration
+     *         failed.
+     */
+    private ServiceRegistration registerCacheMBean(final BundleContext bundleContext, final Logger logger,
+            final PathIndexedCache cache, final String name) {
+        try {
+            final Dictionary<String, String> mbeanProps = new Hashtable<String, String>();
+            mbeanProps.put("jmx.objectname", "org.apache.sling:type=resourceResolver,service=" + name);
+
+            final PathIndexedCacheMBeanImpl mbean = new PathIndexedCacheMBeanImpl(cache);
+            return bundleContext.registerService(PathIndexedCacheMBean.class.getName(), mbean, mbeanProps);
+        } catch (final Throwable t) {
+            logger.debug("activate: unable to register " + name + " mbean.", t);
+            return null;
+        }
     }
 
     /**
@@ -291,6 +363,19 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
             plugin.dispose();
             plugin = null;
         }
+        if (mapResultCacheMBeanRegistration != null) {
+            mapResultCacheMBeanRegistration.unregister();
+            mapResultCacheMBeanRegistration = null;
+        }
+        if (negativeResolutionCacheMBeanRegistration != null) {
+            negativeResolutionCacheMBeanRegistration.unregister();
+            negativeResolutionCacheMBeanRegistration = null;
+        }
+        if (negativeResolutionCacheRegistration != null) {
+            negativeResolutionCacheRegistration.unregister();
+            negativeResolutionCacheRegistration = null;
+        }
+        negativeResolutionCache = null;
 
         if (mapEntries != null) {
             mapEntries.dispose();
@@ -363,16 +448,36 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
         return this.activator.getVanityBloomFilterMaxBytes();
     }
 
+    @Override
+    public boolean isVanityPathIndexEnabled() {
+        return this.activator.isVanityPathIndexEnabled();
+    }
+
     @Override
     public boolean isOptimizeAliasResolutionEnabled() {
         return this.activator.isOptimizeAliasResolutionEnabled();
     }
 
+    @Override
+    public int getAliasLoaderThreads() {
+        return this.activator.getAliasLoaderThreads();
+    }
+
     @Override
     public boolean hasVanityPathPrecedence() {
         return this.activator.hasVanityPathPrecedence();
     }
 
+    @Override
+    public boolean isCompiledMapMatcherEnabled() {
+        return this.activator.isCompiledMapMatcherEnabled();
+    }
+
+    @Override
+    public int getMapCacheSize() {
+        return this.activator.getMapCacheSize();
+    }
+
     @Override
     public List<VanityPathConfig> getVanityPathConfig() {
         final String[] includes = this.activator.getVanityPathWhiteList();
@@ -421,4 +526,41 @@ public class CommonResourceResolverFactoryImpl implements ResourceResolverFactor
             this.context.close();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Management interface of a resolution result cache.
+     */
+    private static final class PathIndexedCacheMBeanImpl extends StandardMBean implements PathIndexedCacheMBean {
+
+        private final PathIndexedCache cache;
+
+        PathIndexedCacheMBeanImpl(final PathIndexedCache cache) throws NotCompliantMBeanException {
+            super(PathIndexedCacheMBean.class);
+            this.cache = cache;
+        }
+
+        public int getCacheSize() {
+            return cache.getSize();
+        }
+
+        public int getMaximumCacheSize() {
+            return cache.getMaxSize();
+        }
+
+        public long getHitCount() {
+            return cache.getHits();
+        }
+
+        public long getMissCount() {
+            return cache.getMisses();
+        }
+
+        public long getInvalidationCount() {
+            return cache.getInvalidations();
+        }
+
+        public void flushCache() {
+            cache.clear();
+        }
+    }
+}
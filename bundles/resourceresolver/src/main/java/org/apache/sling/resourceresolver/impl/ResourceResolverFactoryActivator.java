@@ -199,6 +199,15 @@ public class ResourceResolverFactoryActivator implements Runnable {
                             "Changing this value is subject to vanity bloom filter rebuild")
     private static final String PROP_VANITY_BLOOM_FILTER_MAX_BYTES = " resource.resolver.vanitypath.bloomfilter.maxBytes";
 
+    private static final boolean DEFAULT_ENABLE_VANITY_PATH_INDEX = false;
+    @Property(boolValue = DEFAULT_ENABLE_VANITY_PATH_INDEX,
+              label = "Vanity Path Index",
+              description = "This flag controls whether vanity paths are kept in a persistent index on disk " +
+                            "instead of the bloom filter. Vanity paths not cached in memory are then looked up " +
+                            "in the index instead of being queried and a properly shut down index is reused " +
+                            "on restart instead of scanning the repository.")
+    private static final String PROP_ENABLE_VANITY_PATH_INDEX = "resource.resolver.vanitypath.index";
+
     private static final boolean DEFAULT_ENABLE_OPTIMIZE_ALIAS_RESOLUTION = true;
     @Property(boolValue = DEFAULT_ENABLE_OPTIMIZE_ALIAS_RESOLUTION ,
               label = "Optimize alias resolution",
@@ -207,6 +216,15 @@ public class ResourceResolverFactoryActivator implements Runnable {
                       " and on the alias update time if the number of aliases is huge (over 10000).")
     private static final String PROP_ENABLE_OPTIMIZE_ALIAS_RESOLUTION = "resource.resolver.optimize.alias.resolution";
 
+    private static final int DEFAULT_ALIAS_LOADER_THREADS = 0;
+    @Property(intValue = DEFAULT_ALIAS_LOADER_THREADS,
+              label = "Alias Loader Threads",
+              description = "The number of threads loading the aliases for the optimized alias resolution " +
+                            "in parallel, partitioned by subtree. Until loading has finished aliases are " +
+                            "resolved without the optimization. Default is 0 which loads the aliases " +
+                            "synchronously during startup.")
+    private static final String PROP_ALIAS_LOADER_THREADS = "resource.resolver.optimize.alias.resolution.threads";
+
     @Property(unbounded=PropertyUnbounded.ARRAY,
             label = "Allowed Vanity Path Location",
             description ="This setting can contain a list of path prefixes, e.g. /libs/, /content/. If " +
@@ -228,6 +246,31 @@ public class ResourceResolverFactoryActivator implements Runnable {
                       " will have precedence over existing /etc/map mapping")
     private static final String PROP_VANITY_PATH_PRECEDENCE = "resource.resolver.vanity.precedence";
 
+    private static final boolean DEFAULT_ENABLE_COMPILED_MAP_MATCHER = false;
+    @Property(boolValue = DEFAULT_ENABLE_COMPILED_MAP_MATCHER,
+              label = "Compiled Map Matcher",
+              description ="This flag controls whether the /etc/map and configured resolve entries" +
+                      " are compiled into a prefix tree, so only entries possibly matching a request" +
+                      " are evaluated during resolution. This speeds up resolution if many mappings exist.")
+    private static final String PROP_ENABLE_COMPILED_MAP_MATCHER = "resource.resolver.map.compiled";
+
+    private static final int DEFAULT_NEGATIVE_RESOLUTION_CACHE_SIZE = 0;
+    @Property(intValue = DEFAULT_NEGATIVE_RESOLUTION_CACHE_SIZE,
+              label = "Negative Resolution Cache Size",
+              description = "The maximum number of request paths which do not resolve to a resource " +
+                            "to remember per user. Resolving such a path again is answered from the cache " +
+                            "until a resource near the path is added, changed or removed. Default is 0 which " +
+                            "disables the cache.")
+    private static final String PROP_NEGATIVE_RESOLUTION_CACHE_SIZE = "resource.resolver.negative.cache.size";
+
+    private static final int DEFAULT_MAP_CACHE_SIZE = 0;
+    @Property(intValue = DEFAULT_MAP_CACHE_SIZE,
+              label = "Map Cache Size",
+              description = "The maximum number of results of the ResourceResolver.map methods to cache. " +
+                            "A cached result is removed once the resource, one of its ancestors or the " +
+                            "mappings change. Default is 0 which disables the cache.")
+    private static final String PROP_MAP_CACHE_SIZE = "resource.resolver.map.cache.size";
+
     private static final boolean DEFAULT_PARANOID_PROVIDER_HANDLING = false;
     @Property(boolValue = DEFAULT_PARANOID_PROVIDER_HANDLING,
               label = "Paranoid Provider Handling",
@@ -288,9 +331,24 @@ public class ResourceResolverFactoryActivator implements Runnable {
     /** Maximum number of vanity bloom filter bytes */
     private int vanityBloomFilterMaxBytes = DEFAULT_VANITY_BLOOM_FILTER_MAX_BYTES;
 
+    /** number of threads loading the aliases in parallel */
+    private int aliasLoaderThreads = DEFAULT_ALIAS_LOADER_THREADS;
+
+    /** keep vanity paths in a persistent index instead of the bloom filter? */
+    private boolean enableVanityPathIndex = DEFAULT_ENABLE_VANITY_PATH_INDEX;
+
     /** vanity paths will have precedence over existing /etc/map mapping? */
     private boolean vanityPathPrecedence = DEFAULT_VANITY_PATH_PRECEDENCE;
 
+    /** compile the resolve map entries into a prefix tree? */
+    private boolean enableCompiledMapMatcher = DEFAULT_ENABLE_COMPILED_MAP_MATCHER;
+
+    /** the maximum size of the negative resolution cache, 0 disables it */
+    private int negativeResolutionCacheSize = DEFAULT_NEGATIVE_RESOLUTION_CACHE_SIZE;
+
+    /** the maximum size of the map result cache, 0 disables it */
+    private int mapCacheSize = DEFAULT_MAP_CACHE_SIZE;
+
 
     /** Vanity path whitelist */
     private String[] vanityPathWhiteList;
@@ -391,6 +449,10 @@ public class ResourceResolverFactoryActivator implements Runnable {
         return this.vanityPathPrecedence;
     }
 
+    public boolean isCompiledMapMatcherEnabled() {
+        return this.enableCompiledMapMatcher;
+    }
+
     public long getMaxCachedVanityPathEntries() {
         return this.maxCachedVanityPathEntries;
     }
@@ -399,6 +461,22 @@ public class ResourceResolverFactoryActivator implements Runnable {
         return this.vanityBloomFilterMaxBytes;
     }
 
+    public int getAliasLoaderThreads() {
+        return this.aliasLoaderThreads;
+    }
+
+    public boolean isVanityPathIndexEnabled() {
+        return this.enableVanityPathIndex;
+    }
+
+    public int getNegativeResolutionCacheSize() {
+        return this.negativeResolutionCacheSize;
+    }
+
+    public int getMapCacheSize() {
+        return this.mapCacheSize;
+    }
+
     // ---------- SCR Integration ---------------------------------------------
 
     /**
@@ -502,10 +580,15 @@ public class ResourceResolverFactoryActivator implements Runnable {
         }
 
         this.enableOptimizeAliasResolution = PropertiesUtil.toBoolean(properties.get(PROP_ENABLE_OPTIMIZE_ALIAS_RESOLUTION), DEFAULT_ENABLE_OPTIMIZE_ALIAS_RESOLUTION);
+        this.aliasLoaderThreads = PropertiesUtil.toInteger(properties.get(PROP_ALIAS_LOADER_THREADS), DEFAULT_ALIAS_LOADER_THREADS);
         this.maxCachedVanityPathEntries = PropertiesUtil.toLong(properties.get(PROP_MAX_CACHED_VANITY_PATHS), DEFAULT_MAX_CACHED_VANITY_PATHS);
         this.vanityBloomFilterMaxBytes = PropertiesUtil.toInteger(properties.get(PROP_VANITY_BLOOM_FILTER_MAX_BYTES), DEFAULT_VANITY_BLOOM_FILTER_MAX_BYTES);
+        this.enableVanityPathIndex = PropertiesUtil.toBoolean(properties.get(PROP_ENABLE_VANITY_PATH_INDEX), DEFAULT_ENABLE_VANITY_PATH_INDEX);
 
         this.vanityPathPrecedence = PropertiesUtil.toBoolean(properties.get(PROP_VANITY_PATH_PRECEDENCE), DEFAULT_VANITY_PATH_PRECEDENCE);
+        this.enableCompiledMapMatcher = PropertiesUtil.toBoolean(properties.get(PROP_ENABLE_COMPILED_MAP_MATCHER), DEFAULT_ENABLE_COMPILED_MAP_MATCHER);
+        this.negativeResolutionCacheSize = PropertiesUtil.toInteger(properties.get(PROP_NEGATIVE_RESOLUTION_CACHE_SIZE), DEFAULT_NEGATIVE_RESOLUTION_CACHE_SIZE);
+        this.mapCacheSize = PropertiesUtil.toInteger(properties.get(PROP_MAP_CACHE_SIZE), DEFAULT_MAP_CACHE_SIZE);
 
         final BundleContext bc = componentContext.getBundleContext();
 
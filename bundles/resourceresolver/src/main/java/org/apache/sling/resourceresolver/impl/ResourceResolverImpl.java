@@ -18,11 +18,13 @@
  */
 package org.apache.sling.resourceresolver.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -47,8 +49,10 @@ import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.resourceresolver.impl.helper.NegativeResolutionCache;
 import org.apache.sling.resourceresolver.impl.helper.RedirectResource;
 import org.apache.sling.resourceresolver.impl.helper.ResourceIterator;
+import org.apache.sling.resourceresolver.impl.helper.ResourceAccessProfiler;
 import org.apache.sling.resourceresolver.impl.helper.ResourceIteratorDecorator;
 import org.apache.sling.resourceresolver.impl.helper.ResourcePathIterator;
 import org.apache.sling.resourceresolver.impl.helper.ResourceResolverContext;
@@ -56,6 +60,7 @@ import org.apache.sling.resourceresolver.impl.helper.StarResource;
 import org.apache.sling.resourceresolver.impl.helper.URI;
 import org.apache.sling.resourceresolver.impl.helper.URIException;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntry;
+import org.apache.sling.resourceresolver.impl.mapping.MapResultCache;
 import org.apache.sling.resourceresolver.impl.tree.params.ParsedParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,6 +104,13 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
     /** Resource resolver context. */
     private final ResourceResolverContext context;
 
+    /**
+     * The profiler recording the resource access of the request last
+     * resolved with this resource resolver, <code>null</code> unless that
+     * request is profiled.
+     */
+    private ResourceAccessProfiler profiler;
+
     /**
      * The resource resolver context.
      */
@@ -193,8 +205,9 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
     public Resource resolve(final String path) {
         checkClosed();
 
+        final long start = startProfiling();
         final Resource rsrc = this.resolveInternal(null, path);
-        return rsrc;
+        return profile(ResourceAccessProfiler.RESOLVE, path, start, rsrc);
     }
 
     /**
@@ -205,8 +218,10 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
         checkClosed();
 
         // throws NPE if request is null as required
+        this.profiler = ResourceAccessProfiler.get(request);
+        final long start = startProfiling();
         final Resource rsrc = this.resolveInternal(request, request.getPathInfo());
-        return rsrc;
+        return profile(ResourceAccessProfiler.RESOLVE, request.getPathInfo(), start, rsrc);
     }
 
     /**
@@ -216,8 +231,10 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
     public Resource resolve(final HttpServletRequest request, String path) {
         checkClosed();
 
+        this.profiler = (request == null) ? null : ResourceAccessProfiler.get(request);
+        final long start = startProfiling();
         final Resource rsrc = this.resolveInternal(request, path);
-        return rsrc;
+        return profile(ResourceAccessProfiler.RESOLVE, path, start, rsrc);
     }
 
     private Resource resolveInternal(final HttpServletRequest request, String absPath) {
@@ -242,6 +259,23 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
 
         logger.debug("resolve: Resolving request path {}", requestPath);
 
+        // check whether the request path is known to not resolve
+        final NegativeResolutionCache negativeCache = this.factory.getNegativeResolutionCache();
+        String negativeCacheKey = null;
+        long negativeCacheGeneration = 0;
+        List<String> candidatePaths = null;
+        if (negativeCache != null) {
+            negativeCacheKey = NegativeResolutionCache.createKey(getUserID(), requestPath);
+            final String nonExistingPath = negativeCache.get(negativeCacheKey);
+            if (nonExistingPath != null) {
+                logger.debug("resolve: Path {} is cached to not resolve", absPath);
+                return this.factory.getResourceDecoratorTracker().decorate(
+                        createNonExistingResource(nonExistingPath));
+            }
+            negativeCacheGeneration = negativeCache.getGeneration();
+            candidatePaths = new ArrayList<String>();
+        }
+
         // loop while finding internal or external redirect into the
         // content out of the virtual host mapping tree
         // the counter is to ensure we are not caught in an endless loop here
@@ -320,14 +354,20 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
 
                     // let's check it with a direct access first
                     logger.debug("resolve: Try absolute mapped path {}", realPath);
-                    res = resolveInternal(realPath, parsedPath.getParameters());
+                    if (candidatePaths != null) {
+                        candidatePaths.add(realPath);
+                    }
+                    res = resolveInternal(realPath, parsedPath.getParameters(), candidatePaths);
 
                 } else {
 
                     final String[] searchPath = getSearchPath();
                     for (int spi = 0; res == null && spi < searchPath.length; spi++) {
                         logger.debug("resolve: Try relative mapped path with search path entry {}", searchPath[spi]);
-                        res = resolveInternal(searchPath[spi] + realPath, parsedPath.getParameters());
+                        if (candidatePaths != null) {
+                            candidatePaths.add(searchPath[spi] + realPath);
+                        }
+                        res = resolveInternal(searchPath[spi] + realPath, parsedPath.getParameters(), candidatePaths);
                     }
 
                 }
@@ -336,21 +376,11 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
 
         // if no resource has been found, use a NonExistingResource
         if (res == null) {
-            final ParsedParameters parsedPath = new ParsedParameters(realPathList[0]);
-            final String resourcePath = ensureAbsPath(parsedPath.getRawPath());
-            logger.debug("resolve: Path {} does not resolve, returning NonExistingResource at {}", absPath, resourcePath);
-
-            res = new NonExistingResource(this, resourcePath);
-            // SLING-864: if the path contains a dot we assume this to be
-            // the start for any selectors, extension, suffix, which may be
-            // used for further request processing.
-            // the resolution path must be the full path and is already set within
-            // the non existing resource
-            final int index = resourcePath.indexOf('.');
-            if (index != -1) {
-                res.getResourceMetadata().setResolutionPathInfo(resourcePath.substring(index));
+            logger.debug("resolve: Path {} does not resolve, returning NonExistingResource for {}", absPath, realPathList[0]);
+            res = createNonExistingResource(realPathList[0]);
+            if (negativeCache != null) {
+                negativeCache.put(negativeCacheKey, realPathList[0], candidatePaths, negativeCacheGeneration);
             }
-            res.getResourceMetadata().setParameterMap(parsedPath.getParameters());
         } else {
             logger.debug("resolve: Path {} resolves to Resource {}", absPath, res);
         }
@@ -358,6 +388,28 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
         return this.factory.getResourceDecoratorTracker().decorate(res);
     }
 
+    /**
+     * Creates the NonExistingResource for the mapped path, which may still
+     * contain parameters.
+     */
+    private Resource createNonExistingResource(final String mappedPath) {
+        final ParsedParameters parsedPath = new ParsedParameters(mappedPath);
+        final String resourcePath = ensureAbsPath(parsedPath.getRawPath());
+
+        final Resource res = new NonExistingResource(this, resourcePath);
+        // SLING-864: if the path contains a dot we assume this to be
+        // the start for any selectors, extension, suffix, which may be
+        // used for further request processing.
+        // the resolution path must be the full path and is already set within
+        // the non existing resource
+        final int index = resourcePath.indexOf('.');
+        if (index != -1) {
+            res.getResourceMetadata().setResolutionPathInfo(resourcePath.substring(index));
+        }
+        res.getResourceMetadata().setParameterMap(parsedPath.getParameters());
+        return res;
+    }
+
     /**
      * calls map(HttpServletRequest, String) as map(null, resourcePath)
      *
@@ -379,6 +431,25 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
     public String map(final HttpServletRequest request, final String resourcePath) {
         checkClosed();
 
+        // check for a cached result
+        final MapResultCache mapCache = this.factory.getMapEntries().getMapResultCache();
+        String mapCacheKey = null;
+        long mapCacheGeneration = 0;
+        if (mapCache != null) {
+            if (request != null) {
+                mapCacheKey = MapResultCache.createKey(getUserID(), request.getScheme(), request.getServerName(),
+                        request.getServerPort(), request.getContextPath(), resourcePath);
+            } else {
+                mapCacheKey = MapResultCache.createKey(getUserID(), null, null, -1, null, resourcePath);
+            }
+            final String cached = mapCache.get(mapCacheKey);
+            if (cached != null) {
+                logger.debug("map: Returning cached URL {} as mapping for path {}", cached, resourcePath);
+                return cached;
+            }
+            mapCacheGeneration = mapCache.getGeneration();
+        }
+
         // find a fragment or query
         int fragmentQueryMark = resourcePath.indexOf('#');
         if (fragmentQueryMark < 0) {
@@ -416,7 +487,7 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
         }
 
         ParsedParameters parsed = new ParsedParameters(mappedPath);
-        final Resource res = resolveInternal(parsed.getRawPath(), parsed.getParameters());
+        final Resource res = resolveInternal(parsed.getRawPath(), parsed.getParameters(), null);
 
         if (res != null) {
 
@@ -567,6 +638,10 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
             mappedPath = mappedPath.concat(fragmentQuery);
         }
 
+        if (mapCache != null) {
+            mapCache.put(mapCacheKey, resourcePath, mappedPath, mapCacheGeneration);
+        }
+
         return mappedPath;
     }
 
@@ -587,8 +662,9 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
      */
     public Resource getResource(String path) {
         checkClosed();
+        final long start = startProfiling();
         final Resource result = this.getResourceInternal(path);
-        return result;
+        return profile(ResourceAccessProfiler.GET_RESOURCE, path, start, result);
     }
 
     /**
@@ -603,8 +679,9 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
             absolutePath = appendToPath(base.getPath(), absolutePath);
         }
 
+        final long start = startProfiling();
         final Resource result = getResourceInternal(absolutePath);
-        return result;
+        return profile(ResourceAccessProfiler.GET_RESOURCE, absolutePath, start, result);
     }
 
     /**
@@ -643,7 +720,7 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
                 final String[] paths = factory.getSearchPath();
                 if (paths != null) {
                     for (final String prefix : factory.getSearchPath()) {
-                        result = getResource(prefix + path);
+                        result = getResourceInternal(prefix + path);
                         if (result != null) {
                             break;
                         }
@@ -664,6 +741,15 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
         if (parent instanceof ResourceWrapper) {
             return listChildren(((ResourceWrapper) parent).getResource());
         }
+
+        final ResourceAccessProfiler profiler = this.profiler;
+        if (profiler != null) {
+            final long start = System.nanoTime();
+            final Iterator<Resource> children = new ResourceIteratorDecorator(this.factory.getResourceDecoratorTracker(),
+                    new ResourceIterator(this.context, parent, this.factory.getRootProviderEntry()));
+            profiler.record(ResourceAccessProfiler.LIST_CHILDREN, parent.getPath(), start);
+            return profiler.wrap(ResourceAccessProfiler.LIST_CHILDREN, parent.getPath(), children);
+        }
         return new ResourceIteratorDecorator(this.factory.getResourceDecoratorTracker(),
                 new ResourceIterator(this.context, parent, this.factory.getRootProviderEntry()));
     }
@@ -691,9 +777,11 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
     public Iterator<Resource> findResources(final String query, final String language) throws SlingException {
         checkClosed();
 
-        return new ResourceIteratorDecorator(this.factory.getResourceDecoratorTracker(),
+        final long start = startProfiling();
+        final Iterator<Resource> result = new ResourceIteratorDecorator(this.factory.getResourceDecoratorTracker(),
                 this.factory.getRootProviderEntry().findResources(this.context, this, query,
                         language == null ? DEFAULT_QUERY_LANGUAGE : language));
+        return profile(query, language, start, result);
     }
 
     /**
@@ -704,8 +792,47 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
             throws SlingException {
         checkClosed();
 
-        return this.factory.getRootProviderEntry().queryResources(this.context, this, query,
-                language == null ? DEFAULT_QUERY_LANGUAGE : language);
+        final long start = startProfiling();
+        final Iterator<Map<String, Object>> result = this.factory.getRootProviderEntry().queryResources(this.context,
+                this, query, language == null ? DEFAULT_QUERY_LANGUAGE : language);
+        return profile(query, language, start, result);
+    }
+
+    // ---------- profiling
+
+    /**
+     * Returns the start time for {@link #profile(String, String, long, Resource)}
+     * if the resource access is profiled.
+     */
+    private long startProfiling() {
+        return (this.profiler == null) ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the resource access if profiled and returns the resource
+     * unmodified.
+     */
+    private Resource profile(final String operation, final String path, final long start, final Resource result) {
+        final ResourceAccessProfiler profiler = this.profiler;
+        if (profiler != null) {
+            profiler.record(operation, path, start);
+        }
+        return result;
+    }
+
+    /**
+     * Records the query if profiled and returns the result iterator to hand
+     * out.
+     */
+    private <T> Iterator<T> profile(final String query, final String language, final long start,
+            final Iterator<T> result) {
+        final ResourceAccessProfiler profiler = this.profiler;
+        if (profiler == null) {
+            return result;
+        }
+        final String statement = (language == null ? DEFAULT_QUERY_LANGUAGE : language) + ":" + query;
+        profiler.record(ResourceAccessProfiler.QUERY, statement, start);
+        return profiler.wrap(ResourceAccessProfiler.QUERY, statement, result);
     }
 
     /**
@@ -826,6 +953,10 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
      *
      * @param absPath
      *            The absolute path of the resource to return.
+     * @param candidatePaths
+     *            If not <code>null</code>, the path of the missing resource
+     *            with the aliases of its ancestors replaced by their names
+     *            is added if drilling down does not find the resource.
      * @return The resource found or <code>null</code> if the resource could not
      *         be found. The
      *         {@link org.apache.sling.api.resource.ResourceMetadata#getResolutionPathInfo()
@@ -833,7 +964,8 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
      *         the part of the <code>absPath</code> which has been cut off by
      *         the {@link ResourcePathIterator} to resolve the resource.
      */
-    private Resource resolveInternal(final String absPath, final Map<String, String> parameters) {
+    private Resource resolveInternal(final String absPath, final Map<String, String> parameters,
+            final List<String> candidatePaths) {
         Resource resource = null;
         String curPath = absPath;
         try {
@@ -883,6 +1015,12 @@ public class ResourceResolverImpl extends SlingAdaptable implements ResourceReso
                         nextResource = getChildInternal(resource, childName);
                     }
 
+                    // record the path of the missing child below its
+                    // existing parent, without the aliases used to get there
+                    if (nextResource == null && candidatePaths != null) {
+                        candidatePaths.add(("/".equals(resource.getPath()) ? "" : resource.getPath()) + "/" + childNameRaw);
+                    }
+
                     // switch the currentResource to the nextResource (may be
                     // null)
                     resource = nextResource;
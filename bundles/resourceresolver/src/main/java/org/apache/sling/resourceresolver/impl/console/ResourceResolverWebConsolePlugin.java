@@ -40,10 +40,13 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.sling.api.request.ResponseUtil;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.resourceresolver.impl.CommonResourceResolverFactoryImpl;
+import org.apache.sling.resourceresolver.impl.helper.NegativeResolutionCache;
+import org.apache.sling.resourceresolver.impl.helper.PathIndexedCache;
 import org.apache.sling.resourceresolver.impl.helper.URI;
 import org.apache.sling.resourceresolver.impl.helper.URIException;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntries;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntry;
+import org.apache.sling.resourceresolver.impl.mapping.MapResultCache;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceRegistration;
@@ -183,6 +186,28 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
                 "Lists the entries used by the ResourceResolver.map methods to map Resource Paths to URLs",
                 mapEntries.getMapMaps());
 
+        final NegativeResolutionCache negativeCache = resolverFactory.getNegativeResolutionCache();
+        if (negativeCache != null) {
+            separatorHtml(pw);
+
+            titleHtml(
+                    pw,
+                    "Negative Resolution Cache",
+                    "Statistics of the cache of request paths which do not resolve to a resource");
+            dumpCacheHtml(pw, negativeCache);
+        }
+
+        final MapResultCache mapCache = mapEntries.getMapResultCache();
+        if (mapCache != null) {
+            separatorHtml(pw);
+
+            titleHtml(
+                    pw,
+                    "Map Result Cache",
+                    "Statistics of the cache of the results of the ResourceResolver.map methods");
+            dumpCacheHtml(pw, mapCache);
+        }
+
         pw.println("</table>");
 
     }
@@ -264,6 +289,20 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
         separatorText(pw);
 
         dumpMapText(pw, "Mapping Map Entries", mapEntries.getMapMaps());
+
+        final NegativeResolutionCache negativeCache = resolverFactory.getNegativeResolutionCache();
+        if (negativeCache != null) {
+            separatorText(pw);
+
+            dumpCacheText(pw, "Negative Resolution Cache", negativeCache);
+        }
+
+        final MapResultCache mapCache = mapEntries.getMapResultCache();
+        if (mapCache != null) {
+            separatorText(pw);
+
+            dumpCacheText(pw, "Map Result Cache", mapCache);
+        }
     }
 
     // ---------- internal
@@ -309,6 +348,23 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
         }
     }
 
+    private void dumpCacheHtml(PrintWriter pw, PathIndexedCache cache) {
+        valueHtml(pw, "Size", String.valueOf(cache.getSize()));
+        valueHtml(pw, "Maximum Size", String.valueOf(cache.getMaxSize()));
+        valueHtml(pw, "Hits", String.valueOf(cache.getHits()));
+        valueHtml(pw, "Misses", String.valueOf(cache.getMisses()));
+        valueHtml(pw, "Invalidations", String.valueOf(cache.getInvalidations()));
+    }
+
+    private void valueHtml(PrintWriter pw, String name, String value) {
+        pw.println("<tr class='content'>");
+        pw.println("<td class='content'>" + name + "</td>");
+        pw.print("<td class='content' colspan='2'>");
+        pw.print(value);
+        pw.print("</td>");
+        pw.println("</tr>");
+    }
+
     private void titleHtml(PrintWriter pw, String title, String description) {
         pw.println("<tr class='content'>");
         pw.println("<th colspan='3'class='content container'>" + title
@@ -345,6 +401,18 @@ public class ResourceResolverWebConsolePlugin extends HttpServlet {
         }
     }
 
+    private void dumpCacheText(PrintWriter pw, String title, PathIndexedCache cache) {
+
+        pw.println(title);
+
+        final String format = "%25s%15d\r\n";
+        pw.printf(format, "Size", cache.getSize());
+        pw.printf(format, "Maximum Size", cache.getMaxSize());
+        pw.printf(format, "Hits", cache.getHits());
+        pw.printf(format, "Misses", cache.getMisses());
+        pw.printf(format, "Invalidations", cache.getInvalidations());
+    }
+
     private void separatorText(PrintWriter pw) {
         pw.println();
     }
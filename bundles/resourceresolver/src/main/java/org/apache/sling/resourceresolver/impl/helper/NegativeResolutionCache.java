@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import java.util.Collection;
+
+import org.apache.sling.api.SlingConstants;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>NegativeResolutionCache</code> remembers request paths which
+ * did not resolve to a resource, so resolving them again does not have to
+ * go through the map entries and all resource path candidates.
+ * <p>
+ * Entries are keyed by the user and the request path, as the resources
+ * visible to a resource resolver depend on its access rights. Each entry
+ * records the absolute resource paths which have been tried during
+ * resolution, including the path of the missing resource below its deepest
+ * existing ancestor with the aliases of the ancestors replaced by their
+ * names. An added, changed or removed resource invalidates all entries
+ * with a candidate path below the parent of that resource, which covers the
+ * resource itself, paths with selectors and extensions and aliases of its
+ * siblings and ancestors. As removing an access control entry may make
+ * resources visible, changes below a <code>rep:policy</code> node are
+ * handled as changes of the node owning the policy.
+ * <p>
+ * Since the access rights of a user also depend on its group memberships,
+ * any change of a user, a group or the members of a group and any removal
+ * below the <code>/home</code> authorizables root, except for login tokens,
+ * clears the cache completely. So does any change of the resource providers
+ * or the mappings.
+ */
+public class NegativeResolutionCache extends PathIndexedCache implements EventHandler {
+
+    /** The topics this cache has to be registered for. */
+    public static final String[] TOPICS = {
+        SlingConstants.TOPIC_RESOURCE_ADDED,
+        SlingConstants.TOPIC_RESOURCE_CHANGED,
+        SlingConstants.TOPIC_RESOURCE_REMOVED,
+        SlingConstants.TOPIC_RESOURCE_PROVIDER_ADDED,
+        SlingConstants.TOPIC_RESOURCE_PROVIDER_REMOVED,
+        SlingConstants.TOPIC_RESOURCE_RESOLVER_MAPPING_CHANGED
+    };
+
+    private static final String JCR_SYSTEM_PREFIX = "/jcr:system/";
+
+    /** The resource types of users, groups and the overflow nodes of members */
+    private static final String[] AUTHORIZABLE_TYPES = {
+        "rep:User", "rep:SystemUser", "rep:Group", "rep:Members" };
+
+    /** The default root of users and groups, which carry no resource type when removed */
+    private static final String AUTHORIZABLES_PREFIX = "/home/";
+
+    /** The login tokens of a user, which do not change its access rights */
+    private static final String TOKENS_SEGMENT = "/.tokens";
+
+    private final Logger log = LoggerFactory.getLogger(NegativeResolutionCache.class);
+
+    public NegativeResolutionCache(final int maxSize) {
+        super(maxSize);
+    }
+
+    /**
+     * Creates the key for the request path resolved by the given user.
+     */
+    public static String createKey(final String userId, final String requestPath) {
+        return (userId == null ? "" : userId) + SEPARATOR + requestPath;
+    }
+
+    /**
+     * Caches that the key does not resolve.
+     *
+     * @param key The key created with {@link #createKey(String, String)}
+     * @param path The path of the non existing resource
+     * @param candidates The absolute resource paths tried during resolution
+     * @param generation The generation at the start of the resolution, see
+     *            {@link #getGeneration()}
+     */
+    public void put(final String key, final String path, final Collection<String> candidates, final long generation) {
+        this.put(key, path, candidates.toArray(new String[candidates.size()]), generation);
+    }
+
+    /**
+     * @see org.osgi.service.event.EventHandler#handleEvent(org.osgi.service.event.Event)
+     */
+    public void handleEvent(final Event event) {
+        final String topic = event.getTopic();
+        if (SlingConstants.TOPIC_RESOURCE_ADDED.equals(topic)
+                || SlingConstants.TOPIC_RESOURCE_CHANGED.equals(topic)
+                || SlingConstants.TOPIC_RESOURCE_REMOVED.equals(topic)) {
+            final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
+            if (path instanceof String && isAuthorizableChange(topic, (String) path,
+                    event.getProperty(SlingConstants.PROPERTY_RESOURCE_TYPE))) {
+                log.debug("handleEvent, topic={}, authorizable {} changed, clearing cache", topic, path);
+                this.clear();
+            } else if (path instanceof String) {
+                if (!((String) path).startsWith(JCR_SYSTEM_PREFIX)) {
+                    this.invalidate(getInvalidationPrefix((String) path));
+                }
+            } else {
+                log.debug("handleEvent, topic={}, no path provided, clearing cache", topic);
+                this.clear();
+            }
+        } else {
+            log.debug("handleEvent, topic={}, clearing cache", topic);
+            this.clear();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the event of the given topic on the path
+     * may change the group memberships of a user.
+     */
+    static boolean isAuthorizableChange(final String topic, final String path, final Object resourceType) {
+        if (SlingConstants.TOPIC_RESOURCE_REMOVED.equals(topic)) {
+            return path.startsWith(AUTHORIZABLES_PREFIX) && !path.contains(TOKENS_SEGMENT);
+        }
+        for (final String type : AUTHORIZABLE_TYPES) {
+            if (type.equals(resourceType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the prefix of the candidate paths which might resolve after
+     * the resource at the given path has been added, changed or removed.
+     */
+    static String getInvalidationPrefix(final String path) {
+        final String resourcePath = getAffectedPath(path);
+        final int pos = resourcePath.lastIndexOf('/');
+        if (pos <= 0) {
+            return "/";
+        }
+        return resourcePath.substring(0, pos + 1);
+    }
+}
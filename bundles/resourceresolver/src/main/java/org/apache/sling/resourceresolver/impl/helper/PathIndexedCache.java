@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>PathIndexedCache</code> is the base of the bounded caches of
+ * resolution results which are invalidated by resource paths.
+ * <p>
+ * Each entry maps a key to a value and records the resource paths its
+ * value depends on. {@link #invalidate(String)} removes all entries with a
+ * path starting with a prefix. A generation counter, which is incremented
+ * on each invalidation, prevents caching results computed while an
+ * invalidation happened. The oldest entries are evicted first.
+ * <p>
+ * Subclasses create the keys and decide which paths to invalidate.
+ */
+public abstract class PathIndexedCache {
+
+    /** Separator for the parts of the keys, never contained in a path. */
+    protected static final char SEPARATOR = '\u0000';
+
+    private static final String JCR_CONTENT_SUFFIX = "/jcr:content";
+
+    private static final String POLICY_NODE = "/rep:policy";
+
+    private final int maxSize;
+
+    /** The cached entries by key. */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /** The entries by path and key, for the invalidation. */
+    private final ConcurrentNavigableMap<String, Entry> pathIndex = new ConcurrentSkipListMap<String, Entry>();
+
+    /** The keys of the entries in insertion order, for the eviction. */
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<String>();
+
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+
+    /** Incremented on each invalidation to detect concurrent changes. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    protected PathIndexedCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the path of the resource affected by a change at the given
+     * path: access control changes below a <code>rep:policy</code> node
+     * affect the node owning the policy and a content node, which may
+     * carry the alias, affects its parent.
+     */
+    protected static String getAffectedPath(final String path) {
+        String resourcePath = path;
+        final int policyPos = resourcePath.indexOf(POLICY_NODE);
+        if (policyPos != -1) {
+            resourcePath = resourcePath.substring(0, policyPos);
+        }
+        if (resourcePath.endsWith(JCR_CONTENT_SUFFIX)) {
+            resourcePath = resourcePath.substring(0, resourcePath.length() - JCR_CONTENT_SUFFIX.length());
+        }
+        return resourcePath.length() == 0 ? "/" : resourcePath;
+    }
+
+    /**
+     * Returns the current generation which has to be passed to
+     * {@link #put(String, String, String[], long)}. This has to be called
+     * before computing the value.
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Returns the cached value for the key or <code>null</code> if the key
+     * is not cached.
+     */
+    public String get(final String key) {
+        final Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Caches the value.
+     *
+     * @param key The key of the value
+     * @param value The value
+     * @param paths The resource paths the value depends on
+     * @param generation The generation at the start of computing the value,
+     *            if the cache has been invalidated in the meantime, the entry
+     *            is not cached as the value might already be outdated.
+     */
+    protected void put(final String key, final String value, final String[] paths, final long generation) {
+        final Entry entry = new Entry(key, value, paths);
+        if (this.entries.putIfAbsent(key, entry) != null) {
+            return;
+        }
+        for (final String path : entry.paths) {
+            this.pathIndex.put(path + SEPARATOR + key, entry);
+        }
+        // an invalidation after the entry has been indexed removes it
+        // anyway, an invalidation before can not be detected otherwise
+        if (this.generation.get() != generation) {
+            this.remove(entry);
+            return;
+        }
+        this.insertionOrder.add(key);
+        this.insertionOrderSize.incrementAndGet();
+        while (this.entries.size() > this.maxSize || this.insertionOrderSize.get() > 2 * this.maxSize) {
+            final String eldest = this.insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            this.insertionOrderSize.decrementAndGet();
+            final Entry eldestEntry = this.entries.get(eldest);
+            if (eldestEntry != null) {
+                this.remove(eldestEntry);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries with a path starting with the prefix.
+     */
+    public void invalidate(final String prefix) {
+        this.generation.incrementAndGet();
+        final Map<String, Entry> affected = this.pathIndex.subMap(prefix, true, prefix + '\uffff', false);
+        for (final Entry entry : affected.values()) {
+            if (this.remove(entry)) {
+                this.invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        this.generation.incrementAndGet();
+        this.entries.clear();
+        this.pathIndex.clear();
+        this.insertionOrder.clear();
+        this.insertionOrderSize.set(0);
+    }
+
+    public int getSize() {
+        return this.entries.size();
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Removes the entry and its index entries, unless they have been
+     * replaced by a newer entry for the same key already.
+     */
+    private boolean remove(final Entry entry) {
+        final boolean removed = this.entries.remove(entry.key, entry);
+        for (final String path : entry.paths) {
+            this.pathIndex.remove(path + SEPARATOR + entry.key, entry);
+        }
+        return removed;
+    }
+
+    private static final class Entry {
+
+        final String key;
+
+        final String value;
+
+        final String[] paths;
+
+        Entry(final String key, final String value, final String[] paths) {
+            this.key = key;
+            this.value = value;
+            this.paths = paths;
+        }
+    }
+}
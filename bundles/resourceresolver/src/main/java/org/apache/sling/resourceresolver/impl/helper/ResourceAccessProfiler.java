@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The <code>ResourceAccessProfiler</code> records the resource access of a
+ * resource resolver on behalf of a request.
+ * <p>
+ * The Sling engine asks for a request to be profiled by setting the
+ * {@link #ATTR_NAME} request attribute to a <code>Map&lt;String, long[]&gt;</code>.
+ * The profiler adds an entry to this map for each operation and path
+ * accessed, keyed by the operation name and the path separated by a blank.
+ * The value is the number of calls and the total duration of these calls in
+ * nanoseconds. Access to the map is synchronized on the map.
+ * <p>
+ * The resources handed out by the resource resolver while profiling are
+ * never wrapped, since request processing relies on their types, for example
+ * to tell a {@link org.apache.sling.api.resource.NonExistingResource} from
+ * existing resources. Only the iterators of children and query results are
+ * wrapped to record the time spent iterating.
+ */
+public class ResourceAccessProfiler {
+
+    /**
+     * The name of the request attribute holding the map of the resource
+     * access of the request.
+     */
+    public static final String ATTR_NAME = "org.apache.sling.resourceaccess.profile";
+
+    public static final String RESOLVE = "resolve";
+
+    public static final String GET_RESOURCE = "getResource";
+
+    public static final String LIST_CHILDREN = "listChildren";
+
+    public static final String QUERY = "query";
+
+    private final Map<String, long[]> accesses;
+
+    private ResourceAccessProfiler(final Map<String, long[]> accesses) {
+        this.accesses = accesses;
+    }
+
+    /**
+     * Returns a profiler recording into the map of the request or
+     * <code>null</code> if the request is not to be profiled.
+     */
+    @SuppressWarnings("unchecked")
+    public static ResourceAccessProfiler get(final HttpServletRequest request) {
+        final Object accesses = request.getAttribute(ATTR_NAME);
+        if (accesses instanceof Map) {
+            return new ResourceAccessProfiler((Map<String, long[]>) accesses);
+        }
+        return null;
+    }
+
+    /**
+     * Records a call of the operation on the path which started at the
+     * <code>start</code> time as returned by <code>System.nanoTime()</code>.
+     */
+    public void record(final String operation, final String path, final long start) {
+        add(operation, path, 1, System.nanoTime() - start);
+    }
+
+    /**
+     * Adds time spent on the path to the operation without counting a call,
+     * for example when iterating over the children of a resource.
+     */
+    void addTime(final String operation, final String path, final long start) {
+        add(operation, path, 0, System.nanoTime() - start);
+    }
+
+    private void add(final String operation, final String path, final int calls, final long duration) {
+        final String key = operation + ' ' + path;
+        synchronized (this.accesses) {
+            long[] entry = this.accesses.get(key);
+            if (entry == null) {
+                entry = new long[2];
+                this.accesses.put(key, entry);
+            }
+            entry[0] += calls;
+            entry[1] += duration;
+        }
+    }
+
+    /**
+     * Wraps the iterator to record the time spent iterating. The elements
+     * returned are not wrapped.
+     */
+    public <T> Iterator<T> wrap(final String operation, final String path, final Iterator<T> iterator) {
+        return new ProfilingIterator<T>(operation, path, iterator);
+    }
+
+    /**
+     * The <code>ProfilingIterator</code> records the time spent in the
+     * iterator.
+     */
+    private final class ProfilingIterator<T> implements Iterator<T> {
+
+        private final String operation;
+
+        private final String path;
+
+        private final Iterator<T> iterator;
+
+        ProfilingIterator(final String operation, final String path, final Iterator<T> iterator) {
+            this.operation = operation;
+            this.path = path;
+            this.iterator = iterator;
+        }
+
+        public boolean hasNext() {
+            final long start = System.nanoTime();
+            try {
+                return this.iterator.hasNext();
+            } finally {
+                addTime(this.operation, this.path, start);
+            }
+        }
+
+        public T next() {
+            final long start = System.nanoTime();
+            try {
+                return this.iterator.next();
+            } finally {
+                addTime(this.operation, this.path, start);
+            }
+        }
+
+        public void remove() {
+            this.iterator.remove();
+        }
+    }
+}
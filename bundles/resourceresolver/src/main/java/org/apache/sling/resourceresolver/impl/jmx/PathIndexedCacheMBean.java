@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.jmx;
+
+/**
+ * This is the management interface for the caches of resolution results,
+ * which are registered with the <code>service</code> name of the cache in
+ * the object name: the cache of the results of the ResourceResolver.map
+ * methods and the cache of request paths which do not resolve.
+ */
+public interface PathIndexedCacheMBean {
+
+    /**
+     * Get the current number of cached results
+     *
+     * @return the cache size
+     */
+    int getCacheSize();
+
+    /**
+     * Get the maximum configured number of cached results
+     *
+     * @return the maximum configured size
+     */
+    int getMaximumCacheSize();
+
+    /**
+     * Get the number of calls answered from the cache
+     *
+     * @return the hit count
+     */
+    long getHitCount();
+
+    /**
+     * Get the number of calls not answered from the cache
+     *
+     * @return the miss count
+     */
+    long getMissCount();
+
+    /**
+     * Get the number of entries removed due to resource changes
+     *
+     * @return the invalidation count
+     */
+    long getInvalidationCount();
+
+    /**
+     * Flush the cache.
+     */
+    void flushCache();
+}
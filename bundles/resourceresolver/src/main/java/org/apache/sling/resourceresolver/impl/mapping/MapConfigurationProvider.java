@@ -44,10 +44,18 @@ public interface MapConfigurationProvider extends ResourceResolverFactory {
     
     int getVanityBloomFilterMaxBytes();
 
+    boolean isVanityPathIndexEnabled();
+
     boolean isOptimizeAliasResolutionEnabled();
+
+    int getAliasLoaderThreads();
     
     boolean hasVanityPathPrecedence();
 
+    boolean isCompiledMapMatcherEnabled();
+
+    int getMapCacheSize();
+
     public class VanityPathConfig implements Comparable<VanityPathConfig> {
         public final boolean isExclude;
         public final String prefix;
@@ -26,10 +26,12 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -39,11 +41,17 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.servlet.http.HttpServletResponse;
@@ -83,6 +91,8 @@ public class MapEntries implements EventHandler {
     public static final String PROP_VANITY_ORDER = "sling:vanityOrder";
     
     private static final String VANITY_BLOOM_FILTER_NAME = "vanityBloomFilter.txt";
+
+    private static final String VANITY_PATH_INDEX_NAME = "vanityPathIndex.bin";
     
     private static final int VANITY_BLOOM_FILTER_MAX_ENTRIES = 10000000;
 
@@ -95,6 +105,13 @@ public class MapEntries implements EventHandler {
 
     private static final String JCR_SYSTEM_PREFIX = "/jcr:system/";
 
+    private static final String JCR_CONTENT = "jcr:content";
+
+    private static final String POLICY_NODE = "/rep:policy";
+
+    /** Maximum number of subtrees loaded by one alias query. */
+    private static final int ALIAS_PARTITION_SIZE = 32;
+
     static final String ANY_SCHEME_HOST = "[^/]+/[^/]+";
 
     /** default log */
@@ -110,10 +127,22 @@ public class MapEntries implements EventHandler {
 
     private Collection<MapEntry> mapMaps;
 
+    private volatile MapEntryMatcher globalResolveMatcher;
+
     private Map <String,List <String>> vanityTargets;
 
     private Map<String, Map<String, String>> aliasMap;
 
+    /** Whether the alias map is complete and can be used for resolution. */
+    private volatile boolean aliasMapComplete = true;
+
+    /** Parent paths whose aliases changed while loading the aliases. */
+    private final Set<String> pendingAliasParents = new HashSet<String>();
+
+    private final AtomicInteger aliasLoadGeneration = new AtomicInteger();
+
+    private volatile ExecutorService aliasLoader;
+
     private ServiceRegistration registration;
 
     private EventAdmin eventAdmin;
@@ -127,17 +156,30 @@ public class MapEntries implements EventHandler {
     private final int vanityBloomFilterMaxBytes;
 
     private final boolean enableOptimizeAliasResolution;
+
+    private final int aliasLoaderThreads;
     
     private final boolean vanityPathPrecedence;
 
+    private final boolean enableCompiledMapMatcher;
+
+    private final boolean enableVanityPathIndex;
+
     private final List<VanityPathConfig> vanityPathConfig;
     
     private final AtomicLong vanityCounter;
 
     private final File vanityBloomFilterFile;
 
+    private final File vanityPathIndexFile;
+
     private byte[] vanityBloomFilter;
 
+    private volatile VanityPathIndex vanityPathIndex;
+
+    /** The cache of map results, <code>null</code> if disabled. */
+    private final MapResultCache mapResultCache;
+
     private Timer timer;
 
     private boolean updateBloomFilterFile = false;
@@ -158,10 +200,15 @@ public class MapEntries implements EventHandler {
         this.maxCachedVanityPathEntries = -1;
         this.vanityBloomFilterMaxBytes = 0;
         this.enableOptimizeAliasResolution = true;
+        this.aliasLoaderThreads = 0;
         this.vanityPathConfig = null;
         this.vanityPathPrecedence = false;
+        this.enableCompiledMapMatcher = false;
+        this.enableVanityPathIndex = false;
         this.vanityCounter = new AtomicLong(0);
         this.vanityBloomFilterFile = null;
+        this.vanityPathIndexFile = null;
+        this.mapResultCache = null;
     }
 
     @SuppressWarnings("unchecked")
@@ -175,7 +222,11 @@ public class MapEntries implements EventHandler {
         this.vanityBloomFilterMaxBytes = factory.getVanityBloomFilterMaxBytes();
         this.vanityPathConfig = factory.getVanityPathConfig();
         this.enableOptimizeAliasResolution = factory.isOptimizeAliasResolutionEnabled();
+        this.aliasLoaderThreads = factory.getAliasLoaderThreads();
         this.vanityPathPrecedence = factory.hasVanityPathPrecedence();
+        this.enableCompiledMapMatcher = factory.isCompiledMapMatcherEnabled();
+        this.enableVanityPathIndex = factory.isVanityPathIndexEnabled();
+        this.mapResultCache = factory.getMapCacheSize() > 0 ? new MapResultCache(factory.getMapCacheSize()) : null;
         this.eventAdmin = eventAdmin;
 
         this.resolveMapsMap = Collections.singletonMap(GLOBAL_LIST_KEY, (List<MapEntry>)Collections.EMPTY_LIST);
@@ -193,7 +244,13 @@ public class MapEntries implements EventHandler {
         this.registration = bundleContext.registerService(EventHandler.class.getName(), this, props);
         
         this.vanityCounter = new AtomicLong(0);
-        this.vanityBloomFilterFile = bundleContext.getDataFile(VANITY_BLOOM_FILTER_NAME);
+        if (this.enableVanityPathIndex) {
+            this.vanityBloomFilterFile = null;
+            this.vanityPathIndexFile = bundleContext.getDataFile(VANITY_PATH_INDEX_NAME);
+        } else {
+            this.vanityBloomFilterFile = bundleContext.getDataFile(VANITY_BLOOM_FILTER_NAME);
+            this.vanityPathIndexFile = null;
+        }
         initializeVanityPaths();
     }
 
@@ -216,8 +273,12 @@ public class MapEntries implements EventHandler {
             
             //optimization made in SLING-2521
             if (enableOptimizeAliasResolution){
-                final Map<String, Map<String, String>> aliasMap = this.loadAliases(resolver);
-                this.aliasMap = aliasMap;
+                if (aliasLoaderThreads > 0) {
+                    this.startAliasLoading(resolver);
+                } else {
+                    final Map<String, Map<String, String>> aliasMap = this.loadAliases(resolver);
+                    this.aliasMap = aliasMap;
+                }
             }
 
             this.resolveMapsMap = newResolveMapsMap; 
@@ -248,6 +309,10 @@ public class MapEntries implements EventHandler {
         try {
             if (this.enabledVanityPaths) {
 
+                if (this.enableVanityPathIndex) {
+                    initializeVanityPathIndex();
+                    return;
+                }
                 if (vanityBloomFilterFile == null) {
                     throw new RuntimeException(
                             "This platform does not have file system support");
@@ -288,6 +353,133 @@ public class MapEntries implements EventHandler {
 
     }
 
+    /**
+     * Opens the vanity path index. A new index is filled by scanning the
+     * repository, a reused index only fills the cache if all vanity paths
+     * have to be cached, loading the indexed resources directly. As the
+     * repository might have been changed while the index was closed, a
+     * reused index is validated in the background.
+     */
+    private void initializeVanityPathIndex() throws IOException {
+        if (vanityPathIndexFile == null) {
+            throw new RuntimeException(
+                    "This platform does not have file system support");
+        }
+        final VanityPathIndex index = new VanityPathIndex(vanityPathIndexFile);
+        this.vanityPathIndex = index;
+
+        // task for flushing the index (the same as for the bloom filter)
+        timer = new Timer();
+        timer.schedule(new BloomFilterTask(), 60 * 1000);
+
+        if (index.isNew()) {
+            log.debug("creating vanity path index {}", vanityPathIndexFile.getAbsolutePath());
+            this.vanityTargets = this.loadVanityPaths(resolver, resolveMapsMap, true);
+        } else if (isAllVanityPathEntriesCached()) {
+            final Map<String, List<String>> targetPaths = new ConcurrentHashMap<String, List<String>>();
+            for (final String path : index.getResourcePaths()) {
+                final Resource resource = resolver.getResource(path);
+                if (resource != null) {
+                    loadVanityPath(resource, resolveMapsMap, targetPaths, true, false);
+                    vanityCounter.incrementAndGet();
+                }
+            }
+            this.vanityTargets = targetPaths;
+        } else {
+            this.vanityTargets = new ConcurrentHashMap<String, List<String>>();
+        }
+
+        if (!index.isNew()) {
+            final Thread validator = new Thread(new Runnable() {
+                public void run() {
+                    validateVanityPathIndex(index);
+                }
+            }, "Sling Vanity Path Index Validation");
+            validator.setDaemon(true);
+            validator.start();
+        }
+    }
+
+    /**
+     * Validates a reused vanity path index against the repository. Resources
+     * whose vanity paths differ from the index are updated, indexed resources
+     * which no longer define vanity paths are removed from the index. Until
+     * the validation is finished lookups use the index as it was.
+     */
+    void validateVanityPathIndex(final VanityPathIndex index) {
+        this.initializing.lock();
+        try {
+            if (this.vanityPathIndex != index || this.resolver == null) {
+                // disposed in the meantime
+                return;
+            }
+            final long start = System.currentTimeMillis();
+            final Set<String> resourcePaths = new HashSet<String>();
+            final Set<String> changedPaths = new HashSet<String>();
+            final String queryString = "SELECT sling:vanityPath, sling:redirect, sling:redirectStatus FROM sling:VanityPath WHERE sling:vanityPath IS NOT NULL";
+            final Iterator<Resource> i = resolver.findResources(queryString, "sql");
+            while (i.hasNext()) {
+                final Resource resource = i.next();
+                if (!isValidVanityPath(resource)) {
+                    continue;
+                }
+                resourcePaths.add(resource.getPath());
+                final Set<String> indexed = new HashSet<String>(Arrays.asList(index.getVanityPaths(resource.getPath())));
+                if (!indexed.equals(getVanityPathKeys(resource))) {
+                    changedPaths.add(getActualContentPath(resource.getPath()));
+                }
+            }
+            for (final String path : changedPaths) {
+                // a page and its content share the cache entries
+                doRemoveVanity(path);
+                if (resourcePaths.contains(path)) {
+                    doAddVanity(path);
+                }
+                if (resourcePaths.contains(path + "/jcr:content")) {
+                    doAddVanity(path + "/jcr:content");
+                }
+            }
+            int removed = 0;
+            for (final String path : index.getResourcePaths()) {
+                if (!resourcePaths.contains(path)) {
+                    index.removeResource(path);
+                    removed++;
+                }
+            }
+            if (!changedPaths.isEmpty() || removed > 0) {
+                updateBloomFilterFile = true;
+                clearMapResultCache();
+                sendChangeEvent();
+            }
+            log.info("Validated vanity path index in {} ms, {} resources updated, {} removed",
+                    new Object[] {System.currentTimeMillis() - start, changedPaths.size(), removed});
+        } catch (final IOException e) {
+            log.error("Error while updating vanity path index", e);
+        } catch (final Exception e) {
+            log.warn("validateVanityPathIndex: Unexpected problem during validation", e);
+        } finally {
+            this.initializing.unlock();
+        }
+    }
+
+    /**
+     * Returns the vanity paths defined by the resource as stored in the
+     * vanity path index.
+     */
+    private Set<String> getVanityPathKeys(final Resource resource) {
+        final Set<String> keys = new HashSet<String>();
+        final ValueMap props = resource.adaptTo(ValueMap.class);
+        if (props != null) {
+            for (final String pVanityPath : props.get(PROP_VANITY_PATH, new String[0])) {
+                final String[] result = this.getVanityPathDefinition(pVanityPath);
+                if (result != null) {
+                    keys.add(result[1]);
+                }
+            }
+        }
+        return keys;
+    }
+
     private boolean doNodeAdded(String path, boolean refreshed) {
         this.initializing.lock();
         boolean newRefreshed = refreshed;
@@ -440,8 +632,12 @@ public class MapEntries implements EventHandler {
         loadMapConfiguration(factory, newMapMaps);
         // sort global list and add to map
         Collections.sort(globalResolveMap);
+        if (this.enableCompiledMapMatcher) {
+            this.globalResolveMatcher = new MapEntryMatcher(globalResolveMap);
+        }
         resolveMapsMap.put(GLOBAL_LIST_KEY, globalResolveMap);
         this.mapMaps = Collections.unmodifiableSet(new TreeSet<MapEntry>(newMapMaps.values()));
+        clearMapResultCache();
     }
 
     private void doAddVanity(String path) {
@@ -463,6 +659,7 @@ public class MapEntries implements EventHandler {
     }
 
     private void doRemoveVanity(String path) {
+        removeFromVanityPathIndex(path);
         String actualContentPath = getActualContentPath(path);
         List <String> l = vanityTargets.get(actualContentPath);
         if (l != null){
@@ -528,11 +725,13 @@ public class MapEntries implements EventHandler {
     }
 
     private void doAddAlias(String path) {
+        addPendingAliasParents(path);
         Resource resource = resolver.getResource(path);
-        loadAlias(resource, this.aliasMap);
+        loadAlias(resource, this.aliasMap, true);
     }
 
     private void doUpdateAlias(String path, boolean nodeDeletion) {
+        addPendingAliasParents(path);
         if (nodeDeletion){
             if (path.endsWith("/jcr:content")) {
                 path =  path.substring(0, path.length() - "/jcr:content".length());
@@ -568,6 +767,7 @@ public class MapEntries implements EventHandler {
     }
 
     private void doRemoveAlias(String path, boolean nodeDeletion) {
+        addPendingAliasParents(path);
         String resourceName = null;
         if (nodeDeletion) { 
             if (!"/".equals(path)){
@@ -592,31 +792,355 @@ public class MapEntries implements EventHandler {
         }
         Map<String, String> aliasMapEntry = aliasMap.get(path);
         if (aliasMapEntry != null) {
+            // the entry is replaced, not modified, as it may be used concurrently
+            aliasMapEntry = new LinkedHashMap<String, String>(aliasMapEntry);
             for (Iterator<String> iterator =aliasMapEntry.keySet().iterator(); iterator.hasNext(); ) {
                 String key = iterator.next();
                 if (resourceName.equals(aliasMapEntry.get(key))){
                     iterator.remove();
                 }
             }
-        }
-        if (aliasMapEntry != null && aliasMapEntry.isEmpty()) {
-            this.aliasMap.remove(path);
+            if (aliasMapEntry.isEmpty()) {
+                this.aliasMap.remove(path);
+            } else {
+                this.aliasMap.put(path, aliasMapEntry);
+            }
         }
     }
 
+    /**
+     * Returns <code>true</code> if the alias map should be used to resolve
+     * aliases. While the aliases are loaded in the background this returns
+     * <code>false</code>, so aliases are resolved from the resources instead.
+     */
     public boolean isOptimizeAliasResolutionEnabled() {
-        return this.enableOptimizeAliasResolution;
+        return this.enableOptimizeAliasResolution && this.aliasMapComplete;
+    }
+
+    /**
+     * Starts loading the aliases in the background. The second level of the
+     * tree is split into partitions of subtrees, each loaded by one query on
+     * the alias loader threads with its own resource resolver.
+     * <p>
+     * All aliases below a subtree root are loaded by a single partition, so
+     * each per-parent alias map is completely built before it is published.
+     * The aliases of the subtree roots belong to parents shared between
+     * partitions and are merged once all partitions have been loaded. Alias
+     * changes observed while loading are recorded and the aliases of these
+     * parents are reloaded at the end as well. If a partition fails to load,
+     * all aliases are loaded again by a single query once the other
+     * partitions are done.
+     */
+    private void startAliasLoading(final ResourceResolver resolver) {
+        stopAliasLoading(0);
+
+        final Map<String, Map<String, String>> map = new ConcurrentHashMap<String, Map<String, String>>();
+        final List<Map<String, Map<String, String>>> topMaps = Collections.synchronizedList(new ArrayList<Map<String, Map<String, String>>>());
+        final List<List<String>> partitions = new ArrayList<List<String>>();
+        List<String> partition = new ArrayList<String>();
+
+        // the aliases of the first level are loaded directly
+        final Map<String, Map<String, String>> topMap = new HashMap<String, Map<String, String>>();
+        final Resource root = resolver.getResource("/");
+        if (root != null) {
+            for (final Iterator<Resource> i = resolver.listChildren(root); i.hasNext();) {
+                final Resource top = i.next();
+                if ((top.getPath() + "/").startsWith(JCR_SYSTEM_PREFIX)) {
+                    continue;
+                }
+                loadAliasWithContent(top, topMap);
+                for (final Iterator<Resource> j = resolver.listChildren(top); j.hasNext();) {
+                    final Resource child = j.next();
+                    if (!JCR_CONTENT.equals(child.getName())) {
+                        partition.add(child.getPath());
+                        if (partition.size() == ALIAS_PARTITION_SIZE) {
+                            partitions.add(partition);
+                            partition = new ArrayList<String>();
+                        }
+                    }
+                }
+            }
+        }
+        if (!partition.isEmpty()) {
+            partitions.add(partition);
+        }
+        topMaps.add(topMap);
+
+        synchronized (this.pendingAliasParents) {
+            this.pendingAliasParents.clear();
+        }
+        this.aliasMap = map;
+        this.aliasMapComplete = false;
+
+        final int generation = this.aliasLoadGeneration.incrementAndGet();
+        if (partitions.isEmpty()) {
+            completeAliasLoading(generation, topMaps, false);
+            return;
+        }
+
+        log.info("Loading aliases in {} partitions", partitions.size());
+        final AtomicInteger remaining = new AtomicInteger(partitions.size());
+        final AtomicBoolean failed = new AtomicBoolean();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.aliasLoaderThreads, partitions.size()),
+                new AliasLoaderThreadFactory());
+        this.aliasLoader = executor;
+        for (final List<String> paths : partitions) {
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    final Map<String, Map<String, String>> partitionTopMap = new HashMap<String, Map<String, String>>();
+                    if (loadAliasPartition(paths, map, partitionTopMap)) {
+                        topMaps.add(partitionTopMap);
+                    } else {
+                        failed.set(true);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        completeAliasLoading(generation, topMaps, failed.get());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Stops loading the aliases in the background, if running.
+     *
+     * @param timeout The number of seconds to wait for the loader threads to
+     *            terminate, <code>0</code> to not wait.
+     */
+    private void stopAliasLoading(final long timeout) {
+        this.aliasLoadGeneration.incrementAndGet();
+        final ExecutorService executor = this.aliasLoader;
+        if (executor != null) {
+            this.aliasLoader = null;
+            executor.shutdownNow();
+            if (timeout > 0) {
+                try {
+                    if (!executor.awaitTermination(timeout, TimeUnit.SECONDS)) {
+                        log.warn("Alias loader threads did not terminate within {} seconds", timeout);
+                    }
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the aliases below the given subtrees and publishes the alias map
+     * of each parent path into the map. The aliases of the subtree roots are
+     * loaded into the topMap.
+     *
+     * @return <code>true</code> if the partition has been loaded
+     */
+    private boolean loadAliasPartition(final List<String> paths, final Map<String, Map<String, String>> map,
+            final Map<String, Map<String, String>> topMap) {
+        final MapConfigurationProvider factory = this.factory;
+        if (factory == null) {
+            return false;
+        }
+        final StringBuilder queryString = new StringBuilder("SELECT sling:alias FROM nt:base WHERE sling:alias IS NOT NULL AND (");
+        for (int i = 0; i < paths.size(); i++) {
+            if (i > 0) {
+                queryString.append(" OR ");
+            }
+            queryString.append("jcr:path LIKE '").append(paths.get(i).replaceAll("'", "''")).append("/%'");
+        }
+        queryString.append(')');
+
+        ResourceResolver resolver = null;
+        try {
+            resolver = factory.getAdministrativeResourceResolver(null);
+            for (final String path : paths) {
+                final Resource resource = resolver.getResource(path);
+                if (resource != null) {
+                    loadAliasWithContent(resource, topMap);
+                }
+            }
+
+            final Map<String, Map<String, String>> partitionMap = new HashMap<String, Map<String, String>>();
+            final Iterator<Resource> i = resolver.findResources(queryString.toString(), "sql");
+            while (i.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                final Resource resource = i.next();
+                // ignore jcr:content of the subtree roots (loaded above) and
+                // resources matched by LIKE wildcards in the paths
+                final String path = resource.getPath();
+                for (final String root : paths) {
+                    if (path.startsWith(root + "/") && !path.equals(root + "/" + JCR_CONTENT)) {
+                        loadAlias(resource, partitionMap, false);
+                        break;
+                    }
+                }
+            }
+            map.putAll(partitionMap);
+            return true;
+        } catch (final Exception e) {
+            log.warn("Unable to load aliases below " + paths + ", aliases are resolved without optimization", e);
+            return false;
+        } finally {
+            if (resolver != null) {
+                resolver.close();
+            }
+        }
+    }
+
+    /**
+     * Publishes the merged aliases of the top levels and marks the alias map
+     * complete after reloading the aliases of the parents which changed while
+     * loading. If a partition failed, all aliases are loaded serially instead.
+     */
+    private void completeAliasLoading(final int generation, final List<Map<String, Map<String, String>>> topMaps,
+            final boolean failed) {
+        this.initializing.lock();
+        try {
+            final ResourceResolver resolver = this.resolver;
+            if (generation != this.aliasLoadGeneration.get() || resolver == null) {
+                return;
+            }
+            if (failed) {
+                log.warn("Loading the aliases in partitions failed, loading all aliases with a single query");
+                resolver.refresh();
+                this.aliasMap = loadAliases(resolver);
+            } else {
+                this.aliasMap.putAll(mergeTopMaps(topMaps));
+            }
+
+            final List<String> parents;
+            synchronized (this.pendingAliasParents) {
+                parents = new ArrayList<String>(this.pendingAliasParents);
+                this.pendingAliasParents.clear();
+            }
+            if (!parents.isEmpty()) {
+                resolver.refresh();
+                for (final String parentPath : parents) {
+                    reloadAliases(resolver, parentPath);
+                }
+            }
+            this.aliasLoader = null;
+            this.aliasMapComplete = true;
+            clearMapResultCache();
+            log.info("Loaded aliases of {} parents", this.aliasMap.size());
+            sendChangeEvent();
+        } finally {
+            this.initializing.unlock();
+        }
+    }
+
+    /**
+     * Merges the aliases of the top levels loaded by the partitions.
+     */
+    private Map<String, Map<String, String>> mergeTopMaps(final List<Map<String, Map<String, String>>> topMaps) {
+        final Map<String, Map<String, String>> merged = new HashMap<String, Map<String, String>>();
+        synchronized (topMaps) {
+            for (final Map<String, Map<String, String>> topMap : topMaps) {
+                for (final Entry<String, Map<String, String>> entry : topMap.entrySet()) {
+                    Map<String, String> parentMap = merged.get(entry.getKey());
+                    if (parentMap == null) {
+                        parentMap = new LinkedHashMap<String, String>();
+                        merged.put(entry.getKey(), parentMap);
+                    }
+                    for (final Entry<String, String> alias : entry.getValue().entrySet()) {
+                        if (parentMap.containsKey(alias.getKey())) {
+                            log.warn("Encountered duplicate alias {} under parent path {}. Refusing to replace current target {} with {}.", new Object[] {
+                                    alias.getKey(),
+                                    entry.getKey(),
+                                    parentMap.get(alias.getKey()),
+                                    alias.getValue()
+                            });
+                        } else {
+                            parentMap.put(alias.getKey(), alias.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Records the parents possibly affected by an alias change at the given
+     * path while the aliases are loaded.
+     */
+    private void addPendingAliasParents(final String path) {
+        if (!this.aliasMapComplete) {
+            final String parent = ResourceUtil.getParent(path);
+            if (parent != null) {
+                synchronized (this.pendingAliasParents) {
+                    this.pendingAliasParents.add(parent);
+                    final String grandParent = ResourceUtil.getParent(parent);
+                    if (grandParent != null) {
+                        this.pendingAliasParents.add(grandParent);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads the aliases of the children of the given parent.
+     */
+    private void reloadAliases(final ResourceResolver resolver, final String parentPath) {
+        final Map<String, Map<String, String>> parentMap = new HashMap<String, Map<String, String>>();
+        final Resource parent = resolver.getResource(parentPath);
+        if (parent != null) {
+            for (final Iterator<Resource> i = resolver.listChildren(parent); i.hasNext();) {
+                final Resource child = i.next();
+                if (!JCR_CONTENT.equals(child.getName())) {
+                    loadAliasWithContent(child, parentMap);
+                }
+            }
+        }
+        final Map<String, String> aliases = parentMap.get(parentPath);
+        if (aliases == null) {
+            this.aliasMap.remove(parentPath);
+        } else {
+            this.aliasMap.put(parentPath, aliases);
+        }
+    }
+
+    /**
+     * Loads the aliases of the resource and its jcr:content child.
+     */
+    private void loadAliasWithContent(final Resource resource, final Map<String, Map<String, String>> map) {
+        loadAliasIfPresent(resource, map);
+        final Resource content = resource.getChild(JCR_CONTENT);
+        if (content != null) {
+            loadAliasIfPresent(content, map);
+        }
+    }
+
+    private void loadAliasIfPresent(final Resource resource, final Map<String, Map<String, String>> map) {
+        final ValueMap props = resource.adaptTo(ValueMap.class);
+        if (props != null && props.containsKey(ResourceResolverImpl.PROP_ALIAS)) {
+            loadAlias(resource, map, false);
+        }
     }
 
     /**
      * Cleans up this class.
      */
     public void dispose() {
+        stopAliasLoading(10);
+
         try {
             persistBloomFilter();
         } catch (IOException e) {
            log.error("Error while saving bloom filter to disk", e);
         }
+
+        final VanityPathIndex index = this.vanityPathIndex;
+        if (index != null) {
+            this.vanityPathIndex = null;
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.error("Error while closing vanity path index", e);
+            }
+        }
         
         if (this.registration != null) {
             this.registration.unregister();
@@ -691,13 +1215,31 @@ public class MapEntries implements EventHandler {
             key = requestPath.substring(secondIndex);
         }
 
-        return new MapEntryIterator(key, resolveMapsMap, vanityPathPrecedence);
+        // with the compiled matcher only the global entries which may match
+        // the request path are iterated, in the same order
+        final MapEntryMatcher matcher = this.globalResolveMatcher;
+        final Iterator<MapEntry> globalIterator;
+        if (matcher != null) {
+            globalIterator = matcher.getCandidates(requestPath);
+        } else {
+            globalIterator = resolveMapsMap.get(GLOBAL_LIST_KEY).iterator();
+        }
+
+        return new MapEntryIterator(key, resolveMapsMap, globalIterator, vanityPathPrecedence);
     }
 
     public Collection<MapEntry> getMapMaps() {
         return mapMaps;
     }
 
+    /**
+     * Returns the cache of map results or <code>null</code> if the cache
+     * is disabled.
+     */
+    public MapResultCache getMapResultCache() {
+        return mapResultCache;
+    }
+
     public Map<String, String> getAliasMap(final String parentPath) {
         return aliasMap.get(parentPath);
     }
@@ -708,7 +1250,16 @@ public class MapEntries implements EventHandler {
     private List<MapEntry> getMapEntryList(String vanityPath){
         List<MapEntry> mapEntries = null;  
         
-        if (BloomFilterUtils.probablyContains(vanityBloomFilter, vanityPath)) {
+        final VanityPathIndex index = this.vanityPathIndex;
+        if (index != null) {
+            mapEntries = this.resolveMapsMap.get(vanityPath);
+            if (mapEntries == null) {
+                final String[] paths = index.getResourcePaths(vanityPath);
+                if (paths.length > 0) {
+                    mapEntries = getVanityPaths(index, vanityPath, paths);
+                }
+            }
+        } else if (BloomFilterUtils.probablyContains(vanityBloomFilter, vanityPath)) {
             mapEntries = this.resolveMapsMap.get(vanityPath);
             if (mapEntries == null) {
                 Map<String, List<MapEntry>>  mapEntry = getVanityPaths(vanityPath);
@@ -745,10 +1296,21 @@ public class MapEntries implements EventHandler {
             return;
         }
 
+        // resource providers and access control changes only affect the map results
+        if (SlingConstants.TOPIC_RESOURCE_PROVIDER_ADDED.equals(event.getTopic())
+                || SlingConstants.TOPIC_RESOURCE_PROVIDER_REMOVED.equals(event.getTopic())
+                || path.indexOf(POLICY_NODE) != -1) {
+            invalidateMapResults(path);
+            return;
+        }
+
         boolean wasResolverRefreshed = false;
 
         //removal of a node is handled differently
         if (SlingConstants.TOPIC_RESOURCE_REMOVED.equals(event.getTopic())) {
+            // resources below the removed path are dropped from the index
+            // on their next lookup
+            removeFromVanityPathIndex(path);
             final String actualContentPath = getActualContentPath(path);
             for (final String target : this.vanityTargets.keySet()) {
                 if (target.startsWith(actualContentPath)) {
@@ -792,6 +1354,9 @@ public class MapEntries implements EventHandler {
                 wasResolverRefreshed = doRemoveAttributes(path, removedAttributes, false, wasResolverRefreshed);
             } 
         }
+
+        // invalidate after the aliases have been updated
+        invalidateMapResults(path);
     }
 
     // ---------- internal
@@ -804,6 +1369,42 @@ public class MapEntries implements EventHandler {
         return bloomFilter;
     }
 
+    /**
+     * Removes the cached map results for resource paths affected by a
+     * change at the given path.
+     */
+    private void invalidateMapResults(final String path) {
+        final MapResultCache cache = this.mapResultCache;
+        if (cache != null) {
+            cache.invalidate(MapResultCache.getInvalidationPrefix(path));
+        }
+    }
+
+    private void clearMapResultCache() {
+        final MapResultCache cache = this.mapResultCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Removes the vanity paths of the resource at the given path and of its
+     * jcr:content child from the vanity path index.
+     */
+    private void removeFromVanityPathIndex(final String path) {
+        final VanityPathIndex index = this.vanityPathIndex;
+        if (index != null) {
+            try {
+                index.removeResource(path);
+                if (!path.endsWith("/jcr:content")) {
+                    index.removeResource(path + "/jcr:content");
+                }
+            } catch (final IOException e) {
+                log.error("Error while updating vanity path index", e);
+            }
+        }
+    }
+
     private void persistBloomFilter() throws IOException {
         if (vanityBloomFilterFile != null && vanityBloomFilter != null) {
             FileOutputStream out = new FileOutputStream(vanityBloomFilterFile);
@@ -845,6 +1446,34 @@ public class MapEntries implements EventHandler {
         return sb.toString();
     }
     
+    /**
+     * get the vanity paths from the resources listed in the vanity path index
+     * for the vanityPath. Resources which no longer exist or no longer
+     * define the vanityPath are removed from the index.
+     */
+    private List<MapEntry> getVanityPaths(final VanityPathIndex index, final String vanityPath, final String[] paths) {
+        final Map<String, List<MapEntry>> entryMap = new HashMap<String, List<MapEntry>>();
+        final Map <String, List<String>> targetPaths = new HashMap <String, List<String>>();
+
+        for (final String path : paths) {
+            final Resource resource = resolver.getResource(path);
+            final List<MapEntry> before = entryMap.get(vanityPath);
+            final int count = before == null ? 0 : before.size();
+            if (resource != null) {
+                loadVanityPath(resource, entryMap, targetPaths, true, false);
+            }
+            final List<MapEntry> after = entryMap.get(vanityPath);
+            if (after == null || after.size() == count) {
+                try {
+                    index.remove(vanityPath, path);
+                } catch (final IOException e) {
+                    log.error("Error while updating vanity path index", e);
+                }
+            }
+        }
+        return entryMap.get(vanityPath);
+    }
+
     /**
      * get the vanity paths  Search for all nodes having a specific vanityPath
      */
@@ -1023,15 +1652,16 @@ public class MapEntries implements EventHandler {
         final Iterator<Resource> i = resolver.findResources(queryString, "sql");
         while (i.hasNext()) {
             final Resource resource = i.next();         
-            loadAlias(resource, map);
+            loadAlias(resource, map, false);
         }
         return map;
     }
     
     /**
-     * Load alias given a resource
+     * Load alias given a resource. With copyOnWrite the alias map of the
+     * parent is replaced instead of modified, as required for the map in use.
      */
-    private void loadAlias(final Resource resource, Map<String, Map<String, String>> map) {
+    private void loadAlias(final Resource resource, Map<String, Map<String, String>> map, final boolean copyOnWrite) {
         // ignore system tree
         if (resource.getPath().startsWith(JCR_SYSTEM_PREFIX)) {
             log.debug("loadAliases: Ignoring {}", resource);
@@ -1056,6 +1686,9 @@ public class MapEntries implements EventHandler {
             resourceName = resource.getName();
         }
         Map<String, String> parentMap = map.get(parentPath);
+        if (copyOnWrite && parentMap != null) {
+            parentMap = new LinkedHashMap<String, String>(parentMap);
+        }
         for (final String alias : props.get(ResourceResolverImpl.PROP_ALIAS, String[].class)) {
             if (parentMap != null && parentMap.containsKey(alias)) {
                 log.warn("Encountered duplicate alias {} under parent path {}. Refusing to replace current target {} with {}.", new Object[] {
@@ -1082,12 +1715,17 @@ public class MapEntries implements EventHandler {
                 } else {
                     if (parentMap == null) {
                         parentMap = new LinkedHashMap<String, String>();
-                        map.put(parentPath, parentMap);
+                        if (!copyOnWrite) {
+                            map.put(parentPath, parentMap);
+                        }
                     }
                     parentMap.put(alias, resourceName);
                 }
             }
         }
+        if (copyOnWrite && parentMap != null) {
+            map.put(parentPath, parentMap);
+        }
     }
 
     /**
@@ -1187,19 +1825,36 @@ public class MapEntries implements EventHandler {
                         this.updateTargetPaths(targetPaths, redirect, checkPath);  
                         if (newVanity) {
                             // update bloom filter
-                            BloomFilterUtils.add(vanityBloomFilter, checkPath);
+                            addToVanityFilter(checkPath, resource.getPath());
                         }
                     }
                 } else {
                     if (newVanity) {
                         // update bloom filter
-                        BloomFilterUtils.add(vanityBloomFilter, checkPath);
+                        addToVanityFilter(checkPath, resource.getPath());
                     }
                 }
             }
         }
     }
     
+    /**
+     * Adds the vanity path to the vanity path index if enabled, otherwise
+     * to the bloom filter.
+     */
+    private void addToVanityFilter(final String vanityPath, final String resourcePath) {
+        final VanityPathIndex index = this.vanityPathIndex;
+        if (index != null) {
+            try {
+                index.add(vanityPath, resourcePath);
+            } catch (final IOException e) {
+                log.error("Error while updating vanity path index", e);
+            }
+        } else {
+            BloomFilterUtils.add(vanityBloomFilter, vanityPath);
+        }
+    }
+
     private void updateTargetPaths(final Map<String, List<String>> targetPaths, final String key, final String entry) {
         if (entry == null) {
            return;
@@ -1355,7 +2010,8 @@ public class MapEntries implements EventHandler {
      * Returns a filter which matches if any of the nodeProps (JCR properties
      * modified) is listed in any of the eventProps (event properties listing
      * modified JCR properties) this allows to only get events interesting for
-     * updating the internal structure
+     * updating the internal structure. Access control changes are included
+     * for the map result cache.
      */
     private static String createFilter(final boolean vanityPathEnabled) {
         final String[] nodeProps = {
@@ -1378,11 +2034,28 @@ public class MapEntries implements EventHandler {
         }
         filter.append("(").append(EventConstants.EVENT_TOPIC).append("=").append(SlingConstants.TOPIC_RESOURCE_REMOVED).append(")");
         filter.append("(").append(EventConstants.EVENT_TOPIC).append("=").append(SlingConstants.TOPIC_RESOURCE_ADDED).append(")");
+        filter.append("(").append(EventConstants.EVENT_TOPIC).append("=").append(SlingConstants.TOPIC_RESOURCE_PROVIDER_ADDED).append(")");
+        filter.append("(").append(EventConstants.EVENT_TOPIC).append("=").append(SlingConstants.TOPIC_RESOURCE_PROVIDER_REMOVED).append(")");
+        filter.append("(").append(SlingConstants.PROPERTY_PATH).append("=*").append(POLICY_NODE).append("*)");
         filter.append(")");
 
         return filter.toString();
     }
 
+    /**
+     * Creates the named daemon threads loading the aliases.
+     */
+    private static final class AliasLoaderThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Sling Alias Loader #" + COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     private final class MapEntryIterator implements Iterator<MapEntry> {
 
         private final Map<String, List<MapEntry>> resolveMapsMap;
@@ -1399,10 +2072,11 @@ public class MapEntries implements EventHandler {
         
         private boolean vanityPathPrecedence;
 
-        public MapEntryIterator(final String startKey, final Map<String, List<MapEntry>> resolveMapsMap, final boolean vanityPathPrecedence) {
+        public MapEntryIterator(final String startKey, final Map<String, List<MapEntry>> resolveMapsMap,
+                final Iterator<MapEntry> globalListIterator, final boolean vanityPathPrecedence) {
             this.key = startKey;
             this.resolveMapsMap = resolveMapsMap;
-            this.globalListIterator = this.resolveMapsMap.get(GLOBAL_LIST_KEY).iterator();
+            this.globalListIterator = globalListIterator;
             this.vanityPathPrecedence = vanityPathPrecedence;
             this.seek();
         }
@@ -1527,7 +2201,12 @@ public class MapEntries implements EventHandler {
         public void run() {
             try {
                 if (updateBloomFilterFile) {
-                    persistBloomFilter();
+                    final VanityPathIndex index = vanityPathIndex;
+                    if (index != null) {
+                        index.flush();
+                    } else {
+                        persistBloomFilter();
+                    }
                     updateBloomFilterFile = false;
                 }
             } catch (IOException e) {
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The <code>MapEntryMatcher</code> is a compiled form of a sorted list of
+ * resolve {@link MapEntry} instances.
+ * <p>
+ * Each entry is registered in a character trie under the literal prefix of
+ * its (start anchored) pattern. For a given request path only the entries
+ * registered on the trie nodes along this path can possibly match, so the
+ * regular expression of all other entries is never evaluated.
+ * <p>
+ * The candidates are returned in the order of the list the matcher has been
+ * created from, which is the order defined by {@link MapEntry#compareTo(MapEntry)}.
+ * As entries which are not returned can not match the request path, iterating
+ * over the candidates yields the same first match as iterating over the
+ * complete list.
+ * <p>
+ * Instances are immutable, a new matcher is created whenever the underlying
+ * list changes.
+ */
+public class MapEntryMatcher {
+
+    /** Characters terminating the literal prefix of a pattern. */
+    private static final String META_CHARACTERS = ".[]{}()*+?^$|";
+
+    /** Quantifiers which make the preceding character optional. */
+    private static final String OPTIONAL_QUANTIFIERS = "?*{";
+
+    private static final int[] EMPTY_INDEXES = new int[0];
+
+    /** The entries in the order of the original list. */
+    private final MapEntry[] entries;
+
+    /** The root of the literal prefix trie. */
+    private final Node root;
+
+    public MapEntryMatcher(final List<MapEntry> entries) {
+        this.entries = entries.toArray(new MapEntry[entries.size()]);
+        this.root = new Node();
+        for (int i = 0; i < this.entries.length; i++) {
+            final String prefix = getLiteralPrefix(this.entries[i].getPattern());
+            Node node = this.root;
+            for (int c = 0; c < prefix.length(); c++) {
+                node = node.getOrAddChild(prefix.charAt(c));
+            }
+            node.addEntry(i);
+        }
+    }
+
+    /**
+     * Returns the entries which may match the given value in the order of the
+     * list this matcher has been created from. Entries which are not returned
+     * are guaranteed to not match the value.
+     */
+    public Iterator<MapEntry> getCandidates(final String value) {
+        final BitSet candidates = new BitSet(this.entries.length);
+        Node node = this.root;
+        node.collect(candidates);
+        for (int i = 0; i < value.length(); i++) {
+            node = node.getChild(value.charAt(i));
+            if (node == null) {
+                break;
+            }
+            node.collect(candidates);
+        }
+        return new CandidateIterator(this.entries, candidates);
+    }
+
+    /**
+     * Returns the number of entries in this matcher.
+     */
+    public int size() {
+        return this.entries.length;
+    }
+
+    /**
+     * Returns the longest string every value matched by the given start
+     * anchored pattern must start with. If no such prefix can be determined,
+     * for example because the pattern contains a top level alternation, the
+     * empty string is returned which causes the entry to be considered for
+     * each value.
+     */
+    static String getLiteralPrefix(final String pattern) {
+        if (!pattern.startsWith("^") || hasTopLevelAlternation(pattern)) {
+            return "";
+        }
+
+        final StringBuilder prefix = new StringBuilder();
+        int i = 1;
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+            final char literal;
+            final int next;
+            if (c == '\\') {
+                if (i + 1 >= pattern.length()) {
+                    break;
+                }
+                final char escaped = pattern.charAt(i + 1);
+                // character classes, back references and quotes end the prefix
+                if (Character.isLetterOrDigit(escaped)) {
+                    break;
+                }
+                literal = escaped;
+                next = i + 2;
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+
+            if (next < pattern.length() && OPTIONAL_QUANTIFIERS.indexOf(pattern.charAt(next)) >= 0) {
+                break;
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Returns <code>true</code> if the pattern contains an unescaped
+     * <code>|</code> outside of any group or character class.
+     */
+    private static boolean hasTopLevelAlternation(final String pattern) {
+        int groupDepth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++; // just skip
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                groupDepth++;
+            } else if (c == ')') {
+                groupDepth--;
+            } else if (c == '|' && groupDepth <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A node of the literal prefix trie. The children are kept in a sorted
+     * character array to allow for a binary search without boxing.
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private int[] entryIndexes = EMPTY_INDEXES;
+
+        Node getChild(final char c) {
+            final int pos = Arrays.binarySearch(this.keys, c);
+            return pos < 0 ? null : this.children[pos];
+        }
+
+        Node getOrAddChild(final char c) {
+            final int pos = Arrays.binarySearch(this.keys, c);
+            if (pos >= 0) {
+                return this.children[pos];
+            }
+            final int insert = -pos - 1;
+            final char[] newKeys = new char[this.keys.length + 1];
+            final Node[] newChildren = new Node[this.children.length + 1];
+            System.arraycopy(this.keys, 0, newKeys, 0, insert);
+            System.arraycopy(this.children, 0, newChildren, 0, insert);
+            System.arraycopy(this.keys, insert, newKeys, insert + 1, this.keys.length - insert);
+            System.arraycopy(this.children, insert, newChildren, insert + 1, this.children.length - insert);
+            final Node child = new Node();
+            newKeys[insert] = c;
+            newChildren[insert] = child;
+            this.keys = newKeys;
+            this.children = newChildren;
+            return child;
+        }
+
+        void addEntry(final int index) {
+            final int[] newIndexes = new int[this.entryIndexes.length + 1];
+            System.arraycopy(this.entryIndexes, 0, newIndexes, 0, this.entryIndexes.length);
+            newIndexes[this.entryIndexes.length] = index;
+            this.entryIndexes = newIndexes;
+        }
+
+        void collect(final BitSet candidates) {
+            for (final int index : this.entryIndexes) {
+                candidates.set(index);
+            }
+        }
+    }
+
+    /**
+     * Iterator over the entries whose index is set in the candidates bit set.
+     */
+    private static final class CandidateIterator implements Iterator<MapEntry> {
+
+        private final MapEntry[] entries;
+
+        private final BitSet candidates;
+
+        private int next;
+
+        CandidateIterator(final MapEntry[] entries, final BitSet candidates) {
+            this.entries = entries;
+            this.candidates = candidates;
+            this.next = candidates.nextSetBit(0);
+        }
+
+        public boolean hasNext() {
+            return this.next >= 0;
+        }
+
+        public MapEntry next() {
+            if (this.next < 0) {
+                throw new NoSuchElementException();
+            }
+            final MapEntry result = this.entries[this.next];
+            this.next = this.candidates.nextSetBit(this.next + 1);
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Returns the candidates for the given value as a list.
+     */
+    List<MapEntry> getCandidateList(final String value) {
+        final List<MapEntry> result = new ArrayList<MapEntry>();
+        final Iterator<MapEntry> i = getCandidates(value);
+        while (i.hasNext()) {
+            result.add(i.next());
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import org.apache.sling.resourceresolver.impl.helper.PathIndexedCache;
+
+/**
+ * The <code>MapResultCache</code> caches the results of
+ * <code>ResourceResolver.map</code> calls keyed by the user, the scheme,
+ * host, port and context path of the request and the resource path.
+ * <p>
+ * The cache is maintained by the {@link MapEntries}: events handled there
+ * invalidate the results for resource paths starting with the path of the
+ * affected resource, as the existence and the aliases of a resource and its
+ * ancestors determine the mapped path. Reloading the mappings or the aliases
+ * clears the cache.
+ */
+public class MapResultCache extends PathIndexedCache {
+
+    public MapResultCache(final int maxSize) {
+        super(maxSize);
+    }
+
+    /**
+     * Creates the key for mapping the resource path. The request
+     * information is <code>null</code> if mapping without a request.
+     */
+    public static String createKey(final String userId, final String scheme, final String host, final int port,
+            final String contextPath, final String resourcePath) {
+        final StringBuilder sb = new StringBuilder();
+        if (userId != null) {
+            sb.append(userId);
+        }
+        sb.append(SEPARATOR);
+        if (scheme != null) {
+            sb.append(scheme).append("://").append(host).append(':').append(port);
+            if (contextPath != null) {
+                sb.append(contextPath);
+            }
+        }
+        sb.append(SEPARATOR);
+        sb.append(resourcePath);
+        return sb.toString();
+    }
+
+    /**
+     * Caches the mapped path.
+     *
+     * @param key The key created with
+     *            {@link #createKey(String, String, String, int, String, String)}
+     * @param resourcePath The resource path which has been mapped
+     * @param mappedPath The mapped path
+     * @param generation The generation at the start of the mapping, see
+     *            {@link #getGeneration()}
+     */
+    public void put(final String key, final String resourcePath, final String mappedPath, final long generation) {
+        this.put(key, mappedPath, new String[] {resourcePath}, generation);
+    }
+
+    /**
+     * Returns the prefix of the resource paths whose mapping might change
+     * after the resource at the given path has been added, changed or
+     * removed. The aliases of a content node apply to its parent and access
+     * control changes to the node owning the policy.
+     */
+    static String getInvalidationPrefix(final String path) {
+        return getAffectedPath(path);
+    }
+}
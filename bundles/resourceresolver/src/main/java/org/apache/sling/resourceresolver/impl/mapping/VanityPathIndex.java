@@ -0,0 +1,590 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The <code>VanityPathIndex</code> is a persistent, memory mapped hash index
+ * from vanity paths to the paths of the resources defining them.
+ * <p>
+ * For each vanity path the index keeps the paths of the resources carrying
+ * the <code>sling:vanityPath</code> property and, for removals, the reverse
+ * mapping from the resource path to its vanity paths. Contrary to a bloom
+ * filter the index has no false positives, so a lookup can load the few
+ * resources directly instead of running a query.
+ * <p>
+ * The file consists of a header, an open addressing slot table of record
+ * positions and an append only data area. Records are never modified in
+ * place: updating a key appends a new record and repoints its slot. The
+ * file is rewritten once the slot table gets too full or the data area
+ * contains too much garbage.
+ * <p>
+ * The file is mapped in segments, so the index is not limited by the
+ * maximum size of a single mapped buffer. Neighbouring segments overlap by
+ * the size of the largest value, which is therefore always read and written
+ * through the segment it starts in.
+ * <p>
+ * The index is marked open while in use and closed by {@link #close()}. An
+ * index which has not been closed properly is discarded when opened again,
+ * as is an index with an unknown format, and {@link #isNew()} returns
+ * <code>true</code> to signal that it has to be filled again.
+ * <p>
+ * Reads are concurrent, modifications are serialized by a read/write lock.
+ */
+public class VanityPathIndex {
+
+    private static final int MAGIC = 0x53564958;
+
+    private static final int VERSION = 1;
+
+    private static final int STATE_CLOSED = 0;
+
+    private static final int STATE_OPEN = 1;
+
+    private static final int OFFSET_MAGIC = 0;
+
+    private static final int OFFSET_VERSION = 4;
+
+    private static final int OFFSET_STATE = 8;
+
+    private static final int OFFSET_SLOT_COUNT = 12;
+
+    private static final int OFFSET_USED_SLOTS = 16;
+
+    private static final int OFFSET_DATA_END = 24;
+
+    private static final int OFFSET_GARBAGE = 32;
+
+    private static final int HEADER_SIZE = 40;
+
+    private static final int INITIAL_SLOT_COUNT = 1 << 14;
+
+    /** Maximum number of slots, the slot table must be addressable by an int. */
+    private static final int MAX_SLOT_COUNT = 1 << 30;
+
+    /** Size of a mapped segment of the file. */
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    /** Overlap of the segments, the size of the largest value (a long). */
+    private static final int SEGMENT_OVERLAP = 8;
+
+    /** Slot marker of a removed key. */
+    private static final long DELETED = -1;
+
+    /** Maximum fraction of used (including deleted) slots before growing. */
+    private static final double MAX_LOAD = 0.6;
+
+    /** Minimum number of garbage bytes before the data area is compacted. */
+    private static final long MIN_COMPACT_GARBAGE = 1024 * 1024;
+
+    /** Key prefix of the vanity path to resource paths entries. */
+    private static final char VANITY_PATH_KEY = 'v';
+
+    /** Key prefix of the resource path to vanity paths entries. */
+    private static final char RESOURCE_PATH_KEY = 'r';
+
+    private static final String[] EMPTY = new String[0];
+
+    private final File file;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final boolean isNew;
+
+    private final int segmentSize;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    /** The mapped segments, <code>null</code> once closed. */
+    private MappedByteBuffer[] segments;
+
+    /** The size of the mapped file. */
+    private long size;
+
+    private int slotCount;
+
+    /**
+     * Opens the index stored in the given file, creating a new index if the
+     * file does not exist or does not contain a properly closed index.
+     */
+    public VanityPathIndex(final File file) throws IOException {
+        this(file, SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the index with the given size of the mapped segments.
+     */
+    VanityPathIndex(final File file, final int segmentSize) throws IOException {
+        this(file, INITIAL_SLOT_COUNT, segmentSize, false);
+    }
+
+    private VanityPathIndex(final File file, final int slotCount, final int segmentSize, final boolean create)
+    throws IOException {
+        this.file = file;
+        this.segmentSize = segmentSize;
+        boolean reuse = !create && file.exists() && file.length() >= HEADER_SIZE;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = this.raf.getChannel();
+        if (reuse) {
+            map(this.channel.size());
+            reuse = getInt(OFFSET_MAGIC) == MAGIC
+                    && getInt(OFFSET_VERSION) == VERSION
+                    && getInt(OFFSET_STATE) == STATE_CLOSED
+                    && getLong(OFFSET_DATA_END) <= this.size;
+        }
+        if (reuse) {
+            this.slotCount = getInt(OFFSET_SLOT_COUNT);
+        } else {
+            this.slotCount = slotCount;
+            final long dataStart = HEADER_SIZE + 8L * slotCount;
+            this.raf.setLength(0);
+            this.raf.setLength(dataStart * 2);
+            map(this.channel.size());
+            putInt(OFFSET_MAGIC, MAGIC);
+            putInt(OFFSET_VERSION, VERSION);
+            putInt(OFFSET_SLOT_COUNT, slotCount);
+            putInt(OFFSET_USED_SLOTS, 0);
+            putLong(OFFSET_DATA_END, dataStart);
+            putLong(OFFSET_GARBAGE, 0);
+        }
+        this.isNew = !reuse;
+        putInt(OFFSET_STATE, STATE_OPEN);
+        force();
+    }
+
+    /**
+     * Returns <code>true</code> if the index has been created empty, because
+     * no properly closed index existed.
+     */
+    public boolean isNew() {
+        return this.isNew;
+    }
+
+    /**
+     * Returns the paths of the resources defining the given vanity path.
+     */
+    public String[] getResourcePaths(final String vanityPath) {
+        this.lock.readLock().lock();
+        try {
+            return get(VANITY_PATH_KEY + vanityPath);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the vanity paths defined by the resource at the given path.
+     */
+    public String[] getVanityPaths(final String resourcePath) {
+        this.lock.readLock().lock();
+        try {
+            return get(RESOURCE_PATH_KEY + resourcePath);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the paths of all resources defining vanity paths.
+     */
+    public List<String> getResourcePaths() {
+        this.lock.readLock().lock();
+        try {
+            final List<String> result = new ArrayList<String>();
+            for (int slot = 0; slot < this.slotCount; slot++) {
+                final long pos = getSlot(slot);
+                if (pos > 0 && getChar(pos + 8) == RESOURCE_PATH_KEY) {
+                    result.add(readKey(pos).substring(1));
+                }
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the resource path to the resources defining the vanity path.
+     */
+    public void add(final String vanityPath, final String resourcePath) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            addValue(VANITY_PATH_KEY + vanityPath, resourcePath);
+            addValue(RESOURCE_PATH_KEY + resourcePath, vanityPath);
+            checkCapacity();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the resource path from the resources defining the vanity path.
+     */
+    public void remove(final String vanityPath, final String resourcePath) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            removeValue(VANITY_PATH_KEY + vanityPath, resourcePath);
+            removeValue(RESOURCE_PATH_KEY + resourcePath, vanityPath);
+            checkCapacity();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all vanity paths defined by the given resource.
+     */
+    public void removeResource(final String resourcePath) throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            final String key = RESOURCE_PATH_KEY + resourcePath;
+            for (final String vanityPath : get(key)) {
+                removeValue(VANITY_PATH_KEY + vanityPath, resourcePath);
+            }
+            put(key, EMPTY);
+            checkCapacity();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all changes to disk.
+     */
+    public void flush() {
+        this.lock.readLock().lock();
+        try {
+            if (this.segments != null) {
+                force();
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes all changes to disk and marks the index as properly closed.
+     * The index must not be used afterwards.
+     */
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (this.segments != null) {
+                putInt(OFFSET_STATE, STATE_CLOSED);
+                force();
+                this.segments = null;
+                this.channel.close();
+                this.raf.close();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // ---------- internal
+
+    /**
+     * Maps the file of the given size in overlapping segments.
+     */
+    private void map(final long size) throws IOException {
+        final long count = Math.max(1, (size + this.segmentSize - 1) / this.segmentSize);
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException("Vanity path index " + this.file + " exceeds maximum size");
+        }
+        final MappedByteBuffer[] newSegments = new MappedByteBuffer[(int) count];
+        for (int i = 0; i < newSegments.length; i++) {
+            final long start = (long) i * this.segmentSize;
+            final long length = Math.min(size - start, (long) this.segmentSize + SEGMENT_OVERLAP);
+            newSegments[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, start, length);
+        }
+        this.segments = newSegments;
+        this.size = size;
+    }
+
+    private void force() {
+        for (final MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+    }
+
+    private MappedByteBuffer segment(final long pos) {
+        return this.segments[(int) (pos / this.segmentSize)];
+    }
+
+    private int offset(final long pos) {
+        return (int) (pos % this.segmentSize);
+    }
+
+    private int getInt(final long pos) {
+        return segment(pos).getInt(offset(pos));
+    }
+
+    private void putInt(final long pos, final int value) {
+        segment(pos).putInt(offset(pos), value);
+    }
+
+    private long getLong(final long pos) {
+        return segment(pos).getLong(offset(pos));
+    }
+
+    private void putLong(final long pos, final long value) {
+        segment(pos).putLong(offset(pos), value);
+    }
+
+    private char getChar(final long pos) {
+        return segment(pos).getChar(offset(pos));
+    }
+
+    private void putChar(final long pos, final char value) {
+        segment(pos).putChar(offset(pos), value);
+    }
+
+    private static int hash(final String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private long getSlot(final int slot) {
+        return getLong(HEADER_SIZE + 8L * slot);
+    }
+
+    private void setSlot(final int slot, final long pos) {
+        putLong(HEADER_SIZE + 8L * slot, pos);
+    }
+
+    /**
+     * Returns the slot of the key or the slot to insert the key into, which
+     * is the first deleted slot or the empty slot ending the probe sequence.
+     */
+    private int findSlot(final String key, final int hash) {
+        final int mask = this.slotCount - 1;
+        int insert = -1;
+        int slot = hash & mask;
+        while (true) {
+            final long pos = getSlot(slot);
+            if (pos == 0) {
+                return insert >= 0 ? insert : slot;
+            } else if (pos == DELETED) {
+                if (insert < 0) {
+                    insert = slot;
+                }
+            } else if (getInt(pos) == hash && keyEquals(pos, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyEquals(final long pos, final String key) {
+        long p = pos + 4;
+        final int length = getInt(p);
+        if (length != key.length()) {
+            return false;
+        }
+        p += 4;
+        for (int i = 0; i < length; i++, p += 2) {
+            if (getChar(p) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readKey(final long pos) {
+        return readString(pos + 4);
+    }
+
+    private String readString(final long pos) {
+        final int length = getInt(pos);
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = getChar(pos + 4 + 2L * i);
+        }
+        return new String(chars);
+    }
+
+    private String[] get(final String key) {
+        final int slot = findSlot(key, hash(key));
+        final long pos = getSlot(slot);
+        if (pos <= 0) {
+            return EMPTY;
+        }
+        long p = pos + 4;
+        p += 4 + 2L * getInt(p);
+        final String[] values = new String[getInt(p)];
+        p += 4;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(p);
+            p += 4 + 2L * values[i].length();
+        }
+        return values;
+    }
+
+    private void addValue(final String key, final String value) throws IOException {
+        final String[] values = get(key);
+        for (final String v : values) {
+            if (v.equals(value)) {
+                return;
+            }
+        }
+        final String[] newValues = new String[values.length + 1];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        newValues[values.length] = value;
+        put(key, newValues);
+    }
+
+    private void removeValue(final String key, final String value) throws IOException {
+        final String[] values = get(key);
+        final List<String> newValues = new ArrayList<String>(values.length);
+        for (final String v : values) {
+            if (!v.equals(value)) {
+                newValues.add(v);
+            }
+        }
+        if (newValues.size() != values.length) {
+            put(key, newValues.toArray(new String[newValues.size()]));
+        }
+    }
+
+    /**
+     * Stores the values for the key, an empty array removes the key.
+     */
+    private void put(final String key, final String[] values) throws IOException {
+        final int hash = hash(key);
+        final int slot = findSlot(key, hash);
+        final long oldPos = getSlot(slot);
+        if (oldPos > 0) {
+            putLong(OFFSET_GARBAGE, getLong(OFFSET_GARBAGE) + recordLength(oldPos));
+        }
+        if (values.length == 0) {
+            if (oldPos > 0) {
+                setSlot(slot, DELETED);
+            }
+            return;
+        }
+
+        long length = 4 + 4 + 2L * key.length() + 4;
+        for (final String value : values) {
+            length += 4 + 2L * value.length();
+        }
+        final long pos = getLong(OFFSET_DATA_END);
+        ensureCapacity(pos + length);
+
+        long p = pos;
+        putInt(p, hash);
+        p = writeString(p + 4, key);
+        putInt(p, values.length);
+        p += 4;
+        for (final String value : values) {
+            p = writeString(p, value);
+        }
+        putLong(OFFSET_DATA_END, p);
+        if (oldPos == 0) {
+            putInt(OFFSET_USED_SLOTS, getInt(OFFSET_USED_SLOTS) + 1);
+        }
+        setSlot(slot, pos);
+    }
+
+    private long writeString(final long pos, final String value) {
+        putInt(pos, value.length());
+        long p = pos + 4;
+        for (int i = 0; i < value.length(); i++, p += 2) {
+            putChar(p, value.charAt(i));
+        }
+        return p;
+    }
+
+    private long recordLength(final long pos) {
+        long p = pos + 4;
+        p += 4 + 2L * getInt(p);
+        final int count = getInt(p);
+        p += 4;
+        for (int i = 0; i < count; i++) {
+            p += 4 + 2L * getInt(p);
+        }
+        return p - pos;
+    }
+
+    private void ensureCapacity(final long size) throws IOException {
+        if (size > this.size) {
+            final long newSize = Math.max(size, 2L * this.size);
+            force();
+            this.raf.setLength(newSize);
+            map(newSize);
+        }
+    }
+
+    /**
+     * Rewrites the index if the slot table is too full or the data area
+     * contains too much garbage.
+     */
+    private void checkCapacity() throws IOException {
+        final int usedSlots = getInt(OFFSET_USED_SLOTS);
+        final long garbage = getLong(OFFSET_GARBAGE);
+        final long dataSize = getLong(OFFSET_DATA_END) - HEADER_SIZE - 8L * this.slotCount;
+        if (usedSlots > this.slotCount * MAX_LOAD) {
+            if (this.slotCount >= MAX_SLOT_COUNT) {
+                throw new IOException("Vanity path index " + this.file + " exceeds maximum number of entries");
+            }
+            rewrite(this.slotCount * 2);
+        } else if (garbage > MIN_COMPACT_GARBAGE && garbage > dataSize / 2) {
+            rewrite(this.slotCount);
+        }
+    }
+
+    /**
+     * Copies all live entries into a new file with the given number of
+     * slots and replaces this index with it.
+     */
+    private void rewrite(final int newSlotCount) throws IOException {
+        final File tmpFile = new File(this.file.getPath() + ".tmp");
+        final VanityPathIndex target = new VanityPathIndex(tmpFile, newSlotCount, this.segmentSize, true);
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            final long pos = getSlot(slot);
+            if (pos > 0) {
+                final String key = readKey(pos);
+                target.put(key, get(key));
+            }
+        }
+        target.close();
+
+        this.segments = null;
+        this.channel.close();
+        this.raf.close();
+        if (!this.file.delete() || !tmpFile.renameTo(this.file)) {
+            throw new IOException("Unable to replace vanity path index " + this.file);
+        }
+        this.raf = new RandomAccessFile(this.file, "rw");
+        this.channel = this.raf.getChannel();
+        map(this.channel.size());
+        this.slotCount = newSlotCount;
+        putInt(OFFSET_STATE, STATE_OPEN);
+    }
+}
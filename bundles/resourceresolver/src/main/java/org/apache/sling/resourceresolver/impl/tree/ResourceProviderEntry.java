@@ -22,12 +22,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import org.apache.commons.collections.FastTreeMap;
 import org.apache.sling.api.SlingException;
 import org.apache.sling.api.resource.ModifyingResourceProvider;
 import org.apache.sling.api.resource.PersistenceException;
@@ -52,6 +49,14 @@ import org.slf4j.LoggerFactory;
  * by rootProvider.get("a").get("b").get("c").get("d")  assuming the final get("d") was not null. If it was, then the list
  * of ProviderHanders would be rootProvider.get("a").get("b").get("c").
  * <p>
+ * The tree is copy-on-write: the child entries and providers of an entry are
+ * kept in arrays which are never modified once published. Adding or removing
+ * a provider creates new entries along the path to the changed entry and
+ * publishes them with a single write to the entry the change was requested
+ * on, so concurrent lookups never lock and always see a consistent tree.
+ * Lookups walk the path string segment by segment without creating
+ * substrings.
+ * <p>
  * This class is comparable to itself to help keep the child entries list sorted by their prefix.
  */
 public class ResourceProviderEntry implements Comparable<ResourceProviderEntry> {
@@ -70,11 +75,11 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
 
     // the resource provider kept in this entry supporting resources at and
     // below the path of this entry.
-    private ProviderHandler[] providers = new ProviderHandler[0];
-
-    private final FastTreeMap storageMap = new FastTreeMap();
+    private volatile ProviderHandler[] providers = EMPTY_PROVIDERS;
 
-    private Collection<ResourceProviderEntry> storageMapValues = new ArrayList<ResourceProviderEntry>();
+    // the child entries sorted by their path. the array is never modified,
+    // changes replace the array (and the entries on the changed path)
+    private volatile ResourceProviderEntry[] children = EMPTY_CHILDREN;
 
     /**
      * Creates an instance of this class with the given path relative to the
@@ -95,15 +100,23 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
             this.prefix = path + "/";
         }
         if (providerList != null) {
-            providers = new ProviderHandler[providerList.length];
-            for (int i = 0; i < providerList.length; i++) {
-                providers[i] = providerList[i];
-            }
+            final ProviderHandler[] copy = new ProviderHandler[providerList.length];
+            System.arraycopy(providerList, 0, copy, 0, providerList.length);
+            this.providers = copy;
         }
+    }
 
-        // this will consume slightly more memory but ensures read is fast.
-        storageMap.setFast(true);
-
+    /**
+     * Creates a copy of the given entry with new providers and children. Used
+     * for copying the entries along the path of a change.
+     */
+    private ResourceProviderEntry(final ResourceProviderEntry base,
+            final ProviderHandler[] providers,
+            final ResourceProviderEntry[] children) {
+        this.path = base.path;
+        this.prefix = base.prefix;
+        this.providers = providers;
+        this.children = children;
     }
 
     public String getPath() {
@@ -138,26 +151,18 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
         return getInternalResource(ctx, resourceResolver, path, parameters, isResolve);
     }
 
-    // ------------------ Map methods, here so that we can delegate 2 maps
-    // together
-    @SuppressWarnings("unchecked")
-    public void put(final String key, final ResourceProviderEntry value) {
-        storageMap.put(key, value);
-        // get a thread safe copy, the ArrayList constructor does a toArray
-        // which is thread safe.
-        storageMapValues = new ArrayList<ResourceProviderEntry>(storageMap.values());
-    }
+    // ------------------ Map methods on the child entries
 
     public boolean containsKey(final String key) {
-        return storageMap.containsKey(key);
+        return get(key) != null;
     }
 
     public ResourceProviderEntry get(final String key) {
-        return (ResourceProviderEntry) storageMap.get(key);
+        return getChild(this.children, key, 0, key.length());
     }
 
     public Collection<ResourceProviderEntry> values() {
-        return storageMapValues;
+        return Collections.unmodifiableList(Arrays.asList(this.children));
     }
 
     /**
@@ -171,35 +176,29 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
     // ---------- internal -----------------------------------------------------
 
     /**
-     * Adds a list of providers to this entry.
-     *
-     * No sync required as this is called by a sync method!
+     * Returns a sorted copy of the providers with the given provider added or
+     * <code>null</code> if the provider is already contained.
      */
-    private boolean addInternalProvider(final ProviderHandler provider) {
-        final int before = providers.length;
-        final Set<ProviderHandler> set = new HashSet<ProviderHandler>();
-        set.addAll(Arrays.asList(providers));
-
-        logger.debug("Adding provider {} at {} ", provider, path);
-        set.add(provider);
-        providers = conditionalSort(set);
-        return providers.length > before;
+    private static ProviderHandler[] addProvider(final ProviderHandler[] providers, final ProviderHandler provider) {
+        final List<ProviderHandler> providerList = new ArrayList<ProviderHandler>(Arrays.asList(providers));
+        if (providerList.contains(provider)) {
+            return null;
+        }
+        providerList.add(provider);
+        Collections.sort(providerList);
+        return providerList.toArray(new ProviderHandler[providerList.size()]);
     }
 
     /**
-     * Remove a provider from the list of entries.
-     *
-     * No sync required as this is called by a sync method!
+     * Returns a copy of the providers with the given provider removed or
+     * <code>null</code> if the provider is not contained.
      */
-    private boolean removeInternalProvider(final ProviderHandler provider) {
-        final int before = providers.length;
-        final Set<ProviderHandler> set = new HashSet<ProviderHandler>();
-        set.addAll(Arrays.asList(providers));
-
-        logger.debug("Removing provider {} at {} ", provider, path);
-        set.remove(provider);
-        providers = conditionalSort(set);
-        return providers.length < before;
+    private static ProviderHandler[] removeProvider(final ProviderHandler[] providers, final ProviderHandler provider) {
+        final List<ProviderHandler> providerList = new ArrayList<ProviderHandler>(Arrays.asList(providers));
+        if (!providerList.remove(provider)) {
+            return null;
+        }
+        return providerList.toArray(new ProviderHandler[providerList.size()]);
     }
 
 	/**
@@ -208,28 +207,30 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
 	 * and add the provider to a ResourceProviderEntry that represents the last
 	 * element of the path.
 	 *
+	 * Concurrent modifications are serialized, lookups do not lock.
+	 *
 	 * @return <code>true</code> if the provider could be entered into the
 	 *         subtree below this entry. Otherwise <code>false</code> is
 	 *         returned.
 	 */
     protected synchronized boolean addResourceProvider(final String prefix, final ProviderHandler provider) {
         final String[] elements = split(prefix);
-        final List<ResourceProviderEntry> entries = new ArrayList<ResourceProviderEntry>();
-        this.populateProviderPath(entries, elements);
-
-        // add this=root to the start so if the list is empty
-        // we have a position to add, this will shift other entries
-        // down the list.
-        entries.add(0, this);
-        // the list may not be complete, so add blank entries from the current size to the end of this path.
-        for (int i = entries.size() - 1; i < elements.length; i++) {
-            final String stubPrefix = elements[i];
-            final ResourceProviderEntry rpe2 = new ResourceProviderEntry(stubPrefix, new ProviderHandler[0]);
-            entries.get(i).put(stubPrefix, rpe2);
-            entries.add(rpe2);
-        }
-        // finally add this provider to the last in the list. This might be a new entry, or an existing entry.
-        return entries.get(elements.length).addInternalProvider(provider);
+        logger.debug("Adding provider {} at {} ", provider, prefix);
+        if (elements.length == 0) {
+            final ProviderHandler[] newProviders = addProvider(this.providers, provider);
+            if (newProviders == null) {
+                return false;
+            }
+            this.providers = newProviders;
+            return true;
+        }
+
+        final ResourceProviderEntry[] newChildren = changeProvider(this.children, elements, 0, provider, true);
+        if (newChildren == null) {
+            return false;
+        }
+        this.children = newChildren;
+        return true;
     }
 
     /**
@@ -238,15 +239,21 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
     protected synchronized boolean removeResourceProvider(final String prefix, final ProviderHandler resourceProvider) {
         boolean result = false;
         final String[] elements = split(prefix);
-        final List<ResourceProviderEntry> entries = new ArrayList<ResourceProviderEntry>();
-        this.populateProviderPath(entries, elements);
+        logger.debug("Removing provider {} at {} ", resourceProvider, prefix);
 
-        if(entries.size() == 0) {
+        if (elements.length == 0 || get(elements[0]) == null) {
             // might be a root provider, try to remove it on this entry
-            result = this.removeInternalProvider(resourceProvider);
-        } else if (entries.size() > 0 && entries.size() == elements.length) {
-            // the last element is a perfect match;
-            result = entries.get(entries.size() - 1).removeInternalProvider(resourceProvider);
+            final ProviderHandler[] newProviders = removeProvider(this.providers, resourceProvider);
+            if (newProviders != null) {
+                this.providers = newProviders;
+                result = true;
+            }
+        } else {
+            final ResourceProviderEntry[] newChildren = changeProvider(this.children, elements, 0, resourceProvider, false);
+            if (newChildren != null) {
+                this.children = newChildren;
+                result = true;
+            }
         }
 
         if(!result) {
@@ -258,43 +265,177 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
     }
 
     /**
-     * Return a sorted array of handlers.
+     * Adds or removes the provider at the entry identified by the elements
+     * starting at the given index below the given children. Returns the new
+     * children array containing copies of all entries on the changed path or
+     * <code>null</code> if nothing changed. The given array and the entries
+     * it contains are not modified.
      */
-    private ProviderHandler[] conditionalSort(final Set<ProviderHandler> set) {
+    private static ResourceProviderEntry[] changeProvider(final ResourceProviderEntry[] children,
+            final String[] elements,
+            final int index,
+            final ProviderHandler provider,
+            final boolean add) {
+        final String element = elements[index];
+        ResourceProviderEntry child = getChild(children, element, 0, element.length());
+        if (child == null) {
+            if (!add) {
+                return null;
+            }
+            child = new ResourceProviderEntry(element, null);
+        }
 
-        final List<ProviderHandler> providerList = new ArrayList<ProviderHandler>(set);
+        final ResourceProviderEntry newChild;
+        if (index == elements.length - 1) {
+            final ProviderHandler[] newProviders = add ? addProvider(child.providers, provider) : removeProvider(child.providers, provider);
+            if (newProviders == null) {
+                return null;
+            }
+            newChild = new ResourceProviderEntry(child, newProviders, child.children);
+        } else {
+            final ResourceProviderEntry[] newGrandChildren = changeProvider(child.children, elements, index + 1, provider, add);
+            if (newGrandChildren == null) {
+                return null;
+            }
+            newChild = new ResourceProviderEntry(child, child.providers, newGrandChildren);
+        }
+        return replaceChild(children, newChild);
+    }
 
-        Collections.sort(providerList);
+    /**
+     * Returns a copy of the sorted children with the entry of the same path
+     * replaced by or the new entry inserted at its position.
+     */
+    private static ResourceProviderEntry[] replaceChild(final ResourceProviderEntry[] children, final ResourceProviderEntry child) {
+        final int pos = indexOf(children, child.path, 0, child.path.length());
+        if (pos >= 0) {
+            final ResourceProviderEntry[] result = children.clone();
+            result[pos] = child;
+            return result;
+        }
+        final int insert = -pos - 1;
+        final ResourceProviderEntry[] result = new ResourceProviderEntry[children.length + 1];
+        System.arraycopy(children, 0, result, 0, insert);
+        result[insert] = child;
+        System.arraycopy(children, insert, result, insert + 1, children.length - insert);
+        return result;
+    }
 
-        return providerList.toArray(new ProviderHandler[providerList.size()]);
+    /**
+     * Returns the child whose path equals the region of the given string or
+     * <code>null</code> if there is no such child.
+     */
+    private static ResourceProviderEntry getChild(final ResourceProviderEntry[] children,
+            final String name, final int start, final int end) {
+        final int pos = indexOf(children, name, start, end);
+        return pos >= 0 ? children[pos] : null;
+    }
+
+    /**
+     * Binary search for the child whose path equals the region of the given
+     * string. Returns the index of the child or <code>(-(insertion point) - 1)</code>
+     * as {@link Arrays#binarySearch(Object[], Object)} does.
+     */
+    private static int indexOf(final ResourceProviderEntry[] children,
+            final String name, final int start, final int end) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compareRegion(children[mid].path, name, start, end);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Compares the string to the region of the other string the same way
+     * {@link String#compareTo(String)} would compare it to the substring.
+     */
+    private static int compareRegion(final String value, final String other, final int start, final int end) {
+        final int len = end - start;
+        final int min = Math.min(value.length(), len);
+        for (int i = 0; i < min; i++) {
+            final char c1 = value.charAt(i);
+            final char c2 = other.charAt(start + i);
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
+        return value.length() - len;
     }
 
 	/**
 	 * Get a list of resource provider entries navigating down the tree starting
 	 * from this provider until there are no providers left in the tree. Given a
-	 * sequence of path elements a/b/c/d this function will inspect this
-	 * ResourceProviderEntry for a child entry of "a" and if present add it to
-	 * the list, then it will inspect that child entry for a child "b", then
-	 * child "b" for child "c" etc until the list of elements is exhausted or
-	 * the child does not exist.
+	 * path a/b/c/d this function will inspect this ResourceProviderEntry for a
+	 * child entry of "a" and if present add it to the array, then it will
+	 * inspect that child entry for a child "b", then child "b" for child "c"
+	 * etc until the path is exhausted or the child does not exist.
 	 *
 	 * @param entries
-	 *            List to add the entries to.
-	 * @param elements
-	 *            The path already split into segments.
+	 *            Array to add the entries to, must have room for
+	 *            {@link #countSegments(String)} entries.
+	 * @param path
+	 *            The path to walk down.
+	 * @return The number of entries added to the array.
 	 */
-    private void populateProviderPath(final List<ResourceProviderEntry> entries, final String[] elements) {
+    private int populateProviderPath(final ResourceProviderEntry[] entries, final String path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == SPLIT_SEP) {
+            end--;
+        }
+        int start = 0;
+        while (start < end && path.charAt(start) == SPLIT_SEP) {
+            start++;
+        }
+
+        int count = 0;
         ResourceProviderEntry base = this;
-        for (final String element : elements) {
-            if (element != null) {
-                if (base.containsKey(element)) {
-                    base = base.get(element);
-                    entries.add(base);
-                } else {
-                    break;
-                }
+        while (start < end) {
+            int segmentEnd = path.indexOf(SPLIT_SEP, start);
+            if (segmentEnd == -1 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            base = getChild(base.children, path, start, segmentEnd);
+            if (base == null) {
+                break;
+            }
+            entries[count++] = base;
+            start = segmentEnd + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of segments of the path, which is the length of
+     * the array returned by {@link #split(String)} for the path.
+     */
+    private static int countSegments(final String path) {
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == SPLIT_SEP) {
+            end--;
+        }
+        int start = 0;
+        while (start < end && path.charAt(start) == SPLIT_SEP) {
+            start++;
+        }
+        if (start == end) {
+            return 0;
+        }
+        int n = 1;
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == SPLIT_SEP) {
+                n++;
             }
         }
+        return n;
     }
 
     /**
@@ -317,15 +458,15 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
                 logger.debug("Not absolute {}", fullPath);
                 return null; // fullpath must be absolute
             }
-            final String[] elements = split(fullPath);
-            final List<ResourceProviderEntry> entries = new ArrayList<ResourceProviderEntry>();
-            this.populateProviderPath(entries, elements);
+            final int segmentCount = countSegments(fullPath);
+            final ResourceProviderEntry[] entries = new ResourceProviderEntry[segmentCount];
+            final int entryCount = this.populateProviderPath(entries, fullPath);
 
             Resource fallbackResource = null;
 
             // the path is in reverse order end first
-            for (int i = entries.size() - 1; i >= 0; i--) {
-                final ProviderHandler[] rps = entries.get(i).getResourceProviders();
+            for (int i = entryCount - 1; i >= 0; i--) {
+                final ProviderHandler[] rps = entries[i].getResourceProviders();
                 for (final ProviderHandler rp : rps) {
 
                     boolean foundFallback = false;
@@ -371,8 +512,8 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
             //              as it is important e.g. for servlet resolution
             //              to get the parent resource for resource traversal.
             if ( !isResolve ) {
-                if (entries.size() > 0 && entries.size() == elements.length) {
-                    final ResourceProviderEntry lastEntry = entries.get(entries.size() - 1);
+                if (entryCount > 0 && entryCount == segmentCount) {
+                    final ResourceProviderEntry lastEntry = entries[entryCount - 1];
                     if (lastEntry.getResourceProviders().length == 0) {
                         logger.debug("Resolved Synthetic {}", fullPath);
                         return new SyntheticResource(resourceResolver, fullPath, ResourceProvider.RESOURCE_TYPE_SYNTHETIC);
@@ -421,15 +562,14 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
     private List<ProviderHandler> getModifyingProviderHandlers(final ResourceResolverContext ctx,
                                                         final ResourceResolver resourceResolver,
                                                         final String fullPath) {
-        final String[] elements = split(fullPath);
-        final List<ResourceProviderEntry> entries = new ArrayList<ResourceProviderEntry>();
-        this.populateProviderPath(entries, elements);
+        final ResourceProviderEntry[] entries = new ResourceProviderEntry[countSegments(fullPath)];
+        final int entryCount = this.populateProviderPath(entries, fullPath);
 
         final List<ProviderHandler> viableProviderHandlers = new ArrayList<ProviderHandler>();
 
         // build up a list of viable ModifyingResourceProviders in order of specificity
-        for (int i = entries.size() - 1; i >= 0; i--) {
-            final ProviderHandler[] rps = entries.get(i).getResourceProviders();
+        for (int i = entryCount - 1; i >= 0; i--) {
+            final ProviderHandler[] rps = entries[i].getResourceProviders();
             for (final ProviderHandler rp : rps) {
                 final ResourceProvider provider = rp.getResourceProvider(ctx);
                 if ( provider instanceof ModifyingResourceProvider ) {
@@ -516,6 +656,8 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
 
     private static final char SPLIT_SEP = '/';
     private static final String[] EMPTY_RESULT = new String[0];
+    private static final ProviderHandler[] EMPTY_PROVIDERS = new ProviderHandler[0];
+    private static final ResourceProviderEntry[] EMPTY_CHILDREN = new ResourceProviderEntry[0];
 
     /**
      * Split the string by slash.
@@ -571,7 +713,7 @@ public class ResourceProviderEntry implements Comparable<ResourceProviderEntry>
     public String toString() {
         return this.path;
         // "{path:\"" + this.path +
-        // "\", providers:"+Arrays.toString(getResourceProviders())+", map:" +
-        // storageMap.toString() + "}";
+        // "\", providers:"+Arrays.toString(getResourceProviders())+", children:" +
+        // Arrays.toString(children) + "}";
     }
 }
@@ -42,6 +42,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.resourceresolver.impl.helper.ResourceAccessProfiler;
 import org.apache.sling.resourceresolver.impl.helper.ResourceResolverContext;
 import org.junit.Before;
 import org.junit.Test;
@@ -242,6 +243,26 @@ public class ResourceResolverImplTest {
         assertNull("Expected null resource for null path", res5);
     }
 
+    @Test public void test_resolve_profiled_missing_path() throws Exception {
+        final Map<String, long[]> accesses = new HashMap<String, long[]>();
+        final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getProtocol()).thenReturn("http");
+        Mockito.when(request.getServerName()).thenReturn("localhost");
+        Mockito.when(request.getPathInfo()).thenReturn("/no_resource/here");
+        Mockito.when(request.getAttribute(ResourceAccessProfiler.ATTR_NAME)).thenReturn(accesses);
+
+        // the resource must stay a NonExistingResource for the request to
+        // be answered with a 404
+        final Resource resource = resResolver.resolve(request);
+        assertEquals(NonExistingResource.class, resource.getClass());
+        assertEquals("/no_resource/here", resource.getPath());
+        assertEquals(1, accesses.get("resolve /no_resource/here")[0]);
+
+        final Resource missing = resResolver.resolve("/no_resource/there");
+        assertEquals(NonExistingResource.class, missing.getClass());
+        assertEquals(1, accesses.get("resolve /no_resource/there")[0]);
+    }
+
     @Test public void test_clone_based_on_anonymous() throws Exception {
         final ResourceResolver anon0 = resFac.getResourceResolver((Map<String, Object>) null);
         // no session
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.sling.api.SlingConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+public class NegativeResolutionCacheTest {
+
+    private NegativeResolutionCache cache;
+
+    @Before
+    public void setup() {
+        cache = new NegativeResolutionCache(100);
+    }
+
+    @Test
+    public void test_get_and_put() {
+        final String key = NegativeResolutionCache.createKey("user", "http/localhost.80/content/missing.html");
+        assertNull(cache.get(key));
+        cache.put(key, "/content/missing.html", Arrays.asList("/content/missing.html"), cache.getGeneration());
+
+        assertEquals("/content/missing.html", cache.get(key));
+        assertNull(cache.get(NegativeResolutionCache.createKey("other", "http/localhost.80/content/missing.html")));
+        assertNull(cache.get(NegativeResolutionCache.createKey(null, "http/localhost.80/content/missing.html")));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void test_invalidation_prefix() {
+        assertEquals("/content/", NegativeResolutionCache.getInvalidationPrefix("/content/page"));
+        assertEquals("/content/", NegativeResolutionCache.getInvalidationPrefix("/content/page/jcr:content"));
+        assertEquals("/content/page/jcr:content/", NegativeResolutionCache.getInvalidationPrefix("/content/page/jcr:content/par"));
+        assertEquals("/content/", NegativeResolutionCache.getInvalidationPrefix("/content/page/rep:policy/allow"));
+        assertEquals("/", NegativeResolutionCache.getInvalidationPrefix("/content"));
+        assertEquals("/", NegativeResolutionCache.getInvalidationPrefix("/"));
+    }
+
+    @Test
+    public void test_resource_events() {
+        final String missing = put("/content/site/missing.print.html", "/content/site/missing.print.html");
+        final String searchPath = put("missing", "/apps/missing", "/libs/missing");
+        final String other = put("/content/other/missing.html", "/content/other/missing.html");
+
+        // changes elsewhere do not invalidate
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/other/child/page"));
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED, "/jcr:system/jcr:versionStorage/a"));
+        assertEquals(3, cache.getSize());
+
+        // the resource or a sibling with an alias is added
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/site/missing"));
+        assertNull(cache.get(missing));
+        assertEquals("/apps/missing", cache.get(searchPath));
+        assertEquals(1, cache.getInvalidations());
+
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED, "/libs/missing/jcr:content"));
+        assertNull(cache.get(searchPath));
+        assertEquals("/content/other/missing.html", cache.get(other));
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void test_removed_events() {
+        final String missing = put("/content/site/page/missing.html", "/content/site/page/missing.html");
+        final String other = put("/content/other/missing.html", "/content/other/missing.html");
+
+        // removing a deny entry may make the resource visible
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED, "/content/site/page/rep:policy/deny0"));
+        assertNull(cache.get(missing));
+        assertEquals("/content/other/missing.html", cache.get(other));
+        assertEquals(1, cache.getInvalidations());
+
+        // a removed sibling invalidates as well
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED, "/content/other/sibling"));
+        assertNull(cache.get(other));
+        assertEquals(2, cache.getInvalidations());
+
+        // a removal without path information clears the cache
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_REMOVED, (Dictionary<String, ?>) null));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void test_aliased_ancestor() {
+        // /content/site has the alias "site-alias", resolving records the
+        // path below the existing ancestor without the alias
+        final String aliased = put("/content/site-alias/missing.html", "/content/site-alias/missing.html",
+            "/content/site/missing.html");
+
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/site/missing"));
+        assertNull(cache.get(aliased));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test
+    public void test_authorizable_events() {
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED, "/home/groups/e/editors", "rep:Group"));
+        assertEquals(0, cache.getSize());
+
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_ADDED, "/home/groups/e/editors/rep:members/a",
+            "rep:Members"));
+        assertEquals(0, cache.getSize());
+
+        // removals carry no resource type
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED, "/home/groups/e/editors"));
+        assertEquals(0, cache.getSize());
+
+        // logins and profile changes do not change access rights
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_REMOVED, "/home/users/a/alice/.tokens/token"));
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_ADDED, "/home/users/a/alice/.tokens/token",
+            "rep:Token"));
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_CHANGED, "/home/users/a/alice/profile",
+            "nt:unstructured"));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void test_topics() {
+        assertTrue(Arrays.asList(NegativeResolutionCache.TOPICS).contains(SlingConstants.TOPIC_RESOURCE_REMOVED));
+    }
+
+    @Test
+    public void test_other_events_clear() {
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_RESOLVER_MAPPING_CHANGED, (Dictionary<String, ?>) null));
+        assertEquals(0, cache.getSize());
+
+        put("/content/missing", "/content/missing");
+        cache.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_PROVIDER_ADDED, (Dictionary<String, ?>) null));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void test_concurrent_invalidation() {
+        final String key = NegativeResolutionCache.createKey("user", "http/localhost.80/content/missing");
+        final long generation = cache.getGeneration();
+        // the resource is added while the path is being resolved
+        cache.handleEvent(resourceEvent(SlingConstants.TOPIC_RESOURCE_ADDED, "/content/missing"));
+        cache.put(key, "/content/missing", Collections.singletonList("/content/missing"), generation);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void test_bounded() {
+        for (int i = 0; i < 250; i++) {
+            put("/content/missing" + i, "/content/missing" + i);
+        }
+        assertEquals(100, cache.getSize());
+        assertNull(cache.get(NegativeResolutionCache.createKey("user", "http/localhost.80/content/missing0")));
+        assertEquals("/content/missing249",
+                cache.get(NegativeResolutionCache.createKey("user", "http/localhost.80/content/missing249")));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    private String put(final String path, final String... candidates) {
+        final String key = NegativeResolutionCache.createKey("user", "http/localhost.80" + (path.startsWith("/") ? "" : "/") + path);
+        cache.put(key, candidates[0], Arrays.asList(candidates), cache.getGeneration());
+        return key;
+    }
+
+    private Event resourceEvent(final String topic, final String path) {
+        return resourceEvent(topic, path, null);
+    }
+
+    private Event resourceEvent(final String topic, final String path, final String resourceType) {
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(SlingConstants.PROPERTY_PATH, path);
+        if (resourceType != null) {
+            props.put(SlingConstants.PROPERTY_RESOURCE_TYPE, resourceType);
+        }
+        return new Event(topic, props);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Test;
+
+public class ResourceAccessProfilerTest {
+
+    @Test public void testNotProfiled() {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        assertNull(ResourceAccessProfiler.get(request));
+    }
+
+    @Test public void testRecord() {
+        final Map<String, long[]> accesses = new HashMap<String, long[]>();
+        final ResourceAccessProfiler profiler = profiler(accesses);
+
+        profiler.record(ResourceAccessProfiler.GET_RESOURCE, "/a", System.nanoTime());
+        profiler.record(ResourceAccessProfiler.GET_RESOURCE, "/a", System.nanoTime());
+        profiler.record(ResourceAccessProfiler.LIST_CHILDREN, "/a", System.nanoTime());
+
+        assertEquals(2, accesses.size());
+        assertEquals(2, accesses.get("getResource /a")[0]);
+        assertEquals(1, accesses.get("listChildren /a")[0]);
+        assertTrue(accesses.get("getResource /a")[1] >= 0);
+    }
+
+    @Test public void testWrappedIterator() {
+        final Map<String, long[]> accesses = new HashMap<String, long[]>();
+        final ResourceAccessProfiler profiler = profiler(accesses);
+
+        final Resource child = new RedirectResource(null, "/redir/path", "/redir/target", 302);
+        final Iterator<Resource> children = profiler.wrap(ResourceAccessProfiler.LIST_CHILDREN, "/redir",
+            Arrays.asList(child).iterator());
+        assertTrue(children.hasNext());
+        assertSame(child, children.next());
+        assertFalse(children.hasNext());
+
+        // iterating adds time but no calls
+        assertEquals(1, accesses.size());
+        assertEquals(0, accesses.get("listChildren /redir")[0]);
+    }
+
+    private ResourceAccessProfiler profiler(final Map<String, long[]> accesses) {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getAttribute(ResourceAccessProfiler.ATTR_NAME)).thenReturn(accesses);
+        return ResourceAccessProfiler.get(request);
+    }
+}
@@ -34,13 +34,18 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.sling.api.SlingConstants;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceUtil;
@@ -55,6 +60,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.osgi.framework.BundleContext;
+import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 
 public class MapEntriesTest {
@@ -183,6 +189,58 @@ public class MapEntriesTest {
         assertEquals("child", aliasMap.get("alias"));
     }
 
+    @Test
+    public void test_failed_alias_partition_falls_back_to_serial_load() throws Exception {
+        Field field = MapEntries.class.getDeclaredField("aliasLoaderThreads");
+        field.setAccessible(true);
+        field.set(mapEntries, 2);
+
+        final Resource root = mock(Resource.class);
+        final Resource top = mock(Resource.class);
+        when(top.getPath()).thenReturn("/content");
+        when(top.getName()).thenReturn("content");
+        final Resource partitionRoot = mock(Resource.class);
+        when(partitionRoot.getPath()).thenReturn("/content/site");
+        when(partitionRoot.getName()).thenReturn("site");
+        when(resourceResolver.getResource("/")).thenReturn(root);
+        when(resourceResolver.listChildren(root)).thenReturn(Collections.singleton(top).iterator());
+        when(resourceResolver.listChildren(top)).thenReturn(Collections.singleton(partitionRoot).iterator());
+
+        Resource parent = mock(Resource.class);
+        when(parent.getPath()).thenReturn("/parent");
+
+        final Resource result = mock(Resource.class);
+        when(result.getParent()).thenReturn(parent);
+        when(result.getPath()).thenReturn("/parent/child");
+        when(result.getName()).thenReturn("child");
+        when(result.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
+
+        when(resourceResolver.findResources(anyString(), eq("sql"))).thenAnswer(new Answer<Iterator<Resource>>() {
+
+            public Iterator<Resource> answer(InvocationOnMock invocation) throws Throwable {
+                final String query = invocation.getArguments()[0].toString();
+                if (query.contains("jcr:path LIKE")) {
+                    throw new RuntimeException("partition query failed");
+                } else if (query.contains("sling:alias")) {
+                    return Collections.singleton(result).iterator();
+                } else {
+                    return Collections.<Resource> emptySet().iterator();
+                }
+            }
+        });
+
+        mapEntries.doInit();
+
+        final long end = System.currentTimeMillis() + 5000;
+        while (!mapEntries.isOptimizeAliasResolutionEnabled() && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(mapEntries.isOptimizeAliasResolutionEnabled());
+        Map<String, String> aliasMap = mapEntries.getAliasMap("/parent");
+        assertNotNull(aliasMap);
+        assertEquals("child", aliasMap.get("alias"));
+    }
+
     @Test
     public void test_vanity_path_registration() throws Exception {
         // specifically making this a weird value because we want to verify that
@@ -268,6 +326,77 @@ public class MapEntriesTest {
         
     }
 
+    @Test
+    public void test_reused_vanity_path_index_is_validated() throws Exception {
+        final File indexFile = File.createTempFile("vanityPathIndex", ".bin");
+        indexFile.delete();
+        try {
+            // index of a previous run, the repository changed while it was closed
+            final VanityPathIndex previous = new VanityPathIndex(indexFile);
+            previous.add("/target/kept", "/justVanityPath");
+            previous.add("/target/old", "/justVanityPath2");
+            previous.add("/target/stale", "/badVanityPath");
+            previous.close();
+
+            final List<Resource> resources = new ArrayList<Resource>();
+            resources.add(vanityResource("/justVanityPath", "/target/kept"));
+            resources.add(vanityResource("/justVanityPath2", "/target/new"));
+            resources.add(vanityResource("/redirectingVanityPath", "/target/added"));
+            when(resourceResolver.findResources(anyString(), eq("sql"))).thenAnswer(new Answer<Iterator<Resource>>() {
+
+                public Iterator<Resource> answer(InvocationOnMock invocation) throws Throwable {
+                    if (invocation.getArguments()[0].toString().contains("sling:vanityPath")) {
+                        return resources.iterator();
+                    } else {
+                        return Collections.<Resource> emptySet().iterator();
+                    }
+                }
+            });
+
+            final Field enableField = MapEntries.class.getDeclaredField("enableVanityPathIndex");
+            enableField.setAccessible(true);
+            enableField.set(mapEntries, true);
+            final Field fileField = MapEntries.class.getDeclaredField("vanityPathIndexFile");
+            fileField.setAccessible(true);
+            fileField.set(mapEntries, indexFile);
+
+            mapEntries.doInit();
+            mapEntries.initializeVanityPaths();
+
+            final Field indexField = MapEntries.class.getDeclaredField("vanityPathIndex");
+            indexField.setAccessible(true);
+            final VanityPathIndex index = (VanityPathIndex) indexField.get(mapEntries);
+            assertFalse(index.isNew());
+            mapEntries.validateVanityPathIndex(index);
+
+            assertEquals(Arrays.asList("/justVanityPath"), Arrays.asList(index.getResourcePaths("/target/kept")));
+            assertEquals(Arrays.asList("/justVanityPath2"), Arrays.asList(index.getResourcePaths("/target/new")));
+            assertEquals(Arrays.asList("/redirectingVanityPath"), Arrays.asList(index.getResourcePaths("/target/added")));
+            assertEquals(0, index.getResourcePaths("/target/old").length);
+            assertEquals(0, index.getResourcePaths("/target/stale").length);
+
+            final Set<String> patterns = new HashSet<String>();
+            for (final MapEntry entry : mapEntries.getResolveMaps()) {
+                patterns.add(entry.getPattern());
+            }
+            assertTrue(patterns.contains("^[^/]+/[^/]+/target/new$"));
+            assertTrue(patterns.contains("^[^/]+/[^/]+/target/added$"));
+            assertFalse(patterns.contains("^[^/]+/[^/]+/target/old$"));
+        } finally {
+            mapEntries.dispose();
+            indexFile.delete();
+        }
+    }
+
+    private Resource vanityResource(final String path, final String vanityPath) {
+        final Resource resource = mock(Resource.class, path);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getName()).thenReturn(path.substring(path.lastIndexOf('/') + 1));
+        when(resource.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:vanityPath", vanityPath));
+        when(resourceResolver.getResource(path)).thenReturn(resource);
+        return resource;
+    }
+
     private ValueMap buildValueMap(Object... string) {
         final Map<String, Object> data = new HashMap<String, Object>();
         for (int i = 0; i < string.length; i = i + 2) {
@@ -1343,6 +1472,103 @@ public class MapEntriesTest {
         assertEquals(0, aliasMap.size());
     }
     
+    @Test
+    public void test_parallel_alias_loading() throws Exception {
+        Field field0 = MapEntries.class.getDeclaredField("aliasLoaderThreads");
+        field0.setAccessible(true);
+        field0.set(mapEntries, 2);
+
+        final Resource root = mock(Resource.class);
+        when(root.getPath()).thenReturn("/");
+        final Resource content = mock(Resource.class);
+        when(content.getPath()).thenReturn("/content");
+        when(content.getName()).thenReturn("content");
+        final Resource site = mock(Resource.class);
+        when(site.getPath()).thenReturn("/content/site");
+        when(site.getName()).thenReturn("site");
+        when(site.getParent()).thenReturn(content);
+
+        final Resource page = mock(Resource.class);
+        when(page.getPath()).thenReturn("/content/site/page");
+        when(page.getName()).thenReturn("page");
+        when(page.getParent()).thenReturn(site);
+        when(page.adaptTo(ValueMap.class)).thenReturn(buildValueMap("sling:alias", "alias"));
+
+        when(resourceResolver.getResource("/")).thenReturn(root);
+        when(resourceResolver.listChildren(root)).thenReturn(Collections.singleton(content).iterator());
+        when(resourceResolver.listChildren(content)).thenReturn(Collections.singleton(site).iterator());
+
+        final CountDownLatch loading = new CountDownLatch(1);
+        when(resourceResolver.findResources(anyString(), eq("sql"))).thenAnswer(new Answer<Iterator<Resource>>() {
+
+            public Iterator<Resource> answer(InvocationOnMock invocation) throws Throwable {
+                if (invocation.getArguments()[0].toString().contains("jcr:path LIKE '/content/site/%'")) {
+                    loading.await(10, TimeUnit.SECONDS);
+                    return Collections.singleton(page).iterator();
+                } else {
+                    return Collections.<Resource> emptySet().iterator();
+                }
+            }
+        });
+
+        mapEntries.doInit();
+
+        // aliases are resolved without the map until loading has finished
+        assertFalse(mapEntries.isOptimizeAliasResolutionEnabled());
+        loading.countDown();
+        for (int i = 0; i < 100 && !mapEntries.isOptimizeAliasResolutionEnabled(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(mapEntries.isOptimizeAliasResolutionEnabled());
+
+        Map<String, String> aliasMap = mapEntries.getAliasMap("/content/site");
+        assertNotNull(aliasMap);
+        assertEquals("page", aliasMap.get("alias"));
+    }
+
+    @Test
+    public void test_map_result_cache_invalidation() throws Exception {
+        when(resourceResolverFactory.getMapCacheSize()).thenReturn(10);
+        final MapEntries cachingMapEntries = new MapEntries(resourceResolverFactory, bundleContext, eventAdmin);
+        final Field mapRoot = MapEntries.class.getDeclaredField("mapRoot");
+        mapRoot.setAccessible(true);
+        mapRoot.set(cachingMapEntries, MapEntries.DEFAULT_MAP_ROOT);
+        final MapResultCache cache = cachingMapEntries.getMapResultCache();
+        assertNotNull(cache);
+        assertNull(mapEntries.getMapResultCache());
+
+        final String pageKey = MapResultCache.createKey(null, null, null, -1, null, "/content/page.html");
+        final String childKey = MapResultCache.createKey(null, null, null, -1, null, "/content/page/child");
+        final String otherKey = MapResultCache.createKey(null, null, null, -1, null, "/content/other");
+        cache.put(pageKey, "/content/page.html", "/page.html", cache.getGeneration());
+        cache.put(childKey, "/content/page/child", "/page/child", cache.getGeneration());
+        cache.put(otherKey, "/content/other", "/other", cache.getGeneration());
+
+        // the resource and its descendants are affected
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(SlingConstants.PROPERTY_PATH, "/content/page/jcr:content");
+        cachingMapEntries.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_REMOVED, props));
+        assertNull(cache.get(pageKey));
+        assertNull(cache.get(childKey));
+        assertEquals("/other", cache.get(otherKey));
+        assertEquals(2, cache.getInvalidations());
+
+        // access control changes affect the node owning the policy
+        final Dictionary<String, Object> policyProps = new Hashtable<String, Object>();
+        policyProps.put(SlingConstants.PROPERTY_PATH, "/content/other/rep:policy/allow");
+        policyProps.put(SlingConstants.PROPERTY_CHANGED_ATTRIBUTES, new String[] {"rep:privileges"});
+        cachingMapEntries.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_CHANGED, policyProps));
+        assertNull(cache.get(otherKey));
+        assertEquals(3, cache.getInvalidations());
+
+        cache.put(otherKey, "/content/other", "/other", cache.getGeneration());
+
+        // reloading the mappings clears the cache
+        cachingMapEntries.doInit();
+        assertNull(cache.get(otherKey));
+        assertEquals(0, cache.getSize());
+    }
+
     @Test
     public void test_isValidVanityPath() throws Exception {
         Method method = MapEntries.class.getDeclaredMethod("isValidVanityPath", Resource.class);
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MapEntryMatcherTest {
+
+    private static final String[] PATHS = {
+        "http/localhost.80/",
+        "http/localhost.80/content/site/en.html",
+        "http/localhost.80/content/site/en/products.print.html",
+        "http/localhost.8080/content/site/en.html",
+        "http/www.example.com.80/",
+        "http/www.example.com.80/index.html",
+        "http/www.example.com.80/site/en/about.html",
+        "https/www.example.com.443/site/en/about.html",
+        "https/secure.example.com.443/login",
+        "http/localhost.80/virtual",
+        "http/localhost.80/virtual.html",
+        "http/localhost.80/libs/foo/bar.json",
+        "http/other.host.80/libs/foo/bar.json",
+        "ftp/localhost.21/x",
+        ""
+    };
+
+    @Test
+    public void test_literal_prefix() {
+        assertEquals("http/localhost.80/", MapEntryMatcher.getLiteralPrefix("^http/localhost\\.80/"));
+        assertEquals("http/localhost", MapEntryMatcher.getLiteralPrefix("^http/localhost.80/"));
+        assertEquals("", MapEntryMatcher.getLiteralPrefix("^" + MapEntries.ANY_SCHEME_HOST + "/content"));
+        assertEquals("http/", MapEntryMatcher.getLiteralPrefix("^http/[^/]+\\.80/"));
+        assertEquals("http/ab", MapEntryMatcher.getLiteralPrefix("^http/abc?"));
+        assertEquals("http/ab", MapEntryMatcher.getLiteralPrefix("^http/abc*"));
+        assertEquals("http/ab", MapEntryMatcher.getLiteralPrefix("^http/abc{0,2}"));
+        assertEquals("http/abc", MapEntryMatcher.getLiteralPrefix("^http/abc+"));
+        assertEquals("http/a", MapEntryMatcher.getLiteralPrefix("^http/a\\d"));
+        assertEquals("http/", MapEntryMatcher.getLiteralPrefix("^http/(a|b)"));
+        assertEquals("", MapEntryMatcher.getLiteralPrefix("^http/a|https/b"));
+        assertEquals("", MapEntryMatcher.getLiteralPrefix("^(?i)http/a"));
+        assertEquals("", MapEntryMatcher.getLiteralPrefix("http/a"));
+        assertEquals("http/a|", MapEntryMatcher.getLiteralPrefix("^http/a\\|"));
+    }
+
+    @Test
+    public void test_candidates_match_list_order() {
+        final List<MapEntry> entries = createEntries();
+        final MapEntryMatcher matcher = new MapEntryMatcher(entries);
+        assertEquals(entries.size(), matcher.size());
+
+        for (final String path : PATHS) {
+            assertEquals(path, getMatching(entries, path), getMatching(matcher.getCandidateList(path), path));
+        }
+    }
+
+    @Test
+    public void test_empty_list() {
+        final MapEntryMatcher matcher = new MapEntryMatcher(Collections.<MapEntry> emptyList());
+        assertEquals(0, matcher.getCandidateList("http/localhost.80/").size());
+    }
+
+    /**
+     * Entries as created by MapEntries for /etc/map nodes, virtual URLs and
+     * mappings, sorted as MapEntries sorts the global list.
+     */
+    private List<MapEntry> createEntries() {
+        final List<MapEntry> entries = new ArrayList<MapEntry>();
+        entries.add(new MapEntry("http/localhost.80/", -1, true, 0, "/content/"));
+        entries.add(new MapEntry("http/localhost.\\d*/", -1, true, 0, "/content/"));
+        entries.add(new MapEntry("http/www.example.com.80/$", 302, false, 0, "http://www.example.com/index.html"));
+        entries.add(new MapEntry("http/www.example.com.80/", -1, true, 0, "/content/example/"));
+        entries.add(new MapEntry("http/www.example.com.80/site/", -1, true, 0, "/content/example/site/"));
+        entries.add(new MapEntry("https/([^/]+)\\.443/(.*)", -1, false, 0, "/content/$1/$2"));
+        entries.add(new MapEntry("https/secure.example.com.443/login$", 301, false, 0, "https://example.com/login"));
+        entries.add(new MapEntry("^" + MapEntries.ANY_SCHEME_HOST + "/virtual$", -1, false, 0, "/content/virtual"));
+        entries.add(new MapEntry("^" + MapEntries.ANY_SCHEME_HOST + "/virtual\\.html$", -1, false, 0, "/content/virtual.html"));
+        entries.add(new MapEntry(MapEntries.ANY_SCHEME_HOST + "/libs/", -1, false, 0, "/libs/", "/apps/"));
+        entries.add(new MapEntry("http/(localhost|other\\.host)\\.80/libs/", -1, false, 0, "/libs/"));
+        entries.add(new MapEntry("(http|https)/www.example.com.(80|443)/site/en/", -1, false, 0, "/content/en/"));
+        entries.add(new MapEntry("http/www.example.com.80/site/en/about.html", -1, false, 2, "/content/about-new.html"));
+        entries.add(new MapEntry("http/www.example.com.80/site/en/about.html", -1, false, 1, "/content/about.html"));
+        Collections.sort(entries);
+        return entries;
+    }
+
+    /**
+     * Returns the entries matching the path in iteration order, which is
+     * what ResourceResolverImpl.resolve() relies on.
+     */
+    private List<String> getMatching(final List<MapEntry> entries, final String path) {
+        final List<String> result = new ArrayList<String>();
+        for (final MapEntry entry : entries) {
+            if (entry.replace(path) != null) {
+                result.add(entry.toString());
+            }
+        }
+        return result;
+    }
+}
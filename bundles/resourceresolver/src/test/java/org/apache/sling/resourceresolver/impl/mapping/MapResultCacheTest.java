@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapResultCacheTest {
+
+    private MapResultCache cache;
+
+    @Before
+    public void setup() {
+        cache = new MapResultCache(100);
+    }
+
+    @Test
+    public void test_keys() {
+        final String key = MapResultCache.createKey("user", "http", "localhost", 80, "/ctx", "/content/page.html");
+        assertEquals(key, MapResultCache.createKey("user", "http", "localhost", 80, "/ctx", "/content/page.html"));
+        assertFalse(key.equals(MapResultCache.createKey("user", "https", "localhost", 80, "/ctx", "/content/page.html")));
+        assertFalse(key.equals(MapResultCache.createKey("user", "http", "localhost", 8080, "/ctx", "/content/page.html")));
+        assertFalse(key.equals(MapResultCache.createKey("user", "http", "localhost", 80, "", "/content/page.html")));
+        assertFalse(key.equals(MapResultCache.createKey("other", "http", "localhost", 80, "/ctx", "/content/page.html")));
+        assertFalse(key.equals(MapResultCache.createKey("user", null, null, -1, null, "/content/page.html")));
+    }
+
+    @Test
+    public void test_get_put_and_invalidate() {
+        final String key = MapResultCache.createKey("user", "http", "localhost", 80, null, "/content/page.html#top");
+        assertNull(cache.get(key));
+        cache.put(key, "/content/page.html#top", "/page.html#top", cache.getGeneration());
+        assertEquals("/page.html#top", cache.get(key));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.invalidate("/content/other");
+        assertEquals("/page.html#top", cache.get(key));
+
+        cache.invalidate("/content/page");
+        assertNull(cache.get(key));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void test_invalidation_prefix() {
+        assertEquals("/content/page", MapResultCache.getInvalidationPrefix("/content/page"));
+        assertEquals("/content/page", MapResultCache.getInvalidationPrefix("/content/page/jcr:content"));
+        assertEquals("/content/page/jcr:content/par", MapResultCache.getInvalidationPrefix("/content/page/jcr:content/par"));
+        assertEquals("/content/page", MapResultCache.getInvalidationPrefix("/content/page/rep:policy/deny0"));
+        assertEquals("/", MapResultCache.getInvalidationPrefix("/rep:policy"));
+    }
+
+    @Test
+    public void test_concurrent_invalidation() {
+        final String key = MapResultCache.createKey(null, null, null, -1, null, "/content/page");
+        final long generation = cache.getGeneration();
+        // an alias is added while the path is being mapped
+        cache.invalidate("/content");
+        cache.put(key, "/content/page", "/page", generation);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void test_bounded() {
+        for (int i = 0; i < 250; i++) {
+            final String path = "/content/page" + i;
+            cache.put(MapResultCache.createKey(null, null, null, -1, null, path), path, path, cache.getGeneration());
+        }
+        assertEquals(100, cache.getSize());
+        assertNull(cache.get(MapResultCache.createKey(null, null, null, -1, null, "/content/page0")));
+        assertEquals("/content/page249", cache.get(MapResultCache.createKey(null, null, null, -1, null, "/content/page249")));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.resourceresolver.impl.mapping;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VanityPathIndexTest {
+
+    private File file;
+
+    private VanityPathIndex index;
+
+    @Before
+    public void setup() throws Exception {
+        file = File.createTempFile("vanityPathIndex", ".bin");
+        file.delete();
+        index = new VanityPathIndex(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+        file.delete();
+    }
+
+    @Test
+    public void test_add_and_get() throws Exception {
+        assertTrue(index.isNew());
+        assertEquals(0, index.getResourcePaths("/foo").length);
+
+        index.add("/foo", "/content/a");
+        index.add("/foo", "/content/b/jcr:content");
+        index.add("/foo", "/content/a");
+        index.add("/bar", "/content/a");
+
+        assertArrayEquals(new String[] {"/content/a", "/content/b/jcr:content"}, index.getResourcePaths("/foo"));
+        assertArrayEquals(new String[] {"/content/a"}, index.getResourcePaths("/bar"));
+        assertEquals(0, index.getResourcePaths("/content/a").length);
+        assertArrayEquals(new String[] {"/foo", "/bar"}, index.getVanityPaths("/content/a"));
+        assertEquals(0, index.getVanityPaths("/foo").length);
+
+        final List<String> paths = index.getResourcePaths();
+        Collections.sort(paths);
+        assertEquals(2, paths.size());
+        assertEquals("/content/a", paths.get(0));
+        assertEquals("/content/b/jcr:content", paths.get(1));
+    }
+
+    @Test
+    public void test_remove() throws Exception {
+        index.add("/foo", "/content/a");
+        index.add("/foo", "/content/b");
+        index.add("/bar", "/content/a");
+
+        index.remove("/foo", "/content/a");
+        assertArrayEquals(new String[] {"/content/b"}, index.getResourcePaths("/foo"));
+        assertArrayEquals(new String[] {"/content/a"}, index.getResourcePaths("/bar"));
+
+        index.removeResource("/content/a");
+        assertEquals(0, index.getResourcePaths("/bar").length);
+        assertArrayEquals(new String[] {"/content/b"}, index.getResourcePaths("/foo"));
+        assertEquals(Collections.singletonList("/content/b"), index.getResourcePaths());
+
+        // removing unknown entries is fine
+        index.removeResource("/content/unknown");
+        index.remove("/unknown", "/content/b");
+        assertArrayEquals(new String[] {"/content/b"}, index.getResourcePaths("/foo"));
+    }
+
+    @Test
+    public void test_reopen() throws Exception {
+        index.add("/foo", "/content/a");
+        index.close();
+
+        index = new VanityPathIndex(file);
+        assertFalse(index.isNew());
+        assertArrayEquals(new String[] {"/content/a"}, index.getResourcePaths("/foo"));
+    }
+
+    @Test
+    public void test_reopen_without_close() throws Exception {
+        index.add("/foo", "/content/a");
+        index.flush();
+
+        // simulates a crash, the open index is discarded
+        final VanityPathIndex crashed = new VanityPathIndex(file);
+        assertTrue(crashed.isNew());
+        assertEquals(0, crashed.getResourcePaths("/foo").length);
+        crashed.close();
+    }
+
+    @Test
+    public void test_many_entries() throws Exception {
+        final int count = 20000;
+        for (int i = 0; i < count; i++) {
+            index.add("/vanity" + i, "/content/page" + i);
+        }
+        // updates create garbage which is compacted
+        for (int j = 0; j < 5; j++) {
+            for (int i = 0; i < count; i += 2) {
+                index.remove("/vanity" + i, "/content/page" + i);
+                index.add("/vanity" + i, "/content/page" + i);
+            }
+        }
+        for (int i = 0; i < count; i += 1000) {
+            assertArrayEquals(new String[] {"/content/page" + i}, index.getResourcePaths("/vanity" + i));
+        }
+        assertEquals(count, index.getResourcePaths().size());
+
+        index.close();
+        index = new VanityPathIndex(file);
+        assertFalse(index.isNew());
+        assertArrayEquals(new String[] {"/content/page" + (count - 1)}, index.getResourcePaths("/vanity" + (count - 1)));
+    }
+
+    @Test
+    public void test_segments() throws Exception {
+        index.close();
+        file.delete();
+
+        // small segments of an odd size, so values cross the segment boundaries
+        index = new VanityPathIndex(file, 4099);
+        final int count = 20000;
+        for (int i = 0; i < count; i++) {
+            index.add("/vanity" + i, "/content/page" + i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(new String[] {"/content/page" + i}, index.getResourcePaths("/vanity" + i));
+        }
+
+        index.close();
+        index = new VanityPathIndex(file, 4099);
+        assertFalse(index.isNew());
+        assertEquals(count, index.getResourcePaths().size());
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals(new String[] {"/vanity" + i}, index.getVanityPaths("/content/page" + i));
+        }
+    }
+}
@@ -18,11 +18,14 @@
  */
 package org.apache.sling.resourceresolver.impl.tree;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -250,6 +253,38 @@ public class ResourceProviderEntryTest {
         }
     }
 
+    @Test public void testCopyOnWrite() {
+        final Map<String, Object> firstProps = new HashMap<String, Object>();
+        firstProps.put(Constants.SERVICE_ID, (long)1);
+        final ProviderHandler first = new ResourceProviderHandler(Mockito.mock(ResourceProvider.class), firstProps);
+        final Map<String, Object> secondProps = new HashMap<String, Object>();
+        secondProps.put(Constants.SERVICE_ID, (long)2);
+        final ProviderHandler second = new ResourceProviderHandler(Mockito.mock(ResourceProvider.class), secondProps);
+
+        assertTrue(root.addResourceProvider("/rootel", first));
+        assertFalse(root.addResourceProvider("/rootel", first));
+        final ResourceProviderEntry before = root.get("rootel");
+        final Collection<ResourceProviderEntry> valuesBefore = root.values();
+
+        assertTrue(root.addResourceProvider("/rootel/child/grandchild", second));
+
+        // the published entries are not modified
+        assertFalse(before.containsKey("child"));
+        assertEquals(1, valuesBefore.size());
+        assertEquals(1, before.getResourceProviders().length);
+
+        // but replaced by new entries
+        final ResourceProviderEntry after = root.get("rootel");
+        assertArrayEquals(new ProviderHandler[] {first}, after.getResourceProviders());
+        assertEquals(0, after.get("child").getResourceProviders().length);
+        assertArrayEquals(new ProviderHandler[] {second}, after.get("child").get("grandchild").getResourceProviders());
+
+        assertTrue(root.removeResourceProvider("/rootel/child/grandchild", second));
+        assertFalse(root.removeResourceProvider("/rootel/child/grandchild", second));
+        assertEquals(0, root.get("rootel").get("child").get("grandchild").getResourceProviders().length);
+        assertEquals(1, after.get("child").get("grandchild").getResourceProviders().length);
+    }
+
     @Test public void testOrderingWithoutRanking() {
         final Map<String, Object> props1 = new HashMap<String, Object>();
         props1.put(Constants.SERVICE_ID, 1L);
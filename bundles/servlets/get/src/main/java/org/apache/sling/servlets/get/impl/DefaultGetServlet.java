@@ -108,6 +108,18 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
     public static final String JSON_RENDERER_MAXIMUM_RESULTS_PROPERTY = "json.maximumresults";
     
     private int jsonMaximumResults;
+
+    /**
+     * Default value for streaming the JSON output (value is "false").
+     * Streaming changes the formatting of the tidy output, so it has to
+     * be enabled explicitly.
+     */
+    private static final boolean DEFAULT_JSON_RENDERER_STREAMING = false;
+
+    @Property(boolValue=DEFAULT_JSON_RENDERER_STREAMING)
+    private static final String JSON_RENDERER_STREAMING_PROPERTY = "json.streaming";
+
+    private boolean jsonStreaming;
     
     /** Additional aliases. */
     private String[] aliases;
@@ -144,6 +156,8 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
             DEFAULT_RENDERER_PROPERTY);
         this.jsonMaximumResults = OsgiUtil.toInteger(props.get(JSON_RENDERER_MAXIMUM_RESULTS_PROPERTY), 
             DEFAULT_JSON_RENDERER_MAXIMUM_RESULTS);
+        this.jsonStreaming = OsgiUtil.toBoolean(props.get(JSON_RENDERER_STREAMING_PROPERTY),
+            DEFAULT_JSON_RENDERER_STREAMING);
     }
 
     protected void deactivate(ComponentContext ctx) {
@@ -172,7 +186,7 @@ public class DefaultGetServlet extends SlingSafeMethodsServlet {
 
         if (enableJson) {
             setupServlet(rendererMap, JsonRendererServlet.EXT_JSON,
-                new JsonRendererServlet(jsonMaximumResults));
+                new JsonRendererServlet(jsonMaximumResults, jsonStreaming));
         }
 
         if (enableXml) {
@@ -62,11 +62,19 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
     public static final int INDENT_SPACES = 2;
 
     private long maximumResults;
+
+    /** Whether to write the resources while traversing them */
+    private final boolean streaming;
     
     private final JSONRenderer renderer = new JSONRenderer();
 
     public JsonRendererServlet(long maximumResults) {
+        this(maximumResults, false);
+    }
+
+    public JsonRendererServlet(long maximumResults, boolean streaming) {
         this.maximumResults = maximumResults;
+        this.streaming = streaming;
     }
 
     @Override
@@ -94,6 +102,20 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
         int allowedLevel = 0;
         final boolean tidy = isTidy(req);
         final boolean harray = hasSelector(req, HARRAY);
+        if (streaming) {
+            final JsonResourceWriter jsonWriter = new JsonResourceWriter(maxRecursionLevels, maximumResults, tidy, harray);
+            allowedLevel = jsonWriter.checkResources(r);
+            if (allowedLevel == -1) {
+                try {
+                    jsonWriter.write(resp.getWriter(), r);
+                } catch (JSONException je) {
+                    reportException(je);
+                }
+            } else {
+                sendMultipleChoices(r, tidy, allowedLevel, resp);
+            }
+            return;
+        }
         ResourceTraversor traversor = null;
         try {
             traversor = new ResourceTraversor(maxRecursionLevels, maximumResults, r, tidy);
@@ -120,18 +142,29 @@ public class JsonRendererServlet extends SlingSafeMethodsServlet {
                 }
 
             } else {
-                // We are not allowed to do the dump.
-                // Send a 300
-                String tidyUrl = (tidy) ? "tidy." : "";
-                resp.setStatus(HttpServletResponse.SC_MULTIPLE_CHOICES);
-                JSONWriter writer = new JSONWriter(resp.getWriter());
-                writer.array();
-                while (allowedLevel >= 0) {
-                    writer.value(r.getResourceMetadata().getResolutionPath() + "." + tidyUrl + allowedLevel + ".json");
-                    allowedLevel--;
-                }
-                writer.endArray();
+                sendMultipleChoices(r, tidy, allowedLevel, resp);
+            }
+        } catch (JSONException je) {
+            reportException(je);
+        }
+    }
+
+    /**
+     * We are not allowed to do the dump, send a 300 listing the
+     * allowed recursion levels.
+     */
+    private void sendMultipleChoices(Resource r, boolean tidy, int allowedLevel,
+            SlingHttpServletResponse resp) throws IOException {
+        String tidyUrl = (tidy) ? "tidy." : "";
+        resp.setStatus(HttpServletResponse.SC_MULTIPLE_CHOICES);
+        try {
+            JSONWriter writer = new JSONWriter(resp.getWriter());
+            writer.array();
+            while (allowedLevel >= 0) {
+                writer.value(r.getResourceMetadata().getResolutionPath() + "." + tidyUrl + allowedLevel + ".json");
+                allowedLevel--;
             }
+            writer.endArray();
         } catch (JSONException je) {
             reportException(je);
         }
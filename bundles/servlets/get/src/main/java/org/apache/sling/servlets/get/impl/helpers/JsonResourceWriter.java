@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.JSONString;
+import org.apache.sling.commons.json.io.JSONRenderer;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.json.sling.JsonObjectCreator;
+
+/**
+ * The <code>JsonResourceWriter</code> writes a resource and its children
+ * as JSON while traversing them, instead of building the complete
+ * <code>JSONObject</code> tree first like the <code>ResourceTraversor</code>.
+ * Only the properties of the resource currently written are held in memory.
+ * <p>
+ * The children read by {@link #checkResources(Resource)} are kept and used
+ * by {@link #write(Writer, Resource)}, so no resource is listed twice.
+ * <p>
+ * The output is the same as the one of the <code>ResourceTraversor</code>,
+ * tidy output uses the formatting of the <code>JSONWriter</code> though.
+ */
+class JsonResourceWriter {
+
+    /** The nesting supported by the <code>JSONWriter</code>, also in tidy mode. */
+    private static final int MAX_NESTING = 49;
+
+    private final int maxRecursionLevels;
+
+    private final long maxResources;
+
+    private final boolean tidy;
+
+    private final boolean harray;
+
+    private final JSONRenderer renderer = new JSONRenderer();
+
+    /** The children read while checking the resources, removed when written. */
+    private final Map<Resource, List<Resource>> checkedChildren = new IdentityHashMap<Resource, List<Resource>>();
+
+    JsonResourceWriter(final int maxRecursionLevels, final long maxResources,
+            final boolean tidy, final boolean harray) {
+        this.maxRecursionLevels = maxRecursionLevels;
+        this.maxResources = maxResources;
+        this.tidy = tidy;
+        this.harray = harray;
+    }
+
+    /**
+     * Checks whether the resource tree can be written within the maximum
+     * number of resources, with the same semantics as
+     * <code>ResourceTraversor.collectResources()</code>: the traversal
+     * is breadth first and stops as soon as the limit is exceeded, so at
+     * most the maximum number of resources is held in memory.
+     *
+     * @return -1 if the tree can be written, the level at which the limit
+     *            was exceeded otherwise.
+     */
+    int checkResources(final Resource resource) {
+        // SLING-2320: always allow enumeration of one's children;
+        // DOS-limitation is for deeper traversals.
+        if (maxRecursionLevels == 0 || maxRecursionLevels == 1) {
+            return -1;
+        }
+        long count = 0;
+        int currentLevel = 0;
+        LinkedList<Resource> currentQueue = new LinkedList<Resource>();
+        LinkedList<Resource> nextQueue = new LinkedList<Resource>();
+        currentQueue.add(resource);
+        while (!currentQueue.isEmpty()) {
+            final Resource current = currentQueue.removeFirst();
+            if (maxRecursionLevels == -1 || currentLevel < maxRecursionLevels) {
+                final List<Resource> list = new ArrayList<Resource>();
+                final Iterator<Resource> children = ResourceUtil.listChildren(current);
+                while (children.hasNext()) {
+                    count++;
+                    if (count > maxResources) {
+                        checkedChildren.clear();
+                        return currentLevel;
+                    }
+                    final Resource child = children.next();
+                    list.add(child);
+                    nextQueue.addLast(child);
+                }
+                checkedChildren.put(current, list);
+            }
+            if (currentQueue.isEmpty()) {
+                currentLevel++;
+                currentQueue = nextQueue;
+                nextQueue = new LinkedList<Resource>();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the resource and its children up to the maximum recursion
+     * level.
+     */
+    void write(final Writer out, final Resource resource) throws JSONException {
+        final JSONWriter writer = new JSONWriter(out);
+        writer.setTidy(tidy);
+        writeResource(writer, resource, 0, 1);
+    }
+
+    /**
+     * Writes a single resource and its children.
+     *
+     * @param level The recursion level of the resource
+     * @param nesting The nesting of the object for the resource in the
+     *            <code>JSONWriter</code>
+     */
+    private void writeResource(final JSONWriter writer, final Resource resource,
+            final int level, final int nesting)
+    throws JSONException {
+        if (nesting + (harray ? 1 : 0) > MAX_NESTING) {
+            // too deep for the writer, buffer the remaining subtree
+            writer.value(createTree(resource, level));
+            return;
+        }
+        writer.object();
+        if (harray && nesting > 1) {
+            writer.key(JSONRenderer.Options.DEFAULT_CHILD_NAME_KEY).value(ResourceUtil.getName(resource));
+        }
+        writeProperties(writer, resource);
+        if (maxRecursionLevels == -1 || level < maxRecursionLevels) {
+            final Iterator<Resource> children = listChildren(resource);
+            if (harray) {
+                if (children.hasNext()) {
+                    writer.key(JSONRenderer.Options.DEFAULT_CHILDREN_KEY).array();
+                    while (children.hasNext()) {
+                        writeResource(writer, children.next(), level + 1, nesting + 2);
+                    }
+                    writer.endArray();
+                }
+            } else {
+                while (children.hasNext()) {
+                    final Resource child = children.next();
+                    writer.key(ResourceUtil.getName(child));
+                    writeResource(writer, child, level + 1, nesting + 1);
+                }
+            }
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Lists the children of the resource, using the children read by
+     * {@link #checkResources(Resource)} if available.
+     */
+    private Iterator<Resource> listChildren(final Resource resource) {
+        final List<Resource> children = checkedChildren.remove(resource);
+        if (children != null) {
+            return children.iterator();
+        }
+        return ResourceUtil.listChildren(resource);
+    }
+
+    /**
+     * Writes the properties of the resource, converted the same way as
+     * for the <code>ResourceTraversor</code>.
+     */
+    private void writeProperties(final JSONWriter writer, final Resource resource)
+    throws JSONException {
+        final JSONObject properties = JsonObjectCreator.create(resource, 0);
+        final Iterator<String> keys = properties.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            writer.key(key).value(properties.get(key));
+        }
+    }
+
+    /**
+     * Creates the JSON for a subtree which is nested too deep to be written
+     * by the <code>JSONWriter</code>.
+     */
+    private Object createTree(final Resource resource, final int level) throws JSONException {
+        final int levels = (maxRecursionLevels == -1 ? -1 : maxRecursionLevels - level);
+        final JSONObject json = JsonObjectCreator.create(resource, levels);
+        if (!harray) {
+            return json;
+        }
+        final JSONObject named = new JSONObject();
+        named.put(JSONRenderer.Options.DEFAULT_CHILD_NAME_KEY, ResourceUtil.getName(resource));
+        final Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            named.put(key, json.get(key));
+        }
+        return new JSONString() {
+            public String toJSONString() {
+                try {
+                    return renderer.prettyPrint(named, renderer.options().withArraysForChildren(true));
+                } catch (final JSONException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
@@ -22,10 +22,15 @@ import static org.apache.sling.api.servlets.HttpConstants.HEADER_LAST_MODIFIED;
 
 import java.io.BufferedInputStream;
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -220,44 +225,116 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
             ServletOutputStream out = response.getOutputStream();
 
-            if (ranges == FULL) {
+            // file backed resources are transferred from the file channel:
+            // this is zero-copy only if the container's output stream is a
+            // channel, otherwise transferTo writes through a channel
+            // wrapping the output stream, which still saves reopening and
+            // skipping the stream for ranges
+            final FileChannel channel = getFileChannel(resource, stream);
+            try {
+                streamRanges(resource, stream, channel, ranges, response, out);
+            } finally {
+                closeSilently(channel);
+            }
+
+        } finally {
+            closeSilently(stream);
+        }
+    }
+
+    private void streamRanges(final Resource resource,
+            final InputStream stream, final FileChannel channel,
+            final ArrayList<Range> ranges,
+            final SlingHttpServletResponse response,
+            final ServletOutputStream out) throws IOException {
 
-                // return full resource
-                setContentLength(response,
-                    resource.getResourceMetadata().getContentLength());
+        if (ranges == FULL) {
+
+            // return full resource
+            setContentLength(response,
+                resource.getResourceMetadata().getContentLength());
+            if (channel != null) {
+                staticCopyRange(channel, toChannel(out), 0, channel.size());
+            } else {
                 byte[] buf = new byte[IO_BUFFER_SIZE];
                 int rd;
                 while ((rd = stream.read(buf)) >= 0) {
                     out.write(buf, 0, rd);
                 }
+            }
 
-            } else {
-
-                // return ranges of the resource
-                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        } else {
 
-                if (ranges.size() == 1) {
+            // return ranges of the resource
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
 
-                    Range range = ranges.get(0);
-                    response.addHeader("Content-Range", "bytes " + range.start
-                        + "-" + range.end + "/" + range.length);
-                    setContentLength(response, range.end - range.start + 1);
+            if (ranges.size() == 1) {
 
-                    copy(stream, out, range);
+                Range range = ranges.get(0);
+                response.addHeader("Content-Range", "bytes " + range.start
+                    + "-" + range.end + "/" + range.length);
+                setContentLength(response, range.end - range.start + 1);
 
+                if (channel != null) {
+                    copy(channel, out, range);
                 } else {
+                    copy(stream, out, range);
+                }
 
-                    response.setContentType("multipart/byteranges; boundary="
-                        + mimeSeparation);
+            } else {
 
-                    copy(resource, out, ranges.iterator());
-                }
+                response.setContentType("multipart/byteranges; boundary="
+                    + mimeSeparation);
 
+                copy(resource, channel, out, ranges.iterator());
             }
 
-        } finally {
+        }
+    }
+
+    /**
+     * Returns a channel to read the data of the resource from if the resource
+     * is backed by a file, that is its input stream is a
+     * <code>FileInputStream</code> or it adapts to a <code>FileChannel</code>
+     * or to an existing, readable <code>File</code>. Otherwise
+     * <code>null</code> is returned and the data is read from the input stream
+     * of the resource.
+     * The input stream is closed if a channel is returned which has not been
+     * retrieved from the input stream.
+     */
+    private FileChannel getFileChannel(final Resource resource, final InputStream stream) {
+        if (stream instanceof FileInputStream) {
+            return ((FileInputStream) stream).getChannel();
+        }
+        FileChannel channel = resource.adaptTo(FileChannel.class);
+        if (channel == null) {
+            final File file = resource.adaptTo(File.class);
+            if (file != null && file.isFile() && file.canRead()) {
+                try {
+                    channel = new FileInputStream(file).getChannel();
+                } catch (IOException ioe) {
+                    log.debug("getFileChannel: Cannot open " + file + ", streaming resource", ioe);
+                }
+            }
+        }
+        if (channel != null) {
+            // the data is not read from the stream
             closeSilently(stream);
         }
+        return channel;
+    }
+
+    /**
+     * Returns the output stream as a channel: the output stream itself if
+     * the container implements it as a channel, otherwise a channel writing
+     * to the output stream. The latter is not closed as this would close
+     * the output stream.
+     */
+    private static WritableByteChannel toChannel(final OutputStream out) {
+        if (out instanceof WritableByteChannel) {
+            return (WritableByteChannel) out;
+        }
+        return Channels.newChannel(out);
     }
 
     private void renderDirectory(final SlingHttpServletRequest request,
@@ -451,22 +528,29 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
      * the face of an exception).
      *
      * @param resource The resource from which to send ranges
+     * @param channel The file channel of the resource or <code>null</code> if
+     *            the ranges are read from the input stream of the resource
      * @param ostream The output stream to write to
      * @param ranges Iterator of the ranges the client wanted to retrieve
      * @param contentType Content type of the resource
      * @exception IOException if an input/output error occurs
      */
-    private void copy(Resource resource, ServletOutputStream ostream,
-            Iterator<Range> ranges) throws IOException {
+    private void copy(Resource resource, FileChannel channel,
+            ServletOutputStream ostream, Iterator<Range> ranges)
+            throws IOException {
 
         String contentType = resource.getResourceMetadata().getContentType();
         IOException exception = null;
 
         while ((exception == null) && (ranges.hasNext())) {
 
-            InputStream resourceInputStream = resource.adaptTo(InputStream.class);
-            InputStream istream = new BufferedInputStream(resourceInputStream,
-                IO_BUFFER_SIZE);
+            // the channel is positioned per range, no need to reopen it
+            InputStream istream = null;
+            if (channel == null) {
+                InputStream resourceInputStream = resource.adaptTo(InputStream.class);
+                istream = new BufferedInputStream(resourceInputStream,
+                    IO_BUFFER_SIZE);
+            }
 
             try {
                 Range currentRange = ranges.next();
@@ -483,7 +567,11 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
 
                 // Copy content
                 try {
-                    copy(istream, ostream, currentRange);
+                    if (channel != null) {
+                        copy(channel, ostream, currentRange);
+                    } else {
+                        copy(istream, ostream, currentRange);
+                    }
                 } catch(IOException e) {
                     exception = e;
                 }
@@ -518,6 +606,40 @@ public class StreamRendererServlet extends SlingSafeMethodsServlet {
         staticCopyRange(istream, ostream, range.start, endIndex);
     }
 
+    /**
+    * Copy the range of the specified file channel to the specified
+    * output stream.
+    *
+    * @param channel The file channel to read from
+    * @param ostream The output stream to write to
+    * @param range Range the client wanted to retrieve
+    * @exception IOException if an input/output error occurs
+    */
+    private void copy(FileChannel channel, OutputStream ostream,
+            Range range) throws IOException {
+        // HTTP Range 0-9 means "byte 9 included"
+        final long endIndex = range.end + 1;
+        log.debug("copy: Transferring bytes: {}-{}", range.start, endIndex);
+        staticCopyRange(channel, toChannel(ostream), range.start, endIndex);
+    }
+
+    // static, package-private method to make unit testing easier
+    static void staticCopyRange(FileChannel channel,
+            WritableByteChannel target, long start, long end) throws IOException {
+        // transferTo lets the platform move the data without copying it
+        // through a buffer
+        final long last = Math.min(end, channel.size());
+        long position = start;
+        while (position < last) {
+            final long transferred = channel.transferTo(position, last - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Failed to transfer bytes " + position
+                        + "-" + last + "; only transferred " + (position - start) + " bytes");
+            }
+            position += transferred;
+        }
+    }
+
     // static, package-private method to make unit testing easier
     static void staticCopyRange(InputStream istream,
             OutputStream ostream, long start, long end) throws IOException {
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.get.impl.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONRenderer;
+import org.apache.sling.commons.json.sling.ResourceTraversor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JsonResourceWriterTest {
+
+    private final Map<String, List<Resource>> children = new HashMap<String, List<Resource>>();
+
+    private final Map<String, Integer> listed = new HashMap<String, Integer>();
+
+    private ResourceResolver resolver;
+
+    private Resource root;
+
+    @Before
+    public void setup() {
+        resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.listChildren(Mockito.any(Resource.class))).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                final Resource parent = (Resource) invocation.getArguments()[0];
+                final Integer count = listed.get(parent.getPath());
+                listed.put(parent.getPath(), count == null ? 1 : count + 1);
+                return children.get(parent.getPath()).iterator();
+            }
+        });
+        root = createTree("/root", 3, 3);
+    }
+
+    @Test
+    public void testSameOutputAsTraversor() throws Exception {
+        for (final int levels : new int[] { 0, 1, 2, -1 }) {
+            final ResourceTraversor traversor = new ResourceTraversor(levels, 1000, root, false);
+            assertEquals(-1, traversor.collectResources());
+
+            final JsonResourceWriter writer = new JsonResourceWriter(levels, 1000, false, false);
+            assertEquals(-1, writer.checkResources(root));
+            assertEquals(traversor.getJSONObject().toString(), write(writer, root));
+
+            final JsonResourceWriter tidyWriter = new JsonResourceWriter(levels, 1000, true, false);
+            assertEquals(traversor.getJSONObject().toString(), new JSONObject(write(tidyWriter, root)).toString());
+        }
+    }
+
+    @Test
+    public void testHierarchyAsArrays() throws Exception {
+        final ResourceTraversor traversor = new ResourceTraversor(-1, 1000, root, false);
+        traversor.collectResources();
+        final JSONRenderer renderer = new JSONRenderer();
+        final String expected = renderer.prettyPrint(traversor.getJSONObject(),
+                renderer.options().withArraysForChildren(true));
+
+        final JsonResourceWriter writer = new JsonResourceWriter(-1, 1000, true, true);
+        assertEquals(new JSONObject(expected).toString(), new JSONObject(write(writer, root)).toString());
+    }
+
+    @Test
+    public void testMaximumResults() throws Exception {
+        for (final int levels : new int[] { 1, 2, -1 }) {
+            final ResourceTraversor traversor = new ResourceTraversor(levels, 5, root, false);
+            final JsonResourceWriter writer = new JsonResourceWriter(levels, 5, false, false);
+            assertEquals(traversor.collectResources(), writer.checkResources(root));
+        }
+        assertEquals(-1, new JsonResourceWriter(1, 2, false, false).checkResources(root));
+        assertEquals(0, new JsonResourceWriter(-1, 2, false, false).checkResources(root));
+        assertEquals(1, new JsonResourceWriter(-1, 5, false, false).checkResources(root));
+    }
+
+    @Test
+    public void testChildrenAreListedOnce() throws Exception {
+        final JsonResourceWriter writer = new JsonResourceWriter(-1, 1000, false, false);
+        assertEquals(-1, writer.checkResources(root));
+        write(writer, root);
+
+        assertEquals(children.size(), listed.size());
+        for (final Map.Entry<String, Integer> entry : listed.entrySet()) {
+            assertEquals(entry.getKey(), 1, entry.getValue().intValue());
+        }
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+        final Resource deep = createTree("/deep", 60, 1);
+        final ResourceTraversor traversor = new ResourceTraversor(-1, 1000, deep, false);
+        traversor.collectResources();
+
+        final JsonResourceWriter writer = new JsonResourceWriter(-1, 1000, true, false);
+        assertEquals(traversor.getJSONObject().toString(), new JSONObject(write(writer, deep)).toString());
+    }
+
+    private String write(final JsonResourceWriter writer, final Resource resource) throws Exception {
+        final StringWriter out = new StringWriter();
+        writer.write(out, resource);
+        return out.toString();
+    }
+
+    private Resource createTree(final String path, final int depth, final int fanOut) {
+        final Map<String, Object> props = new LinkedHashMap<String, Object>();
+        props.put("title", "Title of " + path);
+        props.put("depth", depth);
+        props.put("tags", new String[] { "a", "b" });
+
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn(path);
+        Mockito.when(resource.getResourceResolver()).thenReturn(resolver);
+        Mockito.when(resource.adaptTo(ValueMap.class)).thenReturn(new ValueMapDecorator(props));
+
+        final List<Resource> list = new ArrayList<Resource>();
+        if (depth > 0) {
+            for (int i = 0; i < fanOut; i++) {
+                list.add(createTree(path + "/child" + i, depth - 1, fanOut));
+            }
+        }
+        children.put(path, list);
+        return resource;
+    }
+}
@@ -18,16 +18,33 @@
  */
 package org.apache.sling.servlets.get.impl.helpers;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Random;
 
+import javax.servlet.ServletOutputStream;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 public class StreamRendererServletTest {
 
@@ -47,6 +64,141 @@ public class StreamRendererServletTest {
         assertEquals("34", result);
     }
     
+    @Test
+    public void testCopyRangeFromChannel() throws IOException {
+        final Random random = new Random(1234);
+        final byte[] expected = new byte[StreamRendererServlet.IO_BUFFER_SIZE * 3 + 42];
+        random.nextBytes(expected);
+
+        final File file = File.createTempFile("streamrenderer", ".bin");
+        try {
+            final FileOutputStream fos = new FileOutputStream(file);
+            try {
+                fos.write(expected);
+            } finally {
+                fos.close();
+            }
+
+            final FileChannel channel = new FileInputStream(file).getChannel();
+            try {
+                assertCopyRange(expected, channel, 0, 0);
+                assertCopyRange(expected, channel, 0, 1);
+                assertCopyRange(expected, channel, 0, expected.length);
+                for (int i = 0; i < 100; i++) {
+                    final int a = random.nextInt(expected.length);
+                    final int b = random.nextInt(expected.length);
+                    assertCopyRange(expected, channel, Math.min(a, b), Math.max(a, b));
+                }
+            } finally {
+                channel.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCopyRangeFromChannelFailsIfNothingIsTransferred() throws IOException {
+        final File file = File.createTempFile("streamrenderer", ".bin");
+        try {
+            final FileOutputStream fos = new FileOutputStream(file);
+            try {
+                fos.write("12345678".getBytes());
+            } finally {
+                fos.close();
+            }
+
+            final FileChannel channel = new FileInputStream(file).getChannel();
+            try {
+                // a target which does not accept any data
+                final WritableByteChannel target = new WritableByteChannel() {
+                    public int write(ByteBuffer src) {
+                        return 0;
+                    }
+
+                    public boolean isOpen() {
+                        return true;
+                    }
+
+                    public void close() {
+                    }
+                };
+                StreamRendererServlet.staticCopyRange(channel, target, 2, 4);
+                fail("Expected IOException");
+            } catch (IOException expected) {
+                // expected
+            } finally {
+                channel.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testStreamFileToServletOutputStream() throws Exception {
+        final Random random = new Random(42);
+        final byte[] expected = new byte[StreamRendererServlet.IO_BUFFER_SIZE * 5 + 17];
+        random.nextBytes(expected);
+
+        final File file = File.createTempFile("streamrenderer", ".bin");
+        try {
+            final FileOutputStream fos = new FileOutputStream(file);
+            try {
+                fos.write(expected);
+            } finally {
+                fos.close();
+            }
+
+            // full response
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            doGet(file, expected.length, null, output);
+            assertArrayEquals(expected, output.toByteArray());
+
+            // single range
+            output = new ByteArrayOutputStream();
+            doGet(file, expected.length, "bytes=100-4199", output);
+            final byte[] range = new byte[4100];
+            System.arraycopy(expected, 100, range, 0, range.length);
+            assertArrayEquals(range, output.toByteArray());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Renders the file backed resource to an output stream which is not a
+     * channel, like the output streams of the servlet containers.
+     */
+    private void doGet(final File file, final long length, final String rangeHeader,
+            final ByteArrayOutputStream output) throws Exception {
+        final ResourceMetadata metadata = new ResourceMetadata();
+        metadata.setContentLength(length);
+        metadata.setContentType("image/png");
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn("/content/file.bin");
+        Mockito.when(resource.getResourceMetadata()).thenReturn(metadata);
+        Mockito.when(resource.adaptTo(InputStream.class)).thenReturn(new FileInputStream(file));
+        Mockito.when(resource.adaptTo(File.class)).thenReturn(file);
+
+        final RequestPathInfo pathInfo = Mockito.mock(RequestPathInfo.class);
+        final SlingHttpServletRequest request = Mockito.mock(SlingHttpServletRequest.class);
+        Mockito.when(request.getRequestPathInfo()).thenReturn(pathInfo);
+        Mockito.when(request.getResource()).thenReturn(resource);
+        Mockito.when(request.getHeader("Range")).thenReturn(rangeHeader);
+
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                output.write(b);
+            }
+        };
+        final SlingHttpServletResponse response = Mockito.mock(SlingHttpServletResponse.class);
+        Mockito.when(response.getOutputStream()).thenReturn(out);
+
+        new StreamRendererServlet(false, new String[0]).doGet(request, response);
+    }
+
     private void runTests(int randomSeed) throws IOException {
         final Random random = new Random(randomSeed);
         assertCopyRange(random, StreamRendererServlet.IO_BUFFER_SIZE * 2 + 42);
@@ -121,4 +273,17 @@ public class StreamRendererServletTest {
             assertEquals(expected[i], actual[i - a]);
         }
     }
+
+    private void assertCopyRange(
+            byte[] expected, FileChannel channel, int a, int b) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        StreamRendererServlet.staticCopyRange(channel, Channels.newChannel(output), a, b);
+
+        byte[] actual = output.toByteArray();
+        assertEquals(b - a, actual.length);
+        for (int i = a; i < b; i++) {
+            assertEquals(expected[i], actual[i - a]);
+        }
+    }
 }
@@ -71,6 +71,7 @@ import org.apache.sling.servlets.post.impl.operations.ModifyOperation;
 import org.apache.sling.servlets.post.impl.operations.MoveOperation;
 import org.apache.sling.servlets.post.impl.operations.NopOperation;
 import org.apache.sling.servlets.post.impl.operations.RestoreOperation;
+import org.apache.sling.servlets.post.impl.operations.StreamedUploadOperation;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceRegistration;
@@ -144,6 +145,8 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
 
     private final ModifyOperation modifyOperation = new ModifyOperation();
 
+    private final StreamedUploadOperation streamedUploadOperation = new StreamedUploadOperation();
+
     private ServiceRegistration[] internalOperations;
 
     /** Map of post operations. */
@@ -288,6 +291,10 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
             final SlingHttpServletRequest request) {
         final String operation = request.getParameter(SlingPostConstants.RP_OPERATION);
         if (operation == null || operation.length() == 0) {
+            // files streamed by the engine are stored as they are read
+            if (StreamedUploadOperation.isStreamedUpload(request)) {
+                return streamedUploadOperation;
+            }
             // standard create/modify operation;
             return modifyOperation;
         }
@@ -438,6 +445,7 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
     @Override
     public void init() throws ServletException {
         modifyOperation.setServletContext(getServletContext());
+        streamedUploadOperation.setServletContext(getServletContext());
     }
 
     @Modified
@@ -477,6 +485,7 @@ public class SlingPostServlet extends SlingAllMethodsServlet {
     @Override
     public void destroy() {
         modifyOperation.setServletContext(null);
+        streamedUploadOperation.setServletContext(null);
     }
 
     @Deactivate
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.util.Iterator;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceNotFoundException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.servlets.post.AbstractPostOperation;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.PostResponse;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.apache.sling.servlets.post.impl.helper.RequestProperty;
+import org.apache.sling.servlets.post.impl.helper.SlingFileUploadHandler;
+
+/**
+ * The <code>StreamedUploadOperation</code> class stores the files of a
+ * multipart/form-data POST request processed by the Sling engine in streaming
+ * mode. The files are read from the {@link #REQUEST_PARTS_ITERATOR} request
+ * attribute one after the other and are written below the resource of the
+ * request, which must exist, without being spooled to disk first.
+ * <p>
+ * Unless session handling is skipped, the changes are committed after each
+ * file, so the content of the file is consumed before the request input
+ * stream is moved on to the next part.
+ * <p>
+ * A file which cannot be stored ends the operation with a
+ * <code>400/BAD REQUEST</code> status: the engine only buffers a limited
+ * amount of a part which is not read, so the content of any later file
+ * might already be lost. Files stored before remain committed.
+ */
+public class StreamedUploadOperation extends AbstractPostOperation {
+
+    /**
+     * The name of the request attribute providing the parts of a streamed
+     * request. This is the value of
+     * <code>org.apache.sling.engine.REQUEST_PARTS_ITERATOR</code>,
+     * it is repeated here as the engine is not a dependency of this bundle.
+     */
+    static final String REQUEST_PARTS_ITERATOR = "request-parts-iterator";
+
+    /**
+     * handler that deals with file upload
+     */
+    private final SlingFileUploadHandler uploadHandler = new SlingFileUploadHandler();
+
+    public void setServletContext(final ServletContext servletContext) {
+        this.uploadHandler.setServletContext(servletContext);
+    }
+
+    /**
+     * Returns <code>true</code> if the request is a streamed multipart/form-data
+     * POST request.
+     */
+    public static boolean isStreamedUpload(final SlingHttpServletRequest request) {
+        return request.getAttribute(REQUEST_PARTS_ITERATOR) instanceof Iterator<?>;
+    }
+
+    @Override
+    protected void doRun(final SlingHttpServletRequest request,
+            final PostResponse response,
+            final List<Modification> changes)
+    throws RepositoryException {
+        final Resource resource = request.getResource();
+        if (ResourceUtil.isNonExistingResource(resource)) {
+            throw new ResourceNotFoundException(resource.getPath(),
+                "Resource for streamed upload does not exist");
+        }
+
+        final ResourceResolver resolver = request.getResourceResolver();
+        @SuppressWarnings("unchecked")
+        final Iterator<RequestParameter> parts = (Iterator<RequestParameter>) request.getAttribute(REQUEST_PARTS_ITERATOR);
+        try {
+            while (parts.hasNext()) {
+                final RequestParameter part = parts.next();
+                if (part.isFormField()) {
+                    log.warn("doRun: Ignoring form field {} following the first file", part.getName());
+                    continue;
+                }
+
+                String name = part.getName();
+                if (name.startsWith(SlingPostConstants.RP_PREFIX) || name.indexOf('@') >= 0) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST,
+                        "Unsupported name " + name + " for a streamed file");
+                    return;
+                }
+                if (name.startsWith(SlingPostConstants.ITEM_PREFIX_RELATIVE_CURRENT)) {
+                    name = name.substring(SlingPostConstants.ITEM_PREFIX_RELATIVE_CURRENT.length());
+                }
+
+                final RequestProperty prop = new RequestProperty(resource.getPath() + "/" + name);
+                final Resource parent = resolver.getResource(prop.getParentPath());
+                if (parent == null) {
+                    response.setStatus(HttpServletResponse.SC_BAD_REQUEST,
+                        "Missing parent " + prop.getParentPath() + " for streamed file " + name);
+                    return;
+                }
+                prop.setValues(new RequestParameter[] { part });
+                this.uploadHandler.setFile(parent, prop, changes);
+
+                if (!isSkipSessionHandling(request) && resolver.hasChanges()) {
+                    resolver.commit();
+                }
+            }
+        } catch (final PersistenceException pe) {
+            if (pe.getCause() instanceof RepositoryException) {
+                throw (RepositoryException) pe.getCause();
+            }
+            throw new RepositoryException(pe);
+        }
+    }
+}
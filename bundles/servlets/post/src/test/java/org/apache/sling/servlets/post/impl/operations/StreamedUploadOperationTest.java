@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.post.impl.operations;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestParameter;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceNotFoundException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.servlets.post.Modification;
+import org.apache.sling.servlets.post.PostResponse;
+import org.apache.sling.servlets.post.SlingPostConstants;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.Sequence;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(JMock.class)
+public class StreamedUploadOperationTest extends TestCase {
+
+    private Mockery context = new JUnit4Mockery();
+
+    private final StreamedUploadOperation op = new StreamedUploadOperation();
+
+    private SlingHttpServletRequest request;
+
+    private ResourceResolver resolver;
+
+    private Resource resource;
+
+    private void setup(final boolean skipSessionHandling, final RequestParameter... parts) {
+        request = context.mock(SlingHttpServletRequest.class);
+        resolver = context.mock(ResourceResolver.class);
+        resource = context.mock(Resource.class, "content");
+
+        context.checking(new Expectations() {
+            {
+                allowing(request).getResource();
+                will(returnValue(resource));
+                allowing(request).getResourceResolver();
+                will(returnValue(resolver));
+                allowing(request).getAttribute(StreamedUploadOperation.REQUEST_PARTS_ITERATOR);
+                will(returnValue(Arrays.asList(parts).iterator()));
+                allowing(request).getAttribute(SlingPostConstants.ATTR_SKIP_SESSION_HANDLING);
+                will(returnValue(skipSessionHandling ? "true" : null));
+                allowing(resource).getPath();
+                will(returnValue("/content"));
+                allowing(resource).getResourceType();
+                will(returnValue("sling:Folder"));
+                allowing(resource).getResourceResolver();
+                will(returnValue(resolver));
+                allowing(resource).adaptTo(Node.class);
+                will(returnValue(null));
+                allowing(resource).getChild(with(any(String.class)));
+                will(returnValue(null));
+                allowing(resolver).getResource("/content");
+                will(returnValue(resource));
+                allowing(resolver).getResource(with(any(String.class)));
+                will(returnValue(null));
+                allowing(resolver).hasChanges();
+                will(returnValue(true));
+            }
+        });
+    }
+
+    private RequestParameter part(final String name, final boolean formField) throws Exception {
+        final RequestParameter part = context.mock(RequestParameter.class, name);
+        context.checking(new Expectations() {
+            {
+                allowing(part).getName();
+                will(returnValue(name));
+                allowing(part).isFormField();
+                will(returnValue(formField));
+                allowing(part).getSize();
+                will(returnValue(-1L));
+                allowing(part).getFileName();
+                will(returnValue(name + ".txt"));
+                allowing(part).getContentType();
+                will(returnValue("text/plain"));
+                allowing(part).getInputStream();
+                will(returnValue(new ByteArrayInputStream(new byte[] {1})));
+            }
+        });
+        return part;
+    }
+
+    private void expectFile(final String name, final Sequence sequence, final boolean commit) throws Exception {
+        final Resource file = context.mock(Resource.class, "file-" + name);
+        context.checking(new Expectations() {
+            {
+                allowing(file).getPath();
+                will(returnValue("/content/" + name));
+                oneOf(resolver).create(with(same(resource)), with(equal(name)), with(any(Map.class)));
+                inSequence(sequence);
+                will(returnValue(file));
+                if (commit) {
+                    oneOf(resolver).commit();
+                    inSequence(sequence);
+                }
+            }
+        });
+    }
+
+    private PostResponse expectStatus(final int status) {
+        final PostResponse response = context.mock(PostResponse.class);
+        context.checking(new Expectations() {
+            {
+                oneOf(response).setStatus(with(equal(status)), with(any(String.class)));
+            }
+        });
+        return response;
+    }
+
+    @Test
+    public void testFilesAreStoredInOrderAndCommittedOneByOne() throws Exception {
+        setup(false, part("a", false), part("b", true), part("./c", false));
+
+        final Sequence sequence = context.sequence("parts");
+        expectFile("a", sequence, true);
+        expectFile("c", sequence, true);
+
+        final List<Modification> changes = new ArrayList<Modification>();
+        op.doRun(request, null, changes);
+        assertFalse(changes.isEmpty());
+    }
+
+    @Test
+    public void testUnsupportedNameIsRejected() throws Exception {
+        setup(false, part("a", false), part("b@TypeHint", false), part("c", false));
+
+        final Sequence sequence = context.sequence("parts");
+        expectFile("a", sequence, true);
+        final PostResponse response = expectStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+        op.doRun(request, response, new ArrayList<Modification>());
+    }
+
+    @Test
+    public void testMissingParentIsRejected() throws Exception {
+        setup(false, part("missing/a", false), part("b", false));
+
+        final PostResponse response = expectStatus(HttpServletResponse.SC_BAD_REQUEST);
+        context.checking(new Expectations() {
+            {
+                never(resolver).create(with(any(Resource.class)), with(any(String.class)), with(any(Map.class)));
+            }
+        });
+
+        op.doRun(request, response, new ArrayList<Modification>());
+    }
+
+    @Test
+    public void testFormFieldsAreIgnored() throws Exception {
+        setup(false, part(":operation", true), part("a", false));
+
+        final Sequence sequence = context.sequence("parts");
+        expectFile("a", sequence, true);
+
+        op.doRun(request, null, new ArrayList<Modification>());
+    }
+
+    @Test
+    public void testNoCommitWhenSessionHandlingIsSkipped() throws Exception {
+        setup(true, part("a", false), part("b", false));
+
+        final Sequence sequence = context.sequence("parts");
+        expectFile("a", sequence, false);
+        expectFile("b", sequence, false);
+        context.checking(new Expectations() {
+            {
+                never(resolver).commit();
+            }
+        });
+
+        op.doRun(request, null, new ArrayList<Modification>());
+    }
+
+    @Test(expected = ResourceNotFoundException.class)
+    public void testNonExistingResource() throws Exception {
+        request = context.mock(SlingHttpServletRequest.class);
+        resource = context.mock(Resource.class);
+        context.checking(new Expectations() {
+            {
+                allowing(request).getResource();
+                will(returnValue(resource));
+                allowing(resource).getPath();
+                will(returnValue("/content"));
+                allowing(resource).getResourceType();
+                will(returnValue(Resource.RESOURCE_TYPE_NON_EXISTING));
+            }
+        });
+
+        op.doRun(request, null, new ArrayList<Modification>());
+    }
+
+    @Test
+    public void testIsStreamedUpload() throws Exception {
+        setup(false, part("a", false));
+        assertTrue(StreamedUploadOperation.isStreamedUpload(request));
+
+        final SlingHttpServletRequest plain = context.mock(SlingHttpServletRequest.class, "plain");
+        context.checking(new Expectations() {
+            {
+                allowing(plain).getAttribute(StreamedUploadOperation.REQUEST_PARTS_ITERATOR);
+                will(returnValue(null));
+            }
+        });
+        assertFalse(StreamedUploadOperation.isStreamedUpload(plain));
+    }
+}
@@ -40,7 +40,6 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
@@ -88,6 +87,7 @@ import org.apache.sling.servlets.resolver.internal.defaults.DefaultServlet;
 import org.apache.sling.servlets.resolver.internal.helper.AbstractResourceCollector;
 import org.apache.sling.servlets.resolver.internal.helper.NamedScriptResourceCollector;
 import org.apache.sling.servlets.resolver.internal.helper.ResourceCollector;
+import org.apache.sling.servlets.resolver.internal.helper.ServletResolutionCache;
 import org.apache.sling.servlets.resolver.internal.helper.SlingServletConfig;
 import org.apache.sling.servlets.resolver.internal.resource.ServletResourceProvider;
 import org.apache.sling.servlets.resolver.internal.resource.ServletResourceProviderFactory;
@@ -189,7 +189,7 @@ public class SlingServletResolver
     private Servlet fallbackErrorServlet;
 
     /** The script resolution cache. */
-    private Map<AbstractResourceCollector, Servlet> cache;
+    private ServletResolutionCache cache;
 
     /** The cache size. */
     private int cacheSize;
@@ -624,7 +624,8 @@ public class SlingServletResolver
     private Servlet getServletInternal(final AbstractResourceCollector locationUtil,
             final SlingHttpServletRequest request,
             final ResourceResolver resolver) {
-        final Servlet scriptServlet = (this.cache != null ? this.cache.get(locationUtil) : null);
+        final ServletResolutionCache cache = this.cache;
+        final Servlet scriptServlet = (cache != null ? cache.get(locationUtil) : null);
         if (scriptServlet != null) {
             if ( LOGGER.isDebugEnabled() ) {
                 LOGGER.debug("Using cached servlet {}", RequestUtil.getServletName(scriptServlet));
@@ -632,7 +633,9 @@ public class SlingServletResolver
             return scriptServlet;
         }
 
-        final Collection<Resource> candidates = locationUtil.getServlets(resolver);
+        final long generation = (cache != null ? cache.getGeneration() : 0);
+        final List<String> locations = (cache != null ? new ArrayList<String>() : null);
+        final Collection<Resource> candidates = locationUtil.getServlets(resolver, locations);
 
         if (LOGGER.isDebugEnabled()) {
             if (candidates.isEmpty()) {
@@ -654,14 +657,13 @@ public class SlingServletResolver
                 final boolean isOptingServlet = candidate instanceof OptingServlet;
                 boolean servletAcceptsRequest = !isOptingServlet || (request != null && ((OptingServlet) candidate).accepts(request));
                 if (servletAcceptsRequest) {
-                    if (!hasOptingServlet && !isOptingServlet && this.cache != null) {
-                        if ( this.cache.size() < this.cacheSize ) {
-                            this.cache.put(locationUtil, candidate);
-                        } else if ( this.logCacheSizeWarning ) {
+                    if (!hasOptingServlet && !isOptingServlet && cache != null) {
+                        if ( cache.getSize() >= this.cacheSize && this.logCacheSizeWarning ) {
                             this.logCacheSizeWarning = false;
-                            LOGGER.warn("Script cache has reached its limit of {}. You might want to increase the cache size for the servlet resolver.",
+                            LOGGER.warn("Script cache has reached its limit of {}, least recently used entries are evicted. You might want to increase the cache size for the servlet resolver.",
                                     this.cacheSize);
                         }
+                        cache.put(locationUtil, candidate, locations, generation);
                     }
                     LOGGER.debug("Using servlet provided by candidate resource {}", candidateResource.getPath());
                     return candidate;
@@ -840,7 +842,7 @@ public class SlingServletResolver
         // create cache - if a cache size is configured
         this.cacheSize = OsgiUtil.toInteger(properties.get(PROP_CACHE_SIZE), DEFAULT_CACHE_SIZE);
         if (this.cacheSize > 5) {
-            this.cache = new ConcurrentHashMap<AbstractResourceCollector, Servlet>(cacheSize);
+            this.cache = new ServletResolutionCache(cacheSize);
             this.logCacheSizeWarning = true;
         } else {
             this.cacheSize = 0;
@@ -1056,6 +1058,7 @@ public class SlingServletResolver
     public void handleEvent(final Event event) {
         if (this.cache != null) {
             boolean flushCache = false;
+            String invalidatePath = null;
 
             // we may receive different events
             final String topic = event.getTopic();
@@ -1073,26 +1076,37 @@ public class SlingServletResolver
                 // this is a resource or resource provider event
 
                 // if the path of the event is a sub path of a search path
-                // we flush the whole cache
+                // we invalidate the entries for the scripts at, above or
+                // below that path, without a path we flush the whole cache
                 final String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
                 if ( path != null ) {
                     int index = 0;
-                    while (!flushCache && index < searchPaths.length) {
+                    while (invalidatePath == null && index < searchPaths.length) {
                         if (path.startsWith(this.searchPaths[index])) {
-                            flushCache = true;
+                            invalidatePath = path;
                         }
                         index++;
                     }
+                } else {
+                    flushCache = true;
                 }
             }
             if (flushCache) {
                 flushCache();
+            } else if (invalidatePath != null) {
+                final ServletResolutionCache cache = this.cache;
+                if (cache != null) {
+                    cache.invalidate(invalidatePath);
+                }
             }
         }
     }
 
     private void flushCache() {
-        this.cache.clear();
+        final ServletResolutionCache cache = this.cache;
+        if (cache != null) {
+            cache.clear();
+        }
         this.logCacheSizeWarning = true;
     }
 
@@ -1387,7 +1401,8 @@ public class SlingServletResolver
         }
 
         public int getCacheSize() {
-            return cache.size();
+            final ServletResolutionCache cache = SlingServletResolver.this.cache;
+            return cache != null ? cache.getSize() : 0;
         }
 
         public void flushCache() {
@@ -1398,5 +1413,25 @@ public class SlingServletResolver
             return cacheSize;
         }
 
+        public long getHitCount() {
+            final ServletResolutionCache cache = SlingServletResolver.this.cache;
+            return cache != null ? cache.getHits() : 0;
+        }
+
+        public long getMissCount() {
+            final ServletResolutionCache cache = SlingServletResolver.this.cache;
+            return cache != null ? cache.getMisses() : 0;
+        }
+
+        public long getEvictionCount() {
+            final ServletResolutionCache cache = SlingServletResolver.this.cache;
+            return cache != null ? cache.getEvictions() : 0;
+        }
+
+        public long getInvalidationCount() {
+            final ServletResolutionCache cache = SlingServletResolver.this.cache;
+            return cache != null ? cache.getInvalidations() : 0;
+        }
+
     }
 }
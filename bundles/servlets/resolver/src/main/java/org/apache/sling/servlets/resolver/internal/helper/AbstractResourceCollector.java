@@ -65,6 +65,16 @@ public abstract class AbstractResourceCollector {
     }
 
     public final Collection<Resource> getServlets(final ResourceResolver resolver) {
+        return getServlets(resolver, null);
+    }
+
+    /**
+     * Returns the servlet resources like {@link #getServlets(ResourceResolver)}
+     * and adds the searched locations to the <code>searchedLocations</code>
+     * collection, unless it is <code>null</code>.
+     */
+    public final Collection<Resource> getServlets(final ResourceResolver resolver,
+            final Collection<String> searchedLocations) {
 
         final SortedSet<Resource> resources = new TreeSet<Resource>();
         final Iterator<String> locations = new LocationIterator(resourceType, resourceSuperType,
@@ -81,6 +91,9 @@ public abstract class AbstractResourceCollector {
             } else {
                 path = location;
             }
+            if ( searchedLocations != null ) {
+                searchedLocations.add(path);
+            }
             final Resource locationRes = getResource(resolver, path);
             getWeightedResources(resources, locationRes);
         }
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal.helper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.Servlet;
+
+/**
+ * The <code>ServletResolutionCache</code> caches the servlets resolved for
+ * a {@link AbstractResourceCollector}. The cache is bounded, the least
+ * recently used entries are evicted first.
+ * <p>
+ * Lookups do not lock: the entries are kept in a concurrent map and each
+ * entry remembers when it has been used last. Once the cache is full, the
+ * thread adding an entry evicts the least recently used entries. As the
+ * use is tracked by a clock which only advances on additions, the order of
+ * entries used between two additions is not distinguished, so the eviction
+ * order is an approximation of LRU.
+ * <p>
+ * Each entry records the locations which have been searched for the
+ * servlet. A change at a path invalidates only the entries with a location
+ * at, above or below that path, that is the entries for the resource types
+ * whose script locations changed.
+ */
+public class ServletResolutionCache {
+
+    private final int maxSize;
+
+    private final ConcurrentMap<AbstractResourceCollector, Entry> entries =
+        new ConcurrentHashMap<AbstractResourceCollector, Entry>();
+
+    /** Advanced on each addition, entries record it when they are used. */
+    private final AtomicLong clock = new AtomicLong();
+
+    /** Set while a thread evicts entries. */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /** Incremented on each invalidation to detect concurrent changes. */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ServletResolutionCache(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the current generation which has to be passed to
+     * {@link #put(AbstractResourceCollector, Servlet, Collection, long)}.
+     * This has to be called before resolving the servlet.
+     */
+    public long getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Returns the cached servlet or <code>null</code> if the key is not
+     * cached.
+     */
+    public Servlet get(final AbstractResourceCollector key) {
+        final Entry entry = this.entries.get(key);
+        if (entry == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        final long now = this.clock.get();
+        // only write if needed to keep the entry's cache line shared
+        if (entry.lastUsed != now) {
+            entry.lastUsed = now;
+        }
+        return entry.servlet;
+    }
+
+    /**
+     * Caches the servlet.
+     *
+     * @param key The resource collector used to resolve the servlet
+     * @param servlet The resolved servlet
+     * @param locations The locations searched for the servlet
+     * @param generation The generation at the start of the resolution, if
+     *            the cache has been invalidated in the meantime, the servlet
+     *            is not cached as the result might already be outdated.
+     */
+    public void put(final AbstractResourceCollector key, final Servlet servlet,
+            final Collection<String> locations, final long generation) {
+        if (this.generation.get() != generation) {
+            return;
+        }
+        final Entry entry = new Entry(servlet, locations.toArray(new String[locations.size()]),
+            this.clock.incrementAndGet());
+        this.entries.put(key, entry);
+        // invalidations increment the generation before removing entries,
+        // so either they remove this entry or it is removed here
+        if (this.generation.get() != generation) {
+            this.entries.remove(key, entry);
+            return;
+        }
+        if (this.entries.size() > this.maxSize) {
+            this.evict();
+        }
+    }
+
+    /**
+     * Removes all entries with a location at, above or below the path.
+     */
+    public void invalidate(final String path) {
+        this.generation.incrementAndGet();
+        final Iterator<Entry> i = this.entries.values().iterator();
+        while (i.hasNext()) {
+            if (i.next().isAffectedBy(path)) {
+                i.remove();
+                this.invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        this.generation.incrementAndGet();
+        this.entries.clear();
+    }
+
+    public int getSize() {
+        return this.entries.size();
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Evicts the least recently used entries until the size limit is met.
+     * Additions running concurrently do not wait for the eviction.
+     */
+    private void evict() {
+        if (!this.evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // the use is updated concurrently, so sort a snapshot of it
+            final List<Long> used = new ArrayList<Long>(this.entries.size());
+            for (final Entry entry : this.entries.values()) {
+                used.add(entry.lastUsed);
+            }
+            int toRemove = used.size() - this.maxSize;
+            if (toRemove <= 0) {
+                return;
+            }
+            Collections.sort(used);
+            final long threshold = used.get(toRemove - 1);
+            final Iterator<Map.Entry<AbstractResourceCollector, Entry>> i = this.entries.entrySet().iterator();
+            while (i.hasNext() && toRemove > 0) {
+                final Map.Entry<AbstractResourceCollector, Entry> candidate = i.next();
+                if (candidate.getValue().lastUsed <= threshold
+                        && this.entries.remove(candidate.getKey(), candidate.getValue())) {
+                    this.evictions.incrementAndGet();
+                    toRemove--;
+                }
+            }
+        } finally {
+            this.evicting.set(false);
+        }
+    }
+
+    private static final class Entry {
+
+        final Servlet servlet;
+
+        final String[] locations;
+
+        /** The clock value of the last use. */
+        volatile long lastUsed;
+
+        Entry(final Servlet servlet, final String[] locations, final long lastUsed) {
+            this.servlet = servlet;
+            this.locations = locations;
+            this.lastUsed = lastUsed;
+        }
+
+        boolean isAffectedBy(final String path) {
+            final String pathPrefix = path.endsWith("/") ? path : path.concat("/");
+            for (final String location : this.locations) {
+                if (location.equals(path) || path.startsWith(location.concat("/"))
+                        || location.startsWith(pathPrefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
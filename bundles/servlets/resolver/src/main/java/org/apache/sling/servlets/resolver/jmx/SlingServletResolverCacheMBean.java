@@ -37,6 +37,34 @@ public interface SlingServletResolverCacheMBean {
      */
     int getMaximumCacheSize();
 
+    /**
+     * Get the number of servlet resolutions answered from the cache
+     * 
+     * @return the hit count
+     */
+    long getHitCount();
+
+    /**
+     * Get the number of servlet resolutions not answered from the cache
+     * 
+     * @return the miss count
+     */
+    long getMissCount();
+
+    /**
+     * Get the number of entries evicted as the cache was full
+     * 
+     * @return the eviction count
+     */
+    long getEvictionCount();
+
+    /**
+     * Get the number of entries removed due to script changes
+     * 
+     * @return the invalidation count
+     */
+    long getInvalidationCount();
+
     /**
      * Flush the servlet resolver cache.
      */
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.servlets.resolver.internal.helper;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import junit.framework.TestCase;
+
+import org.apache.sling.api.resource.Resource;
+
+public class ServletResolutionCacheTest extends TestCase {
+
+    private static final Servlet SERVLET = new GenericServlet() {
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    };
+
+    private ServletResolutionCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = new ServletResolutionCache(3);
+    }
+
+    public void testGetAndPut() {
+        assertNull(cache.get(key("foo/bar")));
+        put("foo/bar");
+        assertSame(SERVLET, cache.get(key("foo/bar")));
+        assertNull(cache.get(key("foo/other")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testLeastRecentlyUsedEviction() {
+        put("a");
+        put("b");
+        put("c");
+        // access a, so b is the least recently used entry
+        assertNotNull(cache.get(key("a")));
+        put("d");
+
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(key("b")));
+        assertNotNull(cache.get(key("a")));
+        assertNotNull(cache.get(key("c")));
+        assertNotNull(cache.get(key("d")));
+    }
+
+    public void testInvalidation() {
+        put("foo/bar");
+        put("foo/baz");
+        put("other");
+
+        // a script of the resource type is added
+        cache.invalidate("/apps/foo/bar/html.jsp");
+        assertNull(cache.get(key("foo/bar")));
+        assertNotNull(cache.get(key("foo/baz")));
+        assertNotNull(cache.get(key("other")));
+
+        // a parent folder is removed
+        cache.invalidate("/libs/foo");
+        assertNull(cache.get(key("foo/baz")));
+        assertNotNull(cache.get(key("other")));
+
+        // siblings with a common prefix are not affected
+        cache.invalidate("/apps/oth");
+        cache.invalidate("/apps/other2");
+        assertNotNull(cache.get(key("other")));
+        assertEquals(2, cache.getInvalidations());
+    }
+
+    public void testConcurrentInvalidation() {
+        final long generation = cache.getGeneration();
+        // the script is changed while the servlet is being resolved
+        cache.invalidate("/apps/foo/bar/html.jsp");
+        cache.put(key("foo/bar"), SERVLET, Arrays.asList("/apps/foo/bar", "/libs/foo/bar"), generation);
+        assertNull(cache.get(key("foo/bar")));
+    }
+
+    public void testConcurrentPuts() throws Exception {
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        put("type" + thread + "/" + i);
+                        cache.get(key("type" + thread + "/" + (i / 2)));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        // concurrent additions do not wait for an eviction, the next one evicts
+        put("last");
+        assertEquals(3, cache.getSize());
+        assertNotNull(cache.get(key("last")));
+    }
+
+    public void testClear() {
+        put("a");
+        put("b");
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    private void put(final String resourceType) {
+        cache.put(key(resourceType), SERVLET,
+            Arrays.asList("/apps/" + resourceType, "/libs/" + resourceType, "/apps/sling/servlet/default",
+                "/libs/sling/servlet/default"), cache.getGeneration());
+    }
+
+    private AbstractResourceCollector key(final String resourceType) {
+        return new AbstractResourceCollector("sling/servlet/default", resourceType, null, "html", null) {
+            {
+                this.hashCode = resourceType.hashCode();
+            }
+
+            @Override
+            protected void getWeightedResources(final Set<Resource> resources, final Resource location) {
+            }
+        };
+    }
+}
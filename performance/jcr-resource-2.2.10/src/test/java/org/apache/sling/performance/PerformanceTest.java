@@ -17,37 +17,50 @@ package org.apache.sling.performance;
  */
 
 
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.Session;
+import javax.servlet.http.HttpServletRequest;
 
 import junitx.util.PrivateAccessor;
 
 import org.apache.sling.api.SlingConstants;
 import org.apache.sling.api.resource.QueriableResourceProvider;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceProvider;
 import org.apache.sling.api.resource.ResourceProviderFactory;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.apache.sling.jcr.resource.JcrResourceConstants;
 import org.apache.sling.jcr.resource.internal.helper.jcr.JcrResourceProviderFactory;
 import org.apache.sling.performance.annotation.PerformanceTestSuite;
+import org.apache.sling.performance.tests.GetResourceWithManyProvidersTest;
 import org.apache.sling.performance.tests.ResolveNonExistingWithManyAliasTest;
 import org.apache.sling.performance.tests.ResolveNonExistingWithManyVanityPathTest;
+import org.apache.sling.performance.tests.ResolveRepeatedNonExistingWithManyAliasTest;
+import org.apache.sling.performance.tests.ResolveWithManyMapEntriesTest;
 import org.apache.sling.performance.tests.StartupWithManyAliasTest;
 import org.apache.sling.performance.tests.StartupWithManyVanityTest;
 import org.apache.sling.resourceresolver.impl.CommonResourceResolverFactoryImpl;
 import org.apache.sling.resourceresolver.impl.ResourceAccessSecurityTracker;
 import org.apache.sling.resourceresolver.impl.ResourceResolverFactoryActivator;
 import org.apache.sling.resourceresolver.impl.ResourceResolverFactoryImpl;
+import org.apache.sling.resourceresolver.impl.helper.NegativeResolutionCache;
 import org.apache.sling.resourceresolver.impl.mapping.MapEntries;
 import org.apache.sling.resourceresolver.impl.mapping.Mapping;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.service.event.EventAdmin;
@@ -60,7 +73,55 @@ public class PerformanceTest {
         private MapEntries mapEntries;
 
         private ResourceResolver resourceResolver;
-        
+
+        private final boolean compiledMapMatcher;
+
+        private final int providerCount;
+
+        private final boolean vanityPathIndex;
+
+        private final long maxCachedVanityPathEntries;
+
+        private final int aliasLoaderThreads;
+
+        private final int negativeResolutionCacheSize;
+
+        private File dataDirectory;
+
+        public Helper() {
+            this(false);
+        }
+
+        public Helper(final boolean compiledMapMatcher) {
+            this(compiledMapMatcher, 0);
+        }
+
+        public Helper(final boolean compiledMapMatcher, final int providerCount) {
+            this(compiledMapMatcher, providerCount, false, -1);
+        }
+
+        public Helper(final boolean compiledMapMatcher, final int providerCount,
+                final boolean vanityPathIndex, final long maxCachedVanityPathEntries) {
+            this(compiledMapMatcher, providerCount, vanityPathIndex, maxCachedVanityPathEntries, 0);
+        }
+
+        public Helper(final boolean compiledMapMatcher, final int providerCount,
+                final boolean vanityPathIndex, final long maxCachedVanityPathEntries,
+                final int aliasLoaderThreads) {
+            this(compiledMapMatcher, providerCount, vanityPathIndex, maxCachedVanityPathEntries, aliasLoaderThreads, 0);
+        }
+
+        public Helper(final boolean compiledMapMatcher, final int providerCount,
+                final boolean vanityPathIndex, final long maxCachedVanityPathEntries,
+                final int aliasLoaderThreads, final int negativeResolutionCacheSize) {
+            this.compiledMapMatcher = compiledMapMatcher;
+            this.providerCount = providerCount;
+            this.vanityPathIndex = vanityPathIndex;
+            this.maxCachedVanityPathEntries = maxCachedVanityPathEntries;
+            this.aliasLoaderThreads = aliasLoaderThreads;
+            this.negativeResolutionCacheSize = negativeResolutionCacheSize;
+        }
+
         public void dispose() {
              mapEntries.dispose();
         }
@@ -88,11 +149,34 @@ public class PerformanceTest {
                 throw new Exception(e);
             }
 
+            // additional providers, as used by GetResourceWithManyProvidersTest
+            for (int i = 0; i < providerCount; i++) {
+                Map<String, Object> providerProps = new HashMap<String, Object>();
+                providerProps.put(Constants.SERVICE_ID, (long) i);
+                providerProps.put(ResourceProvider.ROOTS, rootPath + "/providers/provider" + i);
+                try {
+                    PrivateAccessor.invoke(activator, "bindResourceProvider", new Class[] { ResourceProvider.class,
+                            Map.class }, new Object[] { new SyntheticResourceProvider(), providerProps });
+                } catch (Throwable e) {
+                    throw new Exception(e);
+                }
+            }
+
             // setup mappings
             PrivateAccessor.setField(activator, "mappings", new Mapping[] { new Mapping("/-/"), new Mapping(rootPath + "/-/") });
 
             // ensure namespace mangling
             PrivateAccessor.setField(activator, "mangleNamespacePrefixes", true);
+
+            // compile the /etc/map entries
+            PrivateAccessor.setField(activator, "enableCompiledMapMatcher", compiledMapMatcher);
+
+            // vanity path bloom filter or index
+            PrivateAccessor.setField(activator, "enableVanityPathIndex", vanityPathIndex);
+            PrivateAccessor.setField(activator, "maxCachedVanityPathEntries", maxCachedVanityPathEntries);
+
+            // load the aliases in the background
+            PrivateAccessor.setField(activator, "aliasLoaderThreads", aliasLoaderThreads);
             
             ResourceAccessSecurityTracker rast = new ResourceAccessSecurityTracker();
             PrivateAccessor.setField(activator, "resourceAccessSecurityTracker",rast);
@@ -104,9 +188,28 @@ public class PerformanceTest {
             PrivateAccessor.setField(activator, "mapRoot", "/etc/map");
             ResourceResolverFactoryImpl resFac = new ResourceResolverFactoryImpl(commonFactory, /* TODO: using Bundle */ null, null);
              
-            mapEntries = new MapEntries(commonFactory, mock(BundleContext.class), mock(EventAdmin.class));
+            // the data files are kept across invocations to measure their reuse
+            if (dataDirectory == null) {
+                dataDirectory = File.createTempFile("sling-performance", "");
+                dataDirectory.delete();
+                dataDirectory.mkdirs();
+            }
+            BundleContext bundleContext = mock(BundleContext.class);
+            when(bundleContext.getDataFile(anyString())).thenAnswer(new Answer<File>() {
+                public File answer(InvocationOnMock invocation) throws Throwable {
+                    return new File(dataDirectory, (String) invocation.getArguments()[0]);
+                }
+            });
+
+            mapEntries = new MapEntries(commonFactory, bundleContext, mock(EventAdmin.class));
             PrivateAccessor.setField(commonFactory, "mapEntries", mapEntries);
 
+            // remember the paths not resolving
+            if (negativeResolutionCacheSize > 0) {
+                PrivateAccessor.setField(commonFactory, "negativeResolutionCache",
+                        new NegativeResolutionCache(negativeResolutionCacheSize));
+            }
+
             try {
                 NamespaceRegistry nsr = session.getWorkspace().getNamespaceRegistry();
                 nsr.registerNamespace(SlingConstants.NAMESPACE_PREFIX, JcrResourceConstants.SLING_NAMESPACE_URI);
@@ -120,6 +223,24 @@ public class PerformanceTest {
         }
     }
     
+    /**
+     * Resource provider returning a synthetic resource for each path.
+     */
+    private static class SyntheticResourceProvider implements ResourceProvider {
+
+        public Resource getResource(ResourceResolver resourceResolver, HttpServletRequest request, String path) {
+            return getResource(resourceResolver, path);
+        }
+
+        public Resource getResource(ResourceResolver resourceResolver, String path) {
+            return new SyntheticResource(resourceResolver, path, "sling:Folder");
+        }
+
+        public Iterator<Resource> listChildren(Resource parent) {
+            return null;
+        }
+    }
+
     @PerformanceTestSuite
     public ParameterizedTestList testPerformance() throws Exception {
         Helper helper = new Helper();
@@ -135,7 +256,29 @@ public class PerformanceTest {
         testCenter.addTestObject(new ResolveNonExistingWithManyAliasTest("ResolveNonExistingWith5000AliasTest",helper, 5000));
         testCenter.addTestObject(new ResolveNonExistingWithManyAliasTest("ResolveNonExistingWith10000AliasTest",helper, 10000));
         
+        Helper compiledHelper = new Helper(true);
+        testCenter.addTestObject(new ResolveWithManyMapEntriesTest("ResolveWith100MapEntriesTest",helper, 100));
+        testCenter.addTestObject(new ResolveWithManyMapEntriesTest("ResolveWith1000MapEntriesTest",helper, 1000));
+        testCenter.addTestObject(new ResolveWithManyMapEntriesTest("ResolveWith100CompiledMapEntriesTest",compiledHelper, 100));
+        testCenter.addTestObject(new ResolveWithManyMapEntriesTest("ResolveWith1000CompiledMapEntriesTest",compiledHelper, 1000));
+
+        // vanity paths not cached in memory, looked up with the bloom filter or the index
+        Helper bloomFilterHelper = new Helper(false, 0, false, 0);
+        Helper vanityIndexHelper = new Helper(false, 0, true, 0);
+        testCenter.addTestObject(new ResolveNonExistingWithManyVanityPathTest("ResolveNonExistingWith10000UncachedVanityPathTest",bloomFilterHelper, 100, 100));
+        testCenter.addTestObject(new ResolveNonExistingWithManyVanityPathTest("ResolveNonExistingWith10000IndexedVanityPathTest",vanityIndexHelper, 100, 100));
+        testCenter.addTestObject(new StartupWithManyVanityTest("StartupWith10000UncachedVanityTest",bloomFilterHelper, 100, 100));
+        testCenter.addTestObject(new StartupWithManyVanityTest("StartupWith10000IndexedVanityTest",vanityIndexHelper, 100, 100));
+
+        testCenter.addTestObject(new GetResourceWithManyProvidersTest("GetResourceWith64ProvidersTest",new Helper(false, 64), 64, 32));
+
+        // scanning the same non existing paths, remembered by the negative resolution cache
+        Helper negativeCacheHelper = new Helper(false, 0, false, -1, 0, 1000);
+        testCenter.addTestObject(new ResolveRepeatedNonExistingWithManyAliasTest("ResolveRepeatedNonExistingWith10000AliasTest",helper, 10000));
+        testCenter.addTestObject(new ResolveRepeatedNonExistingWithManyAliasTest("ResolveRepeatedNonExistingWith10000AliasCachedTest",negativeCacheHelper, 10000));
+
         testCenter.addTestObject(new StartupWithManyAliasTest("StartupWithManyAliasTest",helper, 10000));
+        testCenter.addTestObject(new StartupWithManyAliasTest("StartupWithManyAliasParallelTest",new Helper(false, 0, false, -1, 4), 10000));
         testCenter.addTestObject(new StartupWithManyVanityTest("StartupWith10VanityTest",helper, 1, 10));
         testCenter.addTestObject(new StartupWithManyVanityTest("StartupWith100ManyVanityTest",helper, 10, 10));
         testCenter.addTestObject(new StartupWithManyVanityTest("StartupWith1000ManyVanityTest",helper, 10, 100));
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.performance.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jcr.Node;
+import junit.framework.Assert;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.performance.AbstractRepositoryTest;
+import org.apache.sling.performance.TestHelper;
+import org.apache.sling.performance.annotation.PerformanceTest;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Gets deep resources from many threads in parallel while a large number of
+ * resource providers is registered. The helper is expected to register
+ * <code>providerCount</code> providers at
+ * <code>&lt;rootPath&gt;/providers/provider&lt;i&gt;</code> which return a
+ * resource for each path below their root.
+ */
+public class GetResourceWithManyProvidersTest extends AbstractRepositoryTest {
+
+    private static final int LOOKUPS_PER_THREAD = 100;
+
+    private final TestHelper helper;
+
+    private ResourceResolver resResolver;
+
+    private Node rootNode;
+
+    private String rootPath;
+
+    private final int providerCount;
+
+    private final int threadCount;
+
+    private ExecutorService executor;
+
+    public GetResourceWithManyProvidersTest(String testInstanceName, TestHelper helper, int providerCount, int threadCount) {
+        super(testInstanceName);
+        this.helper = helper;
+        this.providerCount = providerCount;
+        this.threadCount = threadCount;
+    }
+
+    @After
+    protected void afterSuite() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (helper != null) {
+            helper.dispose();
+        }
+
+        if (rootNode != null) {
+            rootNode.remove();
+        }
+        session.save();
+    }
+
+    @Before
+    protected void beforeSuite() throws Exception {
+        rootPath = "/test" + System.currentTimeMillis();
+        rootNode = getSession().getRootNode().addNode(rootPath.substring(1), JcrConstants.NT_UNSTRUCTURED);
+        session.save();
+
+        helper.init(rootPath, session, getRepository());
+
+        resResolver = helper.getResourceResolver();
+        executor = Executors.newFixedThreadPool(threadCount);
+    }
+
+    @PerformanceTest
+    public void runTest() throws Exception {
+        final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            results.add(executor.submit(new Callable<Integer>() {
+
+                public Integer call() throws Exception {
+                    int found = 0;
+                    for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                        final int provider = (thread * LOOKUPS_PER_THREAD + i) % providerCount;
+                        final String path = rootPath + "/providers/provider" + provider + "/a/b/c/d/e/f/resource" + i;
+                        if (resResolver.getResource(path) != null) {
+                            found++;
+                        }
+                    }
+                    return found;
+                }
+            }));
+        }
+        for (final Future<Integer> result : results) {
+            Assert.assertEquals(LOOKUPS_PER_THREAD, result.get().intValue());
+        }
+    }
+}
@@ -115,6 +115,10 @@ public class ResolveNonExistingWithManyAliasTest extends AbstractRepositoryTest
 
     }
 
+    protected ResourceResolver getResourceResolver() {
+        return resResolver;
+    }
+
     @PerformanceTest
     public void runTest() throws Exception {
         String path = ResourceUtil.normalize(ResourceUtil.getParent(rootPath) + "/" + "testNonExistingAlias"
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.performance.tests;
+
+import javax.servlet.http.HttpServletRequest;
+import junit.framework.Assert;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.performance.ResourceResolverTestRequest;
+import org.apache.sling.performance.TestHelper;
+import org.apache.sling.performance.annotation.PerformanceTest;
+
+/**
+ * Resolves the same set of non existing paths over and over again, like a
+ * crawler scanning for well known URLs does, while many aliases exist. This
+ * shows the effect of the negative resolution cache if it is enabled by the
+ * helper.
+ */
+public class ResolveRepeatedNonExistingWithManyAliasTest extends ResolveNonExistingWithManyAliasTest {
+
+    private static final String[] SCANNED_PATHS = {
+        "/wp-login.php", "/admin/config.php", "/phpmyadmin/index.php", "/.env",
+        "/cgi-bin/test.cgi", "/xmlrpc.php", "/backup.zip", "/testNonExistingAlias.print.html"
+    };
+
+    public ResolveRepeatedNonExistingWithManyAliasTest(String testInstanceName, TestHelper helper, int nodeCount) {
+        super(testInstanceName, helper, nodeCount);
+    }
+
+    @Override
+    @PerformanceTest
+    public void runTest() throws Exception {
+        for (final String scannedPath : SCANNED_PATHS) {
+            String path = ResourceUtil.normalize(scannedPath);
+            HttpServletRequest request = new ResourceResolverTestRequest(path);
+            Resource res = getResourceResolver().resolve(request, path);
+            Assert.assertTrue(ResourceUtil.isNonExistingResource(res));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.sling.performance.tests;
+
+import javax.jcr.Node;
+import javax.servlet.http.HttpServletRequest;
+import junit.framework.Assert;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.testing.jcr.RepositoryUtil;
+import org.apache.sling.performance.AbstractRepositoryTest;
+import org.apache.sling.performance.TestHelper;
+import org.apache.sling.performance.ResourceResolverTestRequest;
+import org.apache.sling.performance.annotation.PerformanceTest;
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Resolves a request against an /etc/map configuration with one mapping
+ * node per virtual host, as used by multi-tenant installations.
+ */
+public class ResolveWithManyMapEntriesTest extends AbstractRepositoryTest {
+
+    private static final String PROP_REDIRECT_INTERNAL = "sling:internalRedirect";
+
+    private final TestHelper helper;
+
+    private Node mapRoot;
+
+    private ResourceResolver resResolver;
+
+    private Node rootNode;
+
+    private String rootPath;
+
+    private final int hostCount;
+
+    public ResolveWithManyMapEntriesTest(String testInstanceName, TestHelper helper, int hostCount) {
+        super(testInstanceName);
+        this.helper = helper;
+        this.hostCount = hostCount;
+    }
+
+    @After
+    protected void afterSuite() throws Exception {
+        if (helper != null) {
+            helper.dispose();
+        }
+
+        if (rootNode != null) {
+            rootNode.remove();
+        }
+        if (mapRoot != null) {
+            mapRoot.remove();
+        }
+        session.save();
+    }
+
+    @Before
+    protected void beforeSuite() throws Exception {
+        RepositoryUtil.registerNodeType(getSession(),
+                this.getClass().getResourceAsStream("/SLING-INF/nodetypes/folder.cnd"));
+        RepositoryUtil.registerNodeType(getSession(),
+                this.getClass().getResourceAsStream("/SLING-INF/nodetypes/resource.cnd"));
+        RepositoryUtil.registerNodeType(getSession(),
+                this.getClass().getResourceAsStream("/SLING-INF/nodetypes/vanitypath.cnd"));
+        RepositoryUtil.registerNodeType(getSession(),
+                this.getClass().getResourceAsStream("/SLING-INF/nodetypes/mapping.cnd"));
+
+        // test data
+        rootPath = "/test" + System.currentTimeMillis();
+        rootNode = getSession().getRootNode().addNode(rootPath.substring(1), JcrConstants.NT_UNSTRUCTURED);
+
+        // test mappings: one host mapping per site
+        mapRoot = getSession().getRootNode().addNode("etc", JcrConstants.NT_FOLDER);
+        Node map = mapRoot.addNode("map", "sling:Mapping");
+        Node http = map.addNode("http", "sling:Mapping");
+        http.addNode("localhost.80", "sling:Mapping");
+        Node https = map.addNode("https", "sling:Mapping");
+        https.addNode("localhost.443", "sling:Mapping");
+
+        for (int j = 0; j < hostCount; j++) {
+            Node site = rootNode.addNode("site" + j, JcrConstants.NT_UNSTRUCTURED);
+            site.addNode("index", JcrConstants.NT_UNSTRUCTURED);
+
+            Node host = http.addNode("www.site" + j + ".com.80", "sling:Mapping");
+            host.setProperty(PROP_REDIRECT_INTERNAL, site.getPath());
+            Node secureHost = https.addNode("www.site" + j + ".com.443", "sling:Mapping");
+            secureHost.setProperty(PROP_REDIRECT_INTERNAL, site.getPath());
+
+            if (j % 10 == 0) {
+                session.save();
+            }
+        }
+
+        session.save();
+
+        helper.init(rootPath, session, getRepository());
+
+        resResolver = helper.getResourceResolver();
+    }
+
+    @PerformanceTest
+    public void runTest() throws Exception {
+        String path = "/index.html";
+        HttpServletRequest request = new ResourceResolverTestRequest("http", "www.site" + (hostCount - 1) + ".com", 80, path);
+        Resource res = resResolver.resolve(request, path);
+        Assert.assertNotNull(res);
+    }
+}